@@ -57,6 +57,22 @@ public enum FlowExecutionStatus {
         this.code = code;
     }
 
+    /**
+     * 是否是最终状态, 到了最终状态的 flow execution 不会再变化（重试会新建 flow execution）
+     */
+    public boolean isFinished() {
+        switch (this) {
+            case SUCCESS:
+            case ERROR:
+            case KILLED:
+            case DO_NOT_RUN_SAME_TIME:
+            case AUTO_KILLED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     public static FlowExecutionStatus getInstance(int status) {
         switch (status) {
             case 0:
@@ -11,6 +11,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.NonNull;
 import lombok.ToString;
+import lombok.val;
 
 import javax.annotation.Nullable;
 import java.util.List;
@@ -41,6 +42,29 @@ public class ApiResult {
         ));
     }
 
+    /**
+     * 游标分页结果, nextCursor 为空表示没有下一页
+     */
+    public static ApiResult success(@NonNull List<?> data, @Nullable Long nextCursor, int pageSize) {
+        return success(data, nextCursor, null, pageSize);
+    }
+
+    /**
+     * 游标分页结果, 带总数, nextCursor 是数字或者字符串
+     */
+    public static ApiResult success(@NonNull List<?> data, @Nullable Object nextCursor, @Nullable Long count, int pageSize) {
+        val builder = ImmutableMap.<String, Object>builder()
+                .put("data", data)
+                .put("pageSize", pageSize);
+        if (nextCursor != null) {
+            builder.put("nextCursor", nextCursor);
+        }
+        if (count != null) {
+            builder.put("count", count);
+        }
+        return new ApiResult(200, "success", builder.build());
+    }
+
     public static ApiResult success(@Nullable Object data) {
         return new ApiResult(200, "success", data);
     }
@@ -94,4 +94,28 @@ public class FlowModel {
     @Nullable
     public final Timestamp statusUpdateTime;
 
+    /**
+     * 节点结果缓存的有效期(秒), 为空时用默认值
+     */
+    @Nullable
+    public final Integer cacheTtlSeconds;
+
+    /**
+     * 每个节点的结果缓存最多保留的条数, 为空时用默认值
+     */
+    @Nullable
+    public final Integer cacheMaxEntries;
+
+    /**
+     * 上游 flow id, 逗号分开, 上游成功结束时触发
+     */
+    @Nullable
+    public final String upstreamFlowIds;
+
+    /**
+     * 大于 0 时所有上游都要在这么多秒内成功过才触发, 为空或 0 时任意一个上游成功就触发
+     */
+    @Nullable
+    public final Integer upstreamWindowSeconds;
+
 }
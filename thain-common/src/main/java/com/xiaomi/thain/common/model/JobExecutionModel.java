@@ -30,6 +30,11 @@ public class JobExecutionModel {
     public final Timestamp createTime;
     @Nullable
     public final Timestamp updateTime;
+    /**
+     * map 节点每个元素的状态和执行次数, 不是 map 节点为空
+     */
+    @Nullable
+    public final String mapState;
 
     public Optional<Long> getCreateTime() {
         return Optional.ofNullable(createTime).map(Timestamp::getTime);
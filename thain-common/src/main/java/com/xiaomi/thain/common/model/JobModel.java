@@ -41,6 +41,40 @@ public class JobModel {
     @Nullable
     public final Timestamp createTime;
     public final boolean deleted;
+    /**
+     * 失败后在 flow 内重试的次数
+     */
+    public final int retryNumber;
+    /**
+     * 重试的基础间隔(秒), 每次重试翻倍
+     */
+    public final int retryBackoff;
+    /**
+     * 单次执行的超时时间(秒), 0 不超时
+     */
+    public final int timeoutSeconds;
+    /**
+     * 是否缓存结果, 输入不变时跳过执行
+     */
+    public final boolean cacheEnabled;
+    /**
+     * map 节点的元素来源: 上游节点的 storage(jobName.key) 或者本节点的属性名, 为空不是 map 节点
+     */
+    @Nullable
+    public final String mapSource;
+    /**
+     * map 节点同时执行的元素数
+     */
+    public final int mapParallelism;
+    /**
+     * map 节点允许失败的元素数, 超过时节点失败
+     */
+    public final int mapTolerance;
+    /**
+     * 节点需要的集群资源, json, 资源池名 -> 数量, 为空不需要
+     */
+    @Nullable
+    public final String resourceClaims;
 
     public Optional<Long> getCreateTime() {
         return Optional.ofNullable(createTime).map(Timestamp::getTime);
@@ -56,7 +90,15 @@ public class JobModel {
                     int xAxis,
                     int yAxis,
                     @Nullable Timestamp createTime,
-                    boolean deleted
+                    boolean deleted,
+                    int retryNumber,
+                    int retryBackoff,
+                    int timeoutSeconds,
+                    boolean cacheEnabled,
+                    @Nullable String mapSource,
+                    int mapParallelism,
+                    int mapTolerance,
+                    @Nullable String resourceClaims
     ) {
         this.id = id;
         this.flowId = flowId;
@@ -69,6 +111,14 @@ public class JobModel {
         this.yAxis = yAxis;
         this.createTime = createTime;
         this.deleted = deleted;
+        this.retryNumber = retryNumber;
+        this.retryBackoff = retryBackoff;
+        this.timeoutSeconds = timeoutSeconds;
+        this.cacheEnabled = cacheEnabled;
+        this.mapSource = mapSource;
+        this.mapParallelism = mapParallelism;
+        this.mapTolerance = mapTolerance;
+        this.resourceClaims = resourceClaims;
     }
 
     /**
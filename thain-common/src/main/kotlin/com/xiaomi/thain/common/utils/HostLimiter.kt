@@ -0,0 +1,197 @@
+package com.xiaomi.thain.common.utils
+
+import java.util.ArrayDeque
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.math.max
+import kotlin.math.min
+
+private const val INITIAL_LIMIT = 10.0
+private const val DECREASE_FACTOR = 0.7
+private const val SLOW_DECREASE_FACTOR = 0.9
+private const val LATENCY_TOLERANCE = 2.0
+private const val MIN_DECREASE_INTERVAL_MILLIS = 100L
+
+/**
+ * 令牌桶补充令牌的定时器，所有目标共用
+ */
+private val refillTimer = Executors.newSingleThreadScheduledExecutor { r ->
+    Thread(r, "thain-http-limiter").apply { isDaemon = true }
+}
+
+/**
+ * 单个目标（host:port）的限流：令牌桶限制速率，AIMD 调整同时进行的请求数。
+ *
+ * 请求成功时并发上限每轮加一（每次加 1/limit），失败、429、5xx 时乘 0.7，
+ * 延迟超过无负载延迟的两倍（对方开始排队）时乘 0.9，两次减少之间至少隔一个平均延迟，一批失败只减一次。
+ * 拿不到许可的请求排队等 future，按顺序放行
+ *
+ * @author liangyongrui
+ */
+class HostLimiter(private val host: String,
+                  private val permitsPerSecond: Double,
+                  private val burst: Int,
+                  private val maxConcurrency: Int) {
+
+    private var tokens = burst.toDouble()
+    private var lastRefillTime = System.nanoTime()
+    private var limit = min(INITIAL_LIMIT, maxConcurrency.toDouble())
+    private var inFlight = 0
+    private val waiters = ArrayDeque<CompletableFuture<Void>>()
+    private var drainScheduled = false
+
+    private var successCount = 0L
+    private var errorCount = 0L
+    private var throttledCount = 0L
+    private var averageLatencyMillis = 0.0
+    /**
+     * 无负载时的延迟，取观察到的最小值，缓慢向上修正，对方扩容、换机房后能跟上
+     */
+    private var noLoadLatencyMillis = 0.0
+    private var lastDecreaseTime = 0L
+
+    /**
+     * @return 拿到许可时完成，取消的 future 不占用许可
+     */
+    @Synchronized
+    fun acquire(): CompletableFuture<Void> {
+        if (waiters.isEmpty() && tryTake()) {
+            return CompletableFuture.completedFuture(null)
+        }
+        throttledCount++
+        val future = CompletableFuture<Void>()
+        waiters.add(future)
+        scheduleDrain()
+        return future
+    }
+
+    /**
+     * 请求结束后归还许可
+     *
+     * @param success 请求是否成功，连接失败、超时、429、5xx 算失败
+     */
+    fun release(latencyMillis: Long, success: Boolean) {
+        synchronized(this) {
+            inFlight--
+            val now = System.currentTimeMillis()
+            averageLatencyMillis = if (successCount + errorCount == 0L) {
+                latencyMillis.toDouble()
+            } else {
+                averageLatencyMillis * 0.9 + latencyMillis * 0.1
+            }
+            if (success) {
+                successCount++
+                noLoadLatencyMillis = if (noLoadLatencyMillis == 0.0 || latencyMillis < noLoadLatencyMillis) {
+                    latencyMillis.toDouble()
+                } else {
+                    noLoadLatencyMillis * 0.99 + latencyMillis * 0.01
+                }
+                if (latencyMillis > noLoadLatencyMillis * LATENCY_TOLERANCE + 10) {
+                    decrease(SLOW_DECREASE_FACTOR, now)
+                } else {
+                    limit = min(maxConcurrency.toDouble(), limit + 1 / limit)
+                }
+            } else {
+                errorCount++
+                decrease(DECREASE_FACTOR, now)
+            }
+        }
+        drain()
+    }
+
+    /**
+     * 主动中止的请求（对冲请求里输掉的）只归还许可，不影响并发上限
+     */
+    fun release() {
+        synchronized(this) {
+            inFlight--
+        }
+        drain()
+    }
+
+    @Synchronized
+    fun metrics(): HostMetrics {
+        refill()
+        return HostMetrics(host, limit.toInt(), inFlight, waiters.size, tokens.toInt(),
+                successCount, errorCount, throttledCount, averageLatencyMillis.toLong())
+    }
+
+    private fun decrease(factor: Double, now: Long) {
+        if (now - lastDecreaseTime < max(averageLatencyMillis.toLong(), MIN_DECREASE_INTERVAL_MILLIS)) {
+            return
+        }
+        limit = max(1.0, limit * factor)
+        lastDecreaseTime = now
+    }
+
+    private fun refill() {
+        val now = System.nanoTime()
+        tokens = min(burst.toDouble(), tokens + (now - lastRefillTime) / 1e9 * permitsPerSecond)
+        lastRefillTime = now
+    }
+
+    private fun tryTake(): Boolean {
+        refill()
+        if (inFlight >= limit.toInt() || tokens < 1) {
+            return false
+        }
+        tokens -= 1
+        inFlight++
+        return true
+    }
+
+    /**
+     * 按顺序放行排队的请求，future 在锁外完成，调用方的后续操作不在锁里执行
+     */
+    private fun drain() {
+        while (true) {
+            val future = synchronized(this) {
+                waiters.removeIf { it.isDone }
+                if (waiters.isEmpty() || !tryTake()) {
+                    scheduleDrain()
+                    return
+                }
+                waiters.poll()
+            }
+            if (!future.complete(null)) {
+                // 等待超时取消了
+                synchronized(this) {
+                    inFlight--
+                    tokens += 1
+                }
+            }
+        }
+    }
+
+    /**
+     * 缺令牌时等下一个令牌补上再放行；缺并发数时由 release 放行
+     */
+    private fun scheduleDrain() {
+        if (drainScheduled || waiters.isEmpty() || inFlight >= limit.toInt()) {
+            return
+        }
+        drainScheduled = true
+        val delayMicros = ((1 - tokens) / permitsPerSecond * 1e6).toLong().coerceAtLeast(1)
+        refillTimer.schedule({
+            synchronized(this) { drainScheduled = false }
+            drain()
+        }, delayMicros, TimeUnit.MICROSECONDS)
+    }
+}
+
+/**
+ * 目标的限流状态
+ *
+ * @param limit 当前的并发上限
+ * @param throttledCount 排过队的请求数
+ */
+data class HostMetrics(val host: String,
+                       val limit: Int,
+                       val inFlight: Int,
+                       val queued: Int,
+                       val tokens: Int,
+                       val successCount: Long,
+                       val errorCount: Long,
+                       val throttledCount: Long,
+                       val averageLatencyMillis: Long)
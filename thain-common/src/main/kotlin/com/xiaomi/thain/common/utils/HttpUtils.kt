@@ -1,26 +1,59 @@
 package com.xiaomi.thain.common.utils
 
 import org.apache.http.Consts
+import org.apache.http.HttpEntity
 import org.apache.http.client.config.RequestConfig
 import org.apache.http.client.entity.UrlEncodedFormEntity
 import org.apache.http.client.methods.HttpGet
 import org.apache.http.client.methods.HttpPost
+import org.apache.http.client.methods.HttpUriRequest
+import org.apache.http.client.utils.URIUtils
 import org.apache.http.config.SocketConfig
 import org.apache.http.impl.client.CloseableHttpClient
 import org.apache.http.impl.client.HttpClients
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager
 import org.apache.http.message.BasicNameValuePair
 import org.apache.http.util.EntityUtils
+import java.io.File
 import java.io.IOException
 import java.nio.charset.StandardCharsets
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
 
 /**
+ * 排队等限流超过这个时间的请求失败，和读超时一致
+ */
+private const val QUEUE_TIMEOUT_MILLIS = 5 * 60 * 1000L
+
+/**
+ * 每个目标（host:port）单独限流，见 HostLimiter，同一时间触发的大量 flow 不会一起压垮下游服务
+ *
  * @author liangyongrui
  */
 object HttpUtils {
 
     private val httpClient: CloseableHttpClient
 
+    private val limiters = ConcurrentHashMap<String, HostLimiter>()
+
+    /**
+     * 对冲请求在这里发出，调用方线程只等结果
+     */
+    private val hedgeExecutor = Executors.newCachedThreadPool { r ->
+        Thread(r, "thain-http-hedge").apply { isDaemon = true }
+    }
+
+    @Volatile
+    private var permitsPerSecond = 50.0
+    @Volatile
+    private var burst = 100
+    @Volatile
+    private var maxConcurrency = 100
+
     init {
         val manager = PoolingHttpClientConnectionManager()
         manager.maxTotal = 300
@@ -29,6 +62,30 @@ object HttpUtils {
         httpClient = HttpClients.custom().setConnectionManager(manager).build()
     }
 
+    /**
+     * 启动时调用，修改后新的目标生效
+     *
+     * @param permitsPerSecond 每个目标每秒的请求数
+     * @param burst 每个目标允许的突发请求数
+     * @param maxConcurrency 每个目标同时进行的请求数上限，实际上限在 1 和它之间自动调整
+     */
+    @JvmStatic
+    fun configureHostLimit(permitsPerSecond: Double, burst: Int, maxConcurrency: Int) {
+        require(permitsPerSecond > 0 && burst > 0 && maxConcurrency > 0) { "http host limit must be positive" }
+        this.permitsPerSecond = permitsPerSecond
+        this.burst = burst
+        this.maxConcurrency = maxConcurrency
+        limiters.clear()
+    }
+
+    /**
+     * 本机各个目标的限流状态
+     */
+    @JvmStatic
+    fun hostMetrics(): List<HostMetrics> {
+        return limiters.values.map { it.metrics() }.sortedBy { it.host }
+    }
+
     @JvmStatic
     @Throws(IOException::class)
     fun postForm(url: String, data: Map<String, *>): String {
@@ -38,36 +95,178 @@ object HttpUtils {
     @JvmStatic
     @Throws(IOException::class)
     fun post(url: String, headers: Map<String, String>, data: Map<String, *>): String {
+        return execute(httpPost(url, headers, data))
+    }
+
+    /**
+     * 响应写到 file 里，不读进内存，大的响应用
+     *
+     * @return 响应的字节数
+     */
+    @JvmStatic
+    @Throws(IOException::class)
+    fun postToFile(url: String, headers: Map<String, String>, data: Map<String, *>, file: File): Long {
+        return executeToFile(httpPost(url, headers, data), file)
+    }
+
+    private fun httpPost(url: String, headers: Map<String, String>, data: Map<String, *>): HttpPost {
         val httpPost = HttpPost(url)
         headers.forEach { httpPost.addHeader(it.key, it.value) }
         val formParams = data.map { BasicNameValuePair(it.key, it.value.toString()) }
         val urlEntity = UrlEncodedFormEntity(formParams, Consts.UTF_8)
         httpPost.entity = urlEntity
         httpPost.config = RequestConfig.custom().build()
-        return httpClient.execute(httpPost).use { response ->
-            response.entity?.let { EntityUtils.toString(it, StandardCharsets.UTF_8) } ?: ""
-        }
+        return httpPost
     }
 
     @JvmStatic
     @Throws(IOException::class)
     fun get(url: String): String {
-        val httpGet = HttpGet(url)
+        return execute(HttpGet(url))
+    }
+
+    @JvmStatic
+    @Throws(IOException::class)
+    fun get(url: String, data: Map<String, String>): String {
+        return get(appendQuery(url, data))
+    }
+
+    /**
+     * 集群内部节点之间的请求，不经过限流，建立连接和读响应都最多等 timeoutMillis
+     */
+    @JvmStatic
+    @Throws(IOException::class)
+    fun internalGet(url: String, data: Map<String, String>, timeoutMillis: Int): String {
+        val httpGet = HttpGet(appendQuery(url, data))
+        httpGet.config = RequestConfig.custom()
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setConnectTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .build()
         return httpClient.execute(httpGet).use { response ->
             response.entity?.let { EntityUtils.toString(it, StandardCharsets.UTF_8) } ?: ""
         }
     }
 
+    /**
+     * 响应写到 file 里，不读进内存，大的响应用
+     *
+     * @return 响应的字节数
+     */
     @JvmStatic
     @Throws(IOException::class)
-    fun get(url: String, data: Map<String, String>): String {
+    fun getToFile(url: String, data: Map<String, String>, file: File): Long {
+        return executeToFile(HttpGet(appendQuery(url, data)), file)
+    }
+
+    /**
+     * 对冲的 get 请求，只能用于幂等的请求：hedgeDelayMillis 内没有返回并且 tryHedge 允许时再发一次，
+     * 先成功返回的为准，另一个中止。两个都失败时抛出第一个请求的异常
+     *
+     * @param hedgeDelayMillis 为空时不对冲
+     * @param tryHedge 决定要不要发第二个请求，用来限制额外的请求量
+     */
+    @JvmStatic
+    @Throws(IOException::class)
+    fun hedgedGet(url: String, data: Map<String, String>, hedgeDelayMillis: Long?, tryHedge: () -> Boolean): String {
+        val finalUrl = appendQuery(url, data)
+        if (hedgeDelayMillis == null) {
+            return get(finalUrl)
+        }
+        val primaryRequest = HttpGet(finalUrl)
+        val hedgeRequest = HttpGet(finalUrl)
+        try {
+            val primary = CompletableFuture.supplyAsync({ execute(primaryRequest) }, hedgeExecutor)
+            try {
+                return primary.get(hedgeDelayMillis, TimeUnit.MILLISECONDS)
+            } catch (e: TimeoutException) {
+                // 慢了，看要不要对冲
+            }
+            if (!tryHedge()) {
+                return primary.get()
+            }
+            val hedge = CompletableFuture.supplyAsync({ execute(hedgeRequest) }, hedgeExecutor)
+            val winner = CompletableFuture<String>()
+            primary.thenAccept { winner.complete(it) }
+            hedge.thenAccept { winner.complete(it) }
+            CompletableFuture.allOf(primary, hedge).whenComplete { _, _ ->
+                if (primary.isCompletedExceptionally && hedge.isCompletedExceptionally) {
+                    primary.exceptionally { e -> winner.completeExceptionally(e.cause ?: e); null }
+                }
+            }
+            return winner.get()
+        } catch (e: ExecutionException) {
+            throw e.cause as? IOException ?: IOException(e.cause)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw IOException("interrupted while waiting for $finalUrl", e)
+        } finally {
+            primaryRequest.abort()
+            hedgeRequest.abort()
+        }
+    }
+
+    private fun appendQuery(url: String, data: Map<String, String>): String {
         val condition = data.entries.joinToString("&") { it.key + "=" + it.value }
-        val finalUrl = when {
+        return when {
             condition.isEmpty() -> url
             url.contains("?") -> "$url&$condition"
             else -> "$url?$condition"
         }
-        return get(finalUrl)
+    }
+
+    /**
+     * 先拿目标的许可，连接失败、429、5xx 都算失败，让目标降低并发
+     */
+    @Throws(IOException::class)
+    private fun execute(request: HttpUriRequest): String {
+        return execute(request) { entity -> entity?.let { EntityUtils.toString(it, StandardCharsets.UTF_8) } ?: "" }
+    }
+
+    @Throws(IOException::class)
+    private fun executeToFile(request: HttpUriRequest, file: File): Long {
+        return execute(request) { entity ->
+            file.outputStream().use { out -> entity?.content?.use { it.copyTo(out) } ?: 0L }
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun <T> execute(request: HttpUriRequest, handler: (HttpEntity?) -> T): T {
+        val host = URIUtils.extractHost(request.uri)?.toHostString() ?: ""
+        val limiter = limiters.computeIfAbsent(host) { HostLimiter(it, permitsPerSecond, burst, maxConcurrency) }
+        val permit = limiter.acquire()
+        try {
+            permit.get(QUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+        } catch (e: InterruptedException) {
+            // 取消前刚好放行的，许可已经给了这个请求，要还回去
+            if (!permit.cancel(false)) {
+                limiter.release()
+            }
+            Thread.currentThread().interrupt()
+            throw IOException("interrupted while waiting for http limit of $host", e)
+        } catch (e: TimeoutException) {
+            if (!permit.cancel(false)) {
+                limiter.release()
+            }
+            throw IOException("timed out waiting for http limit of $host", e)
+        } catch (e: ExecutionException) {
+            throw IOException(e.cause)
+        }
+        val startTime = System.currentTimeMillis()
+        var success = false
+        try {
+            return httpClient.execute(request).use { response ->
+                val statusCode = response.statusLine.statusCode
+                success = statusCode != 429 && statusCode < 500
+                handler(response.entity)
+            }
+        } finally {
+            if (request.isAborted) {
+                limiter.release()
+            } else {
+                limiter.release(System.currentTimeMillis() - startTime, success)
+            }
+        }
     }
 
 }
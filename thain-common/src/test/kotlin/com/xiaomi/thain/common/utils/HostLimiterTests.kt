@@ -0,0 +1,95 @@
+package com.xiaomi.thain.common.utils
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class HostLimiterTests {
+
+    /**
+     * 令牌用完后排队，补上令牌后按顺序放行
+     */
+    @Test
+    fun rateLimitTest() {
+        val limiter = HostLimiter("host", 20.0, 2, 10)
+        Assertions.assertTrue(limiter.acquire().isDone)
+        Assertions.assertTrue(limiter.acquire().isDone)
+        val third = limiter.acquire()
+        val fourth = limiter.acquire()
+        Assertions.assertFalse(third.isDone)
+        Assertions.assertEquals(2, limiter.metrics().queued)
+
+        third.get(1, TimeUnit.SECONDS)
+        fourth.get(1, TimeUnit.SECONDS)
+        Assertions.assertEquals(4, limiter.metrics().inFlight)
+        Assertions.assertEquals(2, limiter.metrics().throttledCount)
+    }
+
+    /**
+     * 同时进行的请求达到上限后，归还一个才放行一个
+     */
+    @Test
+    fun concurrencyLimitTest() {
+        val limiter = HostLimiter("host", 1e6, 100, 2)
+        limiter.acquire().get(1, TimeUnit.SECONDS)
+        limiter.acquire().get(1, TimeUnit.SECONDS)
+        val waiting = limiter.acquire()
+        Thread.sleep(50)
+        Assertions.assertFalse(waiting.isDone)
+
+        limiter.release(10, true)
+        waiting.get(1, TimeUnit.SECONDS)
+        Assertions.assertEquals(2, limiter.metrics().inFlight)
+    }
+
+    /**
+     * 等待超时取消的不占用许可
+     */
+    @Test
+    fun cancelledWaiterTest() {
+        val limiter = HostLimiter("host", 1e6, 100, 1)
+        limiter.acquire().get(1, TimeUnit.SECONDS)
+        val cancelled = limiter.acquire()
+        val waiting = limiter.acquire()
+        Assertions.assertTrue(cancelled.cancel(false))
+
+        limiter.release(10, true)
+        waiting.get(1, TimeUnit.SECONDS)
+        Assertions.assertEquals(1, limiter.metrics().inFlight)
+        Assertions.assertEquals(0, limiter.metrics().queued)
+    }
+
+    /**
+     * 失败时并发上限乘 0.7，紧接着的失败算同一批，只减一次
+     */
+    @Test
+    fun decreaseTest() {
+        val limiter = HostLimiter("host", 1e6, 100, 10)
+        repeat(3) { limiter.acquire().get(1, TimeUnit.SECONDS) }
+        Assertions.assertEquals(10, limiter.metrics().limit)
+
+        limiter.release(10, false)
+        Assertions.assertEquals(7, limiter.metrics().limit)
+        limiter.release(10, false)
+        Assertions.assertEquals(7, limiter.metrics().limit)
+        Assertions.assertEquals(2, limiter.metrics().errorCount)
+    }
+
+    /**
+     * 成功时每轮加一，不超过 maxConcurrency
+     */
+    @Test
+    fun increaseTest() {
+        val limiter = HostLimiter("host", 1e6, 100, 11)
+        repeat(10) {
+            limiter.acquire().get(1, TimeUnit.SECONDS)
+            limiter.release(10, true)
+        }
+        Assertions.assertEquals(10, limiter.metrics().limit)
+        repeat(20) {
+            limiter.acquire().get(1, TimeUnit.SECONDS)
+            limiter.release(10, true)
+        }
+        Assertions.assertEquals(11, limiter.metrics().limit)
+    }
+}
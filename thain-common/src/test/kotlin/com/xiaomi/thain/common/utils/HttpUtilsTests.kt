@@ -0,0 +1,83 @@
+package com.xiaomi.thain.common.utils
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.net.InetSocketAddress
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class HttpUtilsTests {
+
+    private lateinit var server: HttpServer
+    private val requests = AtomicInteger()
+
+    /**
+     * 第一个请求卡 3 秒，之后的立刻返回第几个请求
+     */
+    @BeforeEach
+    fun startServer() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.executor = Executors.newCachedThreadPool()
+        server.createContext("/") { exchange ->
+            val index = requests.incrementAndGet()
+            if (index == 1) {
+                Thread.sleep(3000)
+            }
+            val body = index.toString().toByteArray(StandardCharsets.UTF_8)
+            exchange.use {
+                try {
+                    it.sendResponseHeaders(200, body.size.toLong())
+                    it.responseBody.write(body)
+                } catch (e: Exception) {
+                    // 被中止的请求
+                }
+            }
+        }
+        server.start()
+    }
+
+    @AfterEach
+    fun stopServer() {
+        server.stop(0)
+    }
+
+    private fun url() = "http://127.0.0.1:${server.address.port}/"
+
+    /**
+     * 第一个请求超过等待时间后对冲，先返回的第二个请求为准
+     */
+    @Test
+    fun hedgedGetTest() {
+        val start = System.currentTimeMillis()
+        val result = HttpUtils.hedgedGet(url(), mapOf("a" to "1"), 100) { true }
+        Assertions.assertEquals("2", result)
+        Assertions.assertTrue(System.currentTimeMillis() - start < 2000)
+    }
+
+    /**
+     * 没有额度时不发第二个请求，等第一个返回
+     */
+    @Test
+    fun noBudgetTest() {
+        val result = HttpUtils.hedgedGet(url(), emptyMap(), 100) { false }
+        Assertions.assertEquals("1", result)
+        Assertions.assertEquals(1, requests.get())
+    }
+
+    /**
+     * 第一个请求在等待时间内返回时不对冲
+     */
+    @Test
+    fun fastTest() {
+        requests.set(1)
+        var asked = false
+        val result = HttpUtils.hedgedGet(url(), emptyMap(), 1000) { asked = true; true }
+        Assertions.assertEquals("2", result)
+        Assertions.assertFalse(asked)
+        Assertions.assertEquals(2, requests.get())
+    }
+}
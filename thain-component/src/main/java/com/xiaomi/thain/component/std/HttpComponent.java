@@ -15,18 +15,29 @@ import lombok.val;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nullable;
+import java.io.File;
 import java.util.HashMap;
+import java.util.Map;
 
 import static com.xiaomi.thain.component.util.GlobalKt.formatHttpReferenceData;
+import static com.xiaomi.thain.component.util.ResponseFilesKt.containsRegex;
+import static com.xiaomi.thain.component.util.ResponseFilesKt.extractJsonPaths;
+import static com.xiaomi.thain.component.util.ResponseFilesKt.extractRegexCaptures;
+import static com.xiaomi.thain.component.util.ResponseFilesKt.parseExtractLines;
+import static com.xiaomi.thain.component.util.ResponseFilesKt.preview;
+import static com.xiaomi.thain.component.util.ResponseFilesKt.previewFile;
 
 /**
  * Date 19-5-16 下午8:48
  *
  * @author liangyongrui@xiaomi.com
  */
-@ThainComponent("{\"group\": \"std\", \"name\": \"http\", \"hidden\": false, \"items\": [{\"property\": \"url\", \"label\": \"HTTP URL\", \"required\": true, \"input\": {\"id\": \"textarea\"}}, {\"property\": \"method\", \"label\": \"HTTP Method\", \"required\": true, \"input\": {\"id\": \"select\", \"options\": [{\"id\": \"GET\"}, {\"id\": \"POST\"}]}}, {\"property\": \"contentType\", \"label\": \"Content-Type\", \"input\": {\"id\": \"select\", \"options\": [{\"id\": \"application/json\"}, {\"id\": \"application/x-www-form-urlencoded\"}]}}, {\"property\": \"referenceData\", \"label\": \"流程数据引用\", \"input\": {\"id\": \"textarea\"}}, {\"property\": \"forwardData\", \"label\": \"转发数据\", \"input\": {\"id\": \"textarea\"}}, {\"property\": \"resultRegular\", \"label\": \"结果正则\", \"input\": {\"id\": \"textarea\"}}]}\n")
+@ThainComponent("{\"group\": \"std\", \"name\": \"http\", \"hidden\": false, \"items\": [{\"property\": \"url\", \"label\": \"HTTP URL\", \"required\": true, \"input\": {\"id\": \"textarea\"}}, {\"property\": \"method\", \"label\": \"HTTP Method\", \"required\": true, \"input\": {\"id\": \"select\", \"options\": [{\"id\": \"GET\"}, {\"id\": \"POST\"}]}}, {\"property\": \"contentType\", \"label\": \"Content-Type\", \"input\": {\"id\": \"select\", \"options\": [{\"id\": \"application/json\"}, {\"id\": \"application/x-www-form-urlencoded\"}]}}, {\"property\": \"referenceData\", \"label\": \"流程数据引用\", \"input\": {\"id\": \"textarea\"}}, {\"property\": \"forwardData\", \"label\": \"转发数据\", \"input\": {\"id\": \"textarea\"}}, {\"property\": \"resultRegular\", \"label\": \"结果正则\", \"input\": {\"id\": \"textarea\"}}, {\"property\": \"streamResult\", \"label\": \"流式保存结果(大响应用, 只保存下面提取的值)\", \"input\": {\"id\": \"select\", \"options\": [{\"id\": \"false\"}, {\"id\": \"true\"}]}}, {\"property\": \"resultJsonPath\", \"label\": \"JSONPath提取(流式, 每行 key=$.a.b[0])\", \"input\": {\"id\": \"textarea\"}}, {\"property\": \"resultCaptures\", \"label\": \"正则提取(流式, 每行 key=正则, 取第一个分组)\", \"input\": {\"id\": \"textarea\"}}, {\"property\": \"hedge\", \"label\": \"对冲慢请求(仅GET, 请求需要幂等)\", \"input\": {\"id\": \"select\", \"options\": [{\"id\": \"false\"}, {\"id\": \"true\"}]}}]}\n")
 @SuppressWarnings("unused")
 public class HttpComponent {
+
+    private static final int LOG_PREVIEW_CHARS = 4096;
+
     /**
      * 流程执行工具
      */
@@ -66,6 +77,31 @@ public class HttpComponent {
     @Nullable
     private String resultRegular;
 
+    /**
+     * 为 true 时响应写到临时文件里, 不保存 result, 只保存 resultSize 和下面提取的值,
+     * 日志里只有开头的一部分, resultRegular 改为检查响应里有没有匹配的内容
+     */
+    @Nullable
+    private String streamResult;
+
+    /**
+     * 流式保存时用 jsonPath 提取的值, 每行 key=$.a.b[0]
+     */
+    @Nullable
+    private String resultJsonPath;
+
+    /**
+     * 流式保存时用正则提取的值, 每行 key=正则, 保存第一个匹配的第一个分组
+     */
+    @Nullable
+    private String resultCaptures;
+
+    /**
+     * 为 true 时 GET 请求慢于这个节点最近请求的 p95 后再发一次，先返回的为准
+     */
+    @Nullable
+    private String hedge;
+
     @SuppressWarnings("unused")
     private void run() throws ThainException {
 
@@ -75,21 +111,26 @@ public class HttpComponent {
         }
         data.putAll(formatHttpReferenceData(referenceData, tools::getStorageValueOrDefault));
         tools.addDebugLog(JSON.toJSONString(data));
+        if ("true".equals(streamResult)) {
+            runStreaming(data);
+            return;
+        }
         String result;
         try {
             switch (method.toUpperCase()) {
                 case "GET":
                     tools.addDebugLog("GET request");
-                    result = tools.httpGet(url, data);
+                    if ("true".equals(hedge)) {
+                        tools.addDebugLog("hedged");
+                        result = tools.httpHedgedGet(url, data);
+                    } else {
+                        result = tools.httpGet(url, data);
+                    }
                     tools.addDebugLog("Request completed");
                     break;
                 case "POST":
                     tools.addDebugLog("POST request");
-                    if (StringUtils.isBlank(contentType)) {
-                        contentType = "application/json;charset=UTF-8";
-                    }
-                    tools.addDebugLog("Content-Type: " + contentType);
-                    result = tools.httpPost(url, ImmutableMap.of("Content-Type", contentType), data);
+                    result = tools.httpPost(url, headers(), data);
                     tools.addDebugLog("Request completed");
                     break;
                 default:
@@ -99,10 +140,59 @@ public class HttpComponent {
             throw new ThainException(e);
         }
         tools.putStorage("result", result);
-        tools.addInfoLog(result);
+        tools.addInfoLog(preview(result, LOG_PREVIEW_CHARS));
         if (StringUtils.isNotBlank(resultRegular) && !result.matches(resultRegular)) {
             throw new ThainException("Request result not satisfied regular expression: " + resultRegular);
         }
     }
 
+    /**
+     * 响应不读进内存, 从临时文件里流式提取需要的值, 结束后删除临时文件
+     */
+    private void runStreaming(Map<String, String> data) throws ThainException {
+        final File file;
+        try {
+            switch (method.toUpperCase()) {
+                case "GET":
+                    tools.addDebugLog("GET request, streaming");
+                    file = tools.httpGetToFile(url, data);
+                    break;
+                case "POST":
+                    tools.addDebugLog("POST request, streaming");
+                    file = tools.httpPostToFile(url, headers(), data);
+                    break;
+                default:
+                    throw new ThainException("can not support this method:" + method);
+            }
+        } catch (Exception e) {
+            throw new ThainException(e);
+        }
+        try {
+            tools.addDebugLog("Request completed");
+            tools.addInfoLog(previewFile(file, LOG_PREVIEW_CHARS));
+            tools.putStorage("resultSize", file.length());
+            extractJsonPaths(file, parseExtractLines(resultJsonPath)).forEach(tools::putStorage);
+            extractRegexCaptures(file, parseExtractLines(resultCaptures)).forEach(tools::putStorage);
+            if (StringUtils.isNotBlank(resultRegular) && !containsRegex(file, resultRegular)) {
+                throw new ThainException("Request result does not contain regular expression: " + resultRegular);
+            }
+        } catch (ThainException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ThainException(e);
+        } finally {
+            if (!file.delete()) {
+                tools.addWarnLog("failed to delete temp file: " + file);
+            }
+        }
+    }
+
+    private Map<String, String> headers() {
+        if (StringUtils.isBlank(contentType)) {
+            contentType = "application/json;charset=UTF-8";
+        }
+        tools.addDebugLog("Content-Type: " + contentType);
+        return ImmutableMap.of("Content-Type", contentType);
+    }
+
 }
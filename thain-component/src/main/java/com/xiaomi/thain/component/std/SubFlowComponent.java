@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.xiaomi.thain.component.std;
+
+import com.alibaba.fastjson.JSON;
+import com.xiaomi.thain.common.exception.ThainException;
+import com.xiaomi.thain.component.annotation.ThainComponent;
+import com.xiaomi.thain.component.tools.ComponentTools;
+import lombok.val;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static com.xiaomi.thain.component.util.GlobalKt.formatHttpReferenceData;
+
+/**
+ * 启动另一个 flow 作为子 flow, 等它结束后这个节点才结束.
+ * 等待期间节点不占用线程, 子 flow 没有成功时节点失败
+ *
+ * @author liangyongrui
+ */
+@ThainComponent("{\"group\": \"std\", \"name\": \"subflow\", \"hidden\": false, \"items\": [{\"property\": \"flowId\", \"label\": \"子 flow id\", \"required\": true, \"input\": {\"id\": \"line\"}}, {\"property\": \"variables\", \"label\": \"传给子 flow 的变量\", \"input\": {\"id\": \"textarea\"}}, {\"property\": \"outputs\", \"label\": \"子 flow 的结果\", \"input\": {\"id\": \"textarea\"}}]}\n")
+@SuppressWarnings("unused")
+public class SubFlowComponent {
+    /**
+     * 流程执行工具
+     */
+    private ComponentTools tools;
+
+    /**
+     * 子 flow id
+     */
+    private String flowId;
+
+    /**
+     * 变量名:jobName.key, 多个用逗号分开, 和 http 组件的流程数据引用格式相同
+     */
+    @Nullable
+    private String variables;
+
+    /**
+     * key:子 flow 的 jobName.key, 多个用逗号分开. 为空时保存子 flow 所有节点的结果
+     */
+    @Nullable
+    private String outputs;
+
+    @SuppressWarnings("unused")
+    private void run() throws ThainException {
+        final long subFlowId;
+        try {
+            subFlowId = Long.parseLong(flowId.trim());
+        } catch (NumberFormatException e) {
+            throw new ThainException("flowId is not a number: " + flowId);
+        }
+        val variableMap = new HashMap<String, Object>(formatHttpReferenceData(variables, tools::getStorageValueOrDefault));
+        val outputMap = new HashMap<String, String>(16);
+        if (StringUtils.isNotBlank(outputs)) {
+            Arrays.stream(outputs.split(","))
+                    .map(String::trim)
+                    .map(t -> t.split(":", 2))
+                    .filter(t -> t.length == 2)
+                    .forEach(t -> outputMap.put(t[0].trim(), t[1].trim()));
+        }
+        tools.addDebugLog("sub flow variables: " + JSON.toJSONString(variableMap));
+        val subFlowExecutionId = tools.startSubFlow(subFlowId, variableMap, outputMap);
+        tools.addInfoLog("sub flow execution started: " + subFlowExecutionId);
+    }
+
+}
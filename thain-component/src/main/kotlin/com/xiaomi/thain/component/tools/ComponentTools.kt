@@ -1,5 +1,6 @@
 package com.xiaomi.thain.component.tools
 
+import java.io.File
 import java.io.IOException
 
 /**
@@ -77,6 +78,16 @@ interface ComponentTools {
     @Throws(IOException::class)
     fun httpGet(url: String, data: Map<String, String>): String
 
+    /**
+     * 发送对冲的 http get 请求，只能用于幂等的请求：
+     * 超过这个节点最近请求延迟的 p95 还没有返回时再发一次，先返回的为准，额外的请求不超过 10%
+     *
+     * @param url  url
+     * @param data ?后面的
+     */
+    @Throws(IOException::class)
+    fun httpHedgedGet(url: String, data: Map<String, String>): String
+
     /**
      * 发送 http post 请求
      *
@@ -89,6 +100,27 @@ interface ComponentTools {
                  headers: Map<String, String>,
                  data: Map<String, *>): String
 
+    /**
+     * 发送 http get 请求，响应写到临时文件里，不读进内存，用完后调用方删除
+     *
+     * @param url  url
+     * @param data ?后面的
+     */
+    @Throws(IOException::class)
+    fun httpGetToFile(url: String, data: Map<String, String>): File
+
+    /**
+     * 发送 http post 请求，响应写到临时文件里，不读进内存，用完后调用方删除
+     *
+     * @param url     url
+     * @param headers headers
+     * @param data    data
+     */
+    @Throws(IOException::class)
+    fun httpPostToFile(url: String,
+                       headers: Map<String, String>,
+                       data: Map<String, *>): File
+
     /**
      * 获取当前的id
      */
@@ -100,4 +132,16 @@ interface ComponentTools {
     fun getStorage(): Map<Pair<String, String>, Any>
 
     fun httpX5Post(url: String, data: Map<String, String>): String
+
+    /**
+     * 启动另一个 flow，组件返回后当前节点挂起（不占用线程），直到这个 flow 结束。
+     * 子 flow 成功后把它的结果保存到当前节点的 storage，没有成功时当前节点失败。
+     * 一个节点只能启动一个子 flow
+     *
+     * @param flowId    子 flow id
+     * @param variables 子 flow 的变量
+     * @param outputs   当前节点的 key -> 子 flow 的 jobName.key，为空时子 flow 所有节点的结果都以 jobName.key 为 key 保存
+     * @return 子 flow execution id
+     */
+    fun startSubFlow(flowId: Long, variables: Map<String, Any>, outputs: Map<String, String>): Long
 }
@@ -0,0 +1,181 @@
+package com.xiaomi.thain.component.util
+
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import java.io.File
+import java.io.InputStreamReader
+import java.nio.charset.StandardCharsets
+
+private const val CHUNK_CHARS = 1024 * 1024
+
+/**
+ * 正则能匹配到的最大长度，跨块的匹配靠相邻两块重叠这么多
+ */
+private const val MAX_MATCH_CHARS = 64 * 1024
+
+private val objectMapper = ObjectMapper()
+
+/**
+ * 日志里只保留前面一部分
+ */
+fun preview(text: String, maxChars: Int): String {
+    return if (text.length <= maxChars) text else text.take(maxChars) + "...(${text.length} chars)"
+}
+
+fun previewFile(file: File, maxChars: Int): String {
+    val buffer = CharArray(maxChars)
+    val read = InputStreamReader(file.inputStream(), StandardCharsets.UTF_8).use { reader ->
+        var total = 0
+        while (total < maxChars) {
+            val n = reader.read(buffer, total, maxChars - total)
+            if (n < 0) {
+                break
+            }
+            total += n
+        }
+        total
+    }
+    val text = String(buffer, 0, read)
+    return if (file.length() <= read) text else "$text...(${file.length()} bytes)"
+}
+
+/**
+ * 每行一个 key=表达式，忽略空行
+ */
+fun parseExtractLines(text: String?): Map<String, String> {
+    return text.orEmpty()
+            .lines()
+            .map { it.trim() }
+            .filter { it.isNotEmpty() }
+            .associate {
+                val index = it.indexOf('=')
+                require(index > 0) { "extract expression should be key=expression: $it" }
+                it.substring(0, index).trim() to it.substring(index + 1).trim()
+            }
+}
+
+/**
+ * 流式读取 json 文件，只取出 jsonPath 对应的值，不在的 key 不返回。
+ * jsonPath 只支持 $.a.b[0].c 这种逐层的写法，跳过的部分不会读进内存
+ *
+ * @param paths key -> jsonPath
+ */
+fun extractJsonPaths(file: File, paths: Map<String, String>): Map<String, Any> {
+    return paths.mapNotNull { (key, path) ->
+        val steps = parseJsonPath(path)
+        objectMapper.factory.createParser(file).use { parser ->
+            parser.nextToken()
+            findJsonValue(parser, steps)
+                    ?.let { objectMapper.treeToValue(it, Any::class.java) }
+                    ?.let { key to it }
+        }
+    }.toMap()
+}
+
+private fun parseJsonPath(path: String): List<Any> {
+    require(path.startsWith("$")) { "jsonPath should start with $: $path" }
+    return "\\.([^.\\[\\]]+)|\\[(\\d+)]".toRegex()
+            .findAll(path.substring(1))
+            .also { matches ->
+                require(matches.sumBy { it.value.length } == path.length - 1) { "unsupported jsonPath: $path" }
+            }
+            .map { it.groupValues[1].takeIf { name -> name.isNotEmpty() } ?: it.groupValues[2].toInt() }
+            .toList()
+}
+
+/**
+ * @param steps 字段名是 String，数组下标是 Int
+ */
+private fun findJsonValue(parser: JsonParser, steps: List<Any>): JsonNode? {
+    for (step in steps) {
+        if (step is String) {
+            if (parser.currentToken != JsonToken.START_OBJECT) {
+                return null
+            }
+            while (true) {
+                if (parser.nextToken() != JsonToken.FIELD_NAME) {
+                    return null
+                }
+                val name = parser.currentName
+                parser.nextToken()
+                if (name == step) {
+                    break
+                }
+                parser.skipChildren()
+            }
+        } else {
+            if (parser.currentToken != JsonToken.START_ARRAY) {
+                return null
+            }
+            var index = 0
+            while (true) {
+                if (parser.nextToken() == JsonToken.END_ARRAY) {
+                    return null
+                }
+                if (index++ == step) {
+                    break
+                }
+                parser.skipChildren()
+            }
+        }
+    }
+    return objectMapper.readTree(parser)
+}
+
+/**
+ * 每个正则取第一个匹配的第一个分组，没有分组时取整个匹配，没有匹配的 key 不返回。
+ * 文件按块扫描，匹配长度不能超过 64KB
+ *
+ * @param patterns key -> 正则
+ */
+fun extractRegexCaptures(file: File, patterns: Map<String, String>): Map<String, String> {
+    val remaining = patterns.mapValues { it.value.toRegex() }.toMutableMap()
+    val captures = mutableMapOf<String, String>()
+    scanChunks(file) { window ->
+        remaining.entries.removeIf { (key, regex) ->
+            regex.find(window)
+                    ?.let { it.groupValues.getOrNull(1) ?: it.value }
+                    ?.also { captures[key] = it } != null
+        }
+        remaining.isEmpty()
+    }
+    return captures
+}
+
+/**
+ * 文件里有没有能匹配正则的内容，匹配长度不能超过 64KB
+ */
+fun containsRegex(file: File, regex: String): Boolean {
+    val pattern = regex.toRegex()
+    var found = false
+    scanChunks(file) { window ->
+        found = pattern.containsMatchIn(window)
+        found
+    }
+    return found
+}
+
+/**
+ * @param action 返回 true 时停止
+ */
+private fun scanChunks(file: File, action: (CharSequence) -> Boolean) {
+    InputStreamReader(file.inputStream(), StandardCharsets.UTF_8).use { reader ->
+        val buffer = CharArray(CHUNK_CHARS)
+        val window = StringBuilder()
+        while (true) {
+            val n = reader.read(buffer)
+            if (n < 0) {
+                return
+            }
+            window.append(buffer, 0, n)
+            if (action(window)) {
+                return
+            }
+            if (window.length > MAX_MATCH_CHARS) {
+                window.delete(0, window.length - MAX_MATCH_CHARS)
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.xiaomi.thain.component.util
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.io.File
+
+class ResponseFilesTests {
+
+    private lateinit var file: File
+
+    @BeforeEach
+    fun init() {
+        file = File.createTempFile("thain-response", ".txt")
+    }
+
+    @AfterEach
+    fun clean() {
+        file.delete()
+    }
+
+    @Test
+    fun jsonPathTest() {
+        file.writeText("""{"skip": {"big": [1, 2, {"x": "y"}]}, "data": {"list": [{"id": 1}, {"id": 2, "tags": ["a", "b"]}]}, "code": 0}""")
+        val values = extractJsonPaths(file, mapOf(
+                "id" to "$.data.list[1].id",
+                "tags" to "$.data.list[1].tags",
+                "code" to "$.code",
+                "missing" to "$.data.list[5].id",
+                "notObject" to "$.code.x"))
+        Assertions.assertEquals(mapOf("id" to 2, "tags" to listOf("a", "b"), "code" to 0), values)
+    }
+
+    @Test
+    fun unsupportedJsonPathTest() {
+        file.writeText("{}")
+        assertThrows<IllegalArgumentException> { extractJsonPaths(file, mapOf("a" to "data.a")) }
+        assertThrows<IllegalArgumentException> { extractJsonPaths(file, mapOf("a" to "$.data[*].a")) }
+    }
+
+    /**
+     * 匹配跨过两块的边界也能找到
+     */
+    @Test
+    fun regexAcrossChunksTest() {
+        val chunkChars = 1024 * 1024
+        file.bufferedWriter().use {
+            it.write("x".repeat(chunkChars - 4))
+            it.write("token=abc123;")
+            it.write("y".repeat(chunkChars))
+            it.write("last=end;")
+        }
+        val captures = extractRegexCaptures(file, mapOf(
+                "token" to "token=(\\w+);",
+                "last" to "last=\\w+;",
+                "missing" to "nothing=(\\w+)"))
+        Assertions.assertEquals(mapOf("token" to "abc123", "last" to "last=end;"), captures)
+        Assertions.assertTrue(containsRegex(file, "abc\\d+;y"))
+        Assertions.assertFalse(containsRegex(file, "x;"))
+    }
+
+    @Test
+    fun parseExtractLinesTest() {
+        Assertions.assertEquals(mapOf("a" to "$.a", "b" to "x=(\\d+)"), parseExtractLines(" a = $.a \n\n b=x=(\\d+)\n"))
+        Assertions.assertEquals(emptyMap<String, String>(), parseExtractLines(null))
+        assertThrows<IllegalArgumentException> { parseExtractLines("=a") }
+    }
+
+    @Test
+    fun previewFileTest() {
+        file.writeText("0123456789")
+        Assertions.assertEquals("0123...(10 bytes)", previewFile(file, 4))
+        Assertions.assertEquals("0123456789", previewFile(file, 20))
+        Assertions.assertEquals("01...(10 chars)", preview("0123456789", 2))
+    }
+}
@@ -13,6 +13,10 @@ import lombok.val;
  * @author liangyongrui
  */
 public enum FlowExecutionTriggerType {
+    /**
+     * 上游 flow 成功后触发
+     */
+    DEPENDENCY(4),
     /**
      * 自动重试
      */
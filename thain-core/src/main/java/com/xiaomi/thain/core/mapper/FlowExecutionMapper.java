@@ -7,10 +7,14 @@ package com.xiaomi.thain.core.mapper;
 
 import com.xiaomi.thain.common.model.dp.AddFlowExecutionDp;
 import com.xiaomi.thain.common.model.dr.FlowExecutionDr;
+import com.xiaomi.thain.core.model.dr.FlowExecutionRetryDr;
+import com.xiaomi.thain.core.model.dr.FlowExecutionSlaDr;
+import com.xiaomi.thain.core.model.dr.UpstreamSucceededDr;
 import lombok.NonNull;
 import org.apache.ibatis.annotations.Param;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -24,6 +28,20 @@ public interface FlowExecutionMapper {
 
     int updateFlowExecutionStatus(@Param("flowExecutionId") long flowExecutionId, @Param("status") int status);
 
+    /**
+     * 还没到结束状态时更新为结束状态
+     *
+     * @return 已经是结束状态返回0
+     */
+    int finishFlowExecution(@Param("flowExecutionId") long flowExecutionId, @Param("status") int status);
+
+    /**
+     * dashboard 的按分钟计数加一, 按创建的分钟计入当前状态
+     *
+     * @return ignore
+     */
+    int addFlowExecutionStatistics(long flowExecutionId);
+
     int cleanUpExpiredFlowExecution(int dataReserveDays);
 
     @Nullable
@@ -40,6 +58,13 @@ public interface FlowExecutionMapper {
 
     int addFlowExecution(@NonNull AddFlowExecutionDp addFlowExecutionDp);
 
+    /**
+     * 批量插入, 自增 id 回写到每个 dp 上
+     */
+    int addFlowExecutionList(@Param("list") @NonNull List<AddFlowExecutionDp> addFlowExecutionDpList);
+
+    List<FlowExecutionDr> getFlowExecutionList(@Param("flowExecutionIds") @NonNull Collection<Long> flowExecutionIds);
+
     /**
      * 设置flowExecution的心跳为当前时间
      */
@@ -52,5 +77,73 @@ public interface FlowExecutionMapper {
 
     int reWaiting(@NonNull List<Long> flowExecutionIds);
 
+    /**
+     * 指定机器上正在运行、设置了 sla 的 flow execution
+     */
+    List<FlowExecutionSlaDr> getRunningSlaList(@NonNull String hostInfo);
+
+    /**
+     * 记录失败后的下一次重试
+     */
+    int setRetry(@Param("flowExecutionId") long flowExecutionId,
+                 @Param("retryNumber") int retryNumber,
+                 @Param("nextAttemptAt") long nextAttemptAt);
+
+    /**
+     * 到期的重试, 按到期时间排序
+     */
+    List<FlowExecutionRetryDr> getDueRetryList(@Param("now") long now, @Param("limit") int limit);
+
+    /**
+     * 认领一个重试, next_attempt_at 没变才能认领成功, 多个节点同时认领只有一个成功
+     */
+    int claimRetry(@Param("flowExecutionId") long flowExecutionId, @Param("nextAttemptAt") long nextAttemptAt);
+
+    /**
+     * 取消还没认领的重试, 和认领一样用 next_attempt_at 做 CAS
+     *
+     * @return 0 表示没有待执行的重试, 或者已经被认领
+     */
+    int cancelRetry(@Param("flowExecutionId") long flowExecutionId);
+
+    /**
+     * 失败的 flow execution 是子 flow 时, 重试的 flow execution 也记到同一个父节点下, 父节点接着等它
+     */
+    int copySubFlowExecution(@Param("fromFlowExecutionId") long fromFlowExecutionId,
+                             @Param("toFlowExecutionId") long toFlowExecutionId);
+
+    /**
+     * 把上一次执行成功, 并且节点没有被修改过的检查点复制到重试的 flow execution
+     *
+     * @param jobNames 只复制这些节点, 不能为空
+     * @return 复制的数量
+     */
+    int copySuccessJobCheckpoints(@Param("fromFlowExecutionId") long fromFlowExecutionId,
+                                  @Param("toFlowExecutionId") long toFlowExecutionId,
+                                  @Param("jobNames") Collection<String> jobNames);
+
+    /**
+     * 和 copySuccessJobCheckpoints 对应的 job execution 一起复制, 页面上能看到这些节点的日志
+     */
+    int copySuccessJobExecutions(@Param("fromFlowExecutionId") long fromFlowExecutionId,
+                                 @Param("toFlowExecutionId") long toFlowExecutionId,
+                                 @Param("jobNames") Collection<String> jobNames);
+
+    /**
+     * flowIds 里每个 flow 最近 windowSeconds 秒内最后一次成功结束的 flow execution,
+     * 窗口内没有成功的 flow 不返回
+     */
+    List<UpstreamSucceededDr> getLatestSucceededList(@Param("flowIds") @NonNull Collection<Long> flowIds,
+                                                     @Param("windowSeconds") int windowSeconds);
+
+    /**
+     * 记录一次依赖触发, 主键 (flow_id, trigger_key) 已存在时忽略
+     *
+     * @return 插入的数量, 0 表示这次触发已经被别的节点或线程记录过
+     */
+    int addDependencyTrigger(@Param("flowId") long flowId, @Param("triggerKey") @NonNull String triggerKey);
+
+    int cleanUpExpiredDependencyTrigger(int dataReserveDays);
+
     int updateHostInfo(@Param("id") long id, @Param("hostInfo") String hostInfo);
 }
@@ -6,13 +6,16 @@
 package com.xiaomi.thain.core.mapper;
 
 import com.xiaomi.thain.core.model.dp.UpdateFlowDp;
+import com.xiaomi.thain.core.model.dr.FlowCronDr;
 import com.xiaomi.thain.core.model.dr.FlowDr;
+import com.xiaomi.thain.core.model.dr.FlowUpstreamDr;
 import com.xiaomi.thain.core.model.dp.AddFlowDp;
 import com.xiaomi.thain.core.model.dp.AddJobDp;
 import lombok.NonNull;
 import org.apache.ibatis.annotations.Param;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -37,6 +40,11 @@ public interface FlowMapper {
     @Nullable
     FlowDr getFlow(long flowId);
 
+    /**
+     * 批量获取, 已删除和不存在的不返回
+     */
+    List<FlowDr> getFlowList(@Param("flowIds") @NonNull Collection<Long> flowIds);
+
     /**
      * 更新最后一次运行状态
      */
@@ -50,5 +58,24 @@ public interface FlowMapper {
 
     int updateSchedulingStatus(@Param("flowId") long flowId, @Param("schedulingStatus") int schedulingStatus);
 
+    int updateSchedulingStatusList(@Param("flowIds") @NonNull Collection<Long> flowIds,
+                                   @Param("schedulingStatus") int schedulingStatus);
+
     int cleanUpExpiredAndDeletedFlow(int dataReserveDays);
+
+    /**
+     * 获取指定分区里正在调度的 flow, 分区是 id 对 partitionCount 取模
+     */
+    List<FlowCronDr> getSchedulingFlowCronList(@Param("partitionCount") int partitionCount,
+                                               @Param("partitionIds") @NonNull Collection<Integer> partitionIds);
+
+    /**
+     * 上游里有 upstreamFlowId 的 flow, 已删除和暂停调度的不返回
+     */
+    List<FlowUpstreamDr> getDownstreamFlowList(@Param("upstreamFlowId") long upstreamFlowId);
+
+    /**
+     * 所有设置了上游的 flow
+     */
+    List<FlowUpstreamDr> getFlowUpstreamList();
 }
@@ -26,15 +26,59 @@ public interface JobExecutionMapper {
 
     int updateCreateTime(@Param("jobExecutionId") long jobExecutionId);
 
+    /**
+     * 还没到结束状态时更新为结束状态
+     *
+     * @return 已经是结束状态返回0
+     */
+    int finishJobExecution(@Param("jobExecutionId") long jobExecutionId, @Param("status") int status);
+
     int killJobExecution(long flowExecutionId);
 
     /**
-     * 根据flowExecutionId 删除 job execution
+     * dashboard 的按分钟计数加一, 按创建的分钟计入当前状态, 只算 attempt = 0 的记录
+     *
+     * @return ignore
+     */
+    int addJobExecutionStatistics(long jobExecutionId);
+
+    /**
+     * 失败重试前把这次执行的计数减掉, 一个节点只按最后一次执行计数
+     *
+     * @return ignore
+     */
+    int removeJobExecutionStatistics(long jobExecutionId);
+
+    /**
+     * kill 之前把还在运行的 job execution 按失败计数
+     *
+     * @return ignore
+     */
+    int addKilledJobExecutionStatistics(long flowExecutionId);
+
+    /**
+     * 更新 map 节点每个元素的状态和执行次数
+     *
+     * @return ignore
+     */
+    int updateMapState(@Param("jobExecutionId") long jobExecutionId, @NonNull @Param("mapState") String mapState);
+
+    /**
+     * 失败重试前把这次执行复制一份保存下来, 原来的记录继续用于下一次执行
+     *
+     * @param attempt 第几次执行, 从1开始
+     * @return ignore
+     */
+    int addAttempt(@Param("jobExecutionId") long jobExecutionId, @Param("attempt") int attempt);
+
+    /**
+     * 根据flowExecutionId 删除没有检查点的 job execution，有检查点的恢复时不再执行，
+     * 其他的（包括中间结果太大没写检查点的成功节点）恢复时重新执行
      *
      * @param flowExecutionIds flowExecutionIds
      * @return ignore
      */
-    int deleteJobExecutionByFlowExecutionIds(@NonNull List<Long> flowExecutionIds);
+    int deleteUnfinishedJobExecutionByFlowExecutionIds(@NonNull List<Long> flowExecutionIds);
 
     int cleanUpExpiredFlowExecution(int dataReserveDays);
 }
@@ -13,8 +13,10 @@ import lombok.val;
 import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -39,6 +41,19 @@ public class JobConditionChecker {
         return new JobConditionChecker(flowExecutionId);
     }
 
+    /**
+     * 条件里引用的上游节点名
+     */
+    public static Set<String> upstreamJobNames(@Nullable String condition) {
+        return Optional.ofNullable(condition)
+                .map(t -> t.split("&&|\\|\\|"))
+                .map(Arrays::stream).orElseGet(Stream::empty)
+                .map(String::trim)
+                .filter(t -> !t.isEmpty())
+                .map(t -> t.indexOf('.') == -1 ? t : t.substring(0, t.indexOf('.')).trim())
+                .collect(Collectors.toSet());
+    }
+
     /**
      * 判断条件是否可执行
      */
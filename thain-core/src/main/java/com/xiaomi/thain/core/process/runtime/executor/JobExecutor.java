@@ -6,6 +6,9 @@
 
 package com.xiaomi.thain.core.process.runtime.executor;
 
+import com.alibaba.fastjson.JSON;
+import com.xiaomi.thain.common.constant.FlowExecutionStatus;
+import com.xiaomi.thain.common.constant.JobExecutionStatus;
 import com.xiaomi.thain.common.exception.JobExecuteException;
 import com.xiaomi.thain.common.exception.ThainException;
 import com.xiaomi.thain.common.model.JobExecutionModel;
@@ -15,23 +18,75 @@ import com.xiaomi.thain.core.process.ProcessEngineStorage;
 import com.xiaomi.thain.core.process.component.tools.impl.ComponentToolsImpl;
 import com.xiaomi.thain.core.process.runtime.executor.service.JobExecutionService;
 import com.xiaomi.thain.core.process.runtime.notice.JobHttpNotice;
+import com.xiaomi.thain.core.process.runtime.storage.FlowExecutionStorage;
+import com.xiaomi.thain.core.process.runtime.storage.JobResultCache;
+import com.xiaomi.thain.core.process.runtime.subflow.SubFlow;
+import com.xiaomi.thain.core.scheduler.retry.RetryBackoff;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 /**
  * 节点执行类
+ * <p>
+ * 节点配置了 retryNumber 时失败后在 flow 内重试, 间隔从 retryBackoff 秒开始每次翻倍, 等待重试时不占用线程.
+ * 每次失败的执行复制一份保存到 thain_job_execution(attempt 从1开始), 原来的记录继续用于下一次执行.
+ * 配置了 timeoutSeconds 时组件在单独的线程里执行, 超时后中断并按失败处理, 不再占用 flow 的线程,
+ * 不响应中断的组件真正结束后才开始下一次执行.
+ * 开启 cacheEnabled 时输入和上次成功的执行相同就直接使用缓存的结果, 见 {@link JobResultCache}.
+ * map 节点按元素执行, 重试和超时作用在每个元素上, 见 {@link MapJobExecutor}.
+ * 组件启动了子 flow 时节点挂起, 不占用线程, 子 flow 结束后再结束节点, 子 flow 没有成功时不再重试
  *
  * @author liangyongrui@xiaomi.com
  */
 @Slf4j
 public class JobExecutor {
 
+    /**
+     * 节点重试间隔最长一小时
+     */
+    static final RetryBackoff JOB_RETRY_BACKOFF = new RetryBackoff(RetryBackoff.Policy.EXPONENTIAL, 3600, 0);
+
+    /**
+     * 有超时时间的组件在这里执行, 超时后被中断的组件如果阻塞在不响应中断的 IO 上, 会继续占用这里的线程直到 IO 返回
+     */
+    private static final ExecutorService TIMEOUT_COMPONENT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        val thread = new Thread(runnable, "thain-job-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 只负责到时间后把下一次执行交给调用方的线程池
+     */
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        val thread = new Thread(runnable, "thain-job-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @NonNull
     private final JobDr jobDr;
+    @NonNull
+    private final JobExecutionModel jobExecutionModel;
     private final long jobExecutionModelId;
     private final long flowExecutionId;
 
@@ -47,53 +102,321 @@ public class JobExecutor {
                         @NonNull JobExecutionModel jobExecutionModel,
                         @NonNull ProcessEngineStorage processEngineStorage) {
         this.jobDr = jobDr;
+        this.jobExecutionModel = jobExecutionModel;
         this.flowExecutionId = flowExecutionId;
         this.processEngineStorage = processEngineStorage;
         this.jobExecutionModelId = jobExecutionModel.id;
-        this.jobExecutionService = JobExecutionService.getInstance(jobExecutionModelId, jobDr.getName(), processEngineStorage);
+        this.jobExecutionService = JobExecutionService.getInstance(jobExecutionModelId, flowExecutionId,
+                jobDr.getName(), processEngineStorage);
         this.jobHttpNotice = JobHttpNotice.getInstance(jobDr.getCallbackUrl(), jobDr.getFlowId(), flowExecutionId);
     }
 
     /**
-     * 执行job, 返回是否执行完成
+     * 执行job, 返回的 future 在节点执行完成时完成, 等待重试和等待子 flow 的节点返回时还没有完成
+     *
+     * @param executor 重试在这里执行
+     */
+    public static CompletableFuture<Void> start(long flowExecutionId,
+                                                @NonNull JobDr jobDr,
+                                                @NonNull JobExecutionModel jobExecutionModel,
+                                                @NonNull ProcessEngineStorage processEngineStorage,
+                                                @NonNull Executor executor) {
+        final JobResultCache jobResultCache = jobDr.getCacheEnabled()
+                ? new JobResultCache(jobDr, FlowExecutionStorage.getInstance(flowExecutionId), processEngineStorage)
+                : null;
+        if (jobResultCache != null && jobResultCache.restore()) {
+            try {
+                new JobExecutor(flowExecutionId, jobDr, jobExecutionModel, processEngineStorage).hitCache();
+            } catch (JobExecuteException e) {
+                return failedFuture(e);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        // map 节点的元素各自重试, 节点本身不再重试
+        val maxAttempts = jobDr.getMapJob() ? 1 : Math.max(jobDr.getRetryNumber(), 0) + 1;
+        return new JobExecutor(flowExecutionId, jobDr, jobExecutionModel, processEngineStorage)
+                .attempt(1, maxAttempts, jobResultCache, executor);
+    }
+
+    private CompletableFuture<Void> attempt(int attempt,
+                                            int maxAttempts,
+                                            @Nullable JobResultCache jobResultCache,
+                                            @NonNull Executor executor) {
+        try {
+            val subFlow = run(attempt, maxAttempts, jobResultCache);
+            if (subFlow != null) {
+                return resume(subFlow, jobResultCache);
+            }
+            if (jobResultCache != null) {
+                jobResultCache.save();
+            }
+            return CompletableFuture.completedFuture(null);
+        } catch (JobExecuteException e) {
+            if (attempt >= maxAttempts || !flowExecutionRunning()) {
+                return failedFuture(e);
+            }
+            processEngineStorage.getJobExecutionDao().addAttempt(jobExecutionModelId, attempt);
+            val delayMillis = JOB_RETRY_BACKOFF.delayMillis(jobDr.getRetryBackoff(), attempt);
+            log.info("job {} of flowExecution {} failed, retry after {}ms", jobDr.getName(), flowExecutionId, delayMillis);
+            return retryLater(e, delayMillis, executor, () -> {
+                // 等待期间 flow 被 kill 的不再重试
+                if (!flowExecutionRunning()) {
+                    return failedFuture(e);
+                }
+                return new JobExecutor(flowExecutionId, jobDr, jobExecutionModel, processEngineStorage)
+                        .attempt(attempt + 1, maxAttempts, jobResultCache, executor);
+            });
+        }
+    }
+
+    /**
+     * delayMillis 后在 executor 里开始下一次执行, 等待时不占用线程.
+     * 上一次超时了但组件还在运行的, 等它结束后才开始计时, 同一个节点不会同时执行两次
+     *
+     * @param failure     上一次失败的原因
+     * @param nextAttempt 下一次执行, 返回的 future 就是结果
      */
-    public static void start(long flowExecutionId,
-                             @NonNull JobDr jobDr,
-                             @NonNull JobExecutionModel jobExecutionModel,
-                             @NonNull ProcessEngineStorage processEngineStorage) throws JobExecuteException {
-        val jobExecutor = new JobExecutor(flowExecutionId, jobDr, jobExecutionModel, processEngineStorage);
-        jobExecutor.run();
+    static CompletableFuture<Void> retryLater(@NonNull Throwable failure,
+                                              long delayMillis,
+                                              @NonNull Executor executor,
+                                              @NonNull Supplier<CompletableFuture<Void>> nextAttempt) {
+        val result = new CompletableFuture<Void>();
+        attemptFinished(failure).thenRun(() -> RETRY_SCHEDULER.schedule(() -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        nextAttempt.get().whenComplete((v, t) -> {
+                            if (t == null) {
+                                result.complete(null);
+                            } else {
+                                result.completeExceptionally(t);
+                            }
+                        });
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS));
+        return result;
+    }
+
+    /**
+     * @return 超时的执行真正结束时完成, 不是超时的已经结束了
+     */
+    private static CompletableFuture<Void> attemptFinished(@Nullable Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof ComponentTimeoutException) {
+                return ((ComponentTimeoutException) t).finished;
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    static <T> CompletableFuture<T> failedFuture(@NonNull Throwable e) {
+        val future = new CompletableFuture<T>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private boolean flowExecutionRunning() {
+        val flowExecutionDr = processEngineStorage.getFlowExecutionDao().getFlowExecution(flowExecutionId);
+        return flowExecutionDr != null && flowExecutionDr.getStatus() == FlowExecutionStatus.RUNNING.code;
     }
 
-    private void run() throws JobExecuteException {
+    /**
+     * @return 组件启动的子 flow, 这时节点还没有结束, 由 {@link #resume} 结束
+     */
+    @Nullable
+    private SubFlow run(int attempt, int maxAttempts, @Nullable JobResultCache jobResultCache) throws JobExecuteException {
+        SubFlow subFlow = null;
         try {
             jobExecutionService.startJobExecution();
+            if (attempt > 1) {
+                jobExecutionService.addInfo("retry " + (attempt - 1) + "/" + (maxAttempts - 1));
+            }
             jobHttpNotice.sendStart();
-            execute();
-            jobHttpNotice.sendSuccess();
+            subFlow = execute(jobResultCache);
+            if (subFlow == null) {
+                jobHttpNotice.sendSuccess();
+            }
+            return subFlow;
         } catch (Exception e) {
             jobExecutionService.addError("Abort with: " + ExceptionUtils.getRootCauseMessage(e));
             jobHttpNotice.sendError(ExceptionUtils.getRootCauseMessage(e));
             log.warn(ExceptionUtils.getRootCauseMessage(e));
             throw new JobExecuteException(e);
         } finally {
+            if (subFlow == null) {
+                endJobExecution();
+            }
+        }
+    }
+
+    /**
+     * 子 flow 结束后结束节点, 在唤醒的线程里执行
+     */
+    private CompletableFuture<Void> resume(@NonNull SubFlow subFlow, @Nullable JobResultCache jobResultCache) {
+        jobExecutionService.addInfo("wait for sub flow execution: " + subFlow.getFlowExecutionId());
+        return processEngineStorage.getSubFlowWaiter().await(subFlow.getFlowExecutionId()).<Void>handle((end, throwable) -> {
             try {
-                jobExecutionService.endJobExecution();
+                if (throwable != null) {
+                    throw new JobExecuteException(throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable);
+                }
+                if (end.getStatus() != FlowExecutionStatus.SUCCESS) {
+                    throw new JobExecuteException("sub flow execution " + end.getFlowExecutionId()
+                            + " ended with status: " + end.getStatus());
+                }
+                saveSubFlowOutputs(subFlow, end.getFlowExecutionId());
+                jobHttpNotice.sendSuccess();
             } catch (Exception e) {
+                jobExecutionService.addError("Abort with: " + ExceptionUtils.getRootCauseMessage(e));
+                jobHttpNotice.sendError(ExceptionUtils.getRootCauseMessage(e));
+                log.warn(ExceptionUtils.getRootCauseMessage(e));
+                throw new CompletionException(e instanceof JobExecuteException ? e : new JobExecuteException(e));
+            } finally {
                 try {
-                    processEngineStorage.getMailService().sendSeriousError(
-                            "Failed to modify job status, detail message：" + ExceptionUtils.getStackTrace(e));
-                } catch (Exception ex) {
-                    log.error("", ex);
+                    endJobExecution();
+                } catch (JobExecuteException e) {
+                    throw new CompletionException(e);
                 }
             }
+            if (jobResultCache != null) {
+                jobResultCache.save();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 子 flow 的结果来自它的检查点, outputs 为空时全部以 jobName.key 为 key 保存
+     *
+     * @param subFlowExecutionId 子 flow 成功的 flow execution, 失败重试过的是最后一次重试
+     */
+    private void saveSubFlowOutputs(@NonNull SubFlow subFlow, long subFlowExecutionId) {
+        val subFlowOutputs = new HashMap<String, Object>();
+        processEngineStorage.getJobCheckpointDao().getCheckpoints(subFlowExecutionId).forEach(checkpoint -> {
+            if (checkpoint.getStorage() != null) {
+                JSON.parseObject(checkpoint.getStorage()).forEach((key, value) -> {
+                    if (value != null) {
+                        subFlowOutputs.put(checkpoint.getJobName() + "." + key, value);
+                    }
+                });
+            }
+        });
+        val flowExecutionStorage = FlowExecutionStorage.getInstance(flowExecutionId);
+        if (subFlow.getOutputs().isEmpty()) {
+            subFlowOutputs.forEach((key, value) -> flowExecutionStorage.put(jobDr.getName(), key, value));
+        } else {
+            subFlow.getOutputs().forEach((key, reference) -> Optional.ofNullable(subFlowOutputs.get(reference.trim()))
+                    .ifPresent(value -> flowExecutionStorage.put(jobDr.getName(), key, value)));
+        }
+        flowExecutionStorage.put(jobDr.getName(), "flowExecutionId", subFlowExecutionId);
+    }
+
+    /**
+     * 命中缓存, 不执行组件, 直接按成功结束
+     */
+    private void hitCache() throws JobExecuteException {
+        try {
+            jobExecutionService.startJobExecution();
+            jobExecutionService.addInfo("hit cache, skip execution");
+            jobHttpNotice.sendStart();
+            jobHttpNotice.sendSuccess();
+        } finally {
+            endJobExecution();
+        }
+    }
+
+    /**
+     * @throws JobExecuteException 组件执行成功, 但是成功的状态和检查点没有保存下来
+     */
+    private void endJobExecution() throws JobExecuteException {
+        val success = jobExecutionService.getEndStatus() == JobExecutionStatus.SUCCESS;
+        try {
+            if (!jobExecutionService.endJobExecution() && success) {
+                throw new JobExecuteException(jobExecutionService.getErrorMessage());
+            }
+        } catch (JobExecuteException e) {
+            throw e;
+        } catch (Exception e) {
+            try {
+                processEngineStorage.getMailService().sendSeriousError(
+                        "Failed to modify job status, detail message：" + ExceptionUtils.getStackTrace(e));
+            } catch (Exception ex) {
+                log.error("", ex);
+            }
         }
     }
 
     /**
-     * 执行组件
+     * @return 组件启动的子 flow, 没有启动时为 null
      */
-    private void execute() throws ThainException {
+    @Nullable
+    private SubFlow execute(@Nullable JobResultCache jobResultCache) throws ThainException {
+        if (jobDr.getMapJob()) {
+            MapJobExecutor.getInstance(flowExecutionId, jobDr, jobExecutionModelId, jobExecutionService,
+                    processEngineStorage, jobResultCache).execute();
+            return null;
+        }
+        val componentTools = new ComponentToolsImpl(jobDr, jobExecutionModelId, flowExecutionId,
+                processEngineStorage, jobResultCache);
+        executeComponent(jobDr, jobDr.getProperties(), componentTools, processEngineStorage);
+        return componentTools.getSubFlow();
+    }
+
+    /**
+     * 执行组件, 配置了超时时间的在单独的线程里执行, 超时后中断
+     *
+     * @param properties     组件的属性
+     * @param componentTools 注入组件的工具
+     */
+    static void executeComponent(@NonNull JobDr jobDr,
+                                 @NonNull Map<String, String> properties,
+                                 @NonNull ComponentTools componentTools,
+                                 @NonNull ProcessEngineStorage processEngineStorage) throws ThainException {
+        if (jobDr.getTimeoutSeconds() <= 0) {
+            invokeComponent(jobDr, properties, componentTools, processEngineStorage);
+            return;
+        }
+        val started = new AtomicBoolean();
+        val finished = new CompletableFuture<Void>();
+        val future = TIMEOUT_COMPONENT_EXECUTOR.submit(() -> {
+            if (!started.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                invokeComponent(jobDr, properties, componentTools, processEngineStorage);
+            } finally {
+                finished.complete(null);
+            }
+            return null;
+        });
+        try {
+            future.get(jobDr.getTimeoutSeconds(), TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            // 还没开始的不会再开始
+            if (started.compareAndSet(false, true)) {
+                finished.complete(null);
+            }
+            throw new ComponentTimeoutException("job timeout after " + jobDr.getTimeoutSeconds() + " seconds", finished);
+        } catch (ExecutionException e) {
+            throw new JobExecuteException(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new JobExecuteException(e);
+        }
+    }
+
+    private static void invokeComponent(@NonNull JobDr jobDr,
+                                        @NonNull Map<String, String> properties,
+                                        @NonNull ComponentTools componentTools,
+                                        @NonNull ProcessEngineStorage processEngineStorage) throws ThainException {
         val clazz = processEngineStorage.getComponentService().getComponentClass(jobDr.getComponent())
                 .orElseThrow(() -> new ThainException("component does not exist"));
         try {
@@ -102,11 +425,11 @@ public class JobExecutor {
             for (val field : fields) {
                 field.setAccessible(true);
                 if (ComponentTools.class.isAssignableFrom(field.getType())) {
-                    field.set(instance, new ComponentToolsImpl(jobDr, jobExecutionModelId, flowExecutionId, processEngineStorage));
+                    field.set(instance, componentTools);
                     continue;
                 }
                 if (field.getType().isAssignableFrom(String.class)) {
-                    val v = Optional.of(jobDr.getProperties()).map(t -> t.get(field.getName()));
+                    val v = Optional.of(properties).map(t -> t.get(field.getName()));
                     if (v.isPresent()) {
                         field.set(instance, v.get());
                     }
@@ -120,4 +443,18 @@ public class JobExecutor {
         }
     }
 
+    /**
+     * 组件执行超时, 不响应中断的组件还在运行, finished 在它真正结束时完成
+     */
+    private static class ComponentTimeoutException extends JobExecuteException {
+
+        @NonNull
+        private final transient CompletableFuture<Void> finished;
+
+        private ComponentTimeoutException(@NonNull String message, @NonNull CompletableFuture<Void> finished) {
+            super(message);
+            this.finished = finished;
+        }
+    }
+
 }
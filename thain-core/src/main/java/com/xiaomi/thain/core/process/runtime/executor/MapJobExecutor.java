@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.xiaomi.thain.core.process.runtime.executor;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.collect.ImmutableMap;
+import com.xiaomi.thain.common.constant.FlowExecutionStatus;
+import com.xiaomi.thain.common.exception.JobExecuteException;
+import com.xiaomi.thain.common.exception.ThainException;
+import com.xiaomi.thain.core.model.dr.JobDr;
+import com.xiaomi.thain.core.process.ProcessEngineStorage;
+import com.xiaomi.thain.core.process.component.tools.impl.ComponentToolsImpl;
+import com.xiaomi.thain.core.process.component.tools.impl.MapElementComponentTools;
+import com.xiaomi.thain.core.process.runtime.executor.service.JobExecutionService;
+import com.xiaomi.thain.core.process.runtime.storage.FlowExecutionStorage;
+import com.xiaomi.thain.core.process.runtime.storage.JobResultCache;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * map 节点执行类
+ * <p>
+ * 从 mapSource 取出元素列表, 每个元素用节点的组件执行一次, 最多同时执行 mapParallelism 个.
+ * 组件用 getStorageValue(节点名, "item") 取当前元素, 属性里的 ${item} 也会替换成当前元素.
+ * 元素失败后按节点的 retryNumber、retryBackoff 单独重试, 等待重试时元素占着并发数但不占用线程, 超时时间作用在每次执行上.
+ * 每个元素的状态和执行次数压缩成一个 json 保存在 job execution 的 map_state 里, 不为元素创建 job execution.
+ * <p>
+ * 结束后每个元素 putStorage 的结果按元素顺序保存到节点的 results(失败的元素为 null),
+ * 元素数量保存到 total、succeeded、failed, 下游节点的 condition 可以直接判断, 例如 mapJob.failed == 0.
+ * 失败的元素超过 mapTolerance 时节点失败, 没开始的元素不再执行
+ *
+ * @author liangyongrui
+ */
+@Slf4j
+class MapJobExecutor {
+
+    private static final String ITEM_PLACEHOLDER = "${item}";
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final char NEVER = 'N';
+    private static final char RUNNING = 'R';
+    private static final char SUCCESS = 'S';
+    private static final char ERROR = 'E';
+
+    /**
+     * 元素在这里执行, 不占用 flow 的节点线程池, 避免节点等待自己提交的元素
+     */
+    private static final ExecutorService ELEMENT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        val thread = new Thread(runnable, "thain-map-element");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long flowExecutionId;
+    @NonNull
+    private final JobDr jobDr;
+    private final long jobExecutionId;
+    @NonNull
+    private final JobExecutionService jobExecutionService;
+    @NonNull
+    private final ProcessEngineStorage processEngineStorage;
+    @NonNull
+    private final FlowExecutionStorage flowExecutionStorage;
+    @Nullable
+    private final JobResultCache jobResultCache;
+
+    // 以下是元素的执行状态, 修改和读取都在 synchronized 里
+    private char[] status = new char[0];
+    private int[] attempts = new int[0];
+    private Map<?, ?>[] outputs = new Map<?, ?>[0];
+    private int failed = 0;
+    private long lastFlushTime = 0;
+    /**
+     * 失败超过容忍数或者 flow 不在运行了, 没开始的元素不再执行
+     */
+    private volatile boolean stopped = false;
+
+    private MapJobExecutor(long flowExecutionId,
+                           @NonNull JobDr jobDr,
+                           long jobExecutionId,
+                           @NonNull JobExecutionService jobExecutionService,
+                           @NonNull ProcessEngineStorage processEngineStorage,
+                           @Nullable JobResultCache jobResultCache) {
+        this.flowExecutionId = flowExecutionId;
+        this.jobDr = jobDr;
+        this.jobExecutionId = jobExecutionId;
+        this.jobExecutionService = jobExecutionService;
+        this.processEngineStorage = processEngineStorage;
+        this.jobResultCache = jobResultCache;
+        this.flowExecutionStorage = FlowExecutionStorage.getInstance(flowExecutionId);
+    }
+
+    /**
+     * @param jobResultCache 节点开启了缓存时记录元素读取的中间结果
+     */
+    static MapJobExecutor getInstance(long flowExecutionId,
+                                      @NonNull JobDr jobDr,
+                                      long jobExecutionId,
+                                      @NonNull JobExecutionService jobExecutionService,
+                                      @NonNull ProcessEngineStorage processEngineStorage,
+                                      @Nullable JobResultCache jobResultCache) {
+        return new MapJobExecutor(flowExecutionId, jobDr, jobExecutionId, jobExecutionService, processEngineStorage,
+                jobResultCache);
+    }
+
+    void execute() throws ThainException {
+        val elements = elements();
+        synchronized (this) {
+            status = new char[elements.size()];
+            Arrays.fill(status, NEVER);
+            attempts = new int[elements.size()];
+            outputs = new Map<?, ?>[elements.size()];
+        }
+        val parallelism = Math.max(1, Math.min(jobDr.getMapParallelism(), elements.size()));
+        jobExecutionService.addInfo("map " + elements.size() + " elements, parallelism: " + parallelism);
+        val next = new AtomicInteger();
+        val slots = new AtomicInteger(parallelism);
+        val done = new CompletableFuture<Void>();
+        for (int i = 0; i < parallelism; i++) {
+            ELEMENT_EXECUTOR.execute(() -> executeNext(elements, next, slots, done));
+        }
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            stopped = true;
+            Thread.currentThread().interrupt();
+            throw new JobExecuteException(e);
+        } catch (ExecutionException e) {
+            stopped = true;
+            throw new JobExecuteException(e.getCause());
+        } finally {
+            flushState(true);
+        }
+        collectResults();
+    }
+
+    /**
+     * mapSource 是 jobName.key 时从 storage 取, 否则是本节点的属性名.
+     * 值可以是集合、数组、json 数组或者逗号分隔的字符串
+     */
+    private List<Object> elements() throws ThainException {
+        val source = jobDr.getMapSource().trim();
+        val end = source.indexOf('.');
+        final Object value = end == -1
+                ? jobDr.getProperties().get(source)
+                : flowExecutionStorage.get(source.substring(0, end), source.substring(end + 1));
+        if (value == null) {
+            throw new ThainException("map source does not exist: " + source);
+        }
+        if (value instanceof Collection) {
+            return new ArrayList<>((Collection<?>) value);
+        }
+        if (value instanceof Object[]) {
+            return Arrays.asList((Object[]) value);
+        }
+        val text = String.valueOf(value).trim();
+        if (text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (text.startsWith("[")) {
+            return JSON.parseArray(text);
+        }
+        return Arrays.stream(text.split(",")).map(String::trim).collect(Collectors.<Object>toList());
+    }
+
+    /**
+     * 一个并发槽位: 取下一个元素执行, 元素结束后再取, 取完或者停止后释放槽位, 槽位都释放了 done 完成
+     */
+    private void executeNext(@NonNull List<Object> elements,
+                             @NonNull AtomicInteger next,
+                             @NonNull AtomicInteger slots,
+                             @NonNull CompletableFuture<Void> done) {
+        val index = next.getAndIncrement();
+        if (index >= elements.size() || stopped) {
+            if (slots.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+            return;
+        }
+        final CompletableFuture<Void> element;
+        try {
+            element = executeElement(index, elements.get(index), 1);
+        } catch (Exception e) {
+            done.completeExceptionally(e);
+            return;
+        }
+        element.whenComplete((v, t) -> {
+            if (t != null) {
+                done.completeExceptionally(t);
+                return;
+            }
+            ELEMENT_EXECUTOR.execute(() -> executeNext(elements, next, slots, done));
+        });
+    }
+
+    /**
+     * @return 元素成功或者最终失败时完成
+     */
+    private CompletableFuture<Void> executeElement(int index, @Nullable Object item, int attempt) {
+        val maxAttempts = Math.max(jobDr.getRetryNumber(), 0) + 1;
+        updateState(index, RUNNING, attempt, null);
+        val componentTools = new MapElementComponentTools(jobDr, item, index,
+                new ComponentToolsImpl(jobDr, jobExecutionId, flowExecutionId, processEngineStorage, jobResultCache));
+        try {
+            JobExecutor.executeComponent(jobDr, properties(item), componentTools, processEngineStorage);
+            updateState(index, SUCCESS, attempt, componentTools.getOutput());
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            jobExecutionService.addInfo("element " + index + " attempt " + attempt + " failed: "
+                    + ExceptionUtils.getRootCauseMessage(e));
+            if (attempt >= maxAttempts || stopped) {
+                updateState(index, ERROR, attempt, null);
+                return CompletableFuture.completedFuture(null);
+            }
+            val delayMillis = JobExecutor.JOB_RETRY_BACKOFF.delayMillis(jobDr.getRetryBackoff(), attempt);
+            return JobExecutor.retryLater(e, delayMillis, ELEMENT_EXECUTOR, () -> {
+                // 等待期间失败超过容忍数或者 flow 停止了
+                if (stopped) {
+                    updateState(index, ERROR, attempt, null);
+                    return CompletableFuture.completedFuture(null);
+                }
+                return executeElement(index, item, attempt + 1);
+            });
+        }
+    }
+
+    /**
+     * 属性里的 ${item} 替换成当前元素, 不是字符串的元素用 json 表示
+     */
+    private Map<String, String> properties(@Nullable Object item) {
+        val itemText = item == null ? "" : item instanceof String ? (String) item : JSON.toJSONString(item);
+        val properties = new HashMap<String, String>();
+        jobDr.getProperties().forEach((k, v) -> properties.put(k, v == null ? null : v.replace(ITEM_PLACEHOLDER, itemText)));
+        return properties;
+    }
+
+    private void updateState(int index, char elementStatus, int attempt, @Nullable Map<?, ?> output) {
+        synchronized (this) {
+            status[index] = elementStatus;
+            attempts[index] = attempt;
+            outputs[index] = output;
+            if (elementStatus == ERROR && ++failed > jobDr.getMapTolerance()) {
+                stopped = true;
+            }
+        }
+        flushState(false);
+    }
+
+    /**
+     * 最多每秒写一次数据库, 同时检查 flow 是否还在运行
+     *
+     * @param force 结束时强制写入
+     */
+    private void flushState(boolean force) {
+        final String mapState;
+        synchronized (this) {
+            val now = System.currentTimeMillis();
+            if (!force && now - lastFlushTime < FLUSH_INTERVAL_MILLIS) {
+                return;
+            }
+            lastFlushTime = now;
+            mapState = JSON.toJSONString(ImmutableMap.of("status", new String(status), "attempts", attempts));
+        }
+        processEngineStorage.getJobExecutionDao().updateMapState(jobExecutionId, mapState);
+        if (!force && !stopped) {
+            val flowExecutionDr = processEngineStorage.getFlowExecutionDao().getFlowExecution(flowExecutionId);
+            if (flowExecutionDr == null || flowExecutionDr.getStatus() != FlowExecutionStatus.RUNNING.code) {
+                stopped = true;
+            }
+        }
+    }
+
+    private synchronized void collectResults() throws JobExecuteException {
+        val results = new ArrayList<Object>(Arrays.asList(outputs));
+        int succeeded = 0;
+        for (char s : status) {
+            if (s == SUCCESS) {
+                succeeded++;
+            }
+        }
+        flowExecutionStorage.put(jobDr.getName(), "results", results);
+        flowExecutionStorage.put(jobDr.getName(), "total", status.length);
+        flowExecutionStorage.put(jobDr.getName(), "succeeded", succeeded);
+        flowExecutionStorage.put(jobDr.getName(), "failed", failed);
+        jobExecutionService.addInfo("map finished, total: " + status.length
+                + ", succeeded: " + succeeded + ", failed: " + failed);
+        if (succeeded + failed < status.length || failed > jobDr.getMapTolerance()) {
+            throw new JobExecuteException(failed + " of " + status.length + " elements failed, tolerance: "
+                    + jobDr.getMapTolerance());
+        }
+    }
+}
@@ -10,8 +10,11 @@ import com.xiaomi.thain.core.constant.LogLevel;
 import com.xiaomi.thain.core.dao.JobExecutionDao;
 import com.xiaomi.thain.core.process.ProcessEngineStorage;
 import com.xiaomi.thain.core.process.runtime.log.JobExecutionLogHandler;
+import com.xiaomi.thain.core.process.runtime.storage.FlowExecutionStorage;
+import com.xiaomi.thain.core.process.runtime.storage.FlowExecutionStorageKt;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.val;
 
 
 /**
@@ -26,6 +29,7 @@ public class JobExecutionService {
     @NonNull
     private final JobExecutionDao jobExecutionDao;
     private final long jobExecutionId;
+    private final long flowExecutionId;
     @NonNull
     private final String jobExecutionName;
 
@@ -44,17 +48,19 @@ public class JobExecutionService {
     private JobExecutionStatus endStatus = JobExecutionStatus.SUCCESS;
 
     private JobExecutionService(long jobExecutionId,
+                                long flowExecutionId,
                                 @NonNull String jobExecutionName,
                                 @NonNull ProcessEngineStorage processEngineStorage) {
         this.jobExecutionLogHandler = JobExecutionLogHandler.getInstance(jobExecutionId, processEngineStorage);
         this.jobExecutionDao = processEngineStorage.getJobExecutionDao();
         this.jobExecutionId = jobExecutionId;
+        this.flowExecutionId = flowExecutionId;
         this.jobExecutionName = jobExecutionName;
     }
 
-    public static JobExecutionService getInstance(long jobExecutionId, @NonNull String jobExecutionName,
+    public static JobExecutionService getInstance(long jobExecutionId, long flowExecutionId, @NonNull String jobExecutionName,
                                                   @NonNull ProcessEngineStorage processEngineStorage) {
-        return new JobExecutionService(jobExecutionId, jobExecutionName, processEngineStorage);
+        return new JobExecutionService(jobExecutionId, flowExecutionId, jobExecutionName, processEngineStorage);
     }
 
     public void startJobExecution() {
@@ -62,22 +68,43 @@ public class JobExecutionService {
         jobExecutionDao.updateCreateTimeAndStatus(jobExecutionId, JobExecutionStatus.RUNNING);
     }
 
-    public void endJobExecution() {
+    /**
+     * 成功时节点的中间结果作为检查点和状态一起保存
+     *
+     * @return 是否按成功结束, 成功的状态和检查点没有保存下来时按失败结束
+     */
+    public boolean endJobExecution() {
         try {
+            if (endStatus == JobExecutionStatus.SUCCESS) {
+                val checkpoint = FlowExecutionStorage.getInstance(flowExecutionId)
+                        .jobStorageJson(jobExecutionName, FlowExecutionStorageKt.JOB_STORAGE_JSON_MAX_CHARS);
+                if (checkpoint == null) {
+                    jobExecutionLogHandler.add("storage exceeds " + FlowExecutionStorageKt.JOB_STORAGE_JSON_MAX_CHARS
+                            + " chars, no checkpoint, the job will rerun on recovery", LogLevel.WARN);
+                }
+                if (!jobExecutionDao.updateSuccessStatus(jobExecutionId, flowExecutionId, jobExecutionName, checkpoint)) {
+                    addError("failed to save job status and checkpoint");
+                }
+            }
             switch (endStatus) {
                 case ERROR:
                     jobExecutionLogHandler.add("executed abort with：" + errorMessage, LogLevel.ERROR);
-                    break;
+                    jobExecutionDao.updateStatus(jobExecutionId, endStatus);
+                    return false;
                 case SUCCESS:
                 default:
                     jobExecutionLogHandler.add("executed completed", LogLevel.INFO);
+                    return true;
             }
         } finally {
-            jobExecutionDao.updateStatus(jobExecutionId, endStatus);
             jobExecutionLogHandler.close();
         }
     }
 
+    public void addInfo(@NonNull String content) {
+        jobExecutionLogHandler.add(content, LogLevel.INFO);
+    }
+
     public void addError(@NonNull String errorMessage) {
         this.errorMessage = errorMessage;
         endStatus = JobExecutionStatus.ERROR;
@@ -38,22 +38,49 @@ class FlowOperationLogHandler(
          */
         val extraInfo: String
 ) {
-    private val log = LoggerFactory.getLogger(this.javaClass)!!
-
     fun save() {
         try {
             sqlSessionFactory!!.openSession().use { sqlSession ->
-                sqlSession.getMapper(FlowOperationLogMapper::class.java)
-                        .addLog(AddFlowOperationLogDp(
-                                flowId = flowId,
-                                operationType = operationType.code,
-                                appId = appId,
-                                username = username,
-                                extraInfo = extraInfo
-                        ))
+                sqlSession.getMapper(FlowOperationLogMapper::class.java).addLog(toDp())
                 sqlSession.commit()
             }
         } catch (e: Exception) {
+            saveFailed(e)
+        }
+    }
+
+    private fun toDp() = AddFlowOperationLogDp(
+            flowId = flowId,
+            operationType = operationType.code,
+            appId = appId,
+            username = username,
+            extraInfo = extraInfo
+    )
+
+    companion object {
+        private val log = LoggerFactory.getLogger(FlowOperationLogHandler::class.java)!!
+
+        var sqlSessionFactory: SqlSessionFactory? = null
+        var mailService: MailService? = null
+
+        /**
+         * 批量操作的日志一次插入
+         */
+        fun saveAll(handlers: List<FlowOperationLogHandler>) {
+            if (handlers.isEmpty()) {
+                return
+            }
+            try {
+                sqlSessionFactory!!.openSession().use { sqlSession ->
+                    sqlSession.getMapper(FlowOperationLogMapper::class.java).addLogList(handlers.map { it.toDp() })
+                    sqlSession.commit()
+                }
+            } catch (e: Exception) {
+                saveFailed(e)
+            }
+        }
+
+        private fun saveFailed(e: Exception) {
             try {
                 // 保存失败不能影响用户
                 log.error("", e)
@@ -63,9 +90,4 @@ class FlowOperationLogHandler(
             }
         }
     }
-
-    companion object {
-        var sqlSessionFactory: SqlSessionFactory? = null
-        var mailService: MailService? = null
-    }
 }
@@ -12,6 +12,9 @@ import com.xiaomi.thain.core.model.rq.AddJobRq
 import com.xiaomi.thain.core.model.rq.UpdateFlowRq
 import com.xiaomi.thain.core.process.ProcessEngine
 import com.xiaomi.thain.core.process.ProcessEngineConfiguration
+import com.xiaomi.thain.core.process.runtime.notice.FlowDeleteNotice
+import com.xiaomi.thain.core.process.runtime.notice.FlowExecutionEndNotice
+import com.xiaomi.thain.core.process.runtime.statistics.FlowExecutionStatusHistory
 import com.xiaomi.thain.core.process.service.ComponentService
 import com.xiaomi.thain.core.scheduler.SchedulerEngine
 import com.xiaomi.thain.core.scheduler.SchedulerEngineConfiguration
@@ -141,6 +144,24 @@ class ThainFacade(processEngineConfiguration: ProcessEngineConfiguration,
     val componentService: ComponentService
         get() = processEngine.processEngineStorage.componentService
 
+    /**
+     * 本机最近结束的 flow execution 按分钟的计数
+     */
+    val flowExecutionStatusHistory: FlowExecutionStatusHistory
+        get() = processEngine.processEngineStorage.flowExecutionStatusHistory
+
+    /**
+     * 本机 flow execution 结束的通知
+     */
+    val flowExecutionEndNotice: FlowExecutionEndNotice
+        get() = processEngine.processEngineStorage.flowExecutionEndNotice
+
+    /**
+     * 本机删除 flow 的通知
+     */
+    val flowDeleteNotice: FlowDeleteNotice
+        get() = processEngine.processEngineStorage.flowDeleteNotice
+
     @Throws(ThainException::class)
     fun pauseFlow(flowId: Long, appId: String, username: String, auto: Boolean) {
         val flowDr = processEngine.processEngineStorage.flowDao.getFlow(flowId)
@@ -192,6 +213,79 @@ class ThainFacade(processEngineConfiguration: ProcessEngineConfiguration,
                 extraInfo = "").save()
     }
 
+    /**
+     * 批量暂停：数据库一个事务、quartz 一次调用、操作日志一次插入，失败时和 [pauseFlow] 一样按数据库里的 flow 恢复调度
+     *
+     * @return 暂停的 flow id，不存在的 flow 不在里面
+     */
+    @Throws(ThainException::class)
+    fun pauseFlows(flowIds: Collection<Long>, appId: String, username: String): List<Long> {
+        val flowDrList = processEngine.processEngineStorage.flowDao.getFlowList(flowIds)
+        val pausedIds = flowDrList.map { it.id }
+        try {
+            processEngine.processEngineStorage.flowDao.updateSchedulingStatus(pausedIds, FlowSchedulingStatus.PAUSE)
+            schedulerEngine.deleteFlows(pausedIds)
+        } catch (e: Exception) {
+            log.error("", e)
+            flowDrList.forEach { flowDr ->
+                try {
+                    val jobModelList = processEngine.processEngineStorage
+                            .jobDao.getJobs(flowDr.id)
+                            .map { AddJobRq(it) }
+                    updateFlow(UpdateFlowRq(flowDr), jobModelList)
+                } catch (ex: Exception) {
+                    log.error("", ex)
+                }
+            }
+            throw ThainException(e)
+        }
+        flowDrList.filter { isNotBlank(it.modifyCallbackUrl) }.forEach {
+            try {
+                SendModifyUtils.sendPause(it.id, it.modifyCallbackUrl)
+            } catch (e: Exception) {
+                log.warn("send pause callback failed: {}", it.id, e)
+            }
+        }
+        FlowOperationLogHandler.saveAll(pausedIds.map {
+            FlowOperationLogHandler(
+                    flowId = it,
+                    operationType = FlowOperationType.MANUAL_PAUSE,
+                    appId = appId,
+                    username = username,
+                    extraInfo = "")
+        })
+        return pausedIds
+    }
+
+    /**
+     * 批量开始调度：quartz 一次调用、数据库一个事务、操作日志一次插入
+     *
+     * @return 开始调度的 flow id，不存在的 flow 不在里面
+     */
+    @Throws(SchedulerException::class)
+    fun schedulingFlows(flowIds: Collection<Long>, appId: String, username: String): List<Long> {
+        val flowDrList = processEngine.processEngineStorage.flowDao.getFlowList(flowIds)
+        val scheduledIds = flowDrList.map { it.id }
+        schedulerEngine.addFlows(flowDrList.associate { it.id to it.cron })
+        processEngine.processEngineStorage.flowDao.updateSchedulingStatus(scheduledIds, FlowSchedulingStatus.SCHEDULING)
+        flowDrList.filter { isNotBlank(it.modifyCallbackUrl) }.forEach {
+            try {
+                SendModifyUtils.sendScheduling(it.id, it.modifyCallbackUrl)
+            } catch (e: Exception) {
+                log.warn("send scheduling callback failed: {}", it.id, e)
+            }
+        }
+        FlowOperationLogHandler.saveAll(scheduledIds.map {
+            FlowOperationLogHandler(
+                    flowId = it,
+                    operationType = FlowOperationType.SCHEDULE,
+                    appId = appId,
+                    username = username,
+                    extraInfo = "")
+        })
+        return scheduledIds
+    }
+
     @Throws(ThainException::class)
     fun killFlowExecution(flowId: Long, flowExecutionId: Long, auto: Boolean, appId: String, username: String) {
         val flowExecutionModel = processEngine.processEngineStorage.flowExecutionDao
@@ -215,6 +309,19 @@ class ThainFacade(processEngineConfiguration: ProcessEngineConfiguration,
                 appId = appId,
                 username = username,
                 extraInfo = "").save()
+        // 子 flow 可能在别的机器上运行，按 thain_subflow_execution 级联 kill，等待重试的取消重试
+        processEngine.processEngineStorage.subFlowExecutionDao.getRunningSubFlowExecutions(flowExecutionId).forEach {
+            try {
+                if (it.status == FlowExecutionStatus.ERROR_WAITING_RETRY.code) {
+                    processEngine.processEngineStorage.flowExecutionDao.cancelRetry(it.flowExecutionId,
+                            if (auto) FlowExecutionStatus.AUTO_KILLED.code else FlowExecutionStatus.KILLED.code)
+                    return@forEach
+                }
+                killFlowExecution(it.flowId, it.flowExecutionId, auto, appId, username)
+            } catch (e: Exception) {
+                log.warn("kill sub flow execution failed: {}", it.flowExecutionId, e)
+            }
+        }
     }
 
     @Throws(ThainException::class, ParseException::class, SchedulerException::class, IOException::class)
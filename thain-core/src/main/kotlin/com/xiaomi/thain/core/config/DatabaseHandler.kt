@@ -37,6 +37,11 @@ object DatabaseHandler {
             configuration.addMapper(FlowExecutionMapper::class.java)
             configuration.addMapper(JobExecutionMapper::class.java)
             configuration.addMapper(FlowOperationLogMapper::class.java)
+            configuration.addMapper(SchedulerLeaseMapper::class.java)
+            configuration.addMapper(JobCheckpointMapper::class.java)
+            configuration.addMapper(JobCacheMapper::class.java)
+            configuration.addMapper(SubFlowExecutionMapper::class.java)
+            configuration.addMapper(ResourcePoolMapper::class.java)
             configuration.isMapUnderscoreToCamelCase = true
             configuration.variables["dataReserveDays"] = dataReserveDays
             SqlSessionFactoryBuilder().build(configuration)
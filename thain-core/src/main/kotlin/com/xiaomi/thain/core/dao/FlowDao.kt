@@ -8,6 +8,7 @@ import com.xiaomi.thain.core.model.dp.AddFlowDp
 import com.xiaomi.thain.core.model.dp.AddJobDp
 import com.xiaomi.thain.core.model.dp.UpdateFlowDp
 import com.xiaomi.thain.core.model.dr.FlowDr
+import com.xiaomi.thain.core.model.dr.FlowUpstreamDr
 import com.xiaomi.thain.core.model.rq.AddFlowRq
 import com.xiaomi.thain.core.model.rq.AddJobRq
 import com.xiaomi.thain.core.process.service.MailService
@@ -95,6 +96,16 @@ class FlowDao(
         return execute { it.getFlow(flowId) }
     }
 
+    /**
+     * 批量获取 flow，已删除和不存在的不返回
+     */
+    fun getFlowList(flowIds: Collection<Long>): List<FlowDr> {
+        if (flowIds.isEmpty()) {
+            return emptyList()
+        }
+        return execute { it.getFlowList(flowIds) } ?: emptyList()
+    }
+
     /**
      * 修改最后一次运行状态
      *
@@ -117,6 +128,24 @@ class FlowDao(
         execute { it.updateSchedulingStatus(flowId, scheduling.code) }
     }
 
+    /**
+     * 同一个事务里修改多个 flow 的调度状态
+     */
+    fun updateSchedulingStatus(flowIds: Collection<Long>, scheduling: FlowSchedulingStatus) {
+        if (flowIds.isEmpty()) {
+            return
+        }
+        execute { it.updateSchedulingStatusList(flowIds, scheduling.code) }
+    }
+
+    fun getDownstreamFlowList(upstreamFlowId: Long): List<FlowUpstreamDr> {
+        return execute { it.getDownstreamFlowList(upstreamFlowId) } ?: emptyList()
+    }
+
+    fun getFlowUpstreamList(): List<FlowUpstreamDr> {
+        return execute { it.getFlowUpstreamList() } ?: emptyList()
+    }
+
     fun cleanUpExpiredAndDeletedFlow() {
         execute { it.cleanUpExpiredAndDeletedFlow(dataReserveDays) }
     }
@@ -1,8 +1,13 @@
 package com.xiaomi.thain.core.dao
 
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
 import com.xiaomi.thain.common.model.dp.AddFlowExecutionDp
 import com.xiaomi.thain.common.model.dr.FlowExecutionDr
+import com.xiaomi.thain.core.constant.FlowExecutionTriggerType
 import com.xiaomi.thain.core.mapper.FlowExecutionMapper
+import com.xiaomi.thain.core.model.dr.FlowExecutionRetryDr
+import com.xiaomi.thain.core.model.dr.FlowExecutionSlaDr
+import com.xiaomi.thain.core.model.dr.UpstreamSucceededDr
 import com.xiaomi.thain.core.process.service.MailService
 import org.apache.commons.lang3.exception.ExceptionUtils
 import org.apache.ibatis.session.SqlSessionFactory
@@ -54,21 +59,53 @@ class FlowExecutionDao(
         execute { it.updateLogs(flowExecutionId, content) }
     }
 
+    /**
+     * 第一次进入结束状态时在同一个事务里更新 dashboard 的计数
+     */
     fun updateFlowExecutionStatus(flowExecutionId: Long, status: Int) {
-        execute { it.updateFlowExecutionStatus(flowExecutionId, status) }
+        execute {
+            if (FlowExecutionStatus.getInstance(status).isFinished && it.finishFlowExecution(flowExecutionId, status) > 0) {
+                it.addFlowExecutionStatistics(flowExecutionId)
+            } else {
+                it.updateFlowExecutionStatus(flowExecutionId, status)
+            }
+        }
     }
 
     /**
      * clean up expired flow execution
      */
     fun cleanUpExpiredFlowExecution() {
-        execute { it.cleanUpExpiredFlowExecution(dataReserveDays) }
+        execute {
+            it.cleanUpExpiredFlowExecution(dataReserveDays)
+            it.cleanUpExpiredDependencyTrigger(dataReserveDays)
+        }
     }
 
     fun getFlowExecution(flowExecutionId: Long): FlowExecutionDr? {
         return execute { it.getFlowExecution(flowExecutionId) }
     }
 
+    /**
+     * 区分不存在和查询出错
+     *
+     * @return 查询出错返回 null，不存在返回空列表
+     */
+    fun findFlowExecution(flowExecutionId: Long): List<FlowExecutionDr>? {
+        return execute { listOfNotNull(it.getFlowExecution(flowExecutionId)) }
+    }
+
+    fun getFlowExecutionList(flowExecutionIds: Collection<Long>): List<FlowExecutionDr> {
+        if (flowExecutionIds.isEmpty()) {
+            return emptyList()
+        }
+        return execute { it.getFlowExecutionList(flowExecutionIds) } ?: emptyList()
+    }
+
+    fun getRunningSlaList(hostInfo: String): List<FlowExecutionSlaDr> {
+        return execute { it.getRunningSlaList(hostInfo) } ?: listOf()
+    }
+
     fun getLatest(flowId: Long, numbers: Long): List<FlowExecutionDr> {
         return execute { it.getLatest(flowId, numbers) } ?: listOf()
     }
@@ -93,7 +130,86 @@ class FlowExecutionDao(
         execute { it.reWaiting(flowExecutionIds) }
     }
 
+    fun getLatestSucceededList(flowIds: Collection<Long>, windowSeconds: Int): List<UpstreamSucceededDr> {
+        if (flowIds.isEmpty()) {
+            return emptyList()
+        }
+        return execute { it.getLatestSucceededList(flowIds, windowSeconds) } ?: emptyList()
+    }
+
+    /**
+     * 记录依赖触发并插入下游的 flow execution，在一个事务里。
+     * 同一个 flow 同一个 triggerKey 只会插入一次，已经触发过的返回 null
+     *
+     * @param triggerKey 这次触发用到的上游 flow execution
+     */
+    fun addDependencyFlowExecution(addFlowExecutionDp: AddFlowExecutionDp, triggerKey: String): FlowExecutionDr? {
+        return execute {
+            if (it.addDependencyTrigger(addFlowExecutionDp.flowId, triggerKey) == 0) {
+                return@execute null
+            }
+            it.addFlowExecution(addFlowExecutionDp)
+            addFlowExecutionDp.id?.let { id -> it.getFlowExecution(id) }
+        }
+    }
+
     fun updateHostInfo(id: Long, hostInfo: String) {
         execute { it.updateHostInfo(id, hostInfo) }
     }
+
+    fun setRetry(flowExecutionId: Long, retryNumber: Int, nextAttemptAt: Long) {
+        execute { it.setRetry(flowExecutionId, retryNumber, nextAttemptAt) }
+    }
+
+    /**
+     * 取消等待中的重试，flow execution 按 status 结束
+     *
+     * @return 是否取消了，已经被认领的返回 false
+     */
+    fun cancelRetry(flowExecutionId: Long, status: Int): Boolean {
+        return execute {
+            if (it.cancelRetry(flowExecutionId) == 0) {
+                return@execute false
+            }
+            if (it.finishFlowExecution(flowExecutionId, status) > 0) {
+                it.addFlowExecutionStatistics(flowExecutionId)
+            }
+            true
+        } ?: false
+    }
+
+    fun getDueRetryList(now: Long, limit: Int): List<FlowExecutionRetryDr> {
+        return execute { it.getDueRetryList(now, limit) } ?: listOf()
+    }
+
+    /**
+     * 认领重试并插入这次重试的 flow execution，在一个事务里。
+     * 失败的是子 flow 时重试的也记到同一个父节点下。
+     * 已经被别的节点认领返回null
+     *
+     * @param reusableJobNames 把这些节点上一次执行成功的检查点带过来，这次不再执行
+     */
+    fun claimRetry(flowExecutionRetryDr: FlowExecutionRetryDr,
+                   hostInfo: String,
+                   reusableJobNames: Collection<String>): FlowExecutionDr? {
+        return execute {
+            if (it.claimRetry(flowExecutionRetryDr.id, flowExecutionRetryDr.nextAttemptAt) == 0) {
+                return@execute null
+            }
+            val addFlowExecutionDp = AddFlowExecutionDp(
+                    flowId = flowExecutionRetryDr.flowId,
+                    hostInfo = hostInfo,
+                    status = FlowExecutionStatus.WAITING.code,
+                    triggerType = FlowExecutionTriggerType.RETRY.code,
+                    variables = flowExecutionRetryDr.variables)
+            it.addFlowExecution(addFlowExecutionDp)
+            val id = addFlowExecutionDp.id ?: return@execute null
+            it.copySubFlowExecution(flowExecutionRetryDr.id, id)
+            if (reusableJobNames.isNotEmpty()) {
+                it.copySuccessJobCheckpoints(flowExecutionRetryDr.id, id, reusableJobNames)
+                it.copySuccessJobExecutions(flowExecutionRetryDr.id, id, reusableJobNames)
+            }
+            it.getFlowExecution(id)
+        }
+    }
 }
@@ -0,0 +1,60 @@
+package com.xiaomi.thain.core.dao
+
+import com.xiaomi.thain.core.mapper.JobCacheMapper
+import com.xiaomi.thain.core.process.service.MailService
+import org.apache.commons.lang3.exception.ExceptionUtils
+import org.apache.ibatis.session.SqlSessionFactory
+import org.slf4j.LoggerFactory
+
+/**
+ * 节点结果缓存
+ *
+ * @author liangyongrui
+ */
+class JobCacheDao(
+        private val sqlSessionFactory: SqlSessionFactory,
+        private val mailService: MailService) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    /**
+     * 自动释放sqlSession，事务执行mapper
+     *
+     * @param function function 是一个事务
+     * @return 自定义的返回值
+     */
+    private fun <T> execute(function: (JobCacheMapper) -> T?): T? {
+        return try {
+            sqlSessionFactory.openSession().use { sqlSession ->
+                function(sqlSession.getMapper(JobCacheMapper::class.java))
+                        .apply { sqlSession.commit() }
+            }
+        } catch (e: Exception) {
+            log.error("", e)
+            mailService.sendSeriousError(ExceptionUtils.getStackTrace(e))
+            null
+        }
+    }
+
+    /**
+     * @return 缓存的 putStorage 输出（json），没有或者过期返回null
+     */
+    fun getCache(flowId: Long, jobName: String, fingerprint: String, ttlSeconds: Int): String? {
+        return execute { it.getCache(flowId, jobName, fingerprint, ttlSeconds) }
+    }
+
+    /**
+     * 覆盖同一个输入的旧缓存，超过 maxEntries 时淘汰这个节点最早的缓存
+     */
+    fun addCache(flowId: Long, jobName: String, fingerprint: String, storage: String, maxEntries: Int) {
+        execute {
+            it.deleteCache(flowId, jobName, fingerprint)
+            it.addCache(flowId, jobName, fingerprint, storage)
+            it.deleteOverflowCache(flowId, jobName, maxEntries)
+        }
+    }
+
+    fun cleanUpExpiredCache() {
+        execute { it.cleanUpExpiredCache() }
+    }
+}
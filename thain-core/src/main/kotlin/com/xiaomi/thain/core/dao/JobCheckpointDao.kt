@@ -0,0 +1,48 @@
+package com.xiaomi.thain.core.dao
+
+import com.xiaomi.thain.core.mapper.JobCheckpointMapper
+import com.xiaomi.thain.core.model.dr.JobCheckpointDr
+import com.xiaomi.thain.core.process.service.MailService
+import org.apache.commons.lang3.exception.ExceptionUtils
+import org.apache.ibatis.session.SqlSessionFactory
+import org.slf4j.LoggerFactory
+
+/**
+ * 节点执行成功的检查点，和节点的成功状态一起由 [JobExecutionDao.updateSuccessStatus] 写入
+ *
+ * @author liangyongrui
+ */
+class JobCheckpointDao(
+        private val sqlSessionFactory: SqlSessionFactory,
+        private val mailService: MailService) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+    private val dataReserveDays = sqlSessionFactory.configuration.variables["dataReserveDays"] as Int
+
+    /**
+     * 自动释放sqlSession，事务执行mapper
+     *
+     * @param function function 是一个事务
+     * @return 自定义的返回值
+     */
+    private fun <T> execute(function: (JobCheckpointMapper) -> T?): T? {
+        return try {
+            sqlSessionFactory.openSession().use { sqlSession ->
+                function(sqlSession.getMapper(JobCheckpointMapper::class.java))
+                        .apply { sqlSession.commit() }
+            }
+        } catch (e: Exception) {
+            log.error("", e)
+            mailService.sendSeriousError(ExceptionUtils.getStackTrace(e))
+            null
+        }
+    }
+
+    fun getCheckpoints(flowExecutionId: Long): List<JobCheckpointDr> {
+        return execute { it.getCheckpoints(flowExecutionId) } ?: listOf()
+    }
+
+    fun cleanUpExpiredCheckpoint() {
+        execute { it.cleanUpExpiredCheckpoint(dataReserveDays) }
+    }
+}
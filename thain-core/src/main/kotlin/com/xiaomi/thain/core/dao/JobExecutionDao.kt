@@ -2,9 +2,11 @@ package com.xiaomi.thain.core.dao
 
 import com.xiaomi.thain.common.constant.JobExecutionStatus
 import com.xiaomi.thain.common.model.JobExecutionModel
+import com.xiaomi.thain.core.mapper.JobCheckpointMapper
 import com.xiaomi.thain.core.mapper.JobExecutionMapper
 import com.xiaomi.thain.core.process.service.MailService
 import org.apache.commons.lang3.exception.ExceptionUtils
+import org.apache.ibatis.session.SqlSession
 import org.apache.ibatis.session.SqlSessionFactory
 import org.slf4j.LoggerFactory
 
@@ -20,9 +22,16 @@ class JobExecutionDao(private val sqlSessionFactory: SqlSessionFactory,
     private val dataReserveDays = sqlSessionFactory.configuration.variables["dataReserveDays"] as Int
 
     private fun <T> execute(function: (JobExecutionMapper) -> T?): T? {
+        return executeSession { function(it.getMapper(JobExecutionMapper::class.java)) }
+    }
+
+    /**
+     * 同一个事务里用到多个 mapper 时使用
+     */
+    private fun <T> executeSession(function: (SqlSession) -> T?): T? {
         try {
             sqlSessionFactory.openSession().use { sqlSession ->
-                val apply = function(sqlSession.getMapper(JobExecutionMapper::class.java))
+                val apply = function(sqlSession)
                 sqlSession.commit()
                 return apply
             }
@@ -45,8 +54,39 @@ class JobExecutionDao(private val sqlSessionFactory: SqlSessionFactory,
         execute { it.updateLogs(jobExecutionId, logs) }
     }
 
+    /**
+     * 第一次进入结束状态时在同一个事务里更新 dashboard 的计数
+     */
     fun updateStatus(jobExecutionId: Long, status: JobExecutionStatus) {
-        execute { it.updateStatus(jobExecutionId, status.code) }
+        execute {
+            if ((status == JobExecutionStatus.SUCCESS || status == JobExecutionStatus.ERROR)
+                    && it.finishJobExecution(jobExecutionId, status.code) > 0) {
+                it.addJobExecutionStatistics(jobExecutionId)
+            } else {
+                it.updateStatus(jobExecutionId, status.code)
+            }
+        }
+    }
+
+    /**
+     * 节点执行成功，和检查点在同一个事务里提交，成功的节点一定有检查点，掉线恢复时不会重新执行。
+     * checkpoint 为 null（中间结果太大）时不写检查点，恢复时这个节点重新执行
+     *
+     * @return 是否提交成功
+     */
+    fun updateSuccessStatus(jobExecutionId: Long, flowExecutionId: Long, jobName: String, checkpoint: String?): Boolean {
+        return executeSession {
+            val jobExecutionMapper = it.getMapper(JobExecutionMapper::class.java)
+            if (jobExecutionMapper.finishJobExecution(jobExecutionId, JobExecutionStatus.SUCCESS.code) > 0) {
+                jobExecutionMapper.addJobExecutionStatistics(jobExecutionId)
+            } else {
+                jobExecutionMapper.updateStatus(jobExecutionId, JobExecutionStatus.SUCCESS.code)
+            }
+            if (checkpoint != null) {
+                it.getMapper(JobCheckpointMapper::class.java).addCheckpoint(flowExecutionId, jobName, checkpoint)
+            }
+            true
+        } ?: false
     }
 
     fun updateCreateTimeAndStatus(jobExecutionId: Long, status: JobExecutionStatus) {
@@ -57,14 +97,28 @@ class JobExecutionDao(private val sqlSessionFactory: SqlSessionFactory,
     }
 
     fun killJobExecution(flowExecutionId: Long) {
-        execute { it.killJobExecution(flowExecutionId) }
+        execute {
+            it.addKilledJobExecutionStatistics(flowExecutionId)
+            it.killJobExecution(flowExecutionId)
+        }
+    }
+
+    fun updateMapState(jobExecutionId: Long, mapState: String) {
+        execute { it.updateMapState(jobExecutionId, mapState) }
+    }
+
+    fun addAttempt(jobExecutionId: Long, attempt: Int) {
+        execute {
+            it.addAttempt(jobExecutionId, attempt)
+            it.removeJobExecutionStatistics(jobExecutionId)
+        }
     }
 
-    fun deleteJobExecutionByFlowExecutionIds(flowExecutionIds: List<Long>) {
+    fun deleteUnfinishedJobExecutionByFlowExecutionIds(flowExecutionIds: List<Long>) {
         if (flowExecutionIds.isEmpty()) {
             return
         }
-        execute { it.deleteJobExecutionByFlowExecutionIds(flowExecutionIds) }
+        execute { it.deleteUnfinishedJobExecutionByFlowExecutionIds(flowExecutionIds) }
     }
 
     fun cleanUpExpiredFlowExecution() {
@@ -0,0 +1,79 @@
+package com.xiaomi.thain.core.dao
+
+import com.xiaomi.thain.core.mapper.ResourcePoolMapper
+import com.xiaomi.thain.core.model.dr.ResourcePoolDr
+import com.xiaomi.thain.core.process.service.MailService
+import org.apache.commons.lang3.exception.ExceptionUtils
+import org.apache.ibatis.session.SqlSessionFactory
+import org.slf4j.LoggerFactory
+
+/**
+ * 资源池和各节点的租约
+ *
+ * @author liangyongrui
+ */
+class ResourcePoolDao(
+        private val sqlSessionFactory: SqlSessionFactory,
+        private val mailService: MailService) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    /**
+     * 自动释放sqlSession，事务执行mapper
+     *
+     * @param function function 是一个事务
+     * @return 自定义的返回值
+     */
+    private fun <T> execute(function: (ResourcePoolMapper) -> T?): T? {
+        return try {
+            sqlSessionFactory.openSession().use { sqlSession ->
+                function(sqlSession.getMapper(ResourcePoolMapper::class.java))
+                        .apply { sqlSession.commit() }
+            }
+        } catch (e: Exception) {
+            log.error("", e)
+            mailService.sendSeriousError(ExceptionUtils.getStackTrace(e))
+            null
+        }
+    }
+
+    fun getPools(): List<ResourcePoolDr>? {
+        return execute { it.getPools() }
+    }
+
+    /**
+     * 在资源池容量内把本节点持有的数量改成 permits，一个事务里先锁住资源池，其他节点同时租用时排队
+     *
+     * @return 是否租到，资源池不存在或者容量不够返回false，失败返回null
+     */
+    fun acquire(poolName: String, holder: String, permits: Int, now: Long, expireTime: Long): Boolean? {
+        return execute {
+            val capacity = it.lockPool(poolName) ?: return@execute false
+            it.deleteExpiredLeases(poolName, now)
+            if (it.sumOtherPermits(poolName, holder, now) + permits > capacity) {
+                return@execute false
+            }
+            setLease(it, poolName, holder, permits, expireTime)
+            true
+        }
+    }
+
+    /**
+     * 续约或者归还一部分，不检查容量。permits 为 0 时删除租约
+     */
+    fun setLease(poolName: String, holder: String, permits: Int, expireTime: Long) {
+        execute { setLease(it, poolName, holder, permits, expireTime) }
+    }
+
+    private fun setLease(mapper: ResourcePoolMapper, poolName: String, holder: String, permits: Int, expireTime: Long) {
+        if (permits <= 0) {
+            mapper.deleteLease(poolName, holder)
+            return
+        }
+        if (mapper.updateLease(poolName, holder, permits, expireTime) == 0) {
+            // 过期后被其他节点删掉了，重新插入
+            mapper.addLease(poolName, holder, permits, expireTime)
+        }
+    }
+
+}
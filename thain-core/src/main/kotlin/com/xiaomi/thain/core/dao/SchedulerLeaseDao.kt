@@ -0,0 +1,165 @@
+package com.xiaomi.thain.core.dao
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import com.xiaomi.thain.common.constant.FlowSchedulingStatus
+import com.xiaomi.thain.common.model.dp.AddFlowExecutionDp
+import com.xiaomi.thain.common.model.dr.FlowExecutionDr
+import com.xiaomi.thain.core.constant.FlowExecutionTriggerType
+import com.xiaomi.thain.core.mapper.FlowExecutionMapper
+import com.xiaomi.thain.core.mapper.FlowMapper
+import com.xiaomi.thain.core.mapper.SchedulerLeaseMapper
+import com.xiaomi.thain.core.model.dr.FlowCronDr
+import com.xiaomi.thain.core.model.dr.SchedulerLeaseDr
+import com.xiaomi.thain.core.process.service.MailService
+import org.apache.commons.lang3.exception.ExceptionUtils
+import org.apache.ibatis.session.SqlSessionFactory
+import org.slf4j.LoggerFactory
+
+/**
+ * 原生调度器用的租约和批量触发
+ *
+ * @author liangyongrui
+ */
+class SchedulerLeaseDao(
+        private val sqlSessionFactory: SqlSessionFactory,
+        private val mailService: MailService) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    /**
+     * 自动释放sqlSession，事务执行mapper
+     *
+     * @param function function 是一个事务
+     * @return 自定义的返回值
+     */
+    private fun <T> execute(function: (SchedulerLeaseMapper) -> T?): T? {
+        return try {
+            sqlSessionFactory.openSession().use { sqlSession ->
+                function(sqlSession.getMapper(SchedulerLeaseMapper::class.java))
+                        .apply { sqlSession.commit() }
+            }
+        } catch (e: Exception) {
+            log.error("", e)
+            mailService.sendSeriousError(ExceptionUtils.getStackTrace(e))
+            null
+        }
+    }
+
+    /**
+     * 更新本节点心跳，顺便清理很久没心跳的节点
+     *
+     * @return 存活的节点数（包括自己），失败返回null
+     */
+    fun heartbeat(nodeId: String, now: Long, aliveAfter: Long): Int? {
+        return execute {
+            if (it.updateNodeHeartbeat(nodeId, now) == 0) {
+                it.addNode(nodeId, now)
+            }
+            it.deleteDeadNodes(aliveAfter)
+            it.countAliveNodes(aliveAfter)
+        }
+    }
+
+    /**
+     * 获取所有租约，不足 partitionCount 个的补上
+     */
+    fun getLeases(partitionCount: Int): List<SchedulerLeaseDr>? {
+        val leases = execute { it.getLeases() } ?: return null
+        val missing = (0 until partitionCount) - leases.map { it.partitionId }
+        if (missing.isEmpty()) {
+            return leases
+        }
+        missing.forEach { partitionId ->
+            // 多个节点同时补，主键冲突的忽略
+            try {
+                sqlSessionFactory.openSession(true).use {
+                    it.getMapper(SchedulerLeaseMapper::class.java).addLease(partitionId)
+                }
+            } catch (e: Exception) {
+                log.debug("add lease {}: {}", partitionId, ExceptionUtils.getRootCauseMessage(e))
+            }
+        }
+        return execute { it.getLeases() }
+    }
+
+    fun renewLeases(owner: String, partitionIds: Collection<Int>, expireTime: Long, firedUntil: Long, now: Long) {
+        if (partitionIds.isEmpty()) {
+            return
+        }
+        execute { it.renewLeases(owner, partitionIds, expireTime, firedUntil, now) }
+    }
+
+    fun acquireLease(lease: SchedulerLeaseDr, owner: String, expireTime: Long): Boolean {
+        return execute { it.acquireLease(lease.partitionId, owner, expireTime, lease.owner, lease.expireTime) } == 1
+    }
+
+    fun releaseLeases(owner: String, partitionIds: Collection<Int>, firedUntil: Long) {
+        if (partitionIds.isEmpty()) {
+            return
+        }
+        execute { it.releaseLeases(owner, partitionIds, firedUntil) }
+    }
+
+    fun getSchedulingFlowCronList(partitionCount: Int, partitionIds: Collection<Int>): List<FlowCronDr>? {
+        if (partitionIds.isEmpty()) {
+            return listOf()
+        }
+        return try {
+            sqlSessionFactory.openSession().use {
+                it.getMapper(FlowMapper::class.java).getSchedulingFlowCronList(partitionCount, partitionIds)
+            }
+        } catch (e: Exception) {
+            log.error("", e)
+            mailService.sendSeriousError(ExceptionUtils.getStackTrace(e))
+            null
+        }
+    }
+
+    /**
+     * 一个事务里记录一批自动触发：先按租约更新 fired_until（相当于 fencing token），
+     * 再过滤掉已经暂停或删除的 flow，批量插入 flow execution 后一次查回来。
+     * 租约丢了（被别的节点接手）整批回滚，返回null
+     */
+    fun addAutomaticFlowExecutions(owner: String,
+                                   partitionIds: Collection<Int>,
+                                   firedUntil: Long,
+                                   now: Long,
+                                   flowIds: Collection<Long>,
+                                   hostInfo: String): List<FlowExecutionDr>? {
+        return try {
+            sqlSessionFactory.openSession().use { sqlSession ->
+                val fenced = sqlSession.getMapper(SchedulerLeaseMapper::class.java)
+                        .updateFiredUntil(owner, partitionIds, firedUntil, now)
+                if (fenced < partitionIds.size) {
+                    sqlSession.rollback()
+                    log.warn("scheduler lease lost, {} fires are discarded", flowIds.size)
+                    return null
+                }
+                val addFlowExecutionDpList = sqlSession.getMapper(FlowMapper::class.java)
+                        .getFlowList(flowIds)
+                        .filter { it.schedulingStatus == FlowSchedulingStatus.SCHEDULING.code }
+                        .map {
+                            AddFlowExecutionDp(
+                                    flowId = it.id,
+                                    hostInfo = hostInfo,
+                                    status = FlowExecutionStatus.WAITING.code,
+                                    triggerType = FlowExecutionTriggerType.AUTOMATIC.code,
+                                    variables = "{}")
+                        }
+                if (addFlowExecutionDpList.isEmpty()) {
+                    sqlSession.commit()
+                    return listOf()
+                }
+                val flowExecutionMapper = sqlSession.getMapper(FlowExecutionMapper::class.java)
+                flowExecutionMapper.addFlowExecutionList(addFlowExecutionDpList)
+                val flowExecutionDrList = flowExecutionMapper.getFlowExecutionList(addFlowExecutionDpList.mapNotNull { it.id })
+                sqlSession.commit()
+                flowExecutionDrList
+            }
+        } catch (e: Exception) {
+            log.error("", e)
+            mailService.sendSeriousError(ExceptionUtils.getStackTrace(e))
+            null
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.xiaomi.thain.core.dao
+
+import com.xiaomi.thain.core.mapper.SubFlowExecutionMapper
+import com.xiaomi.thain.core.model.dr.SubFlowExecutionDr
+import com.xiaomi.thain.core.process.service.MailService
+import org.apache.commons.lang3.exception.ExceptionUtils
+import org.apache.ibatis.session.SqlSessionFactory
+import org.slf4j.LoggerFactory
+
+/**
+ * 子 flow 节点启动的 flow execution
+ *
+ * @author liangyongrui
+ */
+class SubFlowExecutionDao(
+        private val sqlSessionFactory: SqlSessionFactory,
+        private val mailService: MailService) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+    private val dataReserveDays = sqlSessionFactory.configuration.variables["dataReserveDays"] as Int
+
+    /**
+     * 自动释放sqlSession，事务执行mapper
+     *
+     * @param function function 是一个事务
+     * @return 自定义的返回值
+     */
+    private fun <T> execute(function: (SubFlowExecutionMapper) -> T?): T? {
+        return try {
+            sqlSessionFactory.openSession().use { sqlSession ->
+                function(sqlSession.getMapper(SubFlowExecutionMapper::class.java))
+                        .apply { sqlSession.commit() }
+            }
+        } catch (e: Exception) {
+            log.error("", e)
+            mailService.sendSeriousError(ExceptionUtils.getStackTrace(e))
+            null
+        }
+    }
+
+    fun addSubFlowExecution(flowExecutionId: Long, parentFlowExecutionId: Long, parentJobName: String) {
+        execute { it.addSubFlowExecution(flowExecutionId, parentFlowExecutionId, parentJobName) }
+    }
+
+    fun getRunningSubFlowExecutions(parentFlowExecutionId: Long): List<SubFlowExecutionDr> {
+        return execute { it.getRunningSubFlowExecutions(parentFlowExecutionId) } ?: listOf()
+    }
+
+    fun getLatestSubFlowExecution(parentFlowExecutionId: Long, parentJobName: String): SubFlowExecutionDr? {
+        return execute { it.getLatestSubFlowExecution(parentFlowExecutionId, parentJobName) }
+    }
+
+    /**
+     * @return 还没有重试（或者查询出错）返回 null
+     */
+    fun getRetrySubFlowExecutionId(flowExecutionId: Long): Long? {
+        return execute { it.getRetrySubFlowExecutionId(flowExecutionId) }
+    }
+
+    fun cleanUpExpiredSubFlowExecution() {
+        execute { it.cleanUpExpiredSubFlowExecution(dataReserveDays) }
+    }
+}
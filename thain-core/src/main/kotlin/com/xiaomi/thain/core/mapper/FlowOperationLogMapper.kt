@@ -13,4 +13,6 @@ interface FlowOperationLogMapper {
 
     fun addLog(addFlowOperationLogDp: AddFlowOperationLogDp)
 
+    fun addLogList(@Param("list") addFlowOperationLogDpList: List<AddFlowOperationLogDp>)
+
 }
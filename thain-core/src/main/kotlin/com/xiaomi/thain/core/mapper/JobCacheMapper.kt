@@ -0,0 +1,39 @@
+package com.xiaomi.thain.core.mapper
+
+import org.apache.ibatis.annotations.Param
+
+/**
+ * @author liangyongrui
+ */
+interface JobCacheMapper {
+
+    /**
+     * 有效期内的缓存，没有时返回null
+     */
+    fun getCache(@Param("flowId") flowId: Long,
+                 @Param("jobName") jobName: String,
+                 @Param("fingerprint") fingerprint: String,
+                 @Param("ttlSeconds") ttlSeconds: Int): String?
+
+    fun deleteCache(@Param("flowId") flowId: Long,
+                    @Param("jobName") jobName: String,
+                    @Param("fingerprint") fingerprint: String)
+
+    fun addCache(@Param("flowId") flowId: Long,
+                 @Param("jobName") jobName: String,
+                 @Param("fingerprint") fingerprint: String,
+                 @Param("storage") storage: String)
+
+    /**
+     * 按自增 id 淘汰节点最早的缓存，只保留最新的 maxEntries 条
+     */
+    fun deleteOverflowCache(@Param("flowId") flowId: Long,
+                            @Param("jobName") jobName: String,
+                            @Param("maxEntries") maxEntries: Int)
+
+    /**
+     * 删除超过所属 flow 有效期的缓存，flow 不存在的全部删除
+     */
+    fun cleanUpExpiredCache()
+
+}
@@ -0,0 +1,19 @@
+package com.xiaomi.thain.core.mapper
+
+import com.xiaomi.thain.core.model.dr.JobCheckpointDr
+import org.apache.ibatis.annotations.Param
+
+/**
+ * @author liangyongrui
+ */
+interface JobCheckpointMapper {
+
+    fun addCheckpoint(@Param("flowExecutionId") flowExecutionId: Long,
+                      @Param("jobName") jobName: String,
+                      @Param("storage") storage: String)
+
+    fun getCheckpoints(@Param("flowExecutionId") flowExecutionId: Long): List<JobCheckpointDr>
+
+    fun cleanUpExpiredCheckpoint(@Param("dataReserveDays") dataReserveDays: Int)
+
+}
@@ -0,0 +1,42 @@
+package com.xiaomi.thain.core.mapper
+
+import com.xiaomi.thain.core.model.dr.ResourcePoolDr
+import org.apache.ibatis.annotations.Param
+
+/**
+ * @author liangyongrui
+ */
+interface ResourcePoolMapper {
+
+    fun getPools(): List<ResourcePoolDr>
+
+    /**
+     * 锁住资源池，同一个资源池的租用排队进行，资源池不存在时返回null
+     */
+    fun lockPool(@Param("name") name: String): Int?
+
+    /**
+     * 删除已经过期的租约，持有的节点没有续约，可能已经挂了
+     */
+    fun deleteExpiredLeases(@Param("poolName") poolName: String, @Param("now") now: Long)
+
+    /**
+     * 其他节点持有的数量
+     */
+    fun sumOtherPermits(@Param("poolName") poolName: String,
+                        @Param("holder") holder: String,
+                        @Param("now") now: Long): Int
+
+    fun updateLease(@Param("poolName") poolName: String,
+                    @Param("holder") holder: String,
+                    @Param("permits") permits: Int,
+                    @Param("expireTime") expireTime: Long): Int
+
+    fun addLease(@Param("poolName") poolName: String,
+                 @Param("holder") holder: String,
+                 @Param("permits") permits: Int,
+                 @Param("expireTime") expireTime: Long)
+
+    fun deleteLease(@Param("poolName") poolName: String, @Param("holder") holder: String)
+
+}
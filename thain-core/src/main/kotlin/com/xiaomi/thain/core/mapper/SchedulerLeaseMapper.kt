@@ -0,0 +1,55 @@
+package com.xiaomi.thain.core.mapper
+
+import com.xiaomi.thain.core.model.dr.SchedulerLeaseDr
+import org.apache.ibatis.annotations.Param
+
+/**
+ * 原生调度器的节点心跳和分区租约，时间都是毫秒时间戳
+ *
+ * @author liangyongrui
+ */
+interface SchedulerLeaseMapper {
+
+    fun updateNodeHeartbeat(@Param("nodeId") nodeId: String, @Param("heartbeatTime") heartbeatTime: Long): Int
+
+    fun addNode(@Param("nodeId") nodeId: String, @Param("heartbeatTime") heartbeatTime: Long)
+
+    fun countAliveNodes(@Param("after") after: Long): Int
+
+    fun deleteDeadNodes(@Param("before") before: Long)
+
+    fun getLeases(): List<SchedulerLeaseDr>
+
+    fun addLease(@Param("partitionId") partitionId: Int)
+
+    /**
+     * 续约，已经过期的不能续（可能已经被别的节点接手）
+     */
+    fun renewLeases(@Param("owner") owner: String,
+                    @Param("partitionIds") partitionIds: Collection<Int>,
+                    @Param("expireTime") expireTime: Long,
+                    @Param("firedUntil") firedUntil: Long,
+                    @Param("now") now: Long): Int
+
+    /**
+     * 按读到的 owner 和 expireTime 做 CAS，多个节点同时抢只有一个成功
+     */
+    fun acquireLease(@Param("partitionId") partitionId: Int,
+                     @Param("owner") owner: String,
+                     @Param("expireTime") expireTime: Long,
+                     @Param("oldOwner") oldOwner: String,
+                     @Param("oldExpireTime") oldExpireTime: Long): Int
+
+    fun releaseLeases(@Param("owner") owner: String,
+                      @Param("partitionIds") partitionIds: Collection<Int>,
+                      @Param("firedUntil") firedUntil: Long)
+
+    /**
+     * 和触发记录在同一个事务里更新，返回值小于分区数说明租约已经丢了，整批回滚
+     */
+    fun updateFiredUntil(@Param("owner") owner: String,
+                         @Param("partitionIds") partitionIds: Collection<Int>,
+                         @Param("firedUntil") firedUntil: Long,
+                         @Param("now") now: Long): Int
+
+}
@@ -0,0 +1,33 @@
+package com.xiaomi.thain.core.mapper
+
+import com.xiaomi.thain.core.model.dr.SubFlowExecutionDr
+import org.apache.ibatis.annotations.Param
+
+/**
+ * @author liangyongrui
+ */
+interface SubFlowExecutionMapper {
+
+    fun addSubFlowExecution(@Param("flowExecutionId") flowExecutionId: Long,
+                            @Param("parentFlowExecutionId") parentFlowExecutionId: Long,
+                            @Param("parentJobName") parentJobName: String)
+
+    /**
+     * 父 flow execution 启动的、还在运行或者等待重试的 flow execution
+     */
+    fun getRunningSubFlowExecutions(@Param("parentFlowExecutionId") parentFlowExecutionId: Long): List<SubFlowExecutionDr>
+
+    /**
+     * 父 flow execution 的这个节点最近一次启动的 flow execution
+     */
+    fun getLatestSubFlowExecution(@Param("parentFlowExecutionId") parentFlowExecutionId: Long,
+                                  @Param("parentJobName") parentJobName: String): SubFlowExecutionDr?
+
+    /**
+     * 同一个父节点下比 flowExecutionId 新的 flow execution，即它失败后重试新建的
+     */
+    fun getRetrySubFlowExecutionId(@Param("flowExecutionId") flowExecutionId: Long): Long?
+
+    fun cleanUpExpiredSubFlowExecution(@Param("dataReserveDays") dataReserveDays: Int)
+
+}
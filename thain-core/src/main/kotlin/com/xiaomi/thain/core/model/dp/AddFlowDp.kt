@@ -1,5 +1,6 @@
 package com.xiaomi.thain.core.model.dp
 
+import com.xiaomi.thain.core.model.dr.parseFlowIds
 import com.xiaomi.thain.core.model.rq.AddFlowRq
 
 /**
@@ -35,6 +36,10 @@ data class AddFlowDp(
         val slaKill: Boolean = false,
         val retryNumber: Int?,
         val retryTimeInterval: Int?,
+        val cacheTtlSeconds: Int?,
+        val cacheMaxEntries: Int?,
+        val upstreamFlowIds: String?,
+        val upstreamWindowSeconds: Int?,
         val schedulingStatus: Int
 ) {
     constructor(addFlowRq: AddFlowRq, flowSchedulingStatus: Int) : this(
@@ -53,5 +58,9 @@ data class AddFlowDp(
             addFlowRq.slaKill,
             addFlowRq.retryNumber,
             addFlowRq.retryTimeInterval,
+            addFlowRq.cacheTtlSeconds,
+            addFlowRq.cacheMaxEntries,
+            addFlowRq.upstreamFlowIds?.let { parseFlowIds(it).joinToString(",") },
+            addFlowRq.upstreamWindowSeconds,
             flowSchedulingStatus)
 }
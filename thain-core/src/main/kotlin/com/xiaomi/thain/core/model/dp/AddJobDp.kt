@@ -13,7 +13,15 @@ class AddJobDp (
     val callbackUrl: String?,
     val properties: String?,
     val xAxis: Int?,
-    val yAxis: Int?
+    val yAxis: Int?,
+    val retryNumber: Int?,
+    val retryBackoff: Int?,
+    val timeoutSeconds: Int?,
+    val cacheEnabled: Boolean?,
+    val mapSource: String?,
+    val mapParallelism: Int?,
+    val mapTolerance: Int?,
+    val resourceClaims: String?
 ){
     companion object {
         fun getInstance(addJobRq: AddJobRq, flowId: Long): AddJobDp {
@@ -24,7 +32,15 @@ class AddJobDp (
                     addJobRq.callbackUrl,
                     addJobRq.propertiesString,
                     addJobRq.xAxis,
-                    addJobRq.yAxis)
+                    addJobRq.yAxis,
+                    addJobRq.retryNumber,
+                    addJobRq.retryBackoff,
+                    addJobRq.timeoutSeconds,
+                    addJobRq.cacheEnabled,
+                    addJobRq.mapSource,
+                    addJobRq.mapParallelism,
+                    addJobRq.mapTolerance,
+                    addJobRq.resourceClaims)
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.xiaomi.thain.core.model.dp
 
 import com.xiaomi.thain.common.constant.FlowSchedulingStatus
+import com.xiaomi.thain.core.model.dr.parseFlowIds
 import com.xiaomi.thain.core.model.rq.UpdateFlowRq
 
 /**
@@ -28,7 +29,11 @@ data class UpdateFlowDp(
          */
         val schedulingStatus: Int,
         val retryNumber: Int?,
-        val retryTimeInterval: Int?
+        val retryTimeInterval: Int?,
+        val cacheTtlSeconds: Int?,
+        val cacheMaxEntries: Int?,
+        val upstreamFlowIds: String?,
+        val upstreamWindowSeconds: Int?
 ) {
     constructor(updateFlowRq: UpdateFlowRq, schedulingStatus: FlowSchedulingStatus) : this(
             updateFlowRq.id,
@@ -44,7 +49,11 @@ data class UpdateFlowDp(
             updateFlowRq.slaKill,
             schedulingStatus.code,
             updateFlowRq.retryNumber,
-            updateFlowRq.retryTimeInterval
+            updateFlowRq.retryTimeInterval,
+            updateFlowRq.cacheTtlSeconds,
+            updateFlowRq.cacheMaxEntries,
+            updateFlowRq.upstreamFlowIds?.let { parseFlowIds(it).joinToString(",") },
+            updateFlowRq.upstreamWindowSeconds
     )
 
 }
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.core.model.dr
+
+import java.sql.Timestamp
+
+/**
+ * 原生调度器同步用，只有调度需要的字段
+ *
+ * @author liangyongrui
+ */
+class FlowCronDr(
+        val id: Long,
+        val cron: String,
+        val updateTime: Timestamp
+)
@@ -50,5 +50,21 @@ data class FlowDr(
          * 状态更新时间
          */
         val statusUpdateTime: Timestamp,
-        val deleted: Boolean = false
+        val deleted: Boolean = false,
+        /**
+         * 节点结果缓存的有效期，单位秒
+         */
+        val cacheTtlSeconds: Int = 86400,
+        /**
+         * 每个节点的结果缓存最多保留的条数
+         */
+        val cacheMaxEntries: Int = 1000,
+        /**
+         * 上游 flow id，逗号分开，上游成功结束时触发这个 flow
+         */
+        val upstreamFlowIds: String = "",
+        /**
+         * 大于 0 时所有上游都要在这么多秒内成功过才触发，等于 0 时任意一个上游成功就触发
+         */
+        val upstreamWindowSeconds: Int = 0
 )
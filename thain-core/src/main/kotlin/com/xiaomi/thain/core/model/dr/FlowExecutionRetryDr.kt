@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.core.model.dr
+
+/**
+ * 到期待重试的失败 flow execution
+ *
+ * @author liangyongrui
+ */
+class FlowExecutionRetryDr(
+        val id: Long,
+        val flowId: Long,
+        val variables: String?,
+        /**
+         * 这次重试是第几次
+         */
+        val retryNumber: Int,
+        /**
+         * 毫秒时间戳，认领时用来做 CAS
+         */
+        val nextAttemptAt: Long
+)
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.core.model.dr
+
+import java.sql.Timestamp
+
+/**
+ * 重启时重建 SLA 用，正在运行的 flow execution 和所属 flow 的 sla 时长
+ *
+ * @author liangyongrui
+ */
+class FlowExecutionSlaDr(
+        val flowExecutionId: Long,
+        val flowId: Long,
+        val createTime: Timestamp,
+        /**
+         * 秒
+         */
+        val slaDuration: Long
+)
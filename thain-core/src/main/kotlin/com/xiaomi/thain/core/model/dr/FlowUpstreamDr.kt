@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.core.model.dr
+
+/**
+ * flow 的上游依赖，只有依赖需要的字段
+ *
+ * @author liangyongrui
+ */
+class FlowUpstreamDr(
+        val id: Long,
+        /**
+         * 逗号分开的上游 flow id
+         */
+        val upstreamFlowIds: String,
+        val upstreamWindowSeconds: Int
+) {
+    val upstreamFlowIdList: List<Long>
+        get() = parseFlowIds(upstreamFlowIds)
+}
+
+/**
+ * 逗号分开的 flow id，去掉空白和重复的
+ */
+fun parseFlowIds(flowIds: String?): List<Long> {
+    return flowIds.orEmpty()
+            .split(",")
+            .map { it.trim() }
+            .filter { it.isNotEmpty() }
+            .map { it.toLongOrNull() ?: throw IllegalArgumentException("invalid flow id: $it") }
+            .distinct()
+}
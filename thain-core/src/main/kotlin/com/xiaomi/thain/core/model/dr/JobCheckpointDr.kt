@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.core.model.dr
+
+/**
+ * 节点执行成功的检查点
+ *
+ * @author liangyongrui
+ */
+class JobCheckpointDr(
+        val jobName: String,
+        /**
+         * 节点 putStorage 的输出，json
+         */
+        val storage: String?
+)
@@ -20,7 +20,48 @@ class JobDr(
         val xAxis: Int,
         val yAxis: Int,
         val createTime: Timestamp,
-        val deleted: Boolean
+        val deleted: Boolean,
+        /**
+         * 失败后在 flow 内重试的次数
+         */
+        val retryNumber: Int,
+        /**
+         * 重试的基础间隔（秒），每次重试翻倍
+         */
+        val retryBackoff: Int,
+        /**
+         * 单次执行的超时时间（秒），0 不超时
+         */
+        val timeoutSeconds: Int,
+        /**
+         * 是否缓存结果，输入不变时跳过执行
+         */
+        val cacheEnabled: Boolean,
+        /**
+         * map 节点的元素来源：上游节点的 storage（jobName.key）或者本节点的属性名，为空不是 map 节点
+         */
+        val mapSource: String,
+        /**
+         * map 节点同时执行的元素数
+         */
+        val mapParallelism: Int,
+        /**
+         * map 节点允许失败的元素数，超过时节点失败
+         */
+        val mapTolerance: Int,
+        /**
+         * 节点需要的集群资源，json，资源池名 -> 数量，为空不需要
+         */
+        val resourceClaims: String
 ) {
     val properties = JSON.parseObject(propertiesString, object : TypeReference<Map<String, String>>() {})!!
+
+    val mapJob: Boolean
+        get() = mapSource.isNotBlank()
+
+    val resourceClaimMap: Map<String, Int> = if (resourceClaims.isBlank()) {
+        emptyMap()
+    } else {
+        JSON.parseObject(resourceClaims, object : TypeReference<Map<String, Int>>() {})
+    }
 }
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.core.model.dr
+
+/**
+ * 集群共享的资源池
+ *
+ * @author liangyongrui
+ */
+class ResourcePoolDr(
+        val name: String,
+        /**
+         * 整个集群同时可用的数量
+         */
+        val capacity: Int
+)
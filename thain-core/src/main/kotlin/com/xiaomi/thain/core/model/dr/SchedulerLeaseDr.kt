@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.core.model.dr
+
+/**
+ * 原生调度器的分区租约
+ *
+ * @author liangyongrui
+ */
+class SchedulerLeaseDr(
+        val partitionId: Int,
+        val owner: String,
+        /**
+         * 毫秒时间戳
+         */
+        val expireTime: Long,
+        /**
+         * 这个时间之前的触发都已经落库
+         */
+        val firedUntil: Long
+)
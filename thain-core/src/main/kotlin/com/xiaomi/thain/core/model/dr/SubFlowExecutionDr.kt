@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.core.model.dr
+
+/**
+ * 子 flow 节点启动的 flow execution
+ *
+ * @author liangyongrui
+ */
+class SubFlowExecutionDr(
+        val flowExecutionId: Long,
+        val flowId: Long,
+        /**
+         * flow execution 的状态
+         */
+        val status: Int
+)
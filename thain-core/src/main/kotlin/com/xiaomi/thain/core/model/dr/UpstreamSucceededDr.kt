@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.core.model.dr
+
+/**
+ * 上游 flow 在依赖窗口内最后一次成功的 flow execution
+ *
+ * @author liangyongrui
+ */
+class UpstreamSucceededDr(
+        val flowId: Long,
+        val flowExecutionId: Long
+)
@@ -32,5 +32,21 @@ data class AddFlowRq(
         val slaEmail: String?,
         val slaKill: Boolean = false,
         val retryNumber: Int,
-        val retryTimeInterval: Int
+        val retryTimeInterval: Int,
+        /**
+         * 节点结果缓存的有效期（秒），为空时用默认值
+         */
+        val cacheTtlSeconds: Int? = null,
+        /**
+         * 节点结果缓存最多保留的条数，为空时用默认值
+         */
+        val cacheMaxEntries: Int? = null,
+        /**
+         * 上游 flow id，逗号分开，为空时不依赖其他 flow
+         */
+        val upstreamFlowIds: String? = null,
+        /**
+         * 上游都要在这么多秒内成功过才触发，为空或 0 时任意一个上游成功就触发
+         */
+        val upstreamWindowSeconds: Int? = null
 )
@@ -15,7 +15,18 @@ data class AddJobRq(
         val callbackUrl: String?,
         val properties: Map<String, String>,
         val xAxis: Int?,
-        val yAxis: Int?
+        val yAxis: Int?,
+        val retryNumber: Int?,
+        val retryBackoff: Int?,
+        val timeoutSeconds: Int?,
+        val cacheEnabled: Boolean?,
+        val mapSource: String?,
+        val mapParallelism: Int?,
+        val mapTolerance: Int?,
+        /**
+         * 节点需要的集群资源，json，例如 {"warehouse-export": 1}
+         */
+        val resourceClaims: String? = null
 ) {
 
     constructor(jobDr: JobDr) : this(
@@ -25,7 +36,15 @@ data class AddJobRq(
             jobDr.callbackUrl,
             jobDr.properties,
             jobDr.xAxis,
-            jobDr.yAxis
+            jobDr.yAxis,
+            jobDr.retryNumber,
+            jobDr.retryBackoff,
+            jobDr.timeoutSeconds,
+            jobDr.cacheEnabled,
+            jobDr.mapSource,
+            jobDr.mapParallelism,
+            jobDr.mapTolerance,
+            jobDr.resourceClaims
     )
 
     val propertiesString: String
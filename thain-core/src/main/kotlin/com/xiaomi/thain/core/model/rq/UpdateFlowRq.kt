@@ -25,6 +25,10 @@ data class UpdateFlowRq(
         val slaKill: Boolean = false,
         val retryNumber: Int?,
         val retryTimeInterval: Int?,
+        val cacheTtlSeconds: Int?,
+        val cacheMaxEntries: Int?,
+        val upstreamFlowIds: String?,
+        val upstreamWindowSeconds: Int?,
 
         /**
          * 用于日志记录
@@ -50,6 +54,10 @@ data class UpdateFlowRq(
             addFlowRq.slaKill,
             addFlowRq.retryNumber,
             addFlowRq.retryTimeInterval,
+            addFlowRq.cacheTtlSeconds,
+            addFlowRq.cacheMaxEntries,
+            addFlowRq.upstreamFlowIds,
+            addFlowRq.upstreamWindowSeconds,
             addFlowRq.createAppId ?: throw ThainException("app id can not empty"),
             addFlowRq.createUser ?: throw ThainException("create user can not empty")
     )
@@ -68,6 +76,10 @@ data class UpdateFlowRq(
             flowDr.slaKill,
             flowDr.retryNumber,
             flowDr.retryTimeInterval,
+            flowDr.cacheTtlSeconds,
+            flowDr.cacheMaxEntries,
+            flowDr.upstreamFlowIds,
+            flowDr.upstreamWindowSeconds,
             flowDr.createAppId,
             flowDr.createUser
     )
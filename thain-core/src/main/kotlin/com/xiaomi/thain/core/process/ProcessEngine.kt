@@ -13,6 +13,7 @@ import com.xiaomi.thain.core.model.rq.AddFlowRq
 import com.xiaomi.thain.core.model.rq.AddJobRq
 import com.xiaomi.thain.core.process.runtime.FlowExecutionLoader
 import com.xiaomi.thain.core.process.runtime.heartbeat.FlowExecutionHeartbeat
+import com.xiaomi.thain.core.process.runtime.storage.FlowExecutionStorageReaper
 import com.xiaomi.thain.core.process.service.ComponentService
 import com.xiaomi.thain.core.process.service.MailService
 import com.xiaomi.thain.core.thread.pool.ThainThreadPool
@@ -94,6 +95,7 @@ class ProcessEngine(processEngineConfiguration: ProcessEngineConfiguration, val
      */
     fun deleteFlow(flowId: Long) {
         processEngineStorage.flowDao.deleteFlow(flowId)
+        processEngineStorage.flowDeleteNotice.notice(flowId)
     }
 
     /**
@@ -185,17 +187,26 @@ class ProcessEngine(processEngineConfiguration: ProcessEngineConfiguration, val
         val flowExecutionDao = FlowExecutionDao(sqlSessionFactory, mailService)
         val jobDao = JobDao(sqlSessionFactory, mailService)
         val jobExecutionDao = JobExecutionDao(sqlSessionFactory, mailService)
+        val jobCheckpointDao = JobCheckpointDao(sqlSessionFactory, mailService)
+        val jobCacheDao = JobCacheDao(sqlSessionFactory, mailService)
+        val subFlowExecutionDao = SubFlowExecutionDao(sqlSessionFactory, mailService)
+        val resourcePoolDao = ResourcePoolDao(sqlSessionFactory, mailService)
         val x5ConfigDao = X5ConfigDao(sqlSessionFactory, mailService)
         val componentService = ComponentService()
         val flowExecutionWaitingQueue = LinkedBlockingQueue<FlowExecutionDr>()
         processEngineStorage = ProcessEngineStorage(
                 flowExecutionJobExecutionThreadPool = flowExecutionJobExecutionThreadPool,
+                flowExecutionStarter = { flowId, variables -> startProcess(flowId, variables) },
                 flowExecutionThreadPool = flowExecutionThreadPool,
                 processEngineId = processEngineId,
                 flowDao = flowDao,
                 flowExecutionDao = flowExecutionDao,
                 jobDao = jobDao,
                 jobExecutionDao = jobExecutionDao,
+                jobCheckpointDao = jobCheckpointDao,
+                jobCacheDao = jobCacheDao,
+                subFlowExecutionDao = subFlowExecutionDao,
+                resourcePoolDao = resourcePoolDao,
                 x5ConfigDao = x5ConfigDao,
                 mailService = mailService,
                 componentService = componentService,
@@ -204,5 +215,6 @@ class ProcessEngine(processEngineConfiguration: ProcessEngineConfiguration, val
         val flowExecutionHeartbeat = FlowExecutionHeartbeat(flowExecutionDao, mailService)
         flowExecutionHeartbeat.addCollections(flowExecutionWaitingQueue)
         flowExecutionHeartbeat.addCollections(flowExecutionLoader.runningFlowExecution)
+        FlowExecutionStorageReaper(flowExecutionDao)
     }
 }
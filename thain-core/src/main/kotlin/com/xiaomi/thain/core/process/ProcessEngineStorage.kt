@@ -1,8 +1,14 @@
 package com.xiaomi.thain.core.process
 
 import com.xiaomi.thain.common.model.dr.FlowExecutionDr
+import com.xiaomi.thain.common.utils.HostUtils
 import com.xiaomi.thain.core.dao.*
+import com.xiaomi.thain.core.process.runtime.notice.FlowDeleteNotice
+import com.xiaomi.thain.core.process.runtime.notice.FlowExecutionEndNotice
 import com.xiaomi.thain.core.process.runtime.notice.MailNotice
+import com.xiaomi.thain.core.process.runtime.resource.ResourcePoolManager
+import com.xiaomi.thain.core.process.runtime.statistics.FlowExecutionStatusHistory
+import com.xiaomi.thain.core.process.runtime.subflow.SubFlowWaiter
 import com.xiaomi.thain.core.process.service.ComponentService
 import com.xiaomi.thain.core.process.service.MailService
 import com.xiaomi.thain.core.thread.pool.ThainThreadPool
@@ -14,11 +20,25 @@ class ProcessEngineStorage(val flowExecutionThreadPool: ThainThreadPool,
                            val flowExecutionDao: FlowExecutionDao,
                            val jobDao: JobDao,
                            val jobExecutionDao: JobExecutionDao,
+                           val jobCheckpointDao: JobCheckpointDao,
+                           val jobCacheDao: JobCacheDao,
+                           val subFlowExecutionDao: SubFlowExecutionDao,
+                           val resourcePoolDao: ResourcePoolDao,
                            val x5ConfigDao: X5ConfigDao,
                            val mailService: MailService,
                            val componentService: ComponentService,
                            private val flowExecutionJobExecutionThreadPool: (Long) -> ThainThreadPool,
-                           val flowExecutionWaitingQueue: LinkedBlockingQueue<FlowExecutionDr>) {
+                           private val flowExecutionStarter: (Long, Map<String, Any>) -> Long,
+                           val flowExecutionWaitingQueue: LinkedBlockingQueue<FlowExecutionDr>,
+                           val flowExecutionStatusHistory: FlowExecutionStatusHistory = FlowExecutionStatusHistory(),
+                           val flowExecutionEndNotice: FlowExecutionEndNotice = FlowExecutionEndNotice(),
+                           val flowDeleteNotice: FlowDeleteNotice = FlowDeleteNotice()) {
+
+    val subFlowWaiter by lazy { SubFlowWaiter(flowExecutionDao, subFlowExecutionDao, flowExecutionEndNotice) }
+
+    val resourcePoolManager by lazy {
+        ResourcePoolManager(resourcePoolDao, flowExecutionDao, "${HostUtils.hostInfo}#$processEngineId".takeLast(128))
+    }
 
     fun getMailNotice(noticeEmail: String): MailNotice {
         return MailNotice.getInstance(mailService, noticeEmail)
@@ -28,4 +48,13 @@ class ProcessEngineStorage(val flowExecutionThreadPool: ThainThreadPool,
         return flowExecutionJobExecutionThreadPool(flowExecutionId)
     }
 
+    /**
+     * 启动 flow，和 ProcessEngine.startProcess 一样
+     *
+     * @return flowExecutionId
+     */
+    fun startFlowExecution(flowId: Long, variables: Map<String, Any>): Long {
+        return flowExecutionStarter(flowId, variables)
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.xiaomi.thain.core.process.component.tools.impl
 
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
 import com.xiaomi.thain.common.exception.ThainRuntimeException
 import com.xiaomi.thain.common.utils.HttpUtils
 import com.xiaomi.thain.common.utils.X5Utils
@@ -10,22 +11,38 @@ import com.xiaomi.thain.core.model.dr.JobDr
 import com.xiaomi.thain.core.process.ProcessEngineStorage
 import com.xiaomi.thain.core.process.runtime.log.JobExecutionLogHandler
 import com.xiaomi.thain.core.process.runtime.storage.FlowExecutionStorage
+import com.xiaomi.thain.core.process.runtime.storage.JobResultCache
+import com.xiaomi.thain.core.process.runtime.subflow.SubFlow
+import java.io.File
 import java.io.IOException
 
+private val REATTACHABLE_STATUS = setOf(FlowExecutionStatus.WAITING, FlowExecutionStatus.RUNNING,
+        FlowExecutionStatus.ERROR_WAITING_RETRY, FlowExecutionStatus.SUCCESS)
+
 /**
  * Date 19-5-30 下午4:31
  *
+ * 节点开启了缓存时，读取的中间结果记录到 jobResultCache
+ *
  * @author liangyongrui@xiaomi.com
  */
-class ComponentToolsImpl(private val jobDr: JobDr,
-                         private val jobExecutionId: Long,
-                         private val flowExecutionId: Long,
-                         private val processEngineStorage: ProcessEngineStorage) : ComponentTools {
+class ComponentToolsImpl @JvmOverloads constructor(
+        private val jobDr: JobDr,
+        private val jobExecutionId: Long,
+        private val flowExecutionId: Long,
+        private val processEngineStorage: ProcessEngineStorage,
+        private val jobResultCache: JobResultCache? = null) : ComponentTools {
 
     private val flowExecutionStorage = FlowExecutionStorage.getInstance(flowExecutionId)
     private val log = JobExecutionLogHandler.getInstance(jobExecutionId, processEngineStorage)
     private val mailService = processEngineStorage.mailService
 
+    /**
+     * 组件启动的子 flow，组件返回后由 JobExecutor 等待它结束
+     */
+    var subFlow: SubFlow? = null
+        private set
+
     override fun sendMail(to: List<String>, subject: String, content: String) {
         mailService.send(to, subject, content)
     }
@@ -48,6 +65,7 @@ class ComponentToolsImpl(private val jobDr: JobDr,
      * @param <T>     自动强制转换
     </T> */
     override fun <T> getStorageValue(jobName: String, key: String): T? {
+        jobResultCache?.recordRead(jobName, key)
         return flowExecutionStorage.get(jobName, key)
     }
 
@@ -97,16 +115,47 @@ class ComponentToolsImpl(private val jobDr: JobDr,
         return HttpUtils.get(url, data)
     }
 
+    @Throws(IOException::class)
+    override fun httpHedgedGet(url: String, data: Map<String, String>): String {
+        val hedgePolicy = hedgePolicy(jobDr.flowId, jobDr.name)
+        val startTime = System.currentTimeMillis()
+        return HttpUtils.hedgedGet(url, data, hedgePolicy.delayMillis()) { hedgePolicy.tryHedge() }
+                .also { hedgePolicy.record(System.currentTimeMillis() - startTime) }
+    }
+
     @Throws(IOException::class)
     override fun httpPost(url: String, headers: Map<String, String>, data: Map<String, *>): String {
         return HttpUtils.post(url, headers, data)
     }
 
+    @Throws(IOException::class)
+    override fun httpGetToFile(url: String, data: Map<String, String>): File {
+        return toTempFile { HttpUtils.getToFile(url, data, it) }
+    }
+
+    @Throws(IOException::class)
+    override fun httpPostToFile(url: String, headers: Map<String, String>, data: Map<String, *>): File {
+        return toTempFile { HttpUtils.postToFile(url, headers, data, it) }
+    }
+
+    private fun toTempFile(request: (File) -> Long): File {
+        val file = File.createTempFile("thain-http-$jobExecutionId-", ".body")
+        try {
+            val size = request(file)
+            log.add("response saved to temp file, $size bytes", LogLevel.DEBUG)
+            return file
+        } catch (e: Exception) {
+            file.delete()
+            throw e
+        }
+    }
+
     override fun getJobExecutionId(): Long {
         return jobExecutionId
     }
 
     override fun getStorage(): Map<Pair<String, String>, Any> {
+        jobResultCache?.recordReadAll()
         return flowExecutionStorage.storageMap
     }
 
@@ -124,4 +173,25 @@ class ComponentToolsImpl(private val jobDr: JobDr,
                 .let { HttpUtils.postForm(url, X5Utils.buildX5Request(it.appId, it.appKey, data)) }
     }
 
+    override fun startSubFlow(flowId: Long, variables: Map<String, Any>, outputs: Map<String, String>): Long {
+        if (subFlow != null) {
+            throw ThainRuntimeException("a job can only start one sub flow")
+        }
+        if (flowId == jobDr.flowId) {
+            throw ThainRuntimeException("sub flow cannot be the flow itself")
+        }
+        // 父 flow execution 掉线恢复后重新执行这个节点时，接着等上次启动的、还没失败的子 flow，不再启动第二个
+        processEngineStorage.subFlowExecutionDao.getLatestSubFlowExecution(flowExecutionId, jobDr.name)
+                ?.takeIf { it.flowId == flowId && FlowExecutionStatus.getInstance(it.status) in REATTACHABLE_STATUS }
+                ?.let {
+                    log.add("re-attach to sub flow execution: ${it.flowExecutionId}", LogLevel.INFO)
+                    subFlow = SubFlow(it.flowExecutionId, outputs)
+                    return it.flowExecutionId
+                }
+        val subFlowExecutionId = processEngineStorage.startFlowExecution(flowId, variables)
+        processEngineStorage.subFlowExecutionDao.addSubFlowExecution(subFlowExecutionId, flowExecutionId, jobDr.name)
+        subFlow = SubFlow(subFlowExecutionId, outputs)
+        return subFlowExecutionId
+    }
+
 }
@@ -0,0 +1,63 @@
+package com.xiaomi.thain.core.process.component.tools.impl
+
+import java.util.concurrent.ConcurrentHashMap
+
+private const val WINDOW_SIZE = 100
+private const val MIN_SAMPLES = 10
+private const val HEDGE_PERCENTILE = 0.95
+
+/**
+ * 每攒够 10 个请求才能对冲一次，即额外的请求不超过 10%。额度按请求数记，避免 0.1 累加的浮点误差
+ */
+private const val REQUESTS_PER_HEDGE = 10
+private const val MAX_BUDGET = 3 * REQUESTS_PER_HEDGE
+
+private val policies = ConcurrentHashMap<String, HedgePolicy>()
+
+/**
+ * 同一个 flow 的同一个节点共用，节点改名后重新统计
+ */
+fun hedgePolicy(flowId: Long, jobName: String): HedgePolicy {
+    return policies.computeIfAbsent("$flowId.$jobName") { HedgePolicy() }
+}
+
+/**
+ * 节点对冲请求的策略：按本机最近 100 次请求延迟的 p95 决定等多久发第二个请求，不到 10 次不对冲。
+ * 每个请求攒 0.1 个额度，对冲一次用掉 1 个，最多攒 3 个，后端整体变慢时额外的请求也不会超过 10%
+ *
+ * @author liangyongrui
+ */
+class HedgePolicy {
+
+    private val latencies = LongArray(WINDOW_SIZE)
+    private var count = 0
+    private var budget = 0
+
+    /**
+     * @return 等多久发第二个请求，为空时不对冲
+     */
+    @Synchronized
+    fun delayMillis(): Long? {
+        budget = minOf(MAX_BUDGET, budget + 1)
+        if (count < MIN_SAMPLES) {
+            return null
+        }
+        val sorted = latencies.copyOf(minOf(count, WINDOW_SIZE)).sorted()
+        return sorted[((sorted.size - 1) * HEDGE_PERCENTILE).toInt()]
+    }
+
+    @Synchronized
+    fun tryHedge(): Boolean {
+        if (budget < REQUESTS_PER_HEDGE) {
+            return false
+        }
+        budget -= REQUESTS_PER_HEDGE
+        return true
+    }
+
+    @Synchronized
+    fun record(latencyMillis: Long) {
+        latencies[count % WINDOW_SIZE] = latencyMillis
+        count++
+    }
+}
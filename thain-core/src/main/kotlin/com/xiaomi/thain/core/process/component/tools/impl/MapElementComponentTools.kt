@@ -0,0 +1,50 @@
+package com.xiaomi.thain.core.process.component.tools.impl
+
+import com.xiaomi.thain.common.exception.ThainRuntimeException
+import com.xiaomi.thain.component.tools.ComponentTools
+import com.xiaomi.thain.core.model.dr.JobDr
+import java.util.concurrent.ConcurrentHashMap
+
+const val MAP_ITEM_KEY = "item"
+const val MAP_ITEM_INDEX_KEY = "itemIndex"
+
+/**
+ * map 节点执行单个元素时使用，putStorage 保存到这个元素自己的结果里，
+ * getStorageValue(节点名, "item") 和 getStorageValue(节点名, "itemIndex") 返回当前元素和它的下标
+ *
+ * @author liangyongrui
+ */
+class MapElementComponentTools(private val jobDr: JobDr,
+                               private val item: Any?,
+                               private val itemIndex: Int,
+                               private val componentTools: ComponentTools) : ComponentTools by componentTools {
+
+    val output: MutableMap<String, Any> = ConcurrentHashMap()
+
+    override fun putStorage(key: String, value: Any) {
+        output[key] = value
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override fun <T> getStorageValue(jobName: String, key: String): T? {
+        if (jobName != jobDr.name) {
+            return componentTools.getStorageValue(jobName, key)
+        }
+        return when (key) {
+            MAP_ITEM_KEY -> item
+            MAP_ITEM_INDEX_KEY -> itemIndex
+            else -> output[key]
+        } as T?
+    }
+
+    override fun <T> getStorageValueOrDefault(jobName: String, key: String, defaultValue: T): T {
+        return getStorageValue<T>(jobName, key) ?: defaultValue
+    }
+
+    /**
+     * 元素执行完就结束了，不能挂起等待子 flow
+     */
+    override fun startSubFlow(flowId: Long, variables: Map<String, Any>, outputs: Map<String, String>): Long {
+        throw ThainRuntimeException("map job cannot start sub flow")
+    }
+}
@@ -19,6 +19,7 @@ import org.slf4j.LoggerFactory
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.LinkedBlockingQueue
+import java.util.function.Supplier
 
 /**
  * @author liangyongrui
@@ -44,13 +45,10 @@ class FlowExecutionLoader(private val processEngineStorage: ProcessEngineStorage
                     continue
                 }
                 idleThread.take()
-                CompletableFuture.runAsync(Runnable {
-                    try {
-                        runFlowExecution(flowExecutionDr, 0)
-                    } finally {
-                        idleThread.put(true)
-                    }
-                }, flowExecutionThreadPool)
+                // 限制同时运行的 flow execution 数，flow 结束后才放回去，运行时不占用线程
+                CompletableFuture.supplyAsync(Supplier { runFlowExecution(flowExecutionDr, 0) }, flowExecutionThreadPool)
+                        .thenCompose { it }
+                        .whenComplete { _, _ -> idleThread.put(true) }
             } catch (e: Exception) {
                 log.error("", e)
                 processEngineStorage.mailService.sendSeriousError(ExceptionUtils.getStackTrace(e))
@@ -70,13 +68,19 @@ class FlowExecutionLoader(private val processEngineStorage: ProcessEngineStorage
         }
     }
 
-    private fun runFlowExecution(flowExecutionDr: FlowExecutionDr, retryNumber: Int) {
-        try {
-            runningFlowExecution.add(flowExecutionDr)
+    /**
+     * @return flow execution 结束后完成
+     */
+    private fun runFlowExecution(flowExecutionDr: FlowExecutionDr, retryNumber: Int): CompletableFuture<Void> {
+        runningFlowExecution.add(flowExecutionDr)
+        val future = try {
             FlowExecutor(flowExecutionDr, processEngineStorage, retryNumber).start()
         } catch (e: Exception) {
             log.error("runFlowExecution: ", e)
-        } finally {
+            CompletableFuture.completedFuture<Void>(null)
+        }
+        return future.whenComplete { _, throwable ->
+            throwable?.let { log.error("runFlowExecution: ", it) }
             runningFlowExecution.remove(flowExecutionDr)
         }
     }
@@ -111,9 +115,16 @@ class FlowExecutionLoader(private val processEngineStorage: ProcessEngineStorage
         }
         val flowExecutionDr = processEngineStorage.flowExecutionDao
                 .getFlowExecution(addFlowExecutionDp.id!!) ?: throw  ThainRuntimeException()
+        retryAsync(flowExecutionDr, retryNumber)
+        return addFlowExecutionDp.id!!
+    }
+
+    /**
+     * 执行已经插入的重试 flow execution
+     */
+    fun retryAsync(flowExecutionDr: FlowExecutionDr, retryNumber: Int) {
         CompletableFuture.runAsync(Runnable { runFlowExecution(flowExecutionDr, retryNumber) },
                 ThainThreadPool.RETRY_THREAD_POOL)
-        return addFlowExecutionDp.id!!
     }
 
     init {
@@ -10,7 +10,6 @@ import com.xiaomi.thain.common.exception.ThainException
 import com.xiaomi.thain.common.exception.ThainRuntimeException
 import com.xiaomi.thain.common.model.JobExecutionModel
 import com.xiaomi.thain.common.model.dr.FlowExecutionDr
-import com.xiaomi.thain.common.utils.copyOf
 import com.xiaomi.thain.core.constant.FlowExecutionTriggerType
 import com.xiaomi.thain.core.model.dr.JobDr
 import com.xiaomi.thain.core.process.ProcessEngineStorage
@@ -22,7 +21,9 @@ import com.xiaomi.thain.core.thread.pool.ThainThreadPool
 import org.apache.commons.lang3.exception.ExceptionUtils
 import org.slf4j.LoggerFactory
 import java.util.concurrent.CompletableFuture
-import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CompletionException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
 
 /**
  * 任务执行器: 创建执行任务，管理执行流程
@@ -37,9 +38,11 @@ class FlowExecutor(flowExecutionDr: FlowExecutionDr,
     private val flowDr = processEngineStorage.flowDao.getFlow(flowExecutionDr.flowId) ?: throw ThainException()
 
     /**
-     * 监控节点是否执行完
+     * 还没结束的节点数，节点结束时先把下游节点加进来再减自己，减到 0 时所有节点都执行完了
      */
-    private val jobFutureQueue = ConcurrentLinkedQueue<CompletableFuture<Void>>()
+    private val pendingJobs = AtomicInteger()
+
+    private val jobsDone = CompletableFuture<Void>()
 
     private val flowExecutionId: Long
     private val jobConditionChecker: JobConditionChecker
@@ -55,19 +58,22 @@ class FlowExecutor(flowExecutionDr: FlowExecutionDr,
 
 
     /**
-     * 流程执行入口
+     * 流程执行入口，不等节点执行完，调用方线程直接返回。
+     * 等待子 flow、资源的节点不占用线程，父 flow 和子 flow 用同一个线程池也不会互相等
+     *
+     * @return 所有节点执行完、flow execution 结束后完成
      */
-    fun start() {
+    fun start(): CompletableFuture<Void> {
+        // 启动时先占一个，避免第一批节点还没加完就减到 0
+        pendingJobs.incrementAndGet()
         try {
             flowExecutionService.startFlowExecution()
             runExecutableJobs()
-            while (!jobFutureQueue.isEmpty()) {
-                jobFutureQueue.poll().join()
-            }
+            jobFinished(null)
         } catch (e: Exception) {
-            log.error("", e)
-            flowExecutionService.addError(ExceptionUtils.getStackTrace(e))
-        } finally {
+            jobFinished(e)
+        }
+        return jobsDone.whenComplete { _, _ ->
             try {
                 flowExecutionService.endFlowExecution()
             } finally {
@@ -77,6 +83,17 @@ class FlowExecutor(flowExecutionDr: FlowExecutionDr,
         }
     }
 
+    private fun jobFinished(throwable: Throwable?) {
+        if (throwable != null) {
+            val e = (throwable as? CompletionException)?.cause ?: throwable
+            log.error("", e)
+            flowExecutionService.addError(ExceptionUtils.getStackTrace(e))
+        }
+        if (pendingJobs.decrementAndGet() == 0) {
+            jobsDone.complete(null)
+        }
+    }
+
     /**
      * 执行可以执行的节点
      */
@@ -98,24 +115,40 @@ class FlowExecutor(flowExecutionDr: FlowExecutionDr,
             }
         }
         executableJobs.forEach {
-            val future = CompletableFuture.runAsync(Runnable {
-                flowExecutionService.addInfo("Start executing the job [${it.name}]")
-                try {
+            val claims = it.resourceClaimMap
+            if (claims.isNotEmpty()) {
+                flowExecutionService.addInfo("Job[${it.name}] waiting for resources: $claims")
+            }
+            pendingJobs.incrementAndGet()
+            // 等资源和等待子 flow 的节点都只挂 future, 不占用节点线程, 拿到资源或者子 flow 结束后在唤醒的线程里继续
+            processEngineStorage.resourcePoolManager.acquire(flowExecutionId, claims).thenCompose { _ ->
+                CompletableFuture.supplyAsync(Supplier {
+                    flowExecutionService.addInfo("Start executing the job [${it.name}]")
                     JobExecutor.start(flowExecutionId, it, jobExecutionModelMap[it.id]
-                            ?: error(""), processEngineStorage)
-                } catch (e: Exception) {
-                    flowExecutionService.addError("Job[${it.name}] exception: ${ExceptionUtils.getRootCauseMessage(e)}")
-                    return@Runnable
-                } catch (e: Throwable) {
-                    processEngineStorage.mailService.sendSeriousError(ThrowableUtils.extractStackTrace(e))
-                    flowExecutionService.addError("Job[${it.name}] exception: ${e.message}")
-                    return@Runnable
+                            ?: error(""), processEngineStorage, flowExecutionJobThreadPool)
+                }, flowExecutionJobThreadPool).thenCompose { jobFuture -> jobFuture }
+                        .whenComplete { _, _ -> processEngineStorage.resourcePoolManager.release(claims) }
+            }.handle { _, throwable ->
+                when (val e = (throwable as? CompletionException)?.cause ?: throwable) {
+                    null -> true
+                    is Exception -> {
+                        flowExecutionService.addError("Job[${it.name}] exception: ${ExceptionUtils.getRootCauseMessage(e)}")
+                        false
+                    }
+                    else -> {
+                        processEngineStorage.mailService.sendSeriousError(ThrowableUtils.extractStackTrace(e))
+                        flowExecutionService.addError("Job[${it.name}] exception: ${e.message}")
+                        false
+                    }
+                }
+            }.thenAccept { success ->
+                if (!success) {
+                    return@thenAccept
                 }
                 flowExecutionService.addInfo("Execute job[${it.name}] complete")
                 flowExecutionStorage.addFinishJob(it.name)
                 runExecutableJobs()
-            }, flowExecutionJobThreadPool)
-            jobFutureQueue.add(future)
+            }.whenComplete { _, throwable -> jobFinished(throwable) }
         }
     }
 
@@ -129,6 +162,27 @@ class FlowExecutor(flowExecutionDr: FlowExecutionDr,
                             .toList()
                 }
 
+    /**
+     * 从检查点恢复已经执行成功的节点和它们的中间结果，只执行剩下的节点。
+     * 检查点来自节点掉线前的这次执行，或者只重试失败节点时上一次执行（见 RetryQueue），
+     * 失败的节点没有检查点，依赖它的下游节点也没有执行过，都会重新执行
+     */
+    private fun restoreCheckpoints(jobModelList: List<JobDr>) {
+        val jobNames = jobModelList.map { it.name }.toSet()
+        val checkpoints = processEngineStorage.jobCheckpointDao.getCheckpoints(flowExecutionId)
+                .filter { it.jobName in jobNames }
+        if (checkpoints.isEmpty()) {
+            return
+        }
+        checkpoints.forEach { checkpoint ->
+            checkpoint.storage
+                    ?.let { JSON.parseObject(it) }
+                    ?.forEach { (key, value) -> flowExecutionStorage.put(checkpoint.jobName, key, value) }
+            flowExecutionStorage.addFinishJob(checkpoint.jobName)
+        }
+        flowExecutionService.addInfo("Skip jobs finished by the previous run: ${checkpoints.map { it.jobName }}")
+    }
+
     /**
      * 获取FlowExecutionExecutor实例
      * effect：为了获取flowExecutionId 会在数据库中创建一个flowExecution
@@ -140,14 +194,15 @@ class FlowExecutor(flowExecutionDr: FlowExecutionDr,
             flowExecutionId = flowExecutionDr.id
             val jobModelList = processEngineStorage.jobDao.getJobs(flowDr.id)
             flowExecutionService = FlowExecutionService(flowExecutionDr, flowDr, retryNumber, processEngineStorage)
-            notExecutedJobsPool = jobModelList.copyOf()
             jobConditionChecker = JobConditionChecker.getInstance(flowExecutionId)
             flowExecutionStorage = FlowExecutionStorage.getInstance(flowExecutionId)
             flowExecutionDr.variables
                     ?.let { JSON.parseObject(it, object : TypeReference<Map<String, String>>() {}) }
                     ?.entries?.forEach { flowExecutionStorage.put(GLOBAL_JOB_NAME, it.key, it.value) }
+            restoreCheckpoints(jobModelList)
+            notExecutedJobsPool = jobModelList.filter { !flowExecutionStorage.finished(it.name) }
             flowExecutionJobThreadPool = processEngineStorage.flowExecutionJobThreadPool(flowExecutionId)
-            jobExecutionModelMap = jobModelList
+            jobExecutionModelMap = notExecutedJobsPool
                     .map {
                         it.id to JobExecutionModel.builder()
                                 .jobId(it.id)
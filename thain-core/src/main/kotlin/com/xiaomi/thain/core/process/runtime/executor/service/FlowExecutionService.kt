@@ -1,7 +1,5 @@
 package com.xiaomi.thain.core.process.runtime.executor.service
 
-import com.alibaba.fastjson.JSON
-import com.alibaba.fastjson.TypeReference
 import com.xiaomi.thain.common.constant.FlowExecutionStatus
 import com.xiaomi.thain.common.constant.FlowLastRunStatus
 import com.xiaomi.thain.common.model.dr.FlowExecutionDr
@@ -111,8 +109,7 @@ class FlowExecutionService(private val flowExecutionDr: FlowExecutionDr,
                         flowExecutionEndStatus = FlowExecutionStatus.ERROR_WAITING_RETRY
                         ProcessEngine.getInstance(processEngineStorage.processEngineId).thainFacade
                                 .schedulerEngine
-                                .addRetry(flowDr, retryNumber + 1,
-                                        JSON.parseObject(flowExecutionDr.variables, object : TypeReference<Map<String, String>>() {}))
+                                .addRetry(flowExecutionDr.id, flowDr, retryNumber + 1)
                     }
                 }
             }
@@ -121,6 +118,10 @@ class FlowExecutionService(private val flowExecutionDr: FlowExecutionDr,
             }
         } finally {
             processEngineStorage.flowExecutionDao.updateFlowExecutionStatus(flowExecutionDr.id, flowExecutionEndStatus.code)
+            flowExecutionDr.createTime?.let {
+                processEngineStorage.flowExecutionStatusHistory.record(it.time, flowExecutionEndStatus)
+            }
+            processEngineStorage.flowExecutionEndNotice.notice(flowExecutionDr.id, flowExecutionEndStatus)
         }
     }
 
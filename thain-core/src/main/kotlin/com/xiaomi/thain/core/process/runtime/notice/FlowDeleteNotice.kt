@@ -0,0 +1,35 @@
+package com.xiaomi.thain.core.process.runtime.notice
+
+import org.slf4j.LoggerFactory
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * 本机删除 flow 的通知，在数据库删除之后调用。
+ * 引擎内部的删除（比如新建 flow 调度失败后回滚）也会通知，外部的缓存靠它失效
+ *
+ * @author liangyongrui
+ */
+class FlowDeleteNotice {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    private val listeners = CopyOnWriteArrayList<Listener>()
+
+    fun addListener(listener: Listener) {
+        listeners.add(listener)
+    }
+
+    fun notice(flowId: Long) {
+        listeners.forEach {
+            try {
+                it.onDelete(flowId)
+            } catch (e: Exception) {
+                log.warn("flow delete listener failed: {}", flowId, e)
+            }
+        }
+    }
+
+    interface Listener {
+        fun onDelete(flowId: Long)
+    }
+}
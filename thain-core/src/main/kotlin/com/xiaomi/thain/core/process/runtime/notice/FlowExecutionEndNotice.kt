@@ -0,0 +1,36 @@
+package com.xiaomi.thain.core.process.runtime.notice
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import org.slf4j.LoggerFactory
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * 本机 flow execution 结束的通知，在结束状态写入数据库之后调用。
+ * 监听器在执行引擎的线程里同步调用，不能做耗时操作
+ *
+ * @author liangyongrui
+ */
+class FlowExecutionEndNotice {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    private val listeners = CopyOnWriteArrayList<Listener>()
+
+    fun addListener(listener: Listener) {
+        listeners.add(listener)
+    }
+
+    fun notice(flowExecutionId: Long, status: FlowExecutionStatus) {
+        listeners.forEach {
+            try {
+                it.onEnd(flowExecutionId, status)
+            } catch (e: Exception) {
+                log.warn("flow execution end listener failed: {}", flowExecutionId, e)
+            }
+        }
+    }
+
+    interface Listener {
+        fun onEnd(flowExecutionId: Long, status: FlowExecutionStatus)
+    }
+}
@@ -0,0 +1,227 @@
+package com.xiaomi.thain.core.process.runtime.resource
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import com.xiaomi.thain.common.exception.ThainRuntimeException
+import com.xiaomi.thain.core.dao.FlowExecutionDao
+import com.xiaomi.thain.core.dao.ResourcePoolDao
+import org.slf4j.LoggerFactory
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+private const val TICK_MILLIS = 2_000L
+private const val LEASE_MILLIS = 30_000L
+private const val RENEW_MILLIS = 10_000L
+
+/**
+ * 本地空闲超过这个时间的还给资源池，连续执行的 job 不用每次都租
+ */
+private const val IDLE_MILLIS = 5_000L
+
+/**
+ * 集群共享的资源池（thain_resource_pool），节点的 resource_claims 声明要用哪些、用多少。
+ *
+ * 本机按需从 thain_resource_lease 租用，租到的缓存在本地，本机的 job 先用本地的，不够再去数据库租；
+ * 用完放回本地，空闲 5 秒后还给资源池。租约 30 秒过期、每 10 秒续约，节点挂了租约过期后别的节点接着用。
+ * 申请、释放和定时任务都在一个线程里处理，状态不用加锁，等资源的 job 只挂一个 future，不占用线程。
+ * 一个 job 申请多个资源池时要么全部拿到、要么都不拿；排在前面没拿到的申请挡住后面用同一个资源池的申请，
+ * 大的申请不会一直被小的插队。其他节点归还的资源没有通知，每 2 秒重试一次
+ *
+ * @author liangyongrui
+ */
+class ResourcePoolManager(private val resourcePoolDao: ResourcePoolDao,
+                          private val flowExecutionDao: FlowExecutionDao,
+                          private val holder: String) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    private val executor = Executors.newSingleThreadScheduledExecutor { r ->
+        Thread(r, "thain-resource-pool").apply { isDaemon = true }
+    }
+
+    // 以下只在 executor 线程里访问
+    private val leased = mutableMapOf<String, Int>()
+    private val inUse = mutableMapOf<String, Int>()
+    private val idleSince = mutableMapOf<String, Long>()
+    private val waiting = mutableListOf<Request>()
+    private var capacities = mapOf<String, Int>()
+    private var nextRenewTime = 0L
+
+    init {
+        executor.scheduleWithFixedDelay({ tick() }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * @param claims 资源池名 -> 数量
+     * @return 拿到全部资源时完成；资源池不存在、申请超过容量、flow execution 不在运行了时异常完成
+     */
+    fun acquire(flowExecutionId: Long, claims: Map<String, Int>): CompletableFuture<Void> {
+        val positiveClaims = claims.filterValues { it > 0 }
+        if (positiveClaims.isEmpty()) {
+            return CompletableFuture.completedFuture(null)
+        }
+        val request = Request(flowExecutionId, positiveClaims.toSortedMap())
+        executor.execute {
+            waiting.add(request)
+            grant(System.currentTimeMillis())
+        }
+        return request.future
+    }
+
+    /**
+     * 归还 acquire 拿到的资源
+     */
+    fun release(claims: Map<String, Int>) {
+        if (claims.values.none { it > 0 }) {
+            return
+        }
+        executor.execute {
+            val now = System.currentTimeMillis()
+            claims.filterValues { it > 0 }.forEach { (pool, permits) ->
+                inUse[pool] = (inUse[pool] ?: 0) - permits
+                idleSince[pool] = now
+            }
+            grant(now)
+        }
+    }
+
+    private fun tick() {
+        try {
+            val now = System.currentTimeMillis()
+            resourcePoolDao.getPools()?.let { pools -> capacities = pools.associate { it.name to it.capacity } }
+            if (now >= nextRenewTime) {
+                renew(now)
+                nextRenewTime = now + RENEW_MILLIS
+            }
+            cancelStopped()
+            returnIdle(now)
+            grant(now)
+        } catch (e: Exception) {
+            log.error("resource pool:", e)
+        }
+    }
+
+    /**
+     * 按申请顺序分配
+     */
+    private fun grant(now: Long) {
+        val blockedPools = mutableSetOf<String>()
+        val granted = mutableListOf<Request>()
+        val failed = mutableListOf<Pair<Request, String>>()
+        val iterator = waiting.iterator()
+        while (iterator.hasNext()) {
+            val request = iterator.next()
+            if (request.claims.keys.any { it in blockedPools }) {
+                continue
+            }
+            val invalid = invalid(request)
+            if (invalid != null) {
+                iterator.remove()
+                failed.add(request to invalid)
+            } else if (take(request.claims, now)) {
+                iterator.remove()
+                granted.add(request)
+            } else {
+                blockedPools.addAll(request.claims.keys)
+            }
+        }
+        granted.forEach { it.future.complete(null) }
+        failed.forEach { (request, message) -> request.future.completeExceptionally(ThainRuntimeException(message)) }
+    }
+
+    private fun invalid(request: Request): String? {
+        if (request.claims.keys.any { it !in capacities }) {
+            resourcePoolDao.getPools()?.let { pools -> capacities = pools.associate { it.name to it.capacity } }
+        }
+        return request.claims.entries
+                .firstOrNull { (pool, permits) -> permits > capacities[pool] ?: 0 }
+                ?.let { (pool, permits) ->
+                    capacities[pool]
+                            ?.let { "resource claim $pool: $permits exceeds the pool capacity: $it" }
+                            ?: "resource pool does not exist: $pool"
+                }
+    }
+
+    /**
+     * 先用本地缓存的，不够的去数据库租。有一个资源池不够时，已经占用的放回去，
+     * 这些资源池租着没用的部分（这次租的和之前缓存的）也还给资源池：
+     * 等资源的时候不能占着别人要的资源，否则两个节点交叉申请时会互相等
+     */
+    private fun take(claims: Map<String, Int>, now: Long): Boolean {
+        val taken = mutableListOf<String>()
+        for ((pool, permits) in claims) {
+            val used = inUse[pool] ?: 0
+            if ((leased[pool] ?: 0) - used < permits) {
+                if (resourcePoolDao.acquire(pool, holder, used + permits, now, now + LEASE_MILLIS) != true) {
+                    taken.forEach {
+                        inUse[it] = inUse.getValue(it) - claims.getValue(it)
+                        idleSince[it] = now
+                    }
+                    claims.keys.forEach { shrink(it, now) }
+                    return false
+                }
+                leased[pool] = used + permits
+            }
+            inUse[pool] = used + permits
+            taken.add(pool)
+        }
+        return true
+    }
+
+    /**
+     * 租约缩小到正在用的数量
+     */
+    private fun shrink(pool: String, now: Long) {
+        val used = inUse[pool] ?: 0
+        if ((leased[pool] ?: 0) > used) {
+            resourcePoolDao.setLease(pool, holder, used, now + LEASE_MILLIS)
+            leased[pool] = used
+        }
+    }
+
+    /**
+     * 续约时租约已经过期被删掉的重新插入，这期间别的节点可能租走了，会短暂超过容量
+     */
+    private fun renew(now: Long) {
+        leased.filterValues { it > 0 }.forEach { (pool, permits) ->
+            resourcePoolDao.setLease(pool, holder, permits, now + LEASE_MILLIS)
+        }
+    }
+
+    private fun returnIdle(now: Long) {
+        val wanted = waiting.flatMap { it.claims.keys }.toSet()
+        leased.keys.toList().forEach { pool ->
+            val used = inUse[pool] ?: 0
+            if (leased.getValue(pool) > used && pool !in wanted && now - (idleSince[pool] ?: 0) >= IDLE_MILLIS) {
+                shrink(pool, now)
+            }
+        }
+    }
+
+    /**
+     * flow execution 被 kill 或者已经结束时，不再等资源
+     */
+    private fun cancelStopped() {
+        if (waiting.isEmpty()) {
+            return
+        }
+        val flowExecutionDrList = flowExecutionDao.getFlowExecutionList(waiting.map { it.flowExecutionId }.distinct())
+        // 查询失败时返回空列表，等下次
+        if (flowExecutionDrList.isEmpty()) {
+            return
+        }
+        val running = flowExecutionDrList
+                .filter { it.status == FlowExecutionStatus.RUNNING.code }
+                .map { it.id }
+                .toSet()
+        val stopped = waiting.filter { it.flowExecutionId !in running }
+        waiting.removeAll(stopped)
+        stopped.forEach {
+            it.future.completeExceptionally(ThainRuntimeException("flow execution is not running: ${it.flowExecutionId}"))
+        }
+    }
+
+    private class Request(val flowExecutionId: Long, val claims: Map<String, Int>) {
+        val future = CompletableFuture<Void>()
+    }
+}
@@ -0,0 +1,65 @@
+package com.xiaomi.thain.core.process.runtime.statistics
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import java.util.concurrent.TimeUnit
+
+/**
+ * 本机结束的 flow execution 按分钟计数（成功、失败），环形缓冲区，只保留最近 capacityMinutes 分钟。
+ * 分钟按 flow execution 的创建时间算，和数据库按 create_time 统计的口径一致
+ *
+ * @author liangyongrui
+ */
+class FlowExecutionStatusHistory(private val capacityMinutes: Int = TimeUnit.DAYS.toMinutes(1).toInt()) {
+
+    /**
+     * 开始统计的分钟，这之前创建的 execution 可能没统计全
+     */
+    private val startMinute = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis()) + 1
+
+    private val minutes = LongArray(capacityMinutes) { -1 }
+    private val successCounts = LongArray(capacityMinutes)
+    private val errorCounts = LongArray(capacityMinutes)
+
+    /**
+     * 能保证完整的最早时间（毫秒）
+     */
+    val coverageStart: Long
+        get() = TimeUnit.MINUTES.toMillis(maxOf(startMinute, currentMinute() - capacityMinutes + 1))
+
+    @Synchronized
+    fun record(createTime: Long, status: FlowExecutionStatus) {
+        val minute = TimeUnit.MILLISECONDS.toMinutes(createTime)
+        if (minute <= currentMinute() - capacityMinutes) {
+            return
+        }
+        val index = (minute % capacityMinutes).toInt()
+        if (minutes[index] != minute) {
+            minutes[index] = minute
+            successCounts[index] = 0
+            errorCounts[index] = 0
+        }
+        when (status) {
+            FlowExecutionStatus.SUCCESS -> successCounts[index]++
+            FlowExecutionStatus.ERROR -> errorCounts[index]++
+            else -> return
+        }
+    }
+
+    /**
+     * [startTime, endTime) 内有数据的分钟，时间都是毫秒
+     */
+    @Synchronized
+    fun snapshot(startTime: Long, endTime: Long): List<Bucket> {
+        val oldest = currentMinute() - capacityMinutes
+        return minutes.indices
+                .filter { minutes[it] > oldest }
+                .filter { TimeUnit.MINUTES.toMillis(minutes[it]) in startTime until endTime }
+                .filter { successCounts[it] > 0 || errorCounts[it] > 0 }
+                .map { Bucket(TimeUnit.MINUTES.toMillis(minutes[it]), successCounts[it], errorCounts[it]) }
+                .sortedBy { it.time }
+    }
+
+    private fun currentMinute() = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis())
+
+    data class Bucket(val time: Long, val successCount: Long, val errorCount: Long)
+}
@@ -1,6 +1,17 @@
 package com.xiaomi.thain.core.process.runtime.storage
 
+import com.alibaba.fastjson.JSON
+import com.alibaba.fastjson.serializer.SerializerFeature
+import com.google.common.collect.Interners
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.IOException
+import java.io.OutputStream
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * Date 19-5-17 上午9:43
@@ -11,14 +22,91 @@ import java.util.concurrent.ConcurrentHashMap
  */
 const val GLOBAL_JOB_NAME = "g"
 
-class FlowExecutionStorage {
+/**
+ * 单个值超过这个大小直接写到本地文件
+ */
+private const val SPILL_VALUE_BYTES = 1L shl 20
+
+/**
+ * 单个 flow execution 和整个引擎放在内存里的上限，超过后新的值写到本地文件
+ */
+private const val EXECUTION_MEMORY_BYTES = 64L shl 20
+private const val ENGINE_MEMORY_BYTES = 512L shl 20
+
+/**
+ * 检查点和节点结果缓存存在 mediumtext 里，按 utf8mb4 最多 4 字节一个字符算不超过 16M
+ */
+const val JOB_STORAGE_JSON_MAX_CHARS = 4L shl 20
+
+/**
+ * 节点名和 key 在各个 flow execution 里大量重复，只保留一份
+ */
+private val KEY_INTERNER = Interners.newWeakInterner<String>()
+
+private val SPILL_ROOT by lazy { Files.createTempDirectory("thain-storage-").toFile().apply { deleteOnExit() } }
+
+private val ENGINE_MEMORY = AtomicLong()
+
+/**
+ * 按节点名、key 两层保存，读的时候不用创建 key 对象。
+ * 值的大小按字符串长度或者 json 长度估算，大的值和超过内存预算后的值写到本地文件，读的时候再解析，
+ * 写到文件里的非字符串的值读出来是 JSONObject、JSONArray。
+ * 结束时由 FlowExecutor 删除，漏删的由 FlowExecutionStorageReaper 清理
+ */
+class FlowExecutionStorage private constructor(private val flowExecutionId: Long) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
 
-    val storageMap = ConcurrentHashMap<Pair<String, String>, Any>()
+    private val storage = ConcurrentHashMap<String, ConcurrentHashMap<String, StoredValue>>()
 
     private val finishJob = ConcurrentHashMap.newKeySet<String>()
 
+    private val memoryBytes = AtomicLong()
+
+    private val spillCount = AtomicInteger()
+
+    private val spillDir by lazy { File(SPILL_ROOT, flowExecutionId.toString()).apply { mkdirs() } }
+
+    @Volatile
+    var lastAccessTime = System.currentTimeMillis()
+        private set
+
+    /**
+     * 所有中间结果的只读视图，按 key 读的时候只读这一个值（写到文件里的才读文件），遍历时才全部读出来
+     */
+    val storageMap: Map<Pair<String, String>, Any> = StorageMapView()
+
+    /**
+     * 所有中间结果的 (节点名, key)，不读值
+     */
+    fun keys(): List<Pair<String, String>> {
+        return storage.flatMap { (jobName, values) -> values.keys.map { jobName to it } }
+    }
+
+    fun contains(jobName: String, key: String): Boolean {
+        return storage[jobName]?.containsKey(key) ?: false
+    }
+
     fun put(jobName: String, key: String, value: Any) {
-        storageMap[jobName to key] = value
+        lastAccessTime = System.currentTimeMillis()
+        // map 的 key 排好序，同样的值写到文件里的内容也一样
+        val json = if (value is String || value is Number || value is Boolean) null
+        else JSON.toJSONString(value, SerializerFeature.MapSortField)
+        val bytes = 2L * (json?.length ?: value.toString().length) + 32
+        // 数字、布尔值很小，一直放在内存里，读出来的类型不变
+        val spillable = value is String || json != null
+        val storedValue = if (spillable && (bytes >= SPILL_VALUE_BYTES
+                        || memoryBytes.get() + bytes > EXECUTION_MEMORY_BYTES
+                        || ENGINE_MEMORY.get() + bytes > ENGINE_MEMORY_BYTES)) {
+            spill(json ?: value.toString(), json == null, bytes)
+        } else {
+            memoryBytes.addAndGet(bytes)
+            ENGINE_MEMORY.addAndGet(bytes)
+            InMemoryValue(value, bytes)
+        }
+        storage.computeIfAbsent(KEY_INTERNER.intern(jobName)) { ConcurrentHashMap() }
+                .put(KEY_INTERNER.intern(key), storedValue)
+                ?.let { release(it) }
     }
 
     /**
@@ -35,9 +123,116 @@ class FlowExecutionStorage {
         return finishJob.contains(jobName)
     }
 
+    /**
+     * 节点 put 的所有中间结果的 json，用于保存检查点和节点结果缓存。
+     * 先按内存里的估算值和文件大小判断，超过 maxChars 的不读文件直接返回 null
+     */
+    fun jobStorageJson(jobName: String, maxChars: Long = JOB_STORAGE_JSON_MAX_CHARS): String? {
+        val values = storage[jobName] ?: return "{}"
+        val estimatedChars = values.values.map {
+            when (it) {
+                is InMemoryValue -> it.bytes / 2
+                is SpilledValue -> it.file.length()
+            }
+        }.sum()
+        if (estimatedChars > maxChars) {
+            return null
+        }
+        return JSON.toJSONString(values.mapNotNull { (key, value) -> value.get()?.let { key to it } }.toMap())
+                .takeIf { it.length <= maxChars }
+    }
+
     @Suppress("UNCHECKED_CAST")
     fun <T> get(jobName: String, key: String): T? {
-        return storageMap[jobName to key]?.let { it as T }
+        lastAccessTime = System.currentTimeMillis()
+        return storage[jobName]?.get(key)?.get()?.let { it as T }
+    }
+
+    /**
+     * 把值的文本写到 out：字符串原样，其他的是 json，写到文件里的直接拷贝文件，不读进内存
+     *
+     * @return 是不是字符串，不存在时返回 null
+     */
+    fun copyValueTo(jobName: String, key: String, out: OutputStream): Boolean? {
+        lastAccessTime = System.currentTimeMillis()
+        return when (val storedValue = storage[jobName]?.get(key)) {
+            null -> null
+            is InMemoryValue -> {
+                val value = storedValue.value
+                val text = value as? String ?: JSON.toJSONString(value, SerializerFeature.MapSortField)
+                out.write(text.toByteArray(StandardCharsets.UTF_8))
+                value is String
+            }
+            is SpilledValue -> {
+                try {
+                    storedValue.file.inputStream().use { it.copyTo(out) }
+                } catch (e: IOException) {
+                    return null
+                }
+                storedValue.string
+            }
+        }
+    }
+
+    private fun spill(text: String, string: Boolean, bytes: Long): StoredValue {
+        val file = File(spillDir, "${spillCount.incrementAndGet()}.value")
+        file.writeText(text)
+        log.debug("flow execution {} spill {} bytes to {}", flowExecutionId, bytes, file)
+        return SpilledValue(file, string)
+    }
+
+    private fun release(storedValue: StoredValue) {
+        when (storedValue) {
+            is InMemoryValue -> {
+                memoryBytes.addAndGet(-storedValue.bytes)
+                ENGINE_MEMORY.addAndGet(-storedValue.bytes)
+            }
+            is SpilledValue -> storedValue.file.delete()
+        }
+    }
+
+    private fun clear() {
+        storage.values.flatMap { it.values }.forEach { release(it) }
+        storage.clear()
+        File(SPILL_ROOT, flowExecutionId.toString()).deleteRecursively()
+    }
+
+    private inner class StorageMapView : AbstractMap<Pair<String, String>, Any>() {
+
+        override val size: Int
+            get() = storage.values.sumBy { it.size }
+
+        override fun isEmpty(): Boolean = storage.values.all { it.isEmpty() }
+
+        override fun containsKey(key: Pair<String, String>): Boolean = contains(key.first, key.second)
+
+        override fun get(key: Pair<String, String>): Any? = get<Any>(key.first, key.second)
+
+        override val entries: Set<Map.Entry<Pair<String, String>, Any>>
+            get() = keys().mapNotNull { key -> get(key)?.let { java.util.AbstractMap.SimpleImmutableEntry(key, it) } }
+                    .toSet()
+    }
+
+    private sealed class StoredValue {
+        abstract fun get(): Any?
+    }
+
+    private class InMemoryValue(val value: Any, val bytes: Long) : StoredValue() {
+        override fun get(): Any? = value
+    }
+
+    /**
+     * 删除后读不到
+     */
+    private class SpilledValue(val file: File, val string: Boolean) : StoredValue() {
+        override fun get(): Any? {
+            val text = try {
+                file.readText()
+            } catch (e: Exception) {
+                return null
+            }
+            return if (string) text else JSON.parse(text)
+        }
     }
 
     companion object {
@@ -45,11 +240,19 @@ class FlowExecutionStorage {
 
         @JvmStatic
         fun getInstance(flowExecutionId: Long): FlowExecutionStorage {
-            return FLOW_EXECUTION_STORAGE_MAP.computeIfAbsent(flowExecutionId) { FlowExecutionStorage() }
+            return FLOW_EXECUTION_STORAGE_MAP.computeIfAbsent(flowExecutionId) { FlowExecutionStorage(it) }
         }
 
         fun drop(flowExecutionId: Long) {
-            FLOW_EXECUTION_STORAGE_MAP.remove(flowExecutionId)
+            FLOW_EXECUTION_STORAGE_MAP.remove(flowExecutionId)?.clear()
+        }
+
+        /**
+         * 超过 idleMillis 没有读写的 flow execution
+         */
+        fun idleFlowExecutionIds(idleMillis: Long): List<Long> {
+            val now = System.currentTimeMillis()
+            return FLOW_EXECUTION_STORAGE_MAP.filterValues { now - it.lastAccessTime > idleMillis }.keys.toList()
         }
     }
 
@@ -0,0 +1,55 @@
+package com.xiaomi.thain.core.process.runtime.storage
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import com.xiaomi.thain.core.dao.FlowExecutionDao
+import com.xiaomi.thain.core.thread.pool.ThainThreadPool
+import org.slf4j.LoggerFactory
+import java.util.concurrent.TimeUnit
+
+private const val IDLE_MILLIS = 5 * 60 * 1000L
+
+/**
+ * 清理没有被删掉的 FlowExecutionStorage：5 分钟没有读写、并且已经不在运行的 flow execution。
+ * 等资源、等子 flow 的 flow execution 还在运行，不会被清理
+ *
+ * @author liangyongrui
+ */
+class FlowExecutionStorageReaper(private val flowExecutionDao: FlowExecutionDao) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    /**
+     * 每分钟检查一次
+     */
+    private fun reap() {
+        while (true) {
+            try {
+                TimeUnit.MINUTES.sleep(1)
+                val idleIds = FlowExecutionStorage.idleFlowExecutionIds(IDLE_MILLIS)
+                if (idleIds.isEmpty()) {
+                    continue
+                }
+                val flowExecutionDrList = flowExecutionDao.getFlowExecutionList(idleIds)
+                // 查询失败时返回空列表，等下次
+                if (flowExecutionDrList.isEmpty()) {
+                    continue
+                }
+                val running = flowExecutionDrList.filter { it.status == FlowExecutionStatus.RUNNING.code }
+                        .map { it.id }
+                        .toSet()
+                val stopped = idleIds.filter { it !in running }
+                stopped.forEach { FlowExecutionStorage.drop(it) }
+                log.info("drop {} leaked flow execution storages", stopped.size)
+            } catch (e: InterruptedException) {
+                return
+            } catch (e: Exception) {
+                log.error("", e)
+            }
+        }
+    }
+
+    init {
+        log.info("init FlowExecutionStorageReaper")
+        ThainThreadPool.DEFAULT_THREAD_POOL.execute { reap() }
+    }
+}
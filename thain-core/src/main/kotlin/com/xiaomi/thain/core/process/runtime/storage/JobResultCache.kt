@@ -0,0 +1,123 @@
+package com.xiaomi.thain.core.process.runtime.storage
+
+import com.alibaba.fastjson.JSON
+import com.google.common.hash.Funnels
+import com.google.common.hash.Hashing
+import com.google.common.io.CountingOutputStream
+import com.xiaomi.thain.core.model.dr.JobDr
+import com.xiaomi.thain.core.process.ProcessEngineStorage
+import com.xiaomi.thain.core.process.runtime.checker.JobConditionChecker
+import org.slf4j.LoggerFactory
+import java.nio.charset.StandardCharsets
+import java.util.*
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * 节点结果缓存，节点开启 cacheEnabled 后，输入不变时直接使用上次 put 到 storage 的结果，不再执行组件。
+ *
+ * 输入指纹：组件、properties 和节点开始时 condition 里的上游节点、mapSource 的节点、全局变量的所有中间结果，
+ * 以及 properties 里以 jobName.key 引用的中间结果（referenceData、${jobName.key} 等）。
+ * 写到文件里的大值按流计算，不读进内存。
+ * 执行时组件通过 ComponentTools 的读取由 [recordRead]、[recordReadAll] 记录，读了指纹以外的中间结果的这次结果不缓存。
+ * 缓存的有效期和每个节点的最大条数按 flow 配置（cacheTtlSeconds、cacheMaxEntries）
+ *
+ * @author liangyongrui
+ */
+class JobResultCache(private val jobDr: JobDr,
+                     private val flowExecutionStorage: FlowExecutionStorage,
+                     private val processEngineStorage: ProcessEngineStorage) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    /**
+     * 指纹包含的中间结果，执行前确定
+     */
+    private val inputs = inputs()
+
+    /**
+     * 执行前计算，执行过程中 storage 的变化不影响指纹
+     */
+    private val fingerprint = fingerprint()
+
+    /**
+     * 组件读了指纹以外的中间结果
+     */
+    private val uncoveredRead = AtomicBoolean()
+
+    private val flowDr by lazy { processEngineStorage.flowDao.getFlow(jobDr.flowId) }
+
+    /**
+     * 组件读取了一个中间结果，节点自己的不算
+     */
+    fun recordRead(jobName: String, key: String) {
+        if (jobName != jobDr.name && (jobName to key) !in inputs) {
+            uncoveredRead.set(true)
+        }
+    }
+
+    /**
+     * 组件读取了全部中间结果
+     */
+    fun recordReadAll() {
+        uncoveredRead.set(true)
+    }
+
+    /**
+     * 命中时把缓存的结果放回 storage
+     *
+     * @return 是否命中
+     */
+    fun restore(): Boolean {
+        val flowDr = flowDr ?: return false
+        val storage = processEngineStorage.jobCacheDao
+                .getCache(jobDr.flowId, jobDr.name, fingerprint, flowDr.cacheTtlSeconds) ?: return false
+        JSON.parseObject(storage).forEach { (key, value) -> flowExecutionStorage.put(jobDr.name, key, value) }
+        return true
+    }
+
+    /**
+     * 节点执行成功后保存这次的结果
+     */
+    fun save() {
+        val flowDr = flowDr ?: return
+        if (flowDr.cacheTtlSeconds <= 0 || flowDr.cacheMaxEntries <= 0) {
+            return
+        }
+        if (uncoveredRead.get()) {
+            log.info("job {} of flow {} read storage outside its fingerprint, result not cached", jobDr.name, jobDr.flowId)
+            return
+        }
+        val storage = flowExecutionStorage.jobStorageJson(jobDr.name) ?: return
+        processEngineStorage.jobCacheDao.addCache(jobDr.flowId, jobDr.name, fingerprint, storage, flowDr.cacheMaxEntries)
+    }
+
+    /**
+     * 上游节点、mapSource 的节点、全局变量的全部中间结果，加上 properties 里出现了 jobName.key 的中间结果
+     */
+    private fun inputs(): Set<Pair<String, String>> {
+        val inputJobNames = JobConditionChecker.upstreamJobNames(jobDr.condition) + GLOBAL_JOB_NAME +
+                listOfNotNull(jobDr.mapSource.takeIf { it.contains('.') }?.substringBefore('.')?.trim())
+        val propertyValues = jobDr.properties.values.filterNotNull()
+        return flowExecutionStorage.keys()
+                .filter { (jobName, key) ->
+                    jobName != jobDr.name && (jobName in inputJobNames
+                            || propertyValues.any { it.contains("$jobName.$key") })
+                }
+                .toSet()
+    }
+
+    private fun fingerprint(): String {
+        val hasher = Hashing.sha256().newHasher()
+        hasher.putString(JSON.toJSONString(listOf(jobDr.component, TreeMap(jobDr.properties))), StandardCharsets.UTF_8)
+        inputs.sortedWith(compareBy({ it.first }, { it.second }))
+                .forEach { (jobName, key) ->
+                    val out = CountingOutputStream(Funnels.asOutputStream(hasher))
+                    val string = flowExecutionStorage.copyValueTo(jobName, key, out) ?: return@forEach
+                    // 带上长度和类型，相邻的值拼起来不会撞
+                    hasher.putInt(jobName.length).putString(jobName, StandardCharsets.UTF_8)
+                            .putInt(key.length).putString(key, StandardCharsets.UTF_8)
+                            .putLong(out.count).putBoolean(string)
+                }
+        return hasher.hash().toString()
+    }
+}
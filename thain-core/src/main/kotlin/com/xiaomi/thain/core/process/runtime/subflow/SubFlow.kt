@@ -0,0 +1,14 @@
+package com.xiaomi.thain.core.process.runtime.subflow
+
+/**
+ * 节点启动的子 flow，组件返回后节点挂起，子 flow 结束后再结束节点
+ *
+ * @author liangyongrui
+ */
+class SubFlow(
+        val flowExecutionId: Long,
+        /**
+         * 当前节点的 key -> 子 flow 的 jobName.key
+         */
+        val outputs: Map<String, String>
+)
@@ -0,0 +1,13 @@
+package com.xiaomi.thain.core.process.runtime.subflow
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+
+/**
+ * 子 flow 的结束状态，失败重试过的是最后一次重试的 flow execution
+ *
+ * @author liangyongrui
+ */
+class SubFlowEnd(
+        val flowExecutionId: Long,
+        val status: FlowExecutionStatus
+)
@@ -0,0 +1,102 @@
+package com.xiaomi.thain.core.process.runtime.subflow
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import com.xiaomi.thain.common.exception.ThainRuntimeException
+import com.xiaomi.thain.core.dao.FlowExecutionDao
+import com.xiaomi.thain.core.dao.SubFlowExecutionDao
+import com.xiaomi.thain.core.process.runtime.notice.FlowExecutionEndNotice
+import org.slf4j.LoggerFactory
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import kotlin.concurrent.thread
+
+private const val CHECK_INTERVAL_MILLIS = 10_000L
+
+/**
+ * 等待子 flow execution 结束，不占用线程。
+ * 本机执行的由 flow execution 结束的通知唤醒，被 recovery 转到其他机器执行的每 10 秒查一次状态。
+ * 失败等待重试的不算结束：认领重试时新建的 flow execution 也记在 thain_subflow_execution 里，
+ * 查到后接着等新的，直到重试用完
+ *
+ * @author liangyongrui
+ */
+class SubFlowWaiter(private val flowExecutionDao: FlowExecutionDao,
+                    private val subFlowExecutionDao: SubFlowExecutionDao,
+                    flowExecutionEndNotice: FlowExecutionEndNotice) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    private val waiters = ConcurrentHashMap<Long, CompletableFuture<SubFlowEnd>>()
+
+    /**
+     * 唤醒后父节点要写数据库，不能放在子 flow 的线程里做
+     */
+    private val wakeUpExecutor = Executors.newFixedThreadPool(2) { r ->
+        Thread(r, "thain-sub-flow-waiter").apply { isDaemon = true }
+    }
+
+    init {
+        flowExecutionEndNotice.addListener(object : FlowExecutionEndNotice.Listener {
+            override fun onEnd(flowExecutionId: Long, status: FlowExecutionStatus) {
+                if (waiters.containsKey(flowExecutionId)) {
+                    wakeUpExecutor.execute { check(flowExecutionId) }
+                }
+            }
+        })
+        thread(isDaemon = true, name = "thain-sub-flow-checker") {
+            while (true) {
+                try {
+                    Thread.sleep(CHECK_INTERVAL_MILLIS)
+                    waiters.keys.toList().forEach { check(it) }
+                } catch (e: InterruptedException) {
+                    return@thread
+                } catch (e: Exception) {
+                    log.error("check sub flow execution", e)
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 子 flow execution（失败重试的是最后一次重试）结束时完成
+     */
+    fun await(flowExecutionId: Long): CompletableFuture<SubFlowEnd> {
+        val future = waiters.computeIfAbsent(flowExecutionId) { CompletableFuture() }
+        // 先登记再查状态，避免在启动和登记之间结束的漏掉唤醒
+        wakeUpExecutor.execute { check(flowExecutionId) }
+        return future
+    }
+
+    private fun check(flowExecutionId: Long) {
+        // 查询出错的跳过这一轮，下一轮再查
+        val flowExecutionDrs = flowExecutionDao.findFlowExecution(flowExecutionId) ?: return
+        if (flowExecutionDrs.isEmpty()) {
+            waiters.remove(flowExecutionId)?.completeExceptionally(
+                    ThainRuntimeException("sub flow execution $flowExecutionId does not exist"))
+            return
+        }
+        val status = FlowExecutionStatus.getInstance(flowExecutionDrs.first().status)
+        if (status.isFinished) {
+            waiters.remove(flowExecutionId)?.complete(SubFlowEnd(flowExecutionId, status))
+        } else if (status == FlowExecutionStatus.ERROR_WAITING_RETRY) {
+            // 还没认领的下一轮再查
+            subFlowExecutionDao.getRetrySubFlowExecutionId(flowExecutionId)?.let { follow(flowExecutionId, it) }
+        }
+    }
+
+    /**
+     * 改成等待重试新建的 flow execution
+     */
+    private fun follow(flowExecutionId: Long, retryFlowExecutionId: Long) {
+        val future = waiters.remove(flowExecutionId) ?: return
+        log.info("sub flow execution {} retried as {}", flowExecutionId, retryFlowExecutionId)
+        val retryFuture = waiters.computeIfAbsent(retryFlowExecutionId) { future }
+        if (retryFuture !== future) {
+            retryFuture.whenComplete { end, throwable ->
+                if (throwable == null) future.complete(end) else future.completeExceptionally(throwable)
+            }
+        }
+        check(retryFlowExecutionId)
+    }
+}
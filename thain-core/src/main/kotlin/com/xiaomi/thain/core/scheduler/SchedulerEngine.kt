@@ -1,17 +1,20 @@
 package com.xiaomi.thain.core.scheduler
 
-import com.alibaba.fastjson.JSON
 import com.xiaomi.thain.common.exception.scheduler.ThainSchedulerInitException
 import com.xiaomi.thain.common.exception.scheduler.ThainSchedulerStartException
 import com.xiaomi.thain.core.model.dr.FlowDr
 import com.xiaomi.thain.core.process.ProcessEngine
+import com.xiaomi.thain.core.scheduler.cron.CronScheduler
+import com.xiaomi.thain.core.scheduler.dependency.FlowDependencyResolver
 import com.xiaomi.thain.core.scheduler.job.*
+import com.xiaomi.thain.core.scheduler.retry.RetryBackoff
+import com.xiaomi.thain.core.scheduler.retry.RetryQueue
+import com.xiaomi.thain.core.scheduler.sla.SlaScheduler
 import org.quartz.*
 import org.quartz.impl.StdSchedulerFactory
+import org.quartz.impl.matchers.GroupMatcher
 import org.quartz.spi.TriggerFiredBundle
 import org.slf4j.LoggerFactory
-import java.time.Instant
-import java.util.*
 
 /**
  * Date 19-5-17 下午1:41
@@ -20,6 +23,17 @@ import java.util.*
  */
 
 private const val SYSTEM_GROUP = "system"
+private const val FLOW_GROUP = "flow"
+
+/**
+ * flow 的 cron 调度用哪个引擎: quartz（默认）或 native（[CronScheduler]），集群里所有节点要一致
+ */
+private const val SCHEDULER_TYPE_KEY = "thain.scheduler.type"
+
+/**
+ * 失败重试执行哪些节点: full（默认）全部重新执行，failed 只执行失败的节点和它下游的节点
+ */
+private const val RETRY_MODE_KEY = "thain.retry.mode"
 
 class SchedulerEngine(schedulerEngineConfiguration: SchedulerEngineConfiguration,
                       processEngine: ProcessEngine) {
@@ -27,6 +41,26 @@ class SchedulerEngine(schedulerEngineConfiguration: SchedulerEngineConfiguration
     private val log = LoggerFactory.getLogger(this.javaClass)!!
     private val scheduler: Scheduler
 
+    /**
+     * 为空时 flow 由 quartz 调度。
+     * 不为空时 quartz 里的 flow 触发器整组暂停，但新增、删除照样写进 quartz，切回 quartz 时恢复这一组就行
+     */
+    private val cronScheduler: CronScheduler? = schedulerEngineConfiguration.properties
+            .getProperty(SCHEDULER_TYPE_KEY)
+            .takeIf { it == "native" }
+            ?.let { CronScheduler(processEngine) }
+
+    val slaScheduler = SlaScheduler(processEngine)
+
+    /**
+     * 上游 flow 成功时触发下游，见 [FlowDependencyResolver]
+     */
+    val flowDependencyResolver = FlowDependencyResolver(processEngine)
+
+    private val retryQueue = RetryQueue(processEngine,
+            RetryBackoff.fromProperties(schedulerEngineConfiguration.properties),
+            schedulerEngineConfiguration.properties.getProperty(RETRY_MODE_KEY) == "failed")
+
     private fun initRecovery() {
         val jobDetail = JobBuilder.newJob(RecoveryJob::class.java)
                 .withIdentity("job_recovery", SYSTEM_GROUP)
@@ -51,24 +85,33 @@ class SchedulerEngine(schedulerEngineConfiguration: SchedulerEngineConfiguration
         scheduler.scheduleJob(jobDetail, trigger)
     }
 
+    /**
+     * 用原生调度时暂停 quartz 里的 flow 触发器，暂停的组里新加的触发器也是暂停的。
+     * 切回 quartz 时恢复，恢复后错过的触发按 quartz 的 misfire 策略补一次
+     */
+    private fun initFlowGroup() {
+        val flowGroup = GroupMatcher.triggerGroupEquals(FLOW_GROUP)
+        if (cronScheduler != null) {
+            scheduler.pauseTriggers(flowGroup)
+        } else if (FLOW_GROUP in scheduler.pausedTriggerGroups) {
+            scheduler.resumeTriggers(flowGroup)
+        }
+    }
+
+    /**
+     * SLA 超时在本机内存里计时，见 [SlaScheduler]
+     */
     fun addSla(flowExecutionId: Long, flowDr: FlowDr) {
-        val jobDetail = JobBuilder.newJob(SlaJob::class.java)
-                .withIdentity("flowExecution_$flowExecutionId", "flowExecution")
-                .usingJobData("flowExecutionId", flowExecutionId)
-                .usingJobData("flowId", flowDr.id)
-                .build()
-        val trigger = TriggerBuilder.newTrigger()
-                .withIdentity("trigger_$flowExecutionId", "flowExecution")
-                .startAt(Date.from(Instant.now().plusSeconds(flowDr.slaDuration)))
-                .build()
-        scheduler.deleteJob(jobDetail.key)
-        scheduler.scheduleJob(jobDetail, trigger)
+        slaScheduler.add(flowExecutionId, flowDr.id, System.currentTimeMillis() + flowDr.slaDuration * 1000)
     }
 
     @Throws(ThainSchedulerStartException::class)
     fun start() {
         try {
             scheduler.start()
+            cronScheduler?.start()
+            slaScheduler.start()
+            retryQueue.start()
         } catch (e: SchedulerException) {
             log.error("start", e)
             throw ThainSchedulerStartException(e.message!!)
@@ -89,6 +132,7 @@ class SchedulerEngine(schedulerEngineConfiguration: SchedulerEngineConfiguration
                 .build()
         if (cron.isNullOrBlank()) {
             scheduler.deleteJob(jobDetail.key)
+            cronScheduler?.deleteFlow(flowId)
             return
         }
         val trigger: Trigger = TriggerBuilder.newTrigger()
@@ -97,6 +141,44 @@ class SchedulerEngine(schedulerEngineConfiguration: SchedulerEngineConfiguration
                 .build()
         scheduler.deleteJob(jobDetail.key)
         scheduler.scheduleJob(jobDetail, trigger)
+        cronScheduler?.addFlow(flowId, cron)
+    }
+
+    /**
+     * 批量加入调度，已有的调度直接替换，一次提交给 quartz
+     *
+     * @param flowCrons flow id -> cron, cron 为空的删除调度
+     */
+    @Throws(SchedulerException::class)
+    fun addFlows(flowCrons: Map<Long, String?>) {
+        val scheduled = flowCrons.mapNotNull { (flowId, cron) -> cron?.takeIf { it.isNotBlank() }?.let { flowId to it } }
+        deleteFlows(flowCrons.keys - scheduled.map { it.first })
+        if (scheduled.isEmpty()) {
+            return
+        }
+        val jobs = scheduled.associate { (flowId, cron) ->
+            JobBuilder.newJob(FlowJob::class.java)
+                    .withIdentity("flow_$flowId", "flow")
+                    .usingJobData("flowId", flowId)
+                    .build() to setOf(TriggerBuilder.newTrigger()
+                    .withIdentity("trigger_$flowId", "flow")
+                    .withSchedule(CronScheduleBuilder.cronSchedule(cron))
+                    .build())
+        }
+        scheduler.scheduleJobs(jobs, true)
+        scheduled.forEach { (flowId, cron) -> cronScheduler?.addFlow(flowId, cron) }
+    }
+
+    /**
+     * 批量删除调度
+     */
+    @Throws(SchedulerException::class)
+    fun deleteFlows(flowIds: Collection<Long>) {
+        if (flowIds.isEmpty()) {
+            return
+        }
+        scheduler.deleteJobs(flowIds.map { JobKey("flow_$it", "flow") })
+        flowIds.forEach { cronScheduler?.deleteFlow(it) }
     }
 
     /**
@@ -105,21 +187,17 @@ class SchedulerEngine(schedulerEngineConfiguration: SchedulerEngineConfiguration
     @Throws(SchedulerException::class)
     fun deleteFlow(flowId: Long) {
         scheduler.deleteJob(JobKey("flow_$flowId", "flow"))
+        cronScheduler?.deleteFlow(flowId)
     }
 
-    fun addRetry(flowDr: FlowDr, retryNumber: Int, variables: Map<String, String>) {
-        val jobDetail = JobBuilder.newJob(RetryFlowJob::class.java)
-                .withIdentity("flow_retry_${flowDr.id}", "flow_retry")
-                .usingJobData("flowId", flowDr.id)
-                .usingJobData("retryNumber", retryNumber)
-                .usingJobData("variables", JSON.toJSONString(variables))
-                .build()
-        val trigger = TriggerBuilder.newTrigger()
-                .withIdentity("flow_retry_${flowDr.id}", "flow_retry")
-                .startAt(Date.from(Instant.now().plusSeconds(flowDr.retryTimeInterval.toLong())))
-                .build()
-        scheduler.deleteJob(jobDetail.key)
-        scheduler.scheduleJob(jobDetail, trigger)
+    /**
+     * 失败重试放进 flow execution 表上的重试队列，见 [RetryQueue]
+     *
+     * @param flowExecutionId 失败的 flow execution
+     * @param retryNumber     下一次是第几次重试
+     */
+    fun addRetry(flowExecutionId: Long, flowDr: FlowDr, retryNumber: Int) {
+        retryQueue.add(flowExecutionId, flowDr, retryNumber)
     }
 
     init {
@@ -135,6 +213,7 @@ class SchedulerEngine(schedulerEngineConfiguration: SchedulerEngineConfiguration
             }
             initCleanUp()
             initRecovery()
+            initFlowGroup()
         } catch (e: Exception) {
             log.error("thain init failed", e)
             throw ThainSchedulerInitException(e.message!!)
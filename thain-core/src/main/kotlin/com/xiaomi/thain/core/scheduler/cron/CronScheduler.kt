@@ -0,0 +1,290 @@
+package com.xiaomi.thain.core.scheduler.cron
+
+import com.xiaomi.thain.common.utils.HostUtils
+import com.xiaomi.thain.core.dao.SchedulerLeaseDao
+import com.xiaomi.thain.core.process.ProcessEngine
+import org.quartz.CronExpression
+import org.slf4j.LoggerFactory
+import java.util.*
+import java.util.concurrent.ConcurrentLinkedQueue
+import kotlin.concurrent.thread
+import kotlin.math.max
+
+private const val PARTITION_COUNT = 64
+private const val TICK_MILLIS = 1000L
+private const val WHEEL_SIZE = 60
+private const val LEASE_MILLIS = 20_000L
+private const val LEASE_CHECK_MILLIS = 5_000L
+private const val SYNC_MILLIS = 10_000L
+private const val FIRE_BATCH_SIZE = 1000
+
+/**
+ * 和 quartz.properties 里的 misfireThreshold 一致，错过更久的不补
+ */
+private const val MISFIRE_THRESHOLD_MILLIS = 600_000L
+
+/**
+ * 原生的 cron 调度，代替 quartz 的 flow 触发器（SLA、重试、系统任务还在 quartz 里）。
+ *
+ * flow 按 id 对 64 取模分区，每个节点用租约（thain_scheduler_lease）持有一部分分区，
+ * 租约 20 秒过期、每 5 秒续约，按存活节点数均分，多出来的主动释放。
+ * 持有的分区里正在调度的 flow 每 10 秒从数据库同步一次，本机的修改立即生效，
+ * 下次触发时间放进分层时间轮，每秒推进一格。
+ * 同一秒到期的 flow 按分区分批，每批一个事务插入 flow execution，事务里先按租约更新这个分区的 fired_until，
+ * 租约已经被接手时这批回滚，不会重复触发，也不影响其他分区。
+ * 提交成功的才算下次触发时间、推进 fired_until，失败的下一秒按原来的触发时间重试；
+ * 接手分区的节点从 fired_until 继续，错过的补触发一次
+ *
+ * @author liangyongrui
+ */
+class CronScheduler(private val processEngine: ProcessEngine) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    private val schedulerLeaseDao = SchedulerLeaseDao(processEngine.sqlSessionFactory,
+            processEngine.processEngineStorage.mailService)
+
+    private val nodeId = "${HostUtils.hostInfo}#${processEngine.processEngineId}".takeLast(128)
+
+    /**
+     * addFlow、deleteFlow 在调用方线程里只入队，由调度线程处理，cron 为空表示删除
+     */
+    private val commands = ConcurrentLinkedQueue<Pair<Long, String?>>()
+
+    // 以下只在调度线程里访问
+    private val ownedPartitions = mutableSetOf<Int>()
+    /**
+     * 新接手的分区从上一个节点的 fired_until 继续，第一次同步后删掉
+     */
+    private val resumeFrom = mutableMapOf<Int, Long>()
+    private val flows = mutableMapOf<Long, ScheduledFlow>()
+    private val wheel = TimingWheel<FireTask>(TICK_MILLIS, WHEEL_SIZE, System.currentTimeMillis())
+    private val pendingFires = mutableListOf<FireTask>()
+    private var leaseValidUntil = 0L
+    private var nextLeaseCheckTime = 0L
+    private var nextSyncTime = 0L
+    private var lastSyncTime = System.currentTimeMillis()
+    /**
+     * 每个持有分区已经确认触发到的时间，早于这个时间到期的都已经提交了
+     */
+    private val firedUntil = mutableMapOf<Int, Long>()
+
+    private val schedulerThread = thread(start = false, isDaemon = true, name = "thain-cron-scheduler") { loop() }
+
+    fun start() {
+        schedulerThread.start()
+    }
+
+    fun addFlow(flowId: Long, cron: String?) {
+        commands.add(flowId to cron)
+    }
+
+    fun deleteFlow(flowId: Long) {
+        commands.add(flowId to null)
+    }
+
+    private fun loop() {
+        while (true) {
+            try {
+                val now = System.currentTimeMillis()
+                if (now >= nextLeaseCheckTime) {
+                    checkLeases(now)
+                    nextLeaseCheckTime = now + LEASE_CHECK_MILLIS
+                }
+                if (now >= nextSyncTime) {
+                    syncFlows(now)
+                    nextSyncTime = now + SYNC_MILLIS
+                }
+                applyCommands(now)
+                fire(now)
+            } catch (e: Exception) {
+                log.error("cron scheduler:", e)
+            }
+            try {
+                Thread.sleep(TICK_MILLIS - System.currentTimeMillis() % TICK_MILLIS)
+            } catch (e: InterruptedException) {
+                return
+            }
+        }
+    }
+
+    /**
+     * 心跳、续约，然后按存活节点数把持有的分区调整到平均数
+     */
+    private fun checkLeases(now: Long) {
+        val aliveNodes = schedulerLeaseDao.heartbeat(nodeId, now, now - LEASE_MILLIS) ?: return
+        schedulerLeaseDao.renewLeases(nodeId, ownedPartitions.toList(), now + LEASE_MILLIS, minFiredUntil(ownedPartitions), now)
+        val leases = schedulerLeaseDao.getLeases(PARTITION_COUNT) ?: return
+        val mine = leases.filter { it.owner == nodeId && it.expireTime > now }
+        val lost = ownedPartitions - mine.map { it.partitionId }
+        if (lost.isNotEmpty()) {
+            log.warn("scheduler lease lost: {}", lost)
+            dropPartitions(lost)
+        }
+        leaseValidUntil = mine.map { it.expireTime }.min() ?: now + LEASE_MILLIS
+
+        val fairShare = (PARTITION_COUNT + max(aliveNodes, 1) - 1) / max(aliveNodes, 1)
+        if (ownedPartitions.size > fairShare) {
+            val released = ownedPartitions.sortedDescending().take(ownedPartitions.size - fairShare)
+            val releasedFiredUntil = minFiredUntil(released)
+            dropPartitions(released)
+            schedulerLeaseDao.releaseLeases(nodeId, released, releasedFiredUntil)
+            log.info("release scheduler partitions: {}", released)
+        } else if (ownedPartitions.size < fairShare) {
+            val acquired = leases.filter { it.expireTime <= now }
+                    .shuffled()
+                    .asSequence()
+                    .filter { schedulerLeaseDao.acquireLease(it, nodeId, now + LEASE_MILLIS) }
+                    .take(fairShare - ownedPartitions.size)
+                    .toList()
+            if (acquired.isNotEmpty()) {
+                acquired.forEach {
+                    ownedPartitions.add(it.partitionId)
+                    // 从没有被原生调度持有过的（刚从 quartz 切过来）从现在开始
+                    resumeFrom[it.partitionId] = it.firedUntil.takeIf { firedUntil -> firedUntil > 0 } ?: now
+                    firedUntil[it.partitionId] = resumeFrom.getValue(it.partitionId)
+                }
+                leaseValidUntil = minOf(leaseValidUntil, now + LEASE_MILLIS)
+                nextSyncTime = 0
+                log.info("acquire scheduler partitions: {}", acquired.map { it.partitionId })
+            }
+        }
+    }
+
+    private fun dropPartitions(partitionIds: Collection<Int>) {
+        ownedPartitions.removeAll(partitionIds)
+        partitionIds.forEach {
+            resumeFrom.remove(it)
+            firedUntil.remove(it)
+        }
+        // 时间轮里的任务到期时发现 flow 不在了直接丢弃
+        flows.keys.removeIf { partition(it) in partitionIds }
+    }
+
+    /**
+     * 同步持有分区里正在调度的 flow，别的节点上的新增、暂停、修改 cron 在这里生效
+     */
+    private fun syncFlows(now: Long) {
+        if (ownedPartitions.isEmpty()) {
+            flows.clear()
+            return
+        }
+        val flowCronList = schedulerLeaseDao.getSchedulingFlowCronList(PARTITION_COUNT, ownedPartitions.toList())
+                ?: return
+        flows.keys.retainAll(flowCronList.map { it.id })
+        flowCronList.forEach {
+            if (flows[it.id]?.cron == it.cron) {
+                return@forEach
+            }
+            val from = max(it.updateTime.time, resumeFrom[partition(it.id)] ?: lastSyncTime)
+            schedule(it.id, it.cron, from, now)
+        }
+        resumeFrom.clear()
+        lastSyncTime = now
+    }
+
+    private fun applyCommands(now: Long) {
+        while (true) {
+            val (flowId, cron) = commands.poll() ?: return
+            if (partition(flowId) !in ownedPartitions) {
+                // 其他节点的分区，由持有的节点同步
+                continue
+            }
+            if (cron.isNullOrBlank()) {
+                flows.remove(flowId)
+            } else if (flows[flowId]?.cron != cron) {
+                schedule(flowId, cron, now, now)
+            }
+        }
+    }
+
+    private fun schedule(flowId: Long, cron: String, from: Long, now: Long) {
+        val cronExpression = try {
+            CronExpression(cron)
+        } catch (e: Exception) {
+            log.warn("invalid cron, flowId: {}, cron: {}", flowId, cron)
+            flows.remove(flowId)
+            return
+        }
+        schedule(flowId, cron, cronExpression, from, now)
+    }
+
+    /**
+     * @param from 从这个时间之后找下次触发时间，早于 now 的算错过，立即补触发一次
+     */
+    private fun schedule(flowId: Long, cron: String, cronExpression: CronExpression, from: Long, now: Long) {
+        val nextFireTime = cronExpression.getNextValidTimeAfter(
+                Date(max(from, now - MISFIRE_THRESHOLD_MILLIS).coerceAtMost(now)))
+        if (nextFireTime == null) {
+            flows.remove(flowId)
+            return
+        }
+        flows[flowId] = ScheduledFlow(cron, cronExpression, nextFireTime.time)
+        val fireTask = FireTask(flowId, nextFireTime.time)
+        if (!wheel.add(fireTask.fireTime, fireTask)) {
+            pendingFires.add(fireTask)
+        }
+    }
+
+    private fun fire(now: Long) {
+        if (ownedPartitions.isNotEmpty() && now >= leaseValidUntil) {
+            // 一直续约失败，租约可能已经被接手了
+            log.warn("scheduler lease expired, drop partitions: {}", ownedPartitions)
+            dropPartitions(ownedPartitions.toList())
+        }
+        val due = pendingFires.toMutableList()
+        pendingFires.clear()
+        wheel.advance(now, due)
+        val fires = due.filter { flows[it.flowId]?.nextFireTime == it.fireTime }
+                .distinctBy { it.flowId }
+                .groupBy { partition(it.flowId) }
+        ownedPartitions.forEach { partitionId ->
+            val partitionFires = fires[partitionId]
+            if (partitionFires == null) {
+                firedUntil[partitionId] = now
+            } else {
+                firePartition(partitionId, partitionFires, now)
+            }
+        }
+    }
+
+    /**
+     * 按触发时间分批提交，每批的 fired_until 只推进到下一批最早的触发时间之前，
+     * 失败的这批和后面的都放回 pendingFires 下一秒重试，flow 的下次触发时间不变
+     */
+    private fun firePartition(partitionId: Int, partitionFires: List<FireTask>, now: Long) {
+        val batches = partitionFires.sortedBy { it.fireTime }.chunked(FIRE_BATCH_SIZE)
+        batches.forEachIndexed { index, batch ->
+            val batchFiredUntil = batches.getOrNull(index + 1)?.let { it.first().fireTime - 1 } ?: now
+            val flowExecutionDrList = schedulerLeaseDao.addAutomaticFlowExecutions(nodeId,
+                    listOf(partitionId), batchFiredUntil, now, batch.map { it.flowId }, HostUtils.hostInfo)
+            if (flowExecutionDrList == null) {
+                batches.drop(index).forEach { pendingFires.addAll(it) }
+                nextLeaseCheckTime = 0
+                return
+            }
+            firedUntil[partitionId] = batchFiredUntil
+            batch.forEach {
+                val flow = flows[it.flowId] ?: return@forEach
+                schedule(it.flowId, flow.cron, flow.cronExpression, now, now)
+            }
+            flowExecutionDrList.forEach { processEngine.processEngineStorage.flowExecutionWaitingQueue.put(it) }
+            log.debug("{} flows add queue", flowExecutionDrList.size)
+        }
+    }
+
+    /**
+     * 续约、释放时一起写回的 fired_until，取最小的，数据库里只会往前推
+     */
+    private fun minFiredUntil(partitionIds: Collection<Int>): Long {
+        return partitionIds.mapNotNull { firedUntil[it] }.min() ?: 0
+    }
+
+    private fun partition(flowId: Long): Int {
+        return (flowId % PARTITION_COUNT).toInt()
+    }
+
+    private class ScheduledFlow(val cron: String, val cronExpression: CronExpression, val nextFireTime: Long)
+
+    private data class FireTask(val flowId: Long, val fireTime: Long)
+}
@@ -0,0 +1,76 @@
+package com.xiaomi.thain.core.scheduler.cron
+
+/**
+ * 分层时间轮，不是线程安全的，由调度线程独占。
+ *
+ * 每层 wheelSize 个格子，第一层每格 tickMillis，上一层每格是下一层转一圈的时间，按需创建。
+ * 到期时间超出当前层范围的放到上一层，上一层的格子到期时再降到下一层。
+ * 加入和推进一格都是 O(1)，和任务总数无关
+ *
+ * @author liangyongrui
+ */
+class TimingWheel<T>(private val tickMillis: Long,
+                     private val wheelSize: Int,
+                     startMillis: Long) {
+
+    private val interval = tickMillis * wheelSize
+
+    /**
+     * 已经处理到的时间，对齐到 tickMillis
+     */
+    private var currentTime = startMillis - startMillis % tickMillis
+
+    private val buckets = Array(wheelSize) { mutableListOf<Pair<Long, T>>() }
+
+    private var overflowWheel: TimingWheel<T>? = null
+
+    /**
+     * @param expiration 到期的毫秒时间戳
+     * @return 已经到期（不晚于当前格子）返回false，由调用方直接处理
+     */
+    fun add(expiration: Long, item: T): Boolean {
+        if (expiration < currentTime + tickMillis) {
+            return false
+        }
+        if (expiration < currentTime + interval) {
+            buckets[bucketIndex(expiration)].add(expiration to item)
+        } else {
+            val overflow = overflowWheel ?: TimingWheel<T>(interval, wheelSize, currentTime).also { overflowWheel = it }
+            overflow.add(expiration, item)
+        }
+        return true
+    }
+
+    /**
+     * 一格一格推进到 now，把到期的放到 due 里
+     */
+    fun advance(now: Long, due: MutableList<T>) {
+        val entries = mutableListOf<Pair<Long, T>>()
+        advanceEntries(now, entries)
+        entries.mapTo(due) { it.second }
+    }
+
+    private fun advanceEntries(now: Long, due: MutableList<Pair<Long, T>>) {
+        while (currentTime + tickMillis <= now) {
+            currentTime += tickMillis
+            if (currentTime % interval == 0L) {
+                overflowWheel?.let { overflow ->
+                    val cascaded = mutableListOf<Pair<Long, T>>()
+                    overflow.advanceEntries(currentTime, cascaded)
+                    cascaded.forEach { entry ->
+                        if (!add(entry.first, entry.second)) {
+                            due.add(entry)
+                        }
+                    }
+                }
+            }
+            val bucket = buckets[bucketIndex(currentTime)]
+            due.addAll(bucket)
+            bucket.clear()
+        }
+    }
+
+    private fun bucketIndex(time: Long): Int {
+        return ((time / tickMillis) % wheelSize).toInt()
+    }
+}
@@ -0,0 +1,153 @@
+package com.xiaomi.thain.core.scheduler.dependency
+
+import com.alibaba.fastjson.JSON
+import com.google.common.hash.Hashing
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import com.xiaomi.thain.common.exception.ThainException
+import com.xiaomi.thain.common.exception.ThainRuntimeException
+import com.xiaomi.thain.common.model.dp.AddFlowExecutionDp
+import com.xiaomi.thain.common.utils.HostUtils
+import com.xiaomi.thain.core.constant.FlowExecutionTriggerType
+import com.xiaomi.thain.core.model.dr.FlowUpstreamDr
+import com.xiaomi.thain.core.model.dr.parseFlowIds
+import com.xiaomi.thain.core.process.ProcessEngine
+import com.xiaomi.thain.core.process.runtime.notice.FlowExecutionEndNotice
+import com.xiaomi.thain.core.thread.pool.ThainThreadPool
+import org.slf4j.LoggerFactory
+import java.nio.charset.StandardCharsets
+import java.util.ArrayDeque
+
+/**
+ * flow 之间的依赖：flow 成功结束时直接把依赖它的 flow 放进执行队列，不轮询。
+ * 触发记录在 thain_flow_dependency_trigger 里，和下游的 flow execution 一起插入，
+ * 同一组上游 flow execution 重复通知或者多个节点同时判断满足，下游也只触发一次。
+ * 下游设置了 upstreamWindowSeconds 时，所有上游都要在这个时间内成功过才触发，
+ * 否则任意一个上游成功就触发。暂停调度的下游不触发
+ *
+ * @author liangyongrui
+ */
+class FlowDependencyResolver(private val processEngine: ProcessEngine) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    /**
+     * 结束通知在引擎的线程里同步调用，查库和插入 flow execution 放在这里
+     */
+    private val dependencyThreadPool = ThainThreadPool.getInstance("thain-flow-dependency", 2)
+
+    init {
+        processEngine.processEngineStorage.flowExecutionEndNotice.addListener(object : FlowExecutionEndNotice.Listener {
+            override fun onEnd(flowExecutionId: Long, status: FlowExecutionStatus) {
+                if (status == FlowExecutionStatus.SUCCESS) {
+                    dependencyThreadPool.execute { resolve(flowExecutionId) }
+                }
+            }
+        })
+    }
+
+    private fun resolve(upstreamFlowExecutionId: Long) {
+        try {
+            val upstreamFlowId = processEngine.processEngineStorage.flowExecutionDao
+                    .getFlowExecution(upstreamFlowExecutionId)?.flowId ?: return
+            processEngine.processEngineStorage.flowDao.getDownstreamFlowList(upstreamFlowId)
+                    .filter { it.id != upstreamFlowId }
+                    .forEach { downstream ->
+                        triggerKey(downstream, upstreamFlowExecutionId)?.let { trigger(downstream.id, upstreamFlowExecutionId, it) }
+                    }
+        } catch (e: Exception) {
+            log.error("resolve flow dependency failed, flowExecutionId: {}", upstreamFlowExecutionId, e)
+        }
+    }
+
+    /**
+     * 下游这次触发用到的上游 flow execution，同一组上游 flow execution 只触发一次下游。
+     * 没有窗口时是结束的这个上游 flow execution，有窗口时是每个上游在窗口内最后一次成功的 flow execution，
+     * 两个上游同时结束，两个节点都看到全部成功时算出来的 key 相同
+     *
+     * @return 上游没有全部成功返回 null
+     */
+    private fun triggerKey(downstream: FlowUpstreamDr, upstreamFlowExecutionId: Long): String? {
+        if (downstream.upstreamWindowSeconds <= 0) {
+            return upstreamFlowExecutionId.toString()
+        }
+        val upstreamFlowIds = downstream.upstreamFlowIdList
+        val succeeded = processEngine.processEngineStorage.flowExecutionDao
+                .getLatestSucceededList(upstreamFlowIds, downstream.upstreamWindowSeconds)
+        val waiting = upstreamFlowIds - succeeded.map { it.flowId }
+        if (waiting.isNotEmpty()) {
+            log.debug("flow {} waiting for upstream flows: {}", downstream.id, waiting)
+            return null
+        }
+        val flowExecutionIds = succeeded.map { it.flowExecutionId }.sorted().joinToString(",")
+        // 上游多的时候拼出来的很长，存 hash
+        return Hashing.sha256().hashString(flowExecutionIds, StandardCharsets.UTF_8).toString()
+    }
+
+    private fun trigger(flowId: Long, upstreamFlowExecutionId: Long, triggerKey: String) {
+        try {
+            val addFlowExecutionDp = AddFlowExecutionDp(
+                    flowId = flowId,
+                    hostInfo = HostUtils.hostInfo,
+                    status = FlowExecutionStatus.WAITING.code,
+                    triggerType = FlowExecutionTriggerType.DEPENDENCY.code,
+                    variables = JSON.toJSONString(mapOf("upstreamFlowExecutionId" to upstreamFlowExecutionId)))
+            val flowExecutionDr = processEngine.processEngineStorage.flowExecutionDao
+                    .addDependencyFlowExecution(addFlowExecutionDp, triggerKey)
+            if (flowExecutionDr == null) {
+                log.info("flow {} already triggered by the same upstream flow executions, upstream flow execution: {}",
+                        flowId, upstreamFlowExecutionId)
+                return
+            }
+            processEngine.processEngineStorage.flowExecutionWaitingQueue.put(flowExecutionDr)
+            log.info("flow {} triggered by upstream flow execution {}", flowId, upstreamFlowExecutionId)
+        } catch (e: Exception) {
+            log.error("trigger downstream flow failed, flowId: {}", flowId, e)
+        }
+    }
+
+    /**
+     * 保存 flow 时检查上游：上游要存在，并且加上这次修改后依赖关系里没有环
+     *
+     * @param flowId 新建的 flow 为空，没有 flow 依赖它，不会形成环
+     */
+    @Throws(ThainException::class)
+    fun checkUpstream(flowId: Long?, upstreamFlowIds: String?) {
+        val upstreams = try {
+            parseFlowIds(upstreamFlowIds)
+        } catch (e: IllegalArgumentException) {
+            throw ThainException(e.message ?: "invalid upstream flow ids")
+        }
+        if (upstreams.isEmpty()) {
+            return
+        }
+        if (flowId != null && upstreams.contains(flowId)) {
+            throw ThainException("flow cannot depend on itself")
+        }
+        val missing = upstreams - processEngine.processEngineStorage.flowDao.getFlowList(upstreams).map { it.id }
+        if (missing.isNotEmpty()) {
+            throw ThainException("upstream flows do not exist: $missing")
+        }
+        if (flowId == null) {
+            return
+        }
+        val graph = processEngine.processEngineStorage.flowDao.getFlowUpstreamList()
+                .associate { it.id to it.upstreamFlowIdList }
+                .toMutableMap()
+        graph[flowId] = upstreams
+        // 从这个 flow 沿上游走，能回到自己就是环，报错时按依赖方向列出环上的 flow
+        val visited = mutableSetOf<Long>()
+        val stack = ArrayDeque<Pair<Long, List<Long>>>()
+        stack.addLast(flowId to listOf(flowId))
+        while (stack.isNotEmpty()) {
+            val (current, path) = stack.removeLast()
+            graph[current].orEmpty().forEach { upstream ->
+                if (upstream == flowId) {
+                    throw ThainException("circular flow dependency: ${(path + flowId).joinToString(" -> ")}")
+                }
+                if (visited.add(upstream)) {
+                    stack.addLast(upstream to path + upstream)
+                }
+            }
+        }
+    }
+}
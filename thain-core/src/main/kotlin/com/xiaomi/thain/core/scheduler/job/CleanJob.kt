@@ -16,6 +16,9 @@ class CleanJob private constructor(private val processEngine: ProcessEngine) : J
             processEngine.processEngineStorage.jobDao.cleanUpExpiredAndDeletedJob()
             processEngine.processEngineStorage.flowExecutionDao.cleanUpExpiredFlowExecution()
             processEngine.processEngineStorage.jobExecutionDao.cleanUpExpiredFlowExecution()
+            processEngine.processEngineStorage.jobCheckpointDao.cleanUpExpiredCheckpoint()
+            processEngine.processEngineStorage.jobCacheDao.cleanUpExpiredCache()
+            processEngine.processEngineStorage.subFlowExecutionDao.cleanUpExpiredSubFlowExecution()
         } catch (e: Throwable) {
             //ignore
         }
@@ -37,7 +37,8 @@ class RecoveryJob private constructor(private val processEngine: ProcessEngine)
                 .map { it.flowId }
                 .distinct()
                 .forEach { flowId -> processEngine.processEngineStorage.flowDao.killFlow(flowId) }
-        jobExecutionDao.deleteJobExecutionByFlowExecutionIds(ids)
+        // 执行成功的节点和检查点一起提交，有检查点的重新排队后跳过
+        jobExecutionDao.deleteUnfinishedJobExecutionByFlowExecutionIds(ids)
         log.info("Scanned some dead flows: \n" + JSON.toJSONString(flowExecutionDrList))
         processEngine.processEngineStorage.flowExecutionWaitingQueue.addAll(flowExecutionDrList)
         val hostInfo = HostUtils.hostInfo
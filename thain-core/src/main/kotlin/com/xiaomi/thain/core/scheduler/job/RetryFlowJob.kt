@@ -9,6 +9,7 @@ import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Date 19-7-16 上午10:59
+ * 重试已经改成 [com.xiaomi.thain.core.scheduler.retry.RetryQueue]，这里只处理升级前留在 quartz 里的重试任务
  *
  * @author liangyongrui@xiaomi.com
  */
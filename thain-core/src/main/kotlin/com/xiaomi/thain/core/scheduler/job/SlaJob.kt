@@ -5,49 +5,24 @@
  */
 package com.xiaomi.thain.core.scheduler.job
 
-import com.xiaomi.thain.common.constant.FlowExecutionStatus
-import com.xiaomi.thain.common.exception.ThainRuntimeException
 import com.xiaomi.thain.core.process.ProcessEngine
-import org.apache.commons.lang3.StringUtils
 import org.quartz.Job
 import org.quartz.JobExecutionContext
-import org.slf4j.LoggerFactory
 import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Date 19-7-16 上午10:59
+ * SLA 已经改成 [com.xiaomi.thain.core.scheduler.sla.SlaScheduler] 在内存里计时，
+ * 这里只处理升级前留在 quartz 里的 SLA 任务
  *
  * @author liangyongrui@xiaomi.com
  */
 class SlaJob private constructor(private val processEngine: ProcessEngine) : Job {
 
-    private val log = LoggerFactory.getLogger(this.javaClass)!!
-
     override fun execute(context: JobExecutionContext) {
         val dataMap = context.jobDetail.jobDataMap
-        val flowId = dataMap.getLong("flowId")
-        val flowExecutionId = dataMap.getLong("flowExecutionId")
-        val (_, _, status) = processEngine.processEngineStorage.flowExecutionDao
-                .getFlowExecution(flowExecutionId)
-                ?: throw  ThainRuntimeException("flowExecution id does not exist：$flowExecutionId")
-        if (status == FlowExecutionStatus.RUNNING.code) {
-            try {
-                val (id, name, _, _, _, _, _, _, _, _, _, slaEmail, slaKill) = processEngine.processEngineStorage.flowDao.getFlow(flowId)
-                        ?: throw ThainRuntimeException("flow does not exist， flowId:$flowId")
-                if (slaKill) {
-                    processEngine.thainFacade.killFlowExecution(flowId, flowExecutionId, true, "auto", "auto")
-                }
-                if (StringUtils.isNotBlank(slaEmail)) {
-                    processEngine.processEngineStorage.mailService.send(
-                            slaEmail.trim().split(",".toRegex()).toList(),
-                            "Thain SLA提醒",
-                            "您的任务：$name($id), 超出期望的执行时间"
-                    )
-                }
-            } catch (e: Exception) {
-                log.error("kill failed, flowExecutionId:$flowExecutionId", e)
-            }
-        }
+        processEngine.thainFacade.schedulerEngine.slaScheduler
+                .checkSla(dataMap.getLong("flowExecutionId"), dataMap.getLong("flowId"), false)
         context.scheduler.deleteJob(context.jobDetail.key)
     }
 
@@ -0,0 +1,51 @@
+package com.xiaomi.thain.core.scheduler.retry
+
+import java.util.*
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * 失败重试的间隔。flow 上配置的 retryTimeInterval 是基础间隔：
+ * fixed 每次都一样（默认，和原来一致），exponential 每次翻倍，不超过 maxIntervalSeconds。
+ * jitter 是随机减少的比例（0 到 1），避免同时失败的 flow 同时重试
+ *
+ * @author liangyongrui
+ */
+class RetryBackoff(private val policy: Policy,
+                   private val maxIntervalSeconds: Long,
+                   private val jitter: Double) {
+
+    enum class Policy {
+        FIXED,
+        EXPONENTIAL
+    }
+
+    /**
+     * @param retryNumber 这次是第几次重试，从1开始
+     */
+    fun delayMillis(retryTimeInterval: Int, retryNumber: Int): Long {
+        val baseSeconds = retryTimeInterval.toLong().coerceAtLeast(0)
+        val seconds = when (policy) {
+            Policy.FIXED -> baseSeconds
+            Policy.EXPONENTIAL -> (baseSeconds shl (retryNumber - 1).coerceIn(0, 30)).coerceAtMost(maxIntervalSeconds)
+        }
+        val millis = seconds * 1000
+        if (jitter <= 0 || millis == 0L) {
+            return millis
+        }
+        return millis - (millis * jitter * ThreadLocalRandom.current().nextDouble()).toLong()
+    }
+
+    companion object {
+        private const val POLICY_KEY = "thain.retry.backoff"
+        private const val MAX_INTERVAL_SECONDS_KEY = "thain.retry.max-interval-seconds"
+        private const val JITTER_KEY = "thain.retry.jitter"
+
+        @JvmStatic
+        fun fromProperties(properties: Properties): RetryBackoff {
+            return RetryBackoff(
+                    Policy.valueOf(properties.getProperty(POLICY_KEY, "fixed").trim().toUpperCase()),
+                    properties.getProperty(MAX_INTERVAL_SECONDS_KEY, "3600").trim().toLong(),
+                    properties.getProperty(JITTER_KEY, "0").trim().toDouble().coerceIn(0.0, 1.0))
+        }
+    }
+}
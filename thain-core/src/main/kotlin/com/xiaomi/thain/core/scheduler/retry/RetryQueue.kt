@@ -0,0 +1,111 @@
+package com.xiaomi.thain.core.scheduler.retry
+
+import com.xiaomi.thain.common.utils.HostUtils
+import com.xiaomi.thain.core.model.dr.FlowDr
+import com.xiaomi.thain.core.process.ProcessEngine
+import com.xiaomi.thain.core.process.runtime.checker.JobConditionChecker
+import org.slf4j.LoggerFactory
+import kotlin.concurrent.thread
+
+private const val POLL_MILLIS = 1000L
+private const val POLL_LIMIT = 100
+
+/**
+ * 失败重试队列，存在 flow execution 表上，不经过 quartz。
+ * 失败的 flow execution 记下一次重试的时间（next_attempt_at）和次数，
+ * 每个节点每秒查一次到期的，用 next_attempt_at 做 CAS 认领，认领和插入新的 flow execution 在一个事务里，
+ * 之后新的 flow execution 和其他排队的一样有心跳，节点挂了由 recovery 重新排队。
+ * 每个失败的 flow execution 各自一条，同一个 flow 的多次重试不会互相覆盖。
+ * failedOnly 时重试复用上一次执行成功的节点和它们的中间结果（检查点），只执行失败的节点和它下游的节点，
+ * 下游按节点的 condition 算，A || B 里 B 失败了，即使节点因为 A 成功执行过也要重新执行
+ *
+ * @author liangyongrui
+ */
+class RetryQueue(private val processEngine: ProcessEngine,
+                 private val retryBackoff: RetryBackoff,
+                 private val failedOnly: Boolean) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    private val flowExecutionDao = processEngine.processEngineStorage.flowExecutionDao
+
+    private val pollThread = thread(start = false, isDaemon = true, name = "thain-retry-queue") { loop() }
+
+    fun start() {
+        pollThread.start()
+    }
+
+    /**
+     * @param flowExecutionId 失败的 flow execution
+     * @param retryNumber     下一次是第几次重试
+     */
+    fun add(flowExecutionId: Long, flowDr: FlowDr, retryNumber: Int) {
+        val nextAttemptAt = System.currentTimeMillis() + retryBackoff.delayMillis(flowDr.retryTimeInterval, retryNumber)
+        flowExecutionDao.setRetry(flowExecutionId, retryNumber, nextAttemptAt)
+    }
+
+    private fun loop() {
+        while (true) {
+            var full = false
+            try {
+                val dueRetryList = flowExecutionDao.getDueRetryList(System.currentTimeMillis(), POLL_LIMIT)
+                val hostInfo = HostUtils.hostInfo
+                var claimed = 0
+                dueRetryList.forEach { retry ->
+                    val reusableJobNames = if (failedOnly) reusableJobNames(retry.id, retry.flowId) else emptySet()
+                    val flowExecutionDr = flowExecutionDao.claimRetry(retry, hostInfo, reusableJobNames) ?: return@forEach
+                    claimed++
+                    processEngine.flowExecutionLoader.retryAsync(flowExecutionDr, retry.retryNumber)
+                    log.debug("retry flow {}, retryNumber: {}", retry.flowId, retry.retryNumber)
+                }
+                // 一次没取完的接着取，一个都没认领到（数据库出错）的等下一轮
+                full = dueRetryList.size == POLL_LIMIT && claimed > 0
+            } catch (e: Exception) {
+                log.error("retry queue:", e)
+            }
+            if (full) {
+                continue
+            }
+            try {
+                Thread.sleep(POLL_MILLIS)
+            } catch (e: InterruptedException) {
+                return
+            }
+        }
+    }
+
+    /**
+     * 上一次执行成功、并且不在没成功的节点下游的节点
+     */
+    private fun reusableJobNames(flowExecutionId: Long, flowId: Long): Set<String> {
+        val conditions = processEngine.processEngineStorage.jobDao.getJobs(flowId).associate { it.name to it.condition }
+        val succeeded = processEngine.processEngineStorage.jobCheckpointDao.getCheckpoints(flowExecutionId)
+                .map { it.jobName }
+                .toSet()
+        return reusableJobNames(conditions, succeeded)
+    }
+
+    companion object {
+
+        /**
+         * 从没成功的节点开始，按 condition 找出所有下游，成功的节点去掉这些
+         *
+         * @param conditions 节点名 -> condition，查不到节点时什么都不复用
+         * @param succeeded 上一次执行成功的节点名
+         */
+        fun reusableJobNames(conditions: Map<String, String?>, succeeded: Set<String>): Set<String> {
+            val rerun = conditions.keys.filterTo(HashSet()) { it !in succeeded }
+            var changed = true
+            while (changed) {
+                changed = false
+                conditions.forEach { (name, condition) ->
+                    if (name !in rerun && JobConditionChecker.upstreamJobNames(condition).any { it in rerun }) {
+                        rerun.add(name)
+                        changed = true
+                    }
+                }
+            }
+            return conditions.keys.filterTo(HashSet()) { it in succeeded && it !in rerun }
+        }
+    }
+}
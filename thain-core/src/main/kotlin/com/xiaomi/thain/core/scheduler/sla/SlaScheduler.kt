@@ -0,0 +1,139 @@
+package com.xiaomi.thain.core.scheduler.sla
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import com.xiaomi.thain.common.utils.HostUtils
+import com.xiaomi.thain.core.process.ProcessEngine
+import com.xiaomi.thain.core.process.runtime.notice.FlowExecutionEndNotice
+import com.xiaomi.thain.core.scheduler.cron.TimingWheel
+import com.xiaomi.thain.core.thread.pool.ThainThreadPool
+import org.apache.commons.lang3.StringUtils
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.concurrent.thread
+
+private const val TICK_MILLIS = 1000L
+private const val WHEEL_SIZE = 60
+
+/**
+ * SLA 超时检查，deadline 放在本机内存的时间轮里，由执行这个 flow execution 的节点持有，不经过 quartz。
+ * flow execution 结束时删除；重启时按本机上还在运行的 flow execution 的创建时间和 sla_duration 重建
+ *
+ * @author liangyongrui
+ */
+class SlaScheduler(private val processEngine: ProcessEngine) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    /**
+     * flowExecutionId -> deadline，时间轮里的任务到期时和这里对不上的直接丢弃
+     */
+    private val deadlines = ConcurrentHashMap<Long, SlaDeadline>()
+
+    private val wheel = TimingWheel<SlaDeadline>(TICK_MILLIS, WHEEL_SIZE, System.currentTimeMillis())
+
+    /**
+     * kill 和发邮件比较慢，不放在时间轮线程里
+     */
+    private val slaThreadPool = ThainThreadPool.getInstance("thain-sla", 2)
+
+    private val slaThread = thread(start = false, isDaemon = true, name = "thain-sla-scheduler") { loop() }
+
+    init {
+        processEngine.processEngineStorage.flowExecutionEndNotice.addListener(object : FlowExecutionEndNotice.Listener {
+            override fun onEnd(flowExecutionId: Long, status: FlowExecutionStatus) {
+                deadlines.remove(flowExecutionId)
+            }
+        })
+    }
+
+    fun start() {
+        rebuild()
+        slaThread.start()
+    }
+
+    /**
+     * 同一个 flow execution 重复添加时以最后一次为准
+     *
+     * @param deadline 毫秒时间戳
+     */
+    fun add(flowExecutionId: Long, flowId: Long, deadline: Long) {
+        val slaDeadline = SlaDeadline(flowExecutionId, flowId, deadline)
+        deadlines[flowExecutionId] = slaDeadline
+        val added = synchronized(wheel) { wheel.add(deadline, slaDeadline) }
+        if (!added) {
+            expire(slaDeadline)
+        }
+    }
+
+    /**
+     * 本机上次运行时留下的 flow execution，等 recovery 重新排队前超时的照常处理
+     */
+    private fun rebuild() {
+        val slaList = processEngine.processEngineStorage.flowExecutionDao.getRunningSlaList(HostUtils.hostInfo)
+        slaList.forEach { add(it.flowExecutionId, it.flowId, it.createTime.time + it.slaDuration * 1000) }
+        log.info("rebuild {} sla deadlines", slaList.size)
+    }
+
+    private fun loop() {
+        while (true) {
+            try {
+                val due = mutableListOf<SlaDeadline>()
+                synchronized(wheel) { wheel.advance(System.currentTimeMillis(), due) }
+                due.forEach { expire(it) }
+            } catch (e: Exception) {
+                log.error("sla scheduler:", e)
+            }
+            try {
+                Thread.sleep(TICK_MILLIS - System.currentTimeMillis() % TICK_MILLIS)
+            } catch (e: InterruptedException) {
+                return
+            }
+        }
+    }
+
+    private fun expire(slaDeadline: SlaDeadline) {
+        if (!deadlines.remove(slaDeadline.flowExecutionId, slaDeadline)) {
+            return
+        }
+        slaThreadPool.execute { checkSla(slaDeadline.flowExecutionId, slaDeadline.flowId) }
+    }
+
+    /**
+     * 还在运行的按 flow 的配置 kill 或者发邮件
+     *
+     * @param localOnly 只处理本机运行的
+     */
+    fun checkSla(flowExecutionId: Long, flowId: Long, localOnly: Boolean = true) {
+        try {
+            val flowExecutionDr = processEngine.processEngineStorage.flowExecutionDao.getFlowExecution(flowExecutionId)
+            if (flowExecutionDr == null) {
+                log.warn("flowExecution id does not exist：{}", flowExecutionId)
+                return
+            }
+            // 已经被 recovery 重新排队、在别的节点运行的由那个节点重新计时
+            if (flowExecutionDr.status != FlowExecutionStatus.RUNNING.code
+                    || (localOnly && flowExecutionDr.hostInfo != HostUtils.hostInfo)) {
+                return
+            }
+            val flowDr = processEngine.processEngineStorage.flowDao.getFlow(flowId)
+            if (flowDr == null) {
+                log.warn("flow does not exist， flowId:{}", flowId)
+                return
+            }
+            if (flowDr.slaKill) {
+                processEngine.thainFacade.killFlowExecution(flowId, flowExecutionId, true, "auto", "auto")
+            }
+            if (StringUtils.isNotBlank(flowDr.slaEmail)) {
+                processEngine.processEngineStorage.mailService.send(
+                        flowDr.slaEmail.trim().split(",".toRegex()).toList(),
+                        "Thain SLA提醒",
+                        "您的任务：${flowDr.name}(${flowDr.id}), 超出期望的执行时间"
+                )
+            }
+        } catch (e: Exception) {
+            log.error("kill failed, flowExecutionId:$flowExecutionId", e)
+        }
+    }
+
+    private data class SlaDeadline(val flowExecutionId: Long, val flowId: Long, val deadline: Long)
+}
@@ -25,11 +25,18 @@ create table thain_flow
     create_time              timestamp        default '2019-01-01 00:00:00' not null comment '创建时间',
     update_time              timestamp        default '2019-01-01 00:00:00' not null comment '更新时间',
     status_update_time       timestamp        default '2019-01-01 00:00:00' not null on update CURRENT_TIMESTAMP comment '状态更新时间',
-    deleted                  tinyint(1)       default 0                     not null comment '标记是否删除'
+    deleted                  tinyint(1)       default 0                     not null comment '标记是否删除',
+    cache_ttl_seconds        int unsigned     default 86400                 not null comment '节点结果缓存的有效期，单位秒',
+    cache_max_entries        int unsigned     default 1000                  not null comment '每个节点的结果缓存最多保留的条数，超过时淘汰最早的',
+    upstream_flow_ids        varchar(256)     default ''                    not null comment '上游 flow id，逗号分开，上游成功结束时触发',
+    upstream_window_seconds  int unsigned     default 0                     not null comment '大于 0 时所有上游都要在这么多秒内成功过才触发'
 )
     ENGINE = InnoDB
     comment 'flow表';
 
+alter table thain_flow
+    add index thain_flow_status_update_time_index (status_update_time);
+
 create table thain_flow_execution
 (
     id           int unsigned auto_increment primary key comment '自增id',
@@ -41,26 +48,48 @@ create table thain_flow_execution
     logs         mediumtext                                     null comment '日志',
     create_time  timestamp        default '2019-01-01 00:00:00' not null comment '创建时间',
     update_time  timestamp        default '2019-01-01 00:00:00' not null on update CURRENT_TIMESTAMP comment '更新时间',
-    heartbeat    timestamp        default '2019-01-01 00:00:00' not null comment '最近一次心跳时间'
+    heartbeat    timestamp        default '2019-01-01 00:00:00' not null comment '最近一次心跳时间',
+    retry_number    int unsigned  default 0                     not null comment '失败等待重试时，下一次是第几次重试',
+    next_attempt_at bigint        default 0                     not null comment '失败等待重试时，下一次重试的毫秒时间戳，0 表示没有待执行的重试'
 )
     ENGINE = InnoDB;
 
 alter table thain_flow_execution
     add index thain_flow_execution_heartbeat_index (heartbeat);
 
+alter table thain_flow_execution
+    add index thain_flow_execution_flow_id_id_index (flow_id, id);
+
+alter table thain_flow_execution
+    add index thain_flow_execution_create_time_index (create_time);
+
+alter table thain_flow_execution
+    add index thain_flow_execution_status_index (status);
+
+alter table thain_flow_execution
+    add index thain_flow_execution_next_attempt_at_index (next_attempt_at);
+
 create table thain_job
 (
-    id           int unsigned auto_increment primary key comment 'id',
-    flow_id      int unsigned default 0                 not null,
-    name         varchar(128) default '0'               not null comment 'flow id 对应的name 不能重复',
-    `condition`  varchar(256) default ''                not null comment '触发条件',
-    component    varchar(128) default ''                not null comment 'job 所用组件名称',
-    callback_url text                                   null comment '状态回调地址',
-    properties   json                                   not null comment '组件属性,json表示',
-    x_axis       int          default 0                 not null comment '横坐标',
-    y_axis       int          default 0                 not null comment '纵坐标',
-    create_time  timestamp    default CURRENT_TIMESTAMP not null comment 'create time',
-    deleted      tinyint(1)   default 0                 not null comment 'deleted'
+    id              int unsigned auto_increment primary key comment 'id',
+    flow_id         int unsigned default 0                 not null,
+    name            varchar(128) default '0'               not null comment 'flow id 对应的name 不能重复',
+    `condition`     varchar(256) default ''                not null comment '触发条件',
+    component       varchar(128) default ''                not null comment 'job 所用组件名称',
+    callback_url    text                                   null comment '状态回调地址',
+    properties      json                                   not null comment '组件属性,json表示',
+    x_axis          int          default 0                 not null comment '横坐标',
+    y_axis          int          default 0                 not null comment '纵坐标',
+    create_time     timestamp    default CURRENT_TIMESTAMP not null comment 'create time',
+    deleted         tinyint(1)   default 0                 not null comment 'deleted',
+    retry_number    int          default 0                 not null comment '节点失败后在 flow 内重试的次数',
+    retry_backoff   int          default 0                 not null comment '节点重试的基础间隔（秒），每次重试翻倍',
+    timeout_seconds int          default 0                 not null comment '节点单次执行的超时时间（秒），0 不超时',
+    cache_enabled   tinyint(1)   default 0                 not null comment '是否缓存节点结果，输入不变时跳过执行',
+    map_source      varchar(256) default ''                not null comment 'map 节点的元素来源：上游节点的 storage（jobName.key）或者本节点的属性名，为空不是 map 节点',
+    map_parallelism int          default 1                 not null comment 'map 节点同时执行的元素数',
+    map_tolerance   int          default 0                 not null comment 'map 节点允许失败的元素数，超过时节点失败',
+    resource_claims varchar(512) default ''                not null comment '节点需要的集群资源，json，资源池名 -> 数量'
 )
     ENGINE = InnoDB;
 
@@ -72,11 +101,135 @@ create table thain_job_execution
     status            tinyint unsigned default 0                     not null comment '节点执行状态：1未执行，2执行中，3执行结束，4执行异常',
     logs              mediumtext                                     null comment 'job running logs',
     create_time       timestamp        default '2019-01-01 00:00:00' not null comment 'create time',
-    update_time       timestamp        default '2019-01-01 00:00:00' not null on update CURRENT_TIMESTAMP comment 'update time'
+    update_time       timestamp        default '2019-01-01 00:00:00' not null on update CURRENT_TIMESTAMP comment 'update time',
+    attempt           int              default 0                     not null comment '0 是节点当前的执行记录，大于 0 是失败重试前保存下来的第几次执行',
+    map_state         mediumtext                                     null comment 'map 节点每个元素的状态和执行次数，json'
 )
     ENGINE = InnoDB
     comment '节点运行表';
 
+alter table thain_job_execution
+    add index thain_job_execution_create_time_index (create_time);
+
+alter table thain_job_execution
+    add index thain_job_execution_status_index (status);
+
+create table thain_job_checkpoint
+(
+    flow_execution_id int unsigned default 0                     not null comment '所属flow execution',
+    job_name          varchar(128) default ''                    not null comment '执行成功的节点名',
+    storage           mediumtext                                 null comment '节点 putStorage 的输出，json',
+    create_time       timestamp    default '2019-01-01 00:00:00' not null comment '创建时间',
+    primary key (flow_execution_id, job_name)
+)
+    ENGINE = InnoDB
+    comment '节点执行成功的检查点，恢复时跳过已经成功的节点';
+
+alter table thain_job_checkpoint
+    add index thain_job_checkpoint_create_time_index (create_time);
+
+create table thain_job_cache
+(
+    id          int unsigned auto_increment primary key comment '自增id，按它淘汰最早的缓存',
+    flow_id     int unsigned default 0                     not null comment '所属flow',
+    job_name    varchar(128) default ''                    not null comment '节点名',
+    fingerprint char(64)     default ''                    not null comment '组件、属性和节点可见的中间结果的 sha256',
+    storage     mediumtext                                 null comment '节点 putStorage 的输出，json',
+    create_time timestamp    default '2019-01-01 00:00:00' not null comment '创建时间',
+    constraint thain_job_cache_fingerprint_uindex
+        unique (flow_id, job_name, fingerprint)
+)
+    ENGINE = InnoDB
+    comment '节点结果缓存，输入不变时直接使用上次的输出';
+
+alter table thain_job_cache
+    add index thain_job_cache_flow_id_job_name_id_index (flow_id, job_name, id);
+
+create table thain_subflow_execution
+(
+    flow_execution_id        int unsigned default 0                     not null primary key comment '子 flow execution',
+    parent_flow_execution_id int unsigned default 0                     not null comment '父 flow execution',
+    parent_job_name          varchar(128) default ''                    not null comment '父 flow 里启动它的节点',
+    create_time              timestamp    default '2019-01-01 00:00:00' not null comment '创建时间'
+)
+    ENGINE = InnoDB
+    comment '子 flow 节点启动的 flow execution，kill 父 flow execution 时一起 kill';
+
+alter table thain_subflow_execution
+    add index thain_subflow_execution_parent_index (parent_flow_execution_id);
+
+alter table thain_subflow_execution
+    add index thain_subflow_execution_create_time_index (create_time);
+
+create table thain_resource_pool
+(
+    name        varchar(128) default ''                    not null primary key comment '资源池名，节点的 resource_claims 里引用',
+    capacity    int unsigned default 0                     not null comment '整个集群同时可用的数量',
+    update_time timestamp    default '2019-01-01 00:00:00' not null on update CURRENT_TIMESTAMP comment '更新时间'
+)
+    ENGINE = InnoDB
+    comment '集群共享的资源池';
+
+create table thain_resource_lease
+(
+    pool_name   varchar(128) default '' not null comment '资源池名',
+    holder      varchar(128) default '' not null comment '持有的节点',
+    permits     int unsigned default 0  not null comment '这个节点持有的数量',
+    expire_time bigint       default 0  not null comment '租约到期的毫秒时间戳，过期的不算占用',
+    primary key (pool_name, holder)
+)
+    ENGINE = InnoDB
+    comment '各节点从资源池租用的数量，节点在本地分给节点上的 job';
+
+create table thain_execution_statistics
+(
+    stat_time timestamp        default '2019-01-01 00:00:00' not null comment '统计的分钟',
+    type      tinyint unsigned default 0                     not null comment '1 flow execution, 2 job execution',
+    status    tinyint unsigned default 0                     not null comment '执行状态',
+    count     int unsigned     default 0                     not null comment '这一分钟创建的、以这个状态结束的数量，执行结束时累加',
+    primary key (stat_time, type, status)
+)
+    ENGINE = InnoDB
+    comment 'dashboard用，按分钟汇总的执行数量';
+
+
+create table thain_replica_heartbeat
+(
+    id             int    default 0 not null primary key,
+    heartbeat_time bigint default 0 not null comment '主库写入的毫秒时间戳，从库读出来算复制延迟'
+)
+    ENGINE = InnoDB
+    comment '只读从库的延迟检测';
+
+
+create table thain_scheduler_node
+(
+    node_id        varchar(128) default '' not null primary key,
+    heartbeat_time bigint       default 0  not null comment '毫秒时间戳'
+)
+    ENGINE = InnoDB
+    comment '原生调度器的节点心跳，用来算每个节点该分多少个分区';
+
+create table thain_scheduler_lease
+(
+    partition_id int                     not null primary key comment 'flow id 对分区数取模',
+    owner        varchar(128) default '' not null comment '持有租约的节点',
+    expire_time  bigint       default 0  not null comment '租约到期的毫秒时间戳',
+    fired_until  bigint       default 0  not null comment '这个时间之前的触发都已经落库，接手的节点从这里继续'
+)
+    ENGINE = InnoDB
+    comment '原生调度器的分区租约';
+
+create table thain_flow_dependency_trigger
+(
+    flow_id     int unsigned default 0                 not null comment '被触发的下游 flow id',
+    trigger_key varchar(64)  default ''                not null comment '这次触发用到的上游 flow execution',
+    create_time timestamp    default CURRENT_TIMESTAMP not null,
+    primary key (flow_id, trigger_key)
+)
+    ENGINE = InnoDB
+    comment '依赖触发记录，同一组上游 flow execution 只触发一次下游';
+
 
 create table thain_user
 (
@@ -0,0 +1,59 @@
+package com.xiaomi.thain.component.test
+
+import com.xiaomi.thain.component.annotation.ThainComponent
+import com.xiaomi.thain.component.tools.ComponentTools
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * 测试用的组件，记录每次执行，value 在 fail 里时执行失败
+ *
+ * @author liangyongrui
+ */
+@ThainComponent("{\"group\": \"test\", \"name\": \"probe\", \"hidden\": true, \"items\": []}")
+@Suppress("unused")
+class ProbeComponent {
+
+    private lateinit var tools: ComponentTools
+
+    /**
+     * 记录的值，执行成功时 putStorage("value", value)
+     */
+    private var value: String? = null
+
+    /**
+     * 逗号分开
+     */
+    private var fail: String? = null
+
+    /**
+     * 同一个 value 前几次执行失败
+     */
+    private var failTimes: String? = null
+
+    /**
+     * 执行前先等这么久，测试超时用
+     */
+    private var sleepMillis: String? = null
+
+    /**
+     * jobName.key，读出来的值和 value 一起记录成 value:读出来的值
+     */
+    private var read: String? = null
+
+    private fun run() {
+        val call = read?.split(".")
+                ?.let { "$value:${tools.getStorageValue<Any>(it[0], it[1])}" }
+                ?: value.orEmpty()
+        calls.add(call)
+        sleepMillis?.let { Thread.sleep(it.toLong()) }
+        if (fail.orEmpty().split(",").contains(value)
+                || calls.count { it == call } <= (failTimes?.toInt() ?: 0)) {
+            throw IllegalStateException("probe failed: $value")
+        }
+        tools.putStorage("value", value.orEmpty())
+    }
+
+    companion object {
+        val calls = ConcurrentLinkedQueue<String>()
+    }
+}
@@ -0,0 +1,83 @@
+package com.xiaomi.thain.core
+
+import com.xiaomi.thain.common.model.dr.FlowExecutionDr
+import com.xiaomi.thain.core.config.DatabaseHandler
+import com.xiaomi.thain.core.dao.*
+import com.xiaomi.thain.core.process.ProcessEngineStorage
+import com.xiaomi.thain.core.process.service.ComponentService
+import com.xiaomi.thain.core.process.service.MailService
+import com.xiaomi.thain.core.thread.pool.ThainThreadPool
+import org.apache.ibatis.io.Resources
+import org.apache.ibatis.jdbc.ScriptRunner
+import org.apache.ibatis.session.SqlSessionFactory
+import org.h2.jdbcx.JdbcDataSource
+import java.util.*
+import java.util.concurrent.LinkedBlockingQueue
+
+/**
+ * 每个实例一个新的 h2 内存库，建好 thain 的表
+ *
+ * @author liangyongrui
+ */
+class TestDatabase {
+
+    val dataSource = JdbcDataSource().apply {
+        setURL("jdbc:h2:mem:${UUID.randomUUID()};DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE;MODE=MySQL")
+    }
+
+    val sqlSessionFactory: SqlSessionFactory
+
+    /**
+     * 没有配置邮件服务器，严重错误只打日志
+     */
+    val mailService: MailService
+
+    init {
+        dataSource.connection.use { connection ->
+            ScriptRunner(connection).apply { setLogWriter(null) }
+                    .runScript(Resources.getResourceAsReader("sql/h2/thain.sql"))
+        }
+        sqlSessionFactory = DatabaseHandler.newSqlSessionFactory(dataSource, 30)
+        mailService = MailService.getInstance("", "", "", "", UserDao(sqlSessionFactory))
+    }
+
+    fun execute(vararg sqlList: String) {
+        dataSource.connection.use { connection ->
+            connection.createStatement().use { statement -> sqlList.forEach { statement.execute(it) } }
+        }
+    }
+
+    fun <T> query(sql: String, mapper: (java.sql.ResultSet) -> T): List<T> {
+        return dataSource.connection.use { connection ->
+            connection.createStatement().use { statement ->
+                statement.executeQuery(sql).use { resultSet ->
+                    generateSequence { if (resultSet.next()) mapper(resultSet) else null }.toList()
+                }
+            }
+        }
+    }
+
+    /**
+     * 不启动 ProcessEngine，直接用这个库执行 flow execution。
+     * 组件从 classpath 扫描，测试里的组件也能用；不能启动子 flow
+     */
+    fun processEngineStorage(): ProcessEngineStorage {
+        return ProcessEngineStorage(
+                flowExecutionJobExecutionThreadPool = { ThainThreadPool.getInstance("thain-test-job-execution[$it]", 4) },
+                flowExecutionStarter = { _, _ -> throw UnsupportedOperationException("start flow in test") },
+                flowExecutionThreadPool = ThainThreadPool.getInstance("thain-test-flow-execution", 2),
+                processEngineId = UUID.randomUUID().toString(),
+                flowDao = FlowDao(sqlSessionFactory, mailService),
+                flowExecutionDao = FlowExecutionDao(sqlSessionFactory, mailService),
+                jobDao = JobDao(sqlSessionFactory, mailService),
+                jobExecutionDao = JobExecutionDao(sqlSessionFactory, mailService),
+                jobCheckpointDao = JobCheckpointDao(sqlSessionFactory, mailService),
+                jobCacheDao = JobCacheDao(sqlSessionFactory, mailService),
+                subFlowExecutionDao = SubFlowExecutionDao(sqlSessionFactory, mailService),
+                resourcePoolDao = ResourcePoolDao(sqlSessionFactory, mailService),
+                x5ConfigDao = X5ConfigDao(sqlSessionFactory, mailService),
+                mailService = mailService,
+                componentService = ComponentService(),
+                flowExecutionWaitingQueue = LinkedBlockingQueue<FlowExecutionDr>())
+    }
+}
@@ -0,0 +1,68 @@
+package com.xiaomi.thain.core.dao
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import com.xiaomi.thain.common.model.dp.AddFlowExecutionDp
+import com.xiaomi.thain.core.TestDatabase
+import com.xiaomi.thain.core.constant.FlowExecutionTriggerType
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class FlowExecutionDaoTests {
+
+    private fun addFlowExecutionDp(flowId: Long) = AddFlowExecutionDp(
+            flowId = flowId,
+            hostInfo = "host",
+            status = FlowExecutionStatus.WAITING.code,
+            triggerType = FlowExecutionTriggerType.DEPENDENCY.code,
+            variables = "{}")
+
+    /**
+     * 同一个下游同一个 triggerKey 只插入一次 flow execution
+     */
+    @Test
+    fun addDependencyFlowExecutionTest() {
+        val database = TestDatabase()
+        database.execute("insert into thain_flow(id, name) values (1, 'flow')",
+                "insert into thain_flow(id, name) values (2, 'other')")
+        val flowExecutionDao = FlowExecutionDao(database.sqlSessionFactory, database.mailService)
+
+        Assertions.assertNotNull(flowExecutionDao.addDependencyFlowExecution(addFlowExecutionDp(1), "100"))
+        Assertions.assertNull(flowExecutionDao.addDependencyFlowExecution(addFlowExecutionDp(1), "100"))
+        Assertions.assertNotNull(flowExecutionDao.addDependencyFlowExecution(addFlowExecutionDp(1), "101"))
+        Assertions.assertNotNull(flowExecutionDao.addDependencyFlowExecution(addFlowExecutionDp(2), "100"))
+        Assertions.assertEquals(listOf(2, 1), database.query(
+                "select count(*) from thain_flow_execution group by flow_id order by flow_id") { it.getInt(1) })
+    }
+
+    @Test
+    fun getLatestSucceededListTest() {
+        val database = TestDatabase()
+        database.execute(
+                "insert into thain_flow_execution(id, flow_id, status, update_time) values (100, 1, 2, now())",
+                "insert into thain_flow_execution(id, flow_id, status, update_time) values (101, 1, 2, now())",
+                "insert into thain_flow_execution(id, flow_id, status, update_time) values (102, 1, 3, now())",
+                "insert into thain_flow_execution(id, flow_id, status, update_time) " +
+                        "values (103, 2, 2, dateadd('HOUR', -2, now()))")
+        val flowExecutionDao = FlowExecutionDao(database.sqlSessionFactory, database.mailService)
+
+        val succeeded = flowExecutionDao.getLatestSucceededList(listOf(1L, 2L), 3600)
+        Assertions.assertEquals(listOf(1L to 101L), succeeded.map { it.flowId to it.flowExecutionId })
+    }
+
+    /**
+     * 第一次进入结束状态时计数，重复写结束状态不再计数
+     */
+    @Test
+    fun statisticsTest() {
+        val database = TestDatabase()
+        database.execute("insert into thain_flow_execution(id, flow_id, status, create_time) values (100, 1, 0, now())")
+        val flowExecutionDao = FlowExecutionDao(database.sqlSessionFactory, database.mailService)
+        val statistics = { database.query("select status, count from thain_execution_statistics where type = 1") { it.getInt(1) to it.getInt(2) } }
+
+        flowExecutionDao.updateFlowExecutionStatus(100, FlowExecutionStatus.RUNNING.code)
+        Assertions.assertEquals(listOf<Pair<Int, Int>>(), statistics())
+        flowExecutionDao.updateFlowExecutionStatus(100, FlowExecutionStatus.KILLED.code)
+        flowExecutionDao.updateFlowExecutionStatus(100, FlowExecutionStatus.KILLED.code)
+        Assertions.assertEquals(listOf(FlowExecutionStatus.KILLED.code to 1), statistics())
+    }
+}
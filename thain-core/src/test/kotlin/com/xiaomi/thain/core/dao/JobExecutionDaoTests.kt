@@ -0,0 +1,92 @@
+package com.xiaomi.thain.core.dao
+
+import com.xiaomi.thain.common.constant.JobExecutionStatus
+import com.xiaomi.thain.core.TestDatabase
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class JobExecutionDaoTests {
+
+    private fun statistics(database: TestDatabase) =
+            database.query("select status, count from thain_execution_statistics where type = 2 and count > 0 order by status") {
+                it.getInt(1) to it.getInt(2)
+            }
+
+    /**
+     * 失败重试的节点只按最后一次执行计数
+     */
+    @Test
+    fun retryStatisticsTest() {
+        val database = TestDatabase()
+        database.execute("insert into thain_job_execution(id, flow_execution_id, job_id, status, create_time) values (100, 1, 1, 2, now())")
+        val jobExecutionDao = JobExecutionDao(database.sqlSessionFactory, database.mailService)
+
+        jobExecutionDao.updateStatus(100, JobExecutionStatus.ERROR)
+        Assertions.assertEquals(listOf(JobExecutionStatus.ERROR.code to 1), statistics(database))
+        jobExecutionDao.addAttempt(100, 1)
+        Assertions.assertEquals(listOf<Pair<Int, Int>>(), statistics(database))
+        jobExecutionDao.updateCreateTimeAndStatus(100, JobExecutionStatus.RUNNING)
+        jobExecutionDao.updateStatus(100, JobExecutionStatus.SUCCESS)
+        jobExecutionDao.updateStatus(100, JobExecutionStatus.SUCCESS)
+        Assertions.assertEquals(listOf(JobExecutionStatus.SUCCESS.code to 1), statistics(database))
+    }
+
+    /**
+     * kill 时运行中的节点按失败计数，之后节点自己结束不再计数
+     */
+    @Test
+    fun killStatisticsTest() {
+        val database = TestDatabase()
+        database.execute(
+                "insert into thain_job_execution(id, flow_execution_id, job_id, status, create_time) values (100, 1, 1, 2, now())",
+                "insert into thain_job_execution(id, flow_execution_id, job_id, status, create_time) values (101, 1, 2, 2, now())",
+                "insert into thain_job_execution(id, flow_execution_id, job_id, status, create_time) values (102, 1, 3, 1, now())")
+        val jobExecutionDao = JobExecutionDao(database.sqlSessionFactory, database.mailService)
+
+        jobExecutionDao.killJobExecution(1)
+        jobExecutionDao.updateStatus(100, JobExecutionStatus.ERROR)
+        Assertions.assertEquals(listOf(JobExecutionStatus.ERROR.code to 2), statistics(database))
+    }
+
+    /**
+     * 成功状态和检查点一起写；恢复时删掉没有检查点的节点，包括中间结果太大没写检查点的成功节点
+     */
+    @Test
+    fun checkpointTest() {
+        val database = TestDatabase()
+        database.execute(
+                "insert into thain_job(id, flow_id, name, properties) values (1, 1, 'a', '')",
+                "insert into thain_job(id, flow_id, name, properties) values (2, 1, 'b', '')",
+                "insert into thain_job(id, flow_id, name, properties) values (3, 1, 'c', '')",
+                "insert into thain_job_execution(id, flow_execution_id, job_id, status, create_time) values (100, 1, 1, 2, now())",
+                "insert into thain_job_execution(id, flow_execution_id, job_id, status, create_time) values (101, 1, 2, 2, now())",
+                "insert into thain_job_execution(id, flow_execution_id, job_id, status, create_time) values (102, 1, 3, 2, now())")
+        val jobExecutionDao = JobExecutionDao(database.sqlSessionFactory, database.mailService)
+
+        Assertions.assertTrue(jobExecutionDao.updateSuccessStatus(100, 1, "a", "{\"x\":1}"))
+        Assertions.assertTrue(jobExecutionDao.updateSuccessStatus(101, 1, "b", null))
+        Assertions.assertEquals(listOf("a" to "{\"x\":1}"), database.query(
+                "select job_name, storage from thain_job_checkpoint where flow_execution_id = 1") {
+            it.getString(1) to it.getString(2)
+        })
+        Assertions.assertEquals(listOf(JobExecutionStatus.SUCCESS.code to 2), statistics(database))
+
+        jobExecutionDao.deleteUnfinishedJobExecutionByFlowExecutionIds(listOf(1))
+        Assertions.assertEquals(listOf(100L), database.query("select id from thain_job_execution") { it.getLong(1) })
+    }
+
+    /**
+     * 检查点写不进去时成功状态也不提交
+     */
+    @Test
+    fun checkpointRollbackTest() {
+        val database = TestDatabase()
+        database.execute("insert into thain_job_execution(id, flow_execution_id, job_id, status, create_time) values (100, 1, 1, 2, now())")
+        val jobExecutionDao = JobExecutionDao(database.sqlSessionFactory, database.mailService)
+
+        Assertions.assertFalse(jobExecutionDao.updateSuccessStatus(100, 1, "a".repeat(200), "{}"))
+        Assertions.assertEquals(listOf(JobExecutionStatus.RUNNING.code), database.query(
+                "select status from thain_job_execution where id = 100") { it.getInt(1) })
+        Assertions.assertEquals(listOf<Pair<Int, Int>>(), statistics(database))
+    }
+}
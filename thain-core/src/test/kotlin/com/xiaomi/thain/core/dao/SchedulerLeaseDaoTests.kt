@@ -0,0 +1,104 @@
+package com.xiaomi.thain.core.dao
+
+import com.xiaomi.thain.core.TestDatabase
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+class SchedulerLeaseDaoTests {
+
+    private lateinit var database: TestDatabase
+    private lateinit var schedulerLeaseDao: SchedulerLeaseDao
+
+    @BeforeEach
+    fun init() {
+        database = TestDatabase()
+        database.execute(
+                "insert into thain_flow(id, name, scheduling_status) values (1, 'scheduling', 1)",
+                "insert into thain_flow(id, name, scheduling_status) values (2, 'paused', 2)")
+        schedulerLeaseDao = SchedulerLeaseDao(database.sqlSessionFactory, database.mailService)
+    }
+
+    private fun firedUntil(partitionId: Int): Long {
+        return database.query("select fired_until from thain_scheduler_lease where partition_id = $partitionId") {
+            it.getLong(1)
+        }.single()
+    }
+
+    private fun flowExecutionCount(): Int {
+        return database.query("select count(*) from thain_flow_execution") { it.getInt(1) }.single()
+    }
+
+    /**
+     * 租约按 owner 和 expire_time 做 CAS，拿着旧的租约信息抢不到
+     */
+    @Test
+    fun acquireLeaseTest() {
+        val leases = schedulerLeaseDao.getLeases(2)!!
+        Assertions.assertEquals(listOf(0, 1), leases.map { it.partitionId }.sorted())
+        val lease = leases.first { it.partitionId == 0 }
+
+        Assertions.assertTrue(schedulerLeaseDao.acquireLease(lease, "a", 10_000))
+        Assertions.assertFalse(schedulerLeaseDao.acquireLease(lease, "b", 10_000))
+        val current = schedulerLeaseDao.getLeases(2)!!.first { it.partitionId == 0 }
+        Assertions.assertEquals("a", current.owner)
+        Assertions.assertTrue(schedulerLeaseDao.acquireLease(current, "b", 20_000))
+    }
+
+    /**
+     * 租约被别的节点接手或者过期了，这批触发整批回滚，fired_until 不变
+     */
+    @Test
+    fun fencingTest() {
+        val lease = schedulerLeaseDao.getLeases(1)!!.single()
+        Assertions.assertTrue(schedulerLeaseDao.acquireLease(lease, "a", 10_000))
+
+        Assertions.assertNull(schedulerLeaseDao.addAutomaticFlowExecutions(
+                "b", listOf(0), 5_000, 1_000, listOf(1L), "host"))
+        Assertions.assertNull(schedulerLeaseDao.addAutomaticFlowExecutions(
+                "a", listOf(0), 5_000, 10_000, listOf(1L), "host"))
+        Assertions.assertEquals(0, flowExecutionCount())
+        Assertions.assertEquals(0L, firedUntil(0))
+
+        val flowExecutions = schedulerLeaseDao.addAutomaticFlowExecutions(
+                "a", listOf(0), 5_000, 1_000, listOf(1L, 2L), "host")
+        // 暂停调度的不触发
+        Assertions.assertEquals(listOf(1L), flowExecutions!!.map { it.flowId })
+        Assertions.assertEquals(1, flowExecutionCount())
+        Assertions.assertEquals(5_000L, firedUntil(0))
+    }
+
+    /**
+     * 一批里有一个分区的租约丢了，整批都不能落库
+     */
+    @Test
+    fun partialFencingTest() {
+        val leases = schedulerLeaseDao.getLeases(2)!!
+        Assertions.assertTrue(schedulerLeaseDao.acquireLease(leases.first { it.partitionId == 0 }, "a", 10_000))
+        Assertions.assertTrue(schedulerLeaseDao.acquireLease(leases.first { it.partitionId == 1 }, "b", 10_000))
+
+        Assertions.assertNull(schedulerLeaseDao.addAutomaticFlowExecutions(
+                "a", listOf(0, 1), 5_000, 1_000, listOf(1L), "host"))
+        Assertions.assertEquals(0, flowExecutionCount())
+        Assertions.assertEquals(0L, firedUntil(0))
+    }
+
+    /**
+     * fired_until 只会往后走，续约、释放时传入更早的时间不会回退
+     */
+    @Test
+    fun firedUntilMonotonicTest() {
+        val lease = schedulerLeaseDao.getLeases(1)!!.single()
+        Assertions.assertTrue(schedulerLeaseDao.acquireLease(lease, "a", 10_000))
+        // 都暂停了也要推进 fired_until
+        Assertions.assertEquals(emptyList<Any>(), schedulerLeaseDao.addAutomaticFlowExecutions(
+                "a", listOf(0), 5_000, 1_000, listOf(2L), "host"))
+        Assertions.assertEquals(5_000L, firedUntil(0))
+
+        schedulerLeaseDao.renewLeases("a", listOf(0), 20_000, 3_000, 2_000)
+        schedulerLeaseDao.releaseLeases("a", listOf(0), 4_000)
+        Assertions.assertEquals(5_000L, firedUntil(0))
+        schedulerLeaseDao.releaseLeases("a", listOf(0), 6_000)
+        Assertions.assertEquals(6_000L, firedUntil(0))
+    }
+}
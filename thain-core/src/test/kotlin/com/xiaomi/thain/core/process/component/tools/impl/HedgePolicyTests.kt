@@ -0,0 +1,78 @@
+package com.xiaomi.thain.core.process.component.tools.impl
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class HedgePolicyTests {
+
+    /**
+     * 不到 10 次不对冲，之后按 p95 等待
+     */
+    @Test
+    fun delayTest() {
+        val policy = HedgePolicy()
+        repeat(9) {
+            policy.record(it + 1L)
+            Assertions.assertNull(policy.delayMillis())
+        }
+        policy.record(10)
+        Assertions.assertEquals(9L, policy.delayMillis())
+
+        (11L..100L).forEach { policy.record(it) }
+        Assertions.assertEquals(95L, policy.delayMillis())
+    }
+
+    /**
+     * 只看最近 100 次，早先的慢请求被挤出窗口
+     */
+    @Test
+    fun windowTest() {
+        val policy = HedgePolicy()
+        repeat(100) { policy.record(10_000) }
+        repeat(100) { policy.record(20) }
+        Assertions.assertEquals(20L, policy.delayMillis())
+
+        repeat(10) { policy.record(5_000) }
+        Assertions.assertEquals(5_000L, policy.delayMillis())
+    }
+
+    /**
+     * 每 10 个请求攒一次对冲，正好第 10 个请求就能用
+     */
+    @Test
+    fun budgetTest() {
+        val policy = HedgePolicy()
+        repeat(9) { policy.delayMillis() }
+        Assertions.assertFalse(policy.tryHedge())
+        policy.delayMillis()
+        Assertions.assertTrue(policy.tryHedge())
+        Assertions.assertFalse(policy.tryHedge())
+
+        var hedged = 0
+        repeat(1000) {
+            policy.delayMillis()
+            if (policy.tryHedge()) {
+                hedged++
+            }
+        }
+        Assertions.assertEquals(100, hedged)
+    }
+
+    /**
+     * 长时间不对冲最多攒 3 次，后端整体变慢时不会一下子翻倍
+     */
+    @Test
+    fun maxBudgetTest() {
+        val policy = HedgePolicy()
+        repeat(1000) { policy.delayMillis() }
+        repeat(3) { Assertions.assertTrue(policy.tryHedge()) }
+        Assertions.assertFalse(policy.tryHedge())
+    }
+
+    @Test
+    fun sharedTest() {
+        Assertions.assertSame(hedgePolicy(1, "http"), hedgePolicy(1, "http"))
+        Assertions.assertNotSame(hedgePolicy(1, "http"), hedgePolicy(1, "http2"))
+        Assertions.assertNotSame(hedgePolicy(1, "http"), hedgePolicy(2, "http"))
+    }
+}
@@ -0,0 +1,145 @@
+package com.xiaomi.thain.core.process.runtime.executor
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import com.xiaomi.thain.component.test.ProbeComponent
+import com.xiaomi.thain.core.TestDatabase
+import com.xiaomi.thain.core.process.ProcessEngineStorage
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class FlowExecutorTests {
+
+    private lateinit var database: TestDatabase
+    private lateinit var processEngineStorage: ProcessEngineStorage
+
+    @BeforeEach
+    fun init() {
+        database = TestDatabase()
+        processEngineStorage = database.processEngineStorage()
+        ProbeComponent.calls.clear()
+        database.execute(
+                "insert into thain_flow(id, name, scheduling_status) values (1, 'flow', 3)",
+                "insert into thain_flow_execution(id, flow_id, status) values (100, 1, 0)")
+    }
+
+    private fun addJob(id: Long, name: String, condition: String, properties: String,
+                       retryNumber: Int = 0, timeoutSeconds: Int = 0, mapSource: String = "", mapTolerance: Int = 0) {
+        database.execute("insert into thain_job(id, flow_id, name, `condition`, component, callback_url, properties, " +
+                "retry_number, timeout_seconds, map_source, map_parallelism, map_tolerance) " +
+                "values ($id, 1, '$name', '$condition', 'test::probe', '', '$properties', " +
+                "$retryNumber, $timeoutSeconds, '$mapSource', 1, $mapTolerance)")
+    }
+
+    /**
+     * @return flow execution 结束后的状态
+     */
+    private fun execute(): FlowExecutionStatus {
+        val flowExecutionDr = processEngineStorage.flowExecutionDao.getFlowExecution(100)!!
+        FlowExecutor(flowExecutionDr, processEngineStorage, 0).start().get(30, TimeUnit.SECONDS)
+        return FlowExecutionStatus.getInstance(processEngineStorage.flowExecutionDao.getFlowExecution(100)!!.status)
+    }
+
+    private fun mapState(jobId: Long): String {
+        return database.query("select map_state from thain_job_execution " +
+                "where flow_execution_id = 100 and job_id = $jobId") { it.getString(1) }.single()
+    }
+
+    /**
+     * 有检查点的节点不再执行，它的输出恢复到 storage 里给下游用
+     */
+    @Test
+    fun restoreCheckpointTest() {
+        addJob(1, "a", "", """{"value": "a", "fail": "a"}""")
+        addJob(2, "b", "a", """{"value": "b", "read": "a.x"}""")
+        database.execute("insert into thain_job_checkpoint(flow_execution_id, job_name, storage) " +
+                "values (100, 'a', '{\"x\":1}')")
+
+        Assertions.assertEquals(FlowExecutionStatus.SUCCESS, execute())
+        Assertions.assertEquals(listOf("b:1"), ProbeComponent.calls.toList())
+        Assertions.assertEquals(listOf("a", "b"), database.query(
+                "select job_name from thain_job_checkpoint where flow_execution_id = 100 order by job_name") {
+            it.getString(1)
+        })
+    }
+
+    /**
+     * 节点失败后在 flow 里重试，每次失败的执行另存一条 attempt 记录
+     */
+    @Test
+    fun jobRetryTest() {
+        addJob(1, "a", "", """{"value": "a", "failTimes": "2"}""", retryNumber = 2)
+        addJob(2, "b", "a", """{"value": "b"}""")
+
+        Assertions.assertEquals(FlowExecutionStatus.SUCCESS, execute())
+        Assertions.assertEquals(listOf("a", "a", "a", "b"), ProbeComponent.calls.toList())
+        Assertions.assertEquals(listOf(1, 2), database.query("select attempt from thain_job_execution " +
+                "where flow_execution_id = 100 and job_id = 1 and attempt > 0 order by attempt") { it.getInt(1) })
+    }
+
+    /**
+     * 重试次数用完还失败，flow 失败，下游不执行
+     */
+    @Test
+    fun jobRetryExhaustedTest() {
+        addJob(1, "a", "", """{"value": "a", "failTimes": "3"}""", retryNumber = 2)
+        addJob(2, "b", "a", """{"value": "b"}""")
+
+        Assertions.assertEquals(FlowExecutionStatus.ERROR, execute())
+        Assertions.assertEquals(listOf("a", "a", "a"), ProbeComponent.calls.toList())
+    }
+
+    /**
+     * 超时算失败，超时的那次执行结束后才开始重试，同一个节点不会同时执行两次
+     */
+    @Test
+    fun jobTimeoutTest() {
+        addJob(1, "a", "", """{"value": "a", "sleepMillis": "1500"}""",
+                retryNumber = 1, timeoutSeconds = 1)
+
+        Assertions.assertEquals(FlowExecutionStatus.ERROR, execute())
+        Assertions.assertEquals(listOf("a", "a"), ProbeComponent.calls.toList())
+    }
+
+    /**
+     * 失败的元素不超过 mapTolerance 时节点成功，失败数给下游用
+     */
+    @Test
+    fun mapToleranceTest() {
+        addJob(1, "m", "", """{"items": "1,2,3,4", "fail": "2,3", "value": "${'$'}{item}"}""",
+                mapSource = "items", mapTolerance = 2)
+        addJob(2, "d", "m", """{"value": "d", "read": "m.failed"}""")
+
+        Assertions.assertEquals(FlowExecutionStatus.SUCCESS, execute())
+        Assertions.assertEquals(listOf("1", "2", "3", "4", "d:2"), ProbeComponent.calls.toList())
+        Assertions.assertTrue(mapState(1).contains("\"status\":\"SEES\""), mapState(1))
+    }
+
+    /**
+     * 失败超过 mapTolerance 后没开始的元素不再执行，节点失败，下游不执行
+     */
+    @Test
+    fun mapToleranceExceededTest() {
+        addJob(1, "m", "", """{"items": "1,2,3,4", "fail": "2,3", "value": "${'$'}{item}"}""",
+                mapSource = "items", mapTolerance = 1)
+        addJob(2, "d", "m", """{"value": "d"}""")
+
+        Assertions.assertEquals(FlowExecutionStatus.ERROR, execute())
+        Assertions.assertEquals(listOf("1", "2", "3"), ProbeComponent.calls.toList())
+        Assertions.assertTrue(mapState(1).contains("\"status\":\"SEEN\""), mapState(1))
+    }
+
+    /**
+     * map 节点的元素各自重试，重试时占着并发数
+     */
+    @Test
+    fun mapElementRetryTest() {
+        addJob(1, "m", "", """{"items": "1,2", "failTimes": "1", "value": "${'$'}{item}"}""",
+                retryNumber = 1, mapSource = "items")
+
+        Assertions.assertEquals(FlowExecutionStatus.SUCCESS, execute())
+        Assertions.assertEquals(listOf("1", "1", "2", "2"), ProbeComponent.calls.toList())
+        Assertions.assertTrue(mapState(1).contains("\"attempts\":[2,2]"), mapState(1))
+    }
+}
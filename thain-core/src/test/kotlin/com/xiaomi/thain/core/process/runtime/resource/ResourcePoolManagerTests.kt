@@ -0,0 +1,78 @@
+package com.xiaomi.thain.core.process.runtime.resource
+
+import com.xiaomi.thain.core.TestDatabase
+import com.xiaomi.thain.core.dao.FlowExecutionDao
+import com.xiaomi.thain.core.dao.ResourcePoolDao
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+class ResourcePoolManagerTests {
+
+    private lateinit var resourcePoolDao: ResourcePoolDao
+    private lateinit var flowExecutionDao: FlowExecutionDao
+
+    @BeforeEach
+    fun init() {
+        val database = TestDatabase()
+        database.execute(
+                "insert into thain_resource_pool(name, capacity) values ('a', 1)",
+                "insert into thain_resource_pool(name, capacity) values ('b', 1)",
+                "insert into thain_flow_execution(id, status) values (1, 1)",
+                "insert into thain_flow_execution(id, status) values (2, 1)",
+                "insert into thain_flow_execution(id, status) values (3, 4)")
+        resourcePoolDao = ResourcePoolDao(database.sqlSessionFactory, database.mailService)
+        flowExecutionDao = FlowExecutionDao(database.sqlSessionFactory, database.mailService)
+    }
+
+    /**
+     * 两个节点各自缓存了对方要的资源，再交叉申请两个资源池，没拿全的要把缓存的还回去，不能互相等
+     */
+    @Test
+    fun crossedClaimsTest() {
+        val node1 = ResourcePoolManager(resourcePoolDao, flowExecutionDao, "node1")
+        val node2 = ResourcePoolManager(resourcePoolDao, flowExecutionDao, "node2")
+        node1.acquire(1, mapOf("a" to 1)).get(10, TimeUnit.SECONDS)
+        node2.acquire(2, mapOf("b" to 1)).get(10, TimeUnit.SECONDS)
+
+        val both1 = node1.acquire(1, mapOf("a" to 1, "b" to 1))
+        val both2 = node2.acquire(2, mapOf("a" to 1, "b" to 1))
+        node1.release(mapOf("a" to 1))
+        node2.release(mapOf("b" to 1))
+
+        CompletableFuture.anyOf(both1, both2).get(30, TimeUnit.SECONDS)
+        Assertions.assertFalse(both1.isDone && both2.isDone, "capacity exceeded")
+        if (both1.isDone) {
+            node1.release(mapOf("a" to 1, "b" to 1))
+            both2.get(30, TimeUnit.SECONDS)
+        } else {
+            node2.release(mapOf("a" to 1, "b" to 1))
+            both1.get(30, TimeUnit.SECONDS)
+        }
+    }
+
+    @Test
+    fun invalidClaimTest() {
+        val node = ResourcePoolManager(resourcePoolDao, flowExecutionDao, "node")
+        Assertions.assertThrows(ExecutionException::class.java) {
+            node.acquire(1, mapOf("a" to 2)).get(10, TimeUnit.SECONDS)
+        }
+        Assertions.assertThrows(ExecutionException::class.java) {
+            node.acquire(1, mapOf("c" to 1)).get(10, TimeUnit.SECONDS)
+        }
+        Assertions.assertTrue(node.acquire(1, emptyMap()).isDone)
+    }
+
+    @Test
+    fun stoppedFlowExecutionTest() {
+        val node1 = ResourcePoolManager(resourcePoolDao, flowExecutionDao, "node1")
+        val node2 = ResourcePoolManager(resourcePoolDao, flowExecutionDao, "node2")
+        node1.acquire(1, mapOf("a" to 1)).get(10, TimeUnit.SECONDS)
+        // flow execution 3 已经被 kill，下一轮检查时放弃
+        val waiting = node2.acquire(3, mapOf("a" to 1))
+        Assertions.assertThrows(ExecutionException::class.java) { waiting.get(10, TimeUnit.SECONDS) }
+    }
+}
@@ -0,0 +1,83 @@
+package com.xiaomi.thain.core.process.runtime.storage
+
+import com.alibaba.fastjson.JSONObject
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.io.ByteArrayOutputStream
+
+class FlowExecutionStorageTests {
+
+    private val flowExecutionId = -1L
+
+    @AfterEach
+    fun clean() {
+        FlowExecutionStorage.drop(flowExecutionId)
+    }
+
+    /**
+     * 大的值写到文件里，读出来和写进去的一样，非字符串的读出来是 JSONObject
+     */
+    @Test
+    fun spillTest() {
+        val storage = FlowExecutionStorage.getInstance(flowExecutionId)
+        val big = "x".repeat(1 shl 20)
+        val bigMap = mapOf("b" to big, "a" to 1)
+        storage.put("job", "string", big)
+        storage.put("job", "map", bigMap)
+        storage.put("job", "number", 1)
+
+        Assertions.assertEquals(big, storage.get<String>("job", "string"))
+        val map = storage.get<JSONObject>("job", "map")!!
+        Assertions.assertEquals(big, map.getString("b"))
+        Assertions.assertEquals(1, map.getIntValue("a"))
+        Assertions.assertEquals(1, storage.get<Int>("job", "number"))
+
+        val out = ByteArrayOutputStream()
+        Assertions.assertEquals(false, storage.copyValueTo("job", "map", out))
+        Assertions.assertEquals("{\"a\":1,\"b\":\"$big\"}", out.toString("UTF-8"))
+        Assertions.assertNull(storage.copyValueTo("job", "missing", ByteArrayOutputStream()))
+    }
+
+    /**
+     * 覆盖写入后读到新值，storageMap 按 key 读
+     */
+    @Test
+    fun overwriteTest() {
+        val storage = FlowExecutionStorage.getInstance(flowExecutionId)
+        storage.put("job", "value", "y".repeat(1 shl 20))
+        storage.put("job", "value", "small")
+        storage.put(GLOBAL_JOB_NAME, "g", "global")
+
+        Assertions.assertEquals("small", storage.storageMap["job" to "value"])
+        Assertions.assertTrue(storage.storageMap.containsKey(GLOBAL_JOB_NAME to "g"))
+        Assertions.assertFalse(storage.storageMap.containsKey("job" to "missing"))
+        Assertions.assertEquals(2, storage.storageMap.size)
+        Assertions.assertEquals(setOf("job" to "value", GLOBAL_JOB_NAME to "g"), storage.keys().toSet())
+    }
+
+    @Test
+    fun dropTest() {
+        FlowExecutionStorage.getInstance(flowExecutionId).put("job", "value", "z".repeat(1 shl 20))
+        FlowExecutionStorage.drop(flowExecutionId)
+        Assertions.assertNull(FlowExecutionStorage.getInstance(flowExecutionId).get<String>("job", "value"))
+    }
+
+    /**
+     * 检查点超过上限时不读文件，直接返回 null
+     */
+    @Test
+    fun jobStorageJsonTest() {
+        val storage = FlowExecutionStorage.getInstance(flowExecutionId)
+        storage.put("job", "a", 1)
+        storage.put("job", "b", "x".repeat(100))
+
+        Assertions.assertEquals("{}", storage.jobStorageJson("missing", 10))
+        Assertions.assertEquals(JSONObject(mapOf("a" to 1, "b" to "x".repeat(100))),
+                JSONObject.parseObject(storage.jobStorageJson("job", 1000)))
+        Assertions.assertNull(storage.jobStorageJson("job", 50))
+
+        storage.put("job", "c", "y".repeat(1 shl 20))
+        Assertions.assertNull(storage.jobStorageJson("job", 1L shl 20))
+    }
+}
@@ -0,0 +1,109 @@
+package com.xiaomi.thain.core.process.runtime.storage
+
+import com.xiaomi.thain.core.TestDatabase
+import com.xiaomi.thain.core.model.dr.JobDr
+import com.xiaomi.thain.core.process.ProcessEngineStorage
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+class JobResultCacheTests {
+
+    private lateinit var database: TestDatabase
+    private lateinit var processEngineStorage: ProcessEngineStorage
+
+    private val flowExecutionIds = mutableListOf<Long>()
+
+    @BeforeEach
+    fun init() {
+        database = TestDatabase()
+        processEngineStorage = database.processEngineStorage()
+        database.execute(
+                "insert into thain_flow(id, name, scheduling_status, cache_max_entries) values (1, 'flow', 3, 2)",
+                "insert into thain_job(id, flow_id, name, component, properties, cache_enabled) " +
+                        "values (1, 1, 'b', 'test::probe', '{\"referenceData\": \"x:a.k\"}', 1)",
+                "insert into thain_job(id, flow_id, name, component, properties, cache_enabled) " +
+                        "values (2, 1, 'c', 'test::probe', '{}', 1)")
+    }
+
+    @AfterEach
+    fun clean() {
+        flowExecutionIds.forEach { FlowExecutionStorage.drop(it) }
+    }
+
+    private fun job(name: String): JobDr = processEngineStorage.jobDao.getJobs(1).single { it.name == name }
+
+    /**
+     * 每次一个新的 flow execution 的 storage，放好节点开始前可见的中间结果
+     */
+    private fun storage(vararg values: Pair<Pair<String, String>, Any>): FlowExecutionStorage {
+        val flowExecutionId = -1L - flowExecutionIds.size
+        flowExecutionIds.add(flowExecutionId)
+        return FlowExecutionStorage.getInstance(flowExecutionId)
+                .apply { values.forEach { (key, value) -> put(key.first, key.second, value) } }
+    }
+
+    private fun save(jobName: String, storage: FlowExecutionStorage, output: String,
+                     read: (JobResultCache) -> Unit = {}) {
+        val jobResultCache = JobResultCache(job(jobName), storage, processEngineStorage)
+        read(jobResultCache)
+        storage.put(jobName, "value", output)
+        jobResultCache.save()
+    }
+
+    /**
+     * @return 命中时缓存的 value
+     */
+    private fun restore(jobName: String, storage: FlowExecutionStorage): String? {
+        if (!JobResultCache(job(jobName), storage, processEngineStorage).restore()) {
+            return null
+        }
+        return storage.get(jobName, "value")
+    }
+
+    /**
+     * properties 里引用的 a.k 不是上游节点的结果也算在指纹里
+     */
+    @Test
+    fun referenceTest() {
+        save("b", storage(("a" to "k") to "1"), "out") { it.recordRead("a", "k") }
+
+        Assertions.assertEquals("out", restore("b", storage(("a" to "k") to "1", ("a" to "other") to "x")))
+        Assertions.assertNull(restore("b", storage(("a" to "k") to "2")))
+        Assertions.assertNull(restore("b", storage()))
+    }
+
+    /**
+     * 组件读了指纹以外的中间结果时不缓存，读自己的不算
+     */
+    @Test
+    fun uncoveredReadTest() {
+        save("c", storage(("a" to "k") to "1"), "read") { it.recordRead("a", "k") }
+        Assertions.assertNull(restore("c", storage(("a" to "k") to "1")))
+
+        save("c", storage(), "all") { it.recordReadAll() }
+        Assertions.assertNull(restore("c", storage()))
+
+        save("c", storage(), "own") { it.recordRead("c", "value") }
+        Assertions.assertEquals("own", restore("c", storage()))
+    }
+
+    /**
+     * 同一秒里保存的也按先后淘汰，每个节点各自保留 cacheMaxEntries 条
+     */
+    @Test
+    fun overflowTest() {
+        save("c", storage(), "c")
+        (1..3).forEach { save("b", storage(("a" to "k") to "$it"), "b$it") }
+
+        Assertions.assertNull(restore("b", storage(("a" to "k") to "1")))
+        Assertions.assertEquals("b2", restore("b", storage(("a" to "k") to "2")))
+        Assertions.assertEquals("b3", restore("b", storage(("a" to "k") to "3")))
+        Assertions.assertEquals("c", restore("c", storage()))
+        Assertions.assertEquals(listOf("b" to 2, "c" to 1), database.query(
+                "select job_name, count(1) from thain_job_cache group by job_name order by job_name") {
+            it.getString(1) to it.getInt(2)
+        })
+    }
+}
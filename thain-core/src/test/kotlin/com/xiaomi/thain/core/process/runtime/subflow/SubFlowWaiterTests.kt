@@ -0,0 +1,101 @@
+package com.xiaomi.thain.core.process.runtime.subflow
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import com.xiaomi.thain.core.TestDatabase
+import com.xiaomi.thain.core.model.dr.FlowExecutionRetryDr
+import com.xiaomi.thain.core.process.ProcessEngineStorage
+import com.xiaomi.thain.core.process.component.tools.impl.ComponentToolsImpl
+import com.xiaomi.thain.core.process.runtime.notice.FlowExecutionEndNotice
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class SubFlowWaiterTests {
+
+    private lateinit var database: TestDatabase
+    private lateinit var processEngineStorage: ProcessEngineStorage
+
+    @BeforeEach
+    fun init() {
+        database = TestDatabase()
+        processEngineStorage = database.processEngineStorage()
+        database.execute(
+                "insert into thain_flow(id, name, scheduling_status) values (1, 'parent', 3)",
+                "insert into thain_flow(id, name, scheduling_status) values (2, 'child', 3)",
+                "insert into thain_job(id, flow_id, name, component, properties) values (1, 1, 'job', 'std::subflow', '{}')",
+                "insert into thain_flow_execution(id, flow_id, status) values (100, 1, 1)")
+    }
+
+    private fun addSubFlowExecution(flowExecutionId: Long, status: FlowExecutionStatus, nextAttemptAt: Long = 0) {
+        database.execute(
+                "insert into thain_flow_execution(id, flow_id, status, next_attempt_at) " +
+                        "values ($flowExecutionId, 2, ${status.code}, $nextAttemptAt)",
+                "insert into thain_subflow_execution(flow_execution_id, parent_flow_execution_id, parent_job_name) " +
+                        "values ($flowExecutionId, 100, 'job')")
+    }
+
+    /**
+     * 子 flow 失败等待重试时不唤醒，重试新建的 flow execution 结束后才唤醒
+     */
+    @Test
+    fun followRetryTest() {
+        addSubFlowExecution(200, FlowExecutionStatus.ERROR_WAITING_RETRY, 1000)
+        val waiter = SubFlowWaiter(processEngineStorage.flowExecutionDao, processEngineStorage.subFlowExecutionDao,
+                FlowExecutionEndNotice())
+
+        val future = waiter.await(200)
+        Thread.sleep(500)
+        Assertions.assertFalse(future.isDone)
+
+        val retry = processEngineStorage.flowExecutionDao
+                .claimRetry(FlowExecutionRetryDr(200, 2, null, 1, 1000), "host", emptySet())!!
+        processEngineStorage.flowExecutionDao.updateFlowExecutionStatus(retry.id, FlowExecutionStatus.SUCCESS.code)
+        // 再登记一次触发检查，不等定时检查
+        Assertions.assertSame(future, waiter.await(200))
+
+        val end = future.get(5, TimeUnit.SECONDS)
+        Assertions.assertEquals(retry.id, end.flowExecutionId)
+        Assertions.assertEquals(FlowExecutionStatus.SUCCESS, end.status)
+    }
+
+    /**
+     * 父 flow execution 恢复后重新执行节点时，接着等还没失败的子 flow，失败了的才启动新的
+     */
+    @Test
+    fun reattachTest() {
+        val jobDr = processEngineStorage.jobDao.getJobs(1).single()
+        addSubFlowExecution(200, FlowExecutionStatus.RUNNING)
+
+        val componentTools = ComponentToolsImpl(jobDr, 1, 100, processEngineStorage)
+        Assertions.assertEquals(200L, componentTools.startSubFlow(2, mapOf(), mapOf()))
+        Assertions.assertEquals(200L, componentTools.subFlow!!.flowExecutionId)
+
+        database.execute("update thain_flow_execution set status = ${FlowExecutionStatus.ERROR.code} where id = 200")
+        // 测试的 processEngineStorage 不能启动 flow
+        Assertions.assertThrows(UnsupportedOperationException::class.java) {
+            ComponentToolsImpl(jobDr, 2, 100, processEngineStorage).startSubFlow(2, mapOf(), mapOf())
+        }
+    }
+
+    /**
+     * 等待重试的子 flow 取消重试后按 kill 结束，已经被认领的不能取消
+     */
+    @Test
+    fun cancelRetryTest() {
+        addSubFlowExecution(200, FlowExecutionStatus.ERROR_WAITING_RETRY, 1000)
+        addSubFlowExecution(201, FlowExecutionStatus.ERROR_WAITING_RETRY, 1000)
+        val flowExecutionDao = processEngineStorage.flowExecutionDao
+        Assertions.assertEquals(listOf(200L, 201L),
+                processEngineStorage.subFlowExecutionDao.getRunningSubFlowExecutions(100).map { it.flowExecutionId }.sorted())
+
+        Assertions.assertTrue(flowExecutionDao.cancelRetry(200, FlowExecutionStatus.KILLED.code))
+        Assertions.assertFalse(flowExecutionDao.cancelRetry(200, FlowExecutionStatus.KILLED.code))
+        Assertions.assertEquals(FlowExecutionStatus.KILLED.code, flowExecutionDao.getFlowExecution(200)!!.status)
+
+        val retry = flowExecutionDao.claimRetry(FlowExecutionRetryDr(201, 2, null, 1, 1000), "host", emptySet())!!
+        Assertions.assertFalse(flowExecutionDao.cancelRetry(201, FlowExecutionStatus.KILLED.code))
+        Assertions.assertEquals(listOf(retry.id),
+                processEngineStorage.subFlowExecutionDao.getRunningSubFlowExecutions(100).map { it.flowExecutionId }.sorted())
+    }
+}
@@ -0,0 +1,73 @@
+package com.xiaomi.thain.core.scheduler.cron
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class TimingWheelTests {
+
+    /**
+     * 每层 4 格：第一层 4ms，第二层 16ms，第三层 64ms。
+     * 放在上层的要逐层降下来，并且在自己的到期时间那一格出来
+     */
+    @Test
+    fun cascadeTest() {
+        val wheel = TimingWheel<Long>(1, 4, 0)
+        val expirations = listOf(1L, 3L, 4L, 5L, 15L, 16L, 17L, 63L, 64L, 70L, 200L)
+        expirations.forEach { Assertions.assertTrue(wheel.add(it, it)) }
+
+        val fired = mutableMapOf<Long, Long>()
+        (1L..256L).forEach { now ->
+            val due = mutableListOf<Long>()
+            wheel.advance(now, due)
+            due.forEach { fired[it] = now }
+        }
+        Assertions.assertEquals(expirations.associateWith { it }, fired)
+    }
+
+    /**
+     * 一次推进很多格，中间到期的都要出来
+     */
+    @Test
+    fun advanceManyTicksTest() {
+        val wheel = TimingWheel<String>(10, 8, 1005)
+        wheel.add(1020, "a")
+        wheel.add(1500, "b")
+        wheel.add(5000, "c")
+
+        val due = mutableListOf<String>()
+        wheel.advance(1600, due)
+        Assertions.assertEquals(listOf("a", "b"), due)
+        due.clear()
+        wheel.advance(4999, due)
+        Assertions.assertEquals(emptyList<String>(), due)
+        wheel.advance(5000, due)
+        Assertions.assertEquals(listOf("c"), due)
+    }
+
+    /**
+     * 推进中途加入的，到期时间在上层当前格里也不能漏掉
+     */
+    @Test
+    fun addAfterAdvanceTest() {
+        val wheel = TimingWheel<Long>(1, 4, 0)
+        val due = mutableListOf<Long>()
+        wheel.advance(3, due)
+        Assertions.assertTrue(wheel.add(13, 13))
+        Assertions.assertTrue(wheel.add(6, 6))
+        (4L..13L).forEach { now ->
+            wheel.advance(now, due)
+            if (now == 6L) {
+                Assertions.assertEquals(listOf(6L), due)
+            }
+        }
+        Assertions.assertEquals(listOf(6L, 13L), due)
+    }
+
+    @Test
+    fun expiredTest() {
+        val wheel = TimingWheel<String>(1000, 60, 10_500)
+        Assertions.assertFalse(wheel.add(10_000, "past"))
+        Assertions.assertFalse(wheel.add(10_999, "current tick"))
+        Assertions.assertTrue(wheel.add(11_000, "next tick"))
+    }
+}
@@ -0,0 +1,50 @@
+package com.xiaomi.thain.core.scheduler.retry
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.util.*
+
+class RetryBackoffTests {
+
+    @Test
+    fun fixedTest() {
+        val backoff = RetryBackoff(RetryBackoff.Policy.FIXED, 3600, 0.0)
+        Assertions.assertEquals(30_000L, backoff.delayMillis(30, 1))
+        Assertions.assertEquals(30_000L, backoff.delayMillis(30, 5))
+        Assertions.assertEquals(0L, backoff.delayMillis(-1, 1))
+    }
+
+    @Test
+    fun exponentialTest() {
+        val backoff = RetryBackoff(RetryBackoff.Policy.EXPONENTIAL, 100, 0.0)
+        Assertions.assertEquals(10_000L, backoff.delayMillis(10, 1))
+        Assertions.assertEquals(20_000L, backoff.delayMillis(10, 2))
+        Assertions.assertEquals(80_000L, backoff.delayMillis(10, 4))
+        Assertions.assertEquals(100_000L, backoff.delayMillis(10, 5))
+        // 重试次数很大时不能溢出成负数
+        Assertions.assertEquals(100_000L, backoff.delayMillis(10, 1000))
+    }
+
+    @Test
+    fun jitterTest() {
+        val backoff = RetryBackoff(RetryBackoff.Policy.FIXED, 3600, 0.5)
+        repeat(100) {
+            val delay = backoff.delayMillis(10, 1)
+            Assertions.assertTrue(delay in 5_000..10_000, "delay: $delay")
+        }
+    }
+
+    @Test
+    fun fromPropertiesTest() {
+        val properties = Properties().apply {
+            setProperty("thain.retry.backoff", " exponential ")
+            setProperty("thain.retry.max-interval-seconds", "60")
+            setProperty("thain.retry.jitter", "2")
+        }
+        val backoff = RetryBackoff.fromProperties(properties)
+        repeat(100) {
+            Assertions.assertTrue(backoff.delayMillis(40, 2) in 0..60_000)
+        }
+        Assertions.assertEquals(7_000L, RetryBackoff.fromProperties(Properties()).delayMillis(7, 3))
+    }
+}
@@ -0,0 +1,61 @@
+package com.xiaomi.thain.core.scheduler.retry
+
+import com.xiaomi.thain.core.TestDatabase
+import com.xiaomi.thain.core.dao.FlowExecutionDao
+import com.xiaomi.thain.core.model.dr.FlowExecutionRetryDr
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class RetryQueueTests {
+
+    /**
+     * c 的条件是 a || b，a 成功 b 失败时 c 执行过，但 b 要重新执行，c 也要跟着重新执行
+     */
+    @Test
+    fun orConditionTest() {
+        val conditions = mapOf("a" to "", "b" to "", "c" to "a || b", "d" to "c.count > 0", "e" to "a")
+        val reusable = RetryQueue.reusableJobNames(conditions, setOf("a", "c", "d", "e"))
+        Assertions.assertEquals(setOf("a", "e"), reusable)
+    }
+
+    @Test
+    fun notExecutedTest() {
+        val conditions = mapOf("a" to "", "b" to "a", "c" to "b && a")
+        Assertions.assertEquals(setOf("a"), RetryQueue.reusableJobNames(conditions, setOf("a")))
+        Assertions.assertEquals(emptySet<String>(), RetryQueue.reusableJobNames(emptyMap(), setOf("a")))
+    }
+
+    /**
+     * 只复制可以复用的节点的检查点和 job execution
+     */
+    @Test
+    fun claimRetryTest() {
+        val database = TestDatabase()
+        database.execute(
+                "insert into thain_flow(id, name) values (1, 'flow')",
+                "insert into thain_flow_execution(id, flow_id, status, next_attempt_at) values (100, 1, 3, 100)",
+                "insert into thain_job(id, flow_id, name, `condition`, properties) values (1, 1, 'a', '', '{}')",
+                "insert into thain_job(id, flow_id, name, `condition`, properties) values (2, 1, 'b', '', '{}')",
+                "insert into thain_job(id, flow_id, name, `condition`, properties) values (3, 1, 'c', 'a || b', '{}')",
+                "insert into thain_job_execution(flow_execution_id, job_id, status) values (100, 1, 3)",
+                "insert into thain_job_execution(flow_execution_id, job_id, status) values (100, 2, 4)",
+                "insert into thain_job_execution(flow_execution_id, job_id, status) values (100, 3, 3)",
+                "insert into thain_job_checkpoint(flow_execution_id, job_name, storage) values (100, 'a', '{\"x\":1}')",
+                "insert into thain_job_checkpoint(flow_execution_id, job_name, storage) values (100, 'c', '{\"y\":2}')")
+        val flowExecutionDao = FlowExecutionDao(database.sqlSessionFactory, database.mailService)
+        val reusable = RetryQueue.reusableJobNames(mapOf("a" to "", "b" to "", "c" to "a || b"), setOf("a", "c"))
+
+        // 自增 id 从 1 开始，和手动插入的 100 错开
+        val retry = FlowExecutionRetryDr(100, 1, "{}", 1, 100)
+        val flowExecutionDr = flowExecutionDao.claimRetry(retry, "host", reusable)
+        Assertions.assertNotNull(flowExecutionDr)
+        val id = flowExecutionDr!!.id
+        Assertions.assertEquals(listOf("a"), database.query(
+                "select job_name from thain_job_checkpoint where flow_execution_id = $id") { it.getString(1) })
+        Assertions.assertEquals(listOf(1L), database.query(
+                "select job_id from thain_job_execution where flow_execution_id = $id") { it.getLong(1) })
+
+        // 已经认领过的不能再认领
+        Assertions.assertNull(flowExecutionDao.claimRetry(retry, "host", reusable))
+    }
+}
@@ -21,6 +21,10 @@ export class FlowModel {
   public slaKill?: boolean;
   retryNumber?: number;
   retryTimeInterval?: number;
+  cacheTtlSeconds?: number;
+  cacheMaxEntries?: number;
+  upstreamFlowIds?: string;
+  upstreamWindowSeconds?: number;
   createTime?: number;
   updateTime?: number;
   statusUpdateTime?: number;
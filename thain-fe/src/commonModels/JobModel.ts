@@ -20,6 +20,15 @@ export class JobModel {
     }
     instance.xAxis = Math.floor(node.x);
     instance.yAxis = Math.floor(node.y);
+    // 输入框里改过的是字符串
+    instance.retryNumber = Number(node.retryNumber) || 0;
+    instance.retryBackoff = Number(node.retryBackoff) || 0;
+    instance.timeoutSeconds = Number(node.timeoutSeconds) || 0;
+    instance.cacheEnabled = String(node.cacheEnabled) === 'true';
+    instance.mapSource = node.mapSource || '';
+    instance.mapParallelism = Number(node.mapParallelism) || 1;
+    instance.mapTolerance = Number(node.mapTolerance) || 0;
+    instance.resourceClaims = (node.resourceClaims || '').trim();
     return instance;
   }
   id?: number;
@@ -31,5 +40,37 @@ export class JobModel {
   properties: { [props: string]: string } = {};
   xAxis = 0;
   yAxis = 0;
+  /**
+   * 失败后在 flow 内重试的次数
+   */
+  retryNumber = 0;
+  /**
+   * 重试的基础间隔（秒），每次重试翻倍
+   */
+  retryBackoff = 0;
+  /**
+   * 单次执行的超时时间（秒），0 不超时
+   */
+  timeoutSeconds = 0;
+  /**
+   * 输入不变时直接使用上次的结果
+   */
+  cacheEnabled = false;
+  /**
+   * map 节点的元素来源：上游节点的 storage（jobName.key）或者本节点的属性名，为空不是 map 节点
+   */
+  mapSource = '';
+  /**
+   * map 节点同时执行的元素数
+   */
+  mapParallelism = 1;
+  /**
+   * map 节点允许失败的元素数
+   */
+  mapTolerance = 0;
+  /**
+   * 节点需要的集群资源，json，资源池名 -> 数量，为空不需要
+   */
+  resourceClaims = '';
   createTime?: number;
 }
@@ -18,6 +18,14 @@ export default {
   'flow.node.name': 'Node name',
   'flow.status.callback.url': 'Node status callback address',
   'flow.condition': 'Trigger condition',
+  'flow.job.retry.number': 'Retry number',
+  'flow.job.retry.backoff': 'Retry interval(second, doubled each time)',
+  'flow.job.timeout.seconds': 'Timeout(second, 0 for none)',
+  'flow.job.cache.enabled': 'Reuse result when inputs are unchanged',
+  'flow.job.map.source': 'Map over(job.key or property, empty for none)',
+  'flow.job.map.parallelism': 'Map parallelism',
+  'flow.job.map.tolerance': 'Map allowed failures',
+  'flow.job.resource.claims': 'Resource claims(json, pool -> permits, empty for none)',
   'flow.last.status': 'Last run status',
   'flow.schedule.status': 'Scheduling status',
   'flow.status.update.time': 'State update time',
@@ -54,6 +62,8 @@ export default {
   'flow.kill.success': 'Kill success',
   'flow.grid.align': 'Grid align',
   'flow.failure.alarm.mail': 'Failure alarm mail',
+  'flow.upstream.flow.ids': 'Upstream flow ids(comma separated)',
+  'flow.upstream.window.seconds': 'Upstream window(seconds, 0 for any upstream)',
   'flow.autokill.settings': 'SLA settings',
   'flow.duration': 'Duration',
   'flow.kill.schedule': 'Kill scheduling',
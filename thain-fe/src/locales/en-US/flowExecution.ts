@@ -18,6 +18,7 @@ export default {
   'flow.execution.manual': 'Manual',
   'flow.execution.auto': 'Auto',
   'flow.execution.retry': 'Retry',
+  'flow.execution.dependency': 'Upstream',
   'flow.execution.status': 'Flow execution status',
   'flow.execution.execution.machine': 'Execution machine',
   'flow.execution.create.time': 'Create time',
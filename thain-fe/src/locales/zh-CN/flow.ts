@@ -18,6 +18,14 @@ export default {
   'flow.node.name': '节点名称',
   'flow.status.callback.url': '状态回调地址',
   'flow.condition': '触发条件',
+  'flow.job.retry.number': '失败重试次数',
+  'flow.job.retry.backoff': '重试间隔(秒,每次翻倍)',
+  'flow.job.timeout.seconds': '超时时间(秒,0不超时)',
+  'flow.job.cache.enabled': '输入不变时使用缓存结果',
+  'flow.job.map.source': '按元素执行(节点名.key或属性名,为空不启用)',
+  'flow.job.map.parallelism': '元素并发数',
+  'flow.job.map.tolerance': '允许失败的元素数',
+  'flow.job.resource.claims': '集群资源(json,资源池名 -> 数量,为空不需要)',
   'flow.last.status': '最后一次运行状态',
   'flow.schedule.status': '调度状态',
   'flow.status.update.time': '状态更新时间',
@@ -53,6 +61,8 @@ export default {
   'flow.kill.success': '杀死成功',
   'flow.grid.align': '网格对齐',
   'flow.failure.alarm.mail': '失败报警邮箱',
+  'flow.upstream.flow.ids': '上游flow id(逗号分开)',
+  'flow.upstream.window.seconds': '上游时间窗口(秒,0为任意上游成功就触发)',
   'flow.autokill.settings': 'SLA设置',
   'flow.duration': '持续时间',
   'flow.kill.schedule': '杀死调度',
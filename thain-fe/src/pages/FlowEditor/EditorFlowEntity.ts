@@ -25,6 +25,10 @@ export class EditorFlowEntity {
       instance.slaKill = flowModel.slaKill;
       instance.retryNumber = flowModel.retryNumber;
       instance.retryTimeInterval = flowModel.retryTimeInterval;
+      instance.cacheTtlSeconds = flowModel.cacheTtlSeconds;
+      instance.cacheMaxEntries = flowModel.cacheMaxEntries;
+      instance.upstreamFlowIds = flowModel.upstreamFlowIds;
+      instance.upstreamWindowSeconds = flowModel.upstreamWindowSeconds;
     }
     instance.jobs = jobModelList;
     instance.needArrange = instance.getNeedArrange();
@@ -61,6 +65,12 @@ export class EditorFlowEntity {
   public retryNumber?: number;
   public retryTimeInterval?: number;
 
+  public cacheTtlSeconds?: number;
+  public cacheMaxEntries?: number;
+
+  public upstreamFlowIds?: string;
+  public upstreamWindowSeconds?: number;
+
   public jobs: JobModel[] = [];
   public editorNodes: EditorNode[] = [];
   public editorEdges: EditorEdge[] = [];
@@ -80,6 +90,10 @@ export class EditorFlowEntity {
       slaKill: this.slaKill,
       retryNumber: this.retryNumber,
       retryTimeInterval: this.retryTimeInterval,
+      cacheTtlSeconds: this.cacheTtlSeconds,
+      cacheMaxEntries: this.cacheMaxEntries,
+      upstreamFlowIds: this.upstreamFlowIds,
+      upstreamWindowSeconds: this.upstreamWindowSeconds,
     };
   }
   /**
@@ -112,6 +126,14 @@ export class EditorFlowEntity {
       editorNode.attributes = job.properties;
       editorNode.condition = job.condition;
       editorNode.callbackUrl = job.callbackUrl;
+      editorNode.retryNumber = job.retryNumber;
+      editorNode.retryBackoff = job.retryBackoff;
+      editorNode.timeoutSeconds = job.timeoutSeconds;
+      editorNode.cacheEnabled = job.cacheEnabled;
+      editorNode.mapSource = job.mapSource;
+      editorNode.mapParallelism = job.mapParallelism;
+      editorNode.mapTolerance = job.mapTolerance;
+      editorNode.resourceClaims = job.resourceClaims;
 
       const sourceJobNames = job.condition
         .split(/&&|\|\|/)
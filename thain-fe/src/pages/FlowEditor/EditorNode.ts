@@ -10,6 +10,14 @@ export class EditorNode {
   public attributes: { [props: string]: string } = {};
   public condition = '';
   public callbackUrl = '';
+  public retryNumber = 0;
+  public retryBackoff = 0;
+  public timeoutSeconds = 0;
+  public cacheEnabled = false;
+  public mapSource = '';
+  public mapParallelism = 1;
+  public mapTolerance = 0;
+  public resourceClaims = '';
   public category = '';
   public color = '#1890ff';
   public label = '';
@@ -112,6 +112,24 @@ const DetailPanel: React.FC<Props> = ({ editor, flowAttributes, flowId, updateGr
             onBlurFunction={onBlurFunction}
           />
         </div>
+        <div>
+          {formatMessage({ id: 'flow.upstream.flow.ids' })}
+          <LineInput
+            updateGraph={updateGraph}
+            attr="upstreamFlowIds"
+            value={flowAttributes.upstreamFlowIds}
+            onBlurFunction={onBlurFunction}
+          />
+        </div>
+        <div>
+          {formatMessage({ id: 'flow.upstream.window.seconds' })}
+          <LineInput
+            updateGraph={updateGraph}
+            attr="upstreamWindowSeconds"
+            value={flowAttributes.upstreamWindowSeconds}
+            onBlurFunction={onBlurFunction}
+          />
+        </div>
         <Button style={{ marginTop: '10px' }} onClick={() => setSlaModalShow(true)}>
           {formatMessage({ id: 'flow.autokill.settings' })}
         </Button>
@@ -113,6 +113,64 @@ const NodeDetail: React.FC<{}> = () => {
           value={selectedModel.callbackUrl}
         />
       </Form.Item>
+      <Form.Item label={formatMessage({ id: 'flow.job.retry.number' })}>
+        <LineInput
+          updateGraph={updateGraph}
+          attr="retryNumber"
+          value={String(selectedModel.retryNumber || 0)}
+        />
+      </Form.Item>
+      <Form.Item label={formatMessage({ id: 'flow.job.retry.backoff' })}>
+        <LineInput
+          updateGraph={updateGraph}
+          attr="retryBackoff"
+          value={String(selectedModel.retryBackoff || 0)}
+        />
+      </Form.Item>
+      <Form.Item label={formatMessage({ id: 'flow.job.timeout.seconds' })}>
+        <LineInput
+          updateGraph={updateGraph}
+          attr="timeoutSeconds"
+          value={String(selectedModel.timeoutSeconds || 0)}
+        />
+      </Form.Item>
+      <Form.Item label={formatMessage({ id: 'flow.job.cache.enabled' })}>
+        <SelectInput
+          key={`cacheEnabled${id}`}
+          updateGraph={updateGraph}
+          attr="cacheEnabled"
+          value={String(!!selectedModel.cacheEnabled)}
+          selectList={[{ id: 'false' }, { id: 'true' }]}
+        />
+      </Form.Item>
+      <Form.Item label={formatMessage({ id: 'flow.job.map.source' })}>
+        <LineInput
+          updateGraph={updateGraph}
+          attr="mapSource"
+          value={selectedModel.mapSource || ''}
+        />
+      </Form.Item>
+      <Form.Item label={formatMessage({ id: 'flow.job.map.parallelism' })}>
+        <LineInput
+          updateGraph={updateGraph}
+          attr="mapParallelism"
+          value={String(selectedModel.mapParallelism || 1)}
+        />
+      </Form.Item>
+      <Form.Item label={formatMessage({ id: 'flow.job.map.tolerance' })}>
+        <LineInput
+          updateGraph={updateGraph}
+          attr="mapTolerance"
+          value={String(selectedModel.mapTolerance || 0)}
+        />
+      </Form.Item>
+      <Form.Item label={formatMessage({ id: 'flow.job.resource.claims' })}>
+        <LineInput
+          updateGraph={updateGraph}
+          attr="resourceClaims"
+          value={selectedModel.resourceClaims || ''}
+        />
+      </Form.Item>
       <Form.Item label={formatMessage({ id: 'flow.condition' })} style={{ display: 'none' }}>
         <TextareaInput updateGraph={updateGraph} attr="condition" value={selectedModel.condition} />
       </Form.Item>
@@ -22,6 +22,14 @@ export class SelectedModel {
   attributes: any;
   callbackUrl = '';
   condition = '';
+  retryNumber = 0;
+  retryBackoff = 0;
+  timeoutSeconds = 0;
+  cacheEnabled = false;
+  mapSource = '';
+  mapParallelism = 1;
+  mapTolerance = 0;
+  resourceClaims = '';
 }
 
 /**
@@ -37,6 +45,10 @@ export interface FlowAttributes {
   slaKill?: boolean;
   retryNumber?: number;
   retryTimeInterval?: number;
+  cacheTtlSeconds?: number;
+  cacheMaxEntries?: number;
+  upstreamFlowIds?: string;
+  upstreamWindowSeconds?: number;
 }
 
 export class FlowEditorModelState {
@@ -80,6 +80,8 @@ function FlowExecutionTable() {
             return formatMessage({ id: 'flow.execution.auto' });
           case 3:
             return formatMessage({ id: 'flow.execution.retry' });
+          case 4:
+            return formatMessage({ id: 'flow.execution.dependency' });
           default:
             return triggerType;
         }
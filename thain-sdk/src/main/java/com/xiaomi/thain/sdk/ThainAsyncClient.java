@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.sdk;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.xiaomi.thain.common.constant.FlowExecutionStatus;
+import com.xiaomi.thain.common.entity.ApiResult;
+import com.xiaomi.thain.common.model.FlowModel;
+import com.xiaomi.thain.common.model.JobModel;
+import lombok.NonNull;
+import lombok.val;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 异步版本的 {@link ThainClient}, 所有请求共用 HttpUtils 的连接池(keep-alive),
+ * 在固定大小的线程池里执行, 并发数不超过 concurrency. awaitCompletion 的 long-poll 在单独的线程池里挂起, 不影响其他请求
+ *
+ * @author liangyongrui
+ */
+public class ThainAsyncClient implements Closeable {
+
+    private static final int DEFAULT_CONCURRENCY = 32;
+    private static final long MAX_AWAIT_MILLIS = 30_000;
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final ThainClient client;
+    private final ExecutorService executor;
+    /**
+     * long-poll 每次最多挂起 30 秒, 按需创建线程, 空闲 60 秒后回收
+     */
+    private final ExecutorService awaitExecutor;
+
+    public static ThainAsyncClient getInstance(@NonNull String appId, @NonNull String appKey, @NonNull String host) {
+        return getInstance(appId, appKey, host, DEFAULT_CONCURRENCY);
+    }
+
+    public static ThainAsyncClient getInstance(@NonNull String appId, @NonNull String appKey, @NonNull String host,
+                                               int concurrency) {
+        return new ThainAsyncClient(ThainClient.getInstance(appId, appKey, host), concurrency);
+    }
+
+    private ThainAsyncClient(@NonNull ThainClient client, int concurrency) {
+        this.client = client;
+        this.executor = Executors.newFixedThreadPool(concurrency, r -> {
+            val thread = new Thread(r, "thain-async-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.awaitExecutor = Executors.newCachedThreadPool(r -> {
+            val thread = new Thread(r, "thain-async-client-await");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<ApiResult> addFlow(@NonNull FlowModel flowModel, @NonNull List<JobModel> jobModelList) {
+        return async(() -> client.addFlow(flowModel, jobModelList));
+    }
+
+    public CompletableFuture<ApiResult> startFlow(long flowId, Map<String, Object> variables) {
+        return async(() -> client.startFlow(flowId, variables));
+    }
+
+    public CompletableFuture<ApiResult> deleteFlow(long flowId) {
+        return async(() -> client.deleteFlow(flowId));
+    }
+
+    public CompletableFuture<ApiResult> pauseFlow(long flowId) {
+        return async(() -> client.pauseFlow(flowId));
+    }
+
+    public CompletableFuture<ApiResult> scheduleFlow(long flowId) {
+        return async(() -> client.scheduleFlow(flowId));
+    }
+
+    public CompletableFuture<ApiResult> killFlowExecution(long flowExecutionId) {
+        return async(() -> client.killFlowExecution(flowExecutionId));
+    }
+
+    public CompletableFuture<ApiResult> getFlowExecutionInfo(long flowExecutionId) {
+        return async(() -> client.getFlowExecutionInfo(flowExecutionId));
+    }
+
+    /**
+     * 批量启动, 每个 flow 用同一组变量, 每 1000 个合并成一次请求
+     *
+     * @return flowId -> 启动结果(data 是 flowExecutionId), 顺序和 flowIds 一致
+     */
+    public CompletableFuture<Map<Long, ApiResult>> startFlows(@NonNull Collection<Long> flowIds,
+                                                              Map<String, Object> variables) {
+        return batch(flowIds, flowId -> ImmutableMap.of(
+                "type", "start", "flowId", flowId, "variables", variables == null ? ImmutableMap.of() : variables));
+    }
+
+    /**
+     * 批量查询 flow execution, 每 1000 个合并成一次请求
+     *
+     * @return flowExecutionId -> all-info, 顺序和 flowExecutionIds 一致
+     */
+    public CompletableFuture<Map<Long, ApiResult>> getFlowExecutionInfos(@NonNull Collection<Long> flowExecutionIds) {
+        return batch(flowExecutionIds, id -> ImmutableMap.of("type", "all-info", "flowExecutionId", id));
+    }
+
+    private CompletableFuture<Map<Long, ApiResult>> batch(@NonNull Collection<Long> ids,
+                                                          @NonNull Function<Long, Map<String, Object>> operation) {
+        val futures = new LinkedHashMap<List<Long>, CompletableFuture<ApiResult>>();
+        Lists.partition(new ArrayList<>(ids), MAX_BATCH_SIZE).forEach(part -> futures.put(part, async(() ->
+                client.batch(part.stream().map(operation).collect(Collectors.toList())))));
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                .thenApply(v -> {
+                    val results = new LinkedHashMap<Long, ApiResult>();
+                    futures.forEach((part, future) -> {
+                        val apiResult = future.join();
+                        val data = apiResult.status == 200 && apiResult.data instanceof JSONArray
+                                ? (JSONArray) apiResult.data : null;
+                        for (int i = 0; i < part.size(); i++) {
+                            results.put(part.get(i), data == null || i >= data.size()
+                                    ? apiResult : data.getJSONObject(i).toJavaObject(ApiResult.class));
+                        }
+                    });
+                    return results;
+                });
+    }
+
+    /**
+     * 等待 flow execution 结束(成功、失败、被kill、等待重试), 返回结束时的 all-info.
+     * 用服务端的 long-poll, 每次最多挂起 30 秒, 超时后 future 以 {@link TimeoutException} 失败
+     */
+    public CompletableFuture<ApiResult> awaitCompletion(long flowExecutionId, long timeout, @NonNull TimeUnit unit) {
+        val result = new CompletableFuture<ApiResult>();
+        val deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        await(flowExecutionId, deadline, result);
+        return result;
+    }
+
+    private void await(long flowExecutionId, long deadline, CompletableFuture<ApiResult> result) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            result.completeExceptionally(new TimeoutException("flow execution is not finished: " + flowExecutionId));
+            return;
+        }
+        async(() -> client.awaitFlowExecution(flowExecutionId, Math.min(remaining, MAX_AWAIT_MILLIS)), awaitExecutor)
+                .whenComplete((apiResult, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else if (apiResult.status != 200 || isEnded(apiResult)) {
+                        result.complete(apiResult);
+                    } else {
+                        await(flowExecutionId, deadline, result);
+                    }
+                });
+    }
+
+    /**
+     * 和服务端一致, 等待运行和正在运行以外的状态都不会再变化
+     */
+    private static boolean isEnded(@NonNull ApiResult apiResult) {
+        return Optional.ofNullable(apiResult.data)
+                .filter(JSONObject.class::isInstance)
+                .map(t -> ((JSONObject) t).getJSONObject("flowExecutionModel"))
+                .map(t -> t.getIntValue("status"))
+                .map(t -> t != FlowExecutionStatus.WAITING.code && t != FlowExecutionStatus.RUNNING.code)
+                .orElse(false);
+    }
+
+    private <T> CompletableFuture<T> async(@NonNull IoSupplier<T> supplier) {
+        return async(supplier, executor);
+    }
+
+    private <T> CompletableFuture<T> async(@NonNull IoSupplier<T> supplier, @NonNull ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return supplier.get();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        awaitExecutor.shutdown();
+    }
+
+    @FunctionalInterface
+    private interface IoSupplier<T> {
+        T get() throws IOException;
+    }
+}
@@ -34,8 +34,10 @@ public class ThainClient {
     private static final String SCHEDULE_PATH = "/x5/flow/schedule";
     private static final String KILL_PATH = "/x5/flow-execution/kill";
     private static final String ALL_INFO_PATH = "/x5/flow-execution/all-info";
+    private static final String AWAIT_PATH = "/x5/flow-execution/await";
     private static final String ALL_EXECUTION_INFO = "/x5/flow-execution/infos";
     private static final String UPDATE_JOB_PROPERTIES = "/x5/job/update-properties";
+    private static final String BATCH_PATH = "/x5/batch";
 
 
     private static final String KEY_FLOW_ID = "flowId";
@@ -94,6 +96,16 @@ public class ThainClient {
         return buildRequest(url + ALL_INFO_PATH, JSON.toJSONString(ImmutableMap.of("flowExecutionId", flowExecutionId)));
     }
 
+    /**
+     * 等待 flow execution 结束, 结束或者超时后返回 all-info
+     *
+     * @param timeoutMillis 服务端最多等待的毫秒数, 最大 60 秒
+     */
+    public ApiResult awaitFlowExecution(long flowExecutionId, long timeoutMillis) throws IOException {
+        return buildRequest(url + AWAIT_PATH, JSON.toJSONString(ImmutableMap.of(
+                "flowExecutionId", flowExecutionId, "timeout", timeoutMillis)));
+    }
+
     public ApiResult pauseFlow(long flowId) throws IOException {
         return buildRequest(url + PAUSE_PATH, JSON.toJSONString(ImmutableMap.of(KEY_FLOW_ID, flowId)));
     }
@@ -118,6 +130,29 @@ public class ThainClient {
         return buildRequest(url + ALL_EXECUTION_INFO, JSON.toJSONString(ImmutableMap.of(KEY_FLOW_ID, flowId, "page", page, "pageSize", pageSize)));
     }
 
+    /**
+     * get FlowExecution by flowId, keyset pagination
+     *
+     * @param flowId   flowId
+     * @param cursor   上一页返回的 nextCursor, 第一页传 0
+     * @param pageSize pageSize
+     * @return {@link ApiResult}, 没有 nextCursor 表示已经是最后一页
+     */
+    public ApiResult getFlowExecutionListByCursor(long flowId, long cursor, int pageSize) throws IOException {
+        return buildRequest(url + ALL_EXECUTION_INFO, JSON.toJSONString(ImmutableMap.of(KEY_FLOW_ID, flowId, "cursor", cursor, "pageSize", pageSize)));
+    }
+
+    /**
+     * 批量操作, 一次最多 1000 个
+     * 每个操作是 {"type": "start", "flowId": 1, "variables": {}} 这样的 map,
+     * type: start、pause、schedule(可带 cron)、delete、kill、all-info, 后两个用 flowExecutionId
+     *
+     * @return data 是和 operations 一一对应的结果列表
+     */
+    public ApiResult batch(@NonNull List<Map<String, Object>> operations) throws IOException {
+        return buildRequest(url + BATCH_PATH, JSON.toJSONString(ImmutableMap.of("operations", operations)));
+    }
+
     private ApiResult buildRequest(@NonNull String url, @NonNull String body) throws IOException {
         String result = HttpUtils.postForm(url, X5Utils.buildX5Request(appId, appKey, body));
         return JSON.parseObject(result, ApiResult.class);
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.xiaomi.thain.server.aop;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记只读查询, 配置了只读从库且延迟在范围内时走从库, 否则走主库
+ * 只加在 dao 的方法上, 刚写完马上要读的查询不要加
+ *
+ * @author liangyongrui
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReadReplica {
+}
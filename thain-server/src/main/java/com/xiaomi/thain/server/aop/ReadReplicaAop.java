@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.xiaomi.thain.server.aop;
+
+import com.xiaomi.thain.server.handler.ThreadLocalDataSource;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link ReadReplica} 标记的方法里的查询走只读从库
+ *
+ * @author liangyongrui
+ */
+@Aspect
+@Component
+public class ReadReplicaAop {
+
+    @Around("@annotation(com.xiaomi.thain.server.aop.ReadReplica)")
+    public Object process(ProceedingJoinPoint joinPoint) throws Throwable {
+        boolean entered = ThreadLocalDataSource.enter(ThreadLocalDataSource.Target.READ);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            if (entered) {
+                ThreadLocalDataSource.exit();
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@
 package com.xiaomi.thain.server.config;
 
 import com.xiaomi.thain.common.exception.ThainException;
+import com.xiaomi.thain.common.utils.HttpUtils;
 import com.xiaomi.thain.core.ThainFacade;
 import com.xiaomi.thain.core.process.ProcessEngineConfiguration;
 import com.xiaomi.thain.core.scheduler.SchedulerEngineConfiguration;
@@ -49,6 +50,10 @@ public class AppConfig {
                 .dataReserveDays(Integer.valueOf(env.getProperty("dataReserveDays", "30")))
                 .initLevel(env.getProperty("datasource.initialization.level", "-1"))
                 .build();
+        HttpUtils.configureHostLimit(
+                Double.parseDouble(env.getProperty("http.host.permits-per-second", "50")),
+                Integer.parseInt(env.getProperty("http.host.burst", "100")),
+                Integer.parseInt(env.getProperty("http.host.max-concurrency", "100")));
         val in = getClass().getResourceAsStream("/quartz.properties");
         val schedulerEngineConfiguration = SchedulerEngineConfiguration.getInstanceByInputStream(in);
         schedulerEngineConfiguration.properties.put("org.quartz.dataSource.job_scheduler.URL",
@@ -57,6 +62,16 @@ public class AppConfig {
                 env.getProperty("spring.datasource.username", ""));
         schedulerEngineConfiguration.properties.put("org.quartz.dataSource.job_scheduler.password",
                 env.getProperty("spring.datasource.password", ""));
+        schedulerEngineConfiguration.properties.put("thain.scheduler.type",
+                env.getProperty("scheduler.type", "quartz"));
+        schedulerEngineConfiguration.properties.put("thain.retry.backoff",
+                env.getProperty("retry.backoff", "fixed"));
+        schedulerEngineConfiguration.properties.put("thain.retry.max-interval-seconds",
+                env.getProperty("retry.max-interval-seconds", "3600"));
+        schedulerEngineConfiguration.properties.put("thain.retry.jitter",
+                env.getProperty("retry.jitter", "0"));
+        schedulerEngineConfiguration.properties.put("thain.retry.mode",
+                env.getProperty("retry.mode", "full"));
         return new ThainFacade(processEngineConfiguration, schedulerEngineConfiguration);
     }
 
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+
+package com.xiaomi.thain.server.config;
+
+import com.google.common.collect.ImmutableMap;
+import com.xiaomi.thain.server.handler.ThreadLocalDataSource;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * server 的 mapper 用的数据源: {@link com.xiaomi.thain.server.aop.ReadReplica} 标记的查询走只读从库,
+ * 没配置从库、从库延迟超过上限、或者拿不到从库连接时走主库
+ *
+ * @author liangyongrui
+ */
+@Slf4j
+public class RoutingDataSource extends AbstractRoutingDataSource {
+
+    @NonNull
+    private final DataSource primary;
+    @Nullable
+    private final DataSource read;
+
+    /**
+     * 由 ReadReplicaMonitor 按复制延迟更新
+     */
+    private volatile boolean readAvailable = false;
+
+    public RoutingDataSource(@NonNull DataSource primary, @Nullable DataSource read) {
+        this.primary = primary;
+        this.read = read;
+        setTargetDataSources(read == null
+                ? ImmutableMap.of(ThreadLocalDataSource.Target.PRIMARY, primary)
+                : ImmutableMap.of(ThreadLocalDataSource.Target.PRIMARY, primary, ThreadLocalDataSource.Target.READ, read));
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Nullable
+    public DataSource getRead() {
+        return read;
+    }
+
+    public void setReadAvailable(boolean readAvailable) {
+        if (this.readAvailable != readAvailable) {
+            log.info("read replica available: {}", readAvailable);
+        }
+        this.readAvailable = readAvailable;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return read != null && readAvailable && ThreadLocalDataSource.INSTANCE.getCurrent() == ThreadLocalDataSource.Target.READ
+                ? ThreadLocalDataSource.Target.READ
+                : ThreadLocalDataSource.Target.PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        try {
+            return super.getConnection();
+        } catch (SQLException e) {
+            if (determineCurrentLookupKey() != ThreadLocalDataSource.Target.READ) {
+                throw e;
+            }
+            log.warn("failed to get read replica connection, fall back to primary", e);
+            setReadAvailable(false);
+            return primary.getConnection();
+        }
+    }
+}
@@ -8,7 +8,9 @@ package com.xiaomi.thain.server.config;
 
 import com.alibaba.druid.pool.DruidDataSource;
 import lombok.NonNull;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -24,13 +26,35 @@ import javax.sql.DataSource;
 @Configuration
 public class ThainDataSource {
 
-    @Primary
+    /**
+     * 主库, 引擎直接用这个
+     */
     @Bean(name = "mysqlDataSource")
     @ConfigurationProperties("spring.datasource")
     public DataSource mysqlDataSource() {
         return new DruidDataSource();
     }
 
+    /**
+     * 可选的只读从库, 配置了 spring.datasource.read.url 才有
+     */
+    @Bean(name = "readDataSource")
+    @ConditionalOnProperty("spring.datasource.read.url")
+    @ConfigurationProperties("spring.datasource.read")
+    public DataSource readDataSource() {
+        return new DruidDataSource();
+    }
+
+    /**
+     * server 的 mapper、session 等默认使用的数据源
+     */
+    @Primary
+    @Bean(name = "routingDataSource")
+    public RoutingDataSource routingDataSource(@NonNull @Qualifier("mysqlDataSource") DataSource primary,
+                                               @NonNull @Qualifier("readDataSource") ObjectProvider<DataSource> read) {
+        return new RoutingDataSource(primary, read.getIfAvailable());
+    }
+
     @Bean("jdbcTemplate")
     public JdbcTemplate getJdbcTemplate(@NonNull @Qualifier("mysqlDataSource") DataSource dataSource) {
         return new JdbcTemplate(dataSource);
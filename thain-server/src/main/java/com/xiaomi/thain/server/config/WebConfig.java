@@ -6,7 +6,11 @@
 package com.xiaomi.thain.server.config;
 
 import lombok.NonNull;
+import lombok.val;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -38,4 +42,14 @@ public class WebConfig implements WebMvcConfigurer {
         });
     }
 
+    /**
+     * flow execution 详情会被频繁轮询, 加上 ETag, 内容没变时返回 304
+     */
+    @Bean
+    public FilterRegistrationBean<ShallowEtagHeaderFilter> allInfoEtagFilter() {
+        val registration = new FilterRegistrationBean<ShallowEtagHeaderFilter>(new ShallowEtagHeaderFilter());
+        registration.addUrlPatterns("/api/flow-execution/all-info/*");
+        return registration;
+    }
+
 }
@@ -120,4 +120,33 @@ public class DashboardController {
         }
     }
 
+    /**
+     * 本机发出的 http 请求按目标的限流状态
+     */
+    @GetMapping("http-host-metrics")
+    public ApiResult getHttpHostMetrics() {
+        try {
+            return ApiResult.success(dashboardService.getHttpHostMetrics());
+        } catch (Exception e) {
+            log.error("getHttpHostMetrics", e);
+            return ApiResult.fail("Failed to obtain http host metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 节点之间合并内存计数用, 不走登录, 用 dashboard.cluster.token 校验
+     */
+    @GetMapping("node-status-history")
+    public ApiResult getNodeStatusHistory(long startTime, long endTime, @Nullable String token) {
+        if (!dashboardService.checkClusterToken(token)) {
+            return ApiResult.forbidden();
+        }
+        try {
+            return ApiResult.success(dashboardService.getNodeStatusHistory(startTime, endTime));
+        } catch (Exception e) {
+            log.error("getNodeStatusHistory", e);
+            return ApiResult.fail("Failed to obtain node status history: " + e.getMessage());
+        }
+    }
+
 }
@@ -5,6 +5,7 @@
  */
 package com.xiaomi.thain.server.dao;
 
+import com.xiaomi.thain.server.aop.ReadReplica;
 import com.xiaomi.thain.server.model.dr.SourceAndCountDr;
 import com.xiaomi.thain.server.model.dr.StatusAndCountDr;
 import com.xiaomi.thain.server.model.dr.StatusAndCountAndTimeDr;
@@ -28,38 +29,47 @@ public class DashboardDao {
         this.dashboardMapper = dashboardMapper;
     }
 
+    @ReadReplica
     public List<StatusAndCountDr> getScheduleStatusCount(@Nullable String[] filterSource) {
         return dashboardMapper.getScheduleStatusCount(filterSource);
     }
 
+    @ReadReplica
     public List<SourceAndCountDr> getFlowSourceCount(@Nullable String[] filterScheduleStatus) {
         return dashboardMapper.getFlowSourceCount(filterScheduleStatus);
     }
 
+    @ReadReplica
     public List<StatusAndCountDr> getFlowExecutionStatusCount(@NonNull Long[] period) {
         return dashboardMapper.getFlowExecutionStatusCount(period);
     }
 
+    @ReadReplica
     public List<StatusAndCountDr> getJobExecutionStatusCount(@NonNull Long[] period) {
         return dashboardMapper.getJobExecutionStatusCount(period);
     }
 
+    @ReadReplica
     public int getRunningFlowCount(@Nullable String[] filterSource, @Nullable String[] filterScheduleStatus) {
         return dashboardMapper.getRunningFlowCount(filterSource, filterScheduleStatus);
     }
 
+    @ReadReplica
     public int getRunningJobCount(@Nullable String[] filterSource, @Nullable String[] filterScheduleStatus) {
         return dashboardMapper.getRunningJobCount(filterSource, filterScheduleStatus);
     }
 
+    @ReadReplica
     public int getIncreaseFlowCount(@NonNull Long[] period) {
         return dashboardMapper.getIncreaseFlowCount(period);
     }
 
+    @ReadReplica
     public int getIncreaseJobCount(@NonNull Long[] period) {
         return dashboardMapper.getIncreaseJobCount(period);
     }
 
+    @ReadReplica
     public List<StatusAndCountAndTimeDr> getStatusHistoryCount(Long[] period) {
         return dashboardMapper.getStatusHistoryCount(period);
     }
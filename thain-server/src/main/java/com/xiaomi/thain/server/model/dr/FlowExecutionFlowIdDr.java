@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.server.model.dr;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * flow execution 所属的 flow
+ *
+ * @author liangyongrui
+ */
+@AllArgsConstructor
+public class FlowExecutionFlowIdDr {
+    public final long id;
+    public final long flowId;
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.server.model.dr;
+
+import lombok.AllArgsConstructor;
+
+import javax.annotation.Nullable;
+
+/**
+ * 权限判断需要的 flow 字段
+ *
+ * @author liangyongrui
+ */
+@AllArgsConstructor
+public class FlowOwnerDr {
+    public final long id;
+    @Nullable
+    public final String createUser;
+    @Nullable
+    public final String createAppId;
+    public final boolean deleted;
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.server.model.dr;
+
+import lombok.AllArgsConstructor;
+
+import javax.annotation.Nullable;
+import java.sql.Timestamp;
+
+/**
+ * flow 列表搜索索引用到的字段
+ *
+ * @author liangyongrui
+ */
+@AllArgsConstructor
+public class FlowSearchEntryDr {
+    public final long id;
+    @Nullable
+    public final String name;
+    @Nullable
+    public final String createUser;
+    @Nullable
+    public final String createAppId;
+    public final int lastRunStatus;
+    public final int schedulingStatus;
+    @Nullable
+    public final Timestamp statusUpdateTime;
+    public final boolean deleted;
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.server.model.dr;
+
+import com.xiaomi.thain.common.model.JobExecutionModel;
+import com.xiaomi.thain.common.model.JobModel;
+import lombok.AllArgsConstructor;
+
+import javax.annotation.Nullable;
+import java.sql.Timestamp;
+
+/**
+ * thain_job_execution 和对应的 thain_job 一次查出, 字段顺序和查询的列顺序一致
+ *
+ * @author liangyongrui
+ */
+@AllArgsConstructor
+public class JobExecutionAndJobDr {
+    public final long id;
+    public final long flowExecutionId;
+    public final long jobId;
+    public final int status;
+    @Nullable
+    public final String logs;
+    @Nullable
+    public final Timestamp createTime;
+    @Nullable
+    public final Timestamp updateTime;
+    @Nullable
+    public final String mapState;
+    public final long jobFlowId;
+    @Nullable
+    public final String jobName;
+    @Nullable
+    public final String jobCondition;
+    @Nullable
+    public final String jobComponent;
+    @Nullable
+    public final String jobCallbackUrl;
+    @Nullable
+    public final String jobProperties;
+    public final int jobXAxis;
+    public final int jobYAxis;
+    @Nullable
+    public final Timestamp jobCreateTime;
+    public final boolean jobDeleted;
+    public final int jobRetryNumber;
+    public final int jobRetryBackoff;
+    public final int jobTimeoutSeconds;
+    public final boolean jobCacheEnabled;
+    @Nullable
+    public final String jobMapSource;
+    public final int jobMapParallelism;
+    public final int jobMapTolerance;
+    @Nullable
+    public final String jobResourceClaims;
+
+    public JobExecutionModel toJobExecutionModel() {
+        return new JobExecutionModel(id, flowExecutionId, jobId, status, logs, createTime, updateTime, mapState);
+    }
+
+    public JobModel toJobModel() {
+        return new JobModel(jobId, jobFlowId, jobName, jobCondition, jobComponent, jobCallbackUrl,
+                jobProperties == null ? "{}" : jobProperties, jobXAxis, jobYAxis, jobCreateTime, jobDeleted,
+                jobRetryNumber, jobRetryBackoff, jobTimeoutSeconds, jobCacheEnabled,
+                jobMapSource, jobMapParallelism, jobMapTolerance, jobResourceClaims);
+    }
+}
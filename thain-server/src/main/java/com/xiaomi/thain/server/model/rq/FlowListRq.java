@@ -39,4 +39,9 @@ public class FlowListRq {
     public final String searchApp;
     @Nullable
     public final String createUser;
+    /**
+     * 上一页返回的 nextCursor(排序值_id), 传了就按游标翻页, 忽略 page, 第一页传 0
+     */
+    @Nullable
+    public final String cursor;
 }
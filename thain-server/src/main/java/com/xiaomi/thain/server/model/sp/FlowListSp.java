@@ -8,6 +8,8 @@ package com.xiaomi.thain.server.model.sp;
 
 import com.xiaomi.thain.server.model.rq.FlowListRq;
 
+import com.google.common.collect.ImmutableSet;
+
 import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Set;
@@ -48,9 +50,17 @@ public class FlowListSp {
     @Nullable
     public final Set<String> appIds;
 
+    @Nullable
+    public final String cursor;
+
     private static final int DEFAULT_PAGE = 1;
     private static final int DEFAULT_PAGE_SIZE = 20;
 
+    /**
+     * 可以排序的列, sortKey 会直接拼进 sql, 其他值忽略
+     */
+    private static final Set<String> SORT_KEYS = ImmutableSet.of("id", "status_update_time");
+
     public static FlowListSp getInstance(FlowListRq flowListRq) {
         return new FlowListSp(flowListRq);
     }
@@ -73,7 +83,7 @@ public class FlowListSp {
         offset = (page - 1) * pageSize;
         limit = pageSize;
         flowId = flowListRq.flowId;
-        sortKey = flowListRq.sortKey;
+        sortKey = SORT_KEYS.contains(flowListRq.sortKey) ? flowListRq.sortKey : null;
         sortOrderDesc = flowListRq.sortOrderDesc != null && flowListRq.sortOrderDesc;
         flowName = flowListRq.flowName;
         scheduleStatus = flowListRq.scheduleStatus;
@@ -81,6 +91,7 @@ public class FlowListSp {
         this.appIds = appIds;
         this.searchApp = flowListRq.searchApp;
         this.createUser = flowListRq.createUser;
+        this.cursor = flowListRq.cursor;
     }
 
     private FlowListSp(FlowListRq flowListRq) {
@@ -5,19 +5,38 @@
  */
 package com.xiaomi.thain.server.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.ImmutableMap;
 import com.xiaomi.thain.common.constant.FlowExecutionStatus;
+import com.xiaomi.thain.common.utils.HostMetrics;
+import com.xiaomi.thain.common.utils.HttpUtils;
+import com.xiaomi.thain.core.ThainFacade;
+import com.xiaomi.thain.core.process.runtime.statistics.FlowExecutionStatusHistory;
 import com.xiaomi.thain.server.dao.DashboardDao;
 import com.xiaomi.thain.server.model.dr.SourceAndCountDr;
 import com.xiaomi.thain.server.model.dr.StatusAndCountAndTimeDr;
 import com.xiaomi.thain.server.model.dr.StatusAndCountDr;
+import lombok.AllArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * @author miaoyu3@xiaomi.com
@@ -26,11 +45,58 @@ import java.util.List;
 @Slf4j
 @Service
 public class DashboardService {
+
+    /**
+     * 取其他节点计数的超时时间, 超时就查数据库, 不让 dashboard 一直等
+     */
+    private static final int CLUSTER_TIMEOUT_MILLIS = 2000;
+
+    /**
+     * 同时向各个节点请求计数
+     */
+    private static final ExecutorService CLUSTER_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        val thread = new Thread(runnable, "thain-dashboard-cluster");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @NonNull
     private final DashboardDao dashboardDao;
+    @NonNull
+    private final ThainFacade thainFacade;
+
+    private final boolean liveHistoryEnabled;
+    /**
+     * 其他节点的地址, 合并内存计数用
+     */
+    @NonNull
+    private final List<String> clusterNodes;
+    @NonNull
+    private final String clusterToken;
 
-    public DashboardService(@NonNull DashboardDao dashboardDao) {
+    /**
+     * dashboard 的结果短时间缓存, 多人同时打开时不重复查询
+     */
+    private final Cache<String, Object> resultCache = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(10, TimeUnit.SECONDS)
+            .build();
+
+    public DashboardService(@NonNull DashboardDao dashboardDao,
+                            @NonNull ThainFacade thainFacade,
+                            @NonNull Environment env) {
         this.dashboardDao = dashboardDao;
+        this.thainFacade = thainFacade;
+        this.liveHistoryEnabled = Boolean.parseBoolean(env.getProperty("dashboard.live.history.enabled", "false"));
+        this.clusterNodes = Arrays.stream(env.getProperty("dashboard.cluster.nodes", "").split(","))
+                .map(String::trim)
+                .filter(t -> !t.isEmpty())
+                .collect(Collectors.toList());
+        this.clusterToken = env.getProperty("dashboard.cluster.token", "");
+    }
+
+    public boolean checkClusterToken(@Nullable String token) {
+        return !clusterToken.isEmpty() && clusterToken.equals(token);
     }
 
     /**
@@ -40,7 +106,8 @@ public class DashboardService {
      * @return 统计列表
      */
     public List<StatusAndCountDr> getScheduleStatusCount(@Nullable String[] filterSource) {
-        return dashboardDao.getScheduleStatusCount(filterSource);
+        return cached("getScheduleStatusCount" + Arrays.toString(filterSource),
+                () -> dashboardDao.getScheduleStatusCount(filterSource));
     }
 
     /**
@@ -50,7 +117,8 @@ public class DashboardService {
      * @return 统计列表
      */
     public List<SourceAndCountDr> getFlowSourceCount(@Nullable String[] filterScheduleStatus) {
-        return dashboardDao.getFlowSourceCount(filterScheduleStatus);
+        return cached("getFlowSourceCount" + Arrays.toString(filterScheduleStatus),
+                () -> dashboardDao.getFlowSourceCount(filterScheduleStatus));
     }
 
     /**
@@ -60,7 +128,8 @@ public class DashboardService {
      * @return 统计列表
      */
     public List<StatusAndCountDr> getFlowExecutionStatusCount(@NonNull Long[] period) {
-        return dashboardDao.getFlowExecutionStatusCount(period);
+        return cached("getFlowExecutionStatusCount" + Arrays.toString(period),
+                () -> dashboardDao.getFlowExecutionStatusCount(period));
     }
 
     /**
@@ -70,7 +139,8 @@ public class DashboardService {
      * @return 统计列表
      */
     public List<StatusAndCountDr> getJobExecutionStatusCount(@NonNull Long[] period) {
-        return dashboardDao.getJobExecutionStatusCount(period);
+        return cached("getJobExecutionStatusCount" + Arrays.toString(period),
+                () -> dashboardDao.getJobExecutionStatusCount(period));
     }
 
     /**
@@ -81,7 +151,8 @@ public class DashboardService {
      * @return 总数
      */
     public int getRunningFlowCount(@Nullable String[] filterSource, @Nullable String[] filterScheduleStatus) {
-        return dashboardDao.getRunningFlowCount(filterSource, filterScheduleStatus);
+        return cached("getRunningFlowCount" + Arrays.toString(filterSource) + Arrays.toString(filterScheduleStatus),
+                () -> dashboardDao.getRunningFlowCount(filterSource, filterScheduleStatus));
     }
 
     /**
@@ -92,7 +163,8 @@ public class DashboardService {
      * @return 总数
      */
     public int getRunningJobCount(@Nullable String[] filterSource, @Nullable String[] filterScheduleStatus) {
-        return dashboardDao.getRunningJobCount(filterSource, filterScheduleStatus);
+        return cached("getRunningJobCount" + Arrays.toString(filterSource) + Arrays.toString(filterScheduleStatus),
+                () -> dashboardDao.getRunningJobCount(filterSource, filterScheduleStatus));
     }
 
     /**
@@ -102,7 +174,8 @@ public class DashboardService {
      * @return 总数
      */
     public int getIncreaseFlowCount(@NonNull Long[] period) {
-        return dashboardDao.getIncreaseFlowCount(period);
+        return cached("getIncreaseFlowCount" + Arrays.toString(period),
+                () -> dashboardDao.getIncreaseFlowCount(period));
     }
 
     /**
@@ -112,50 +185,157 @@ public class DashboardService {
      * @return 总数
      */
     public int getIncreaseJobCount(@NonNull Long[] period) {
-        return dashboardDao.getIncreaseJobCount(period);
+        return cached("getIncreaseJobCount" + Arrays.toString(period),
+                () -> dashboardDao.getIncreaseJobCount(period));
     }
 
     /**
      * 统计历史执行情况
+     * 开启 dashboard.live.history.enabled 后, 最近一段时间的数据从各个节点内存里的计数合并, 更早的才查数据库
      *
-     * @param period   统计时间段
+     * @param period      统计时间段
      * @param maxPointNum 折线图的点数
      * @return 统计列表
      */
     public List<StatusAndCountAndTimeDr> getStatusHistoryCount(@NonNull Long[] period, int maxPointNum) {
-        val resList = dashboardDao.getStatusHistoryCount(period);
-        if (resList.isEmpty()) {
-            return resList;
-        }
         long startTime = period[0];
         long endTime = period[1];
-        long interval = (endTime - startTime) / maxPointNum;
-        val formatResult = new ArrayList<StatusAndCountAndTimeDr>(maxPointNum * 2);
-        for (long time = startTime; time < endTime; time += interval) {
+        long interval = Math.max(1, (endTime - startTime) / maxPointNum);
+        int pointNum = Math.toIntExact((endTime - startTime + interval - 1) / interval);
+        val successCounts = new long[pointNum];
+        val errorCounts = new long[pointNum];
+        long dbEndTime = endTime;
+        boolean empty = true;
+        if (liveHistoryEnabled) {
+            val clusterHistory = getClusterStatusHistory(startTime * 1000, endTime * 1000);
+            if (clusterHistory != null) {
+                dbEndTime = Math.min(endTime, (clusterHistory.coverageStart + 999) / 1000);
+                for (val bucket : clusterHistory.buckets) {
+                    long time = bucket.getTime() / 1000;
+                    if (time < dbEndTime) {
+                        continue;
+                    }
+                    int index = Math.toIntExact((time - startTime) / interval);
+                    successCounts[index] += bucket.getSuccessCount();
+                    errorCounts[index] += bucket.getErrorCount();
+                    empty = false;
+                }
+            }
+        }
+        if (startTime < dbEndTime) {
+            val dbPeriod = new Long[]{startTime, dbEndTime};
+            val resList = cached("getStatusHistoryCount" + Arrays.toString(dbPeriod),
+                    () -> dashboardDao.getStatusHistoryCount(dbPeriod));
+            for (val t : resList) {
+                long time = Long.parseLong(t.time);
+                // 统计按分钟取整, 第一个点可能早于 startTime
+                int index = Math.toIntExact(Math.max(0, time - startTime) / interval);
+                if (t.status == FlowExecutionStatus.SUCCESS.code) {
+                    successCounts[index] += t.count;
+                } else {
+                    errorCounts[index] += t.count;
+                }
+                empty = false;
+            }
+        }
+        if (empty) {
+            return new ArrayList<>();
+        }
+        val formatResult = new ArrayList<StatusAndCountAndTimeDr>(pointNum * 2);
+        for (int i = 0; i < pointNum; i++) {
+            long time = startTime + i * interval;
             formatResult.add(StatusAndCountAndTimeDr.builder()
                     .status(FlowExecutionStatus.SUCCESS.code)
-                    .count(0)
+                    .count(successCounts[i])
                     .time(time + "~" + (time + interval))
                     .build()
             );
             formatResult.add(StatusAndCountAndTimeDr.builder()
                     .status(FlowExecutionStatus.ERROR.code)
-                    .count(0)
+                    .count(errorCounts[i])
                     .time(time + "~" + (time + interval))
                     .build()
             );
         }
-        resList.forEach(t -> {
-            long time = Long.parseLong(t.time);
-            int index = Math.toIntExact((time - startTime) / interval);
-            if (t.status == FlowExecutionStatus.SUCCESS.code) {
-                index = 2 * index;
-            } else {
-                index = 2 * index + 1;
-            }
-            val result = formatResult.get(index);
-            formatResult.set(index, result.toBuilder().count(result.count + t.count).build());
-        });
         return formatResult;
     }
+
+    /**
+     * 本机内存里的计数, 给其他节点合并用
+     *
+     * @param startTime 毫秒
+     * @param endTime   毫秒
+     */
+    public Map<String, Object> getNodeStatusHistory(long startTime, long endTime) {
+        val history = thainFacade.getFlowExecutionStatusHistory();
+        return ImmutableMap.of(
+                "coverageStart", history.getCoverageStart(),
+                "buckets", history.snapshot(startTime, endTime).stream()
+                        .map(t -> new long[]{t.getTime(), t.getSuccessCount(), t.getErrorCount()})
+                        .collect(Collectors.toList()));
+    }
+
+    public List<HostMetrics> getHttpHostMetrics() {
+        return HttpUtils.hostMetrics();
+    }
+
+    /**
+     * 合并本机和 dashboard.cluster.nodes 里各节点的计数, 有节点取不到时返回null, 全部查数据库
+     * 各节点并行请求, 不经过 http 限流
+     */
+    @Nullable
+    private ClusterStatusHistory getClusterStatusHistory(long startTime, long endTime) {
+        val history = thainFacade.getFlowExecutionStatusHistory();
+        long coverageStart = history.getCoverageStart();
+        val buckets = new ArrayList<>(history.snapshot(startTime, endTime));
+        val params = ImmutableMap.of(
+                "startTime", String.valueOf(startTime),
+                "endTime", String.valueOf(endTime),
+                "token", clusterToken);
+        val futures = clusterNodes.stream()
+                .map(node -> CompletableFuture.supplyAsync(() -> fetchNodeStatusHistory(node, params), CLUSTER_EXECUTOR))
+                .collect(Collectors.toList());
+        for (val future : futures) {
+            val data = future.join();
+            if (data == null) {
+                return null;
+            }
+            coverageStart = Math.max(coverageStart, data.getLongValue("coverageStart"));
+            for (val bucket : data.getJSONArray("buckets").toJavaList(long[].class)) {
+                buckets.add(new FlowExecutionStatusHistory.Bucket(bucket[0], bucket[1], bucket[2]));
+            }
+        }
+        return new ClusterStatusHistory(coverageStart, buckets);
+    }
+
+    /**
+     * @return 取不到返回null
+     */
+    @Nullable
+    private JSONObject fetchNodeStatusHistory(@NonNull String node, @NonNull Map<String, String> params) {
+        try {
+            val result = JSON.parseObject(HttpUtils.internalGet(
+                    node + "/api/dashboard/node-status-history", params, CLUSTER_TIMEOUT_MILLIS));
+            if (result.getIntValue("status") != 200) {
+                log.warn("failed to get status history from {}: {}", node, result.getString("message"));
+                return null;
+            }
+            return result.getJSONObject("data");
+        } catch (Exception e) {
+            log.warn("failed to get status history from {}", node, e);
+            return null;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class ClusterStatusHistory {
+        final long coverageStart;
+        @NonNull
+        final List<FlowExecutionStatusHistory.Bucket> buckets;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(@NonNull String key, @NonNull Supplier<T> supplier) {
+        return (T) resultCache.get(key, k -> supplier.get());
+    }
 }
@@ -5,18 +5,31 @@
  */
 package com.xiaomi.thain.server.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xiaomi.thain.common.constant.FlowExecutionStatus;
+import com.xiaomi.thain.common.constant.JobExecutionStatus;
 import com.xiaomi.thain.common.exception.ThainException;
+import com.xiaomi.thain.common.exception.ThainRuntimeException;
 import com.xiaomi.thain.common.model.JobExecutionModel;
 import com.xiaomi.thain.common.model.JobModel;
 import com.xiaomi.thain.common.model.dr.FlowExecutionDr;
 import com.xiaomi.thain.core.ThainFacade;
 import com.xiaomi.thain.server.dao.FlowExecutionDao;
+import com.xiaomi.thain.server.model.dr.JobExecutionAndJobDr;
+import com.xiaomi.thain.server.model.rp.FlowExecutionAllInfoRp;
 import lombok.NonNull;
 import lombok.val;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Date 19-6-10 下午8:35
@@ -31,6 +44,20 @@ public class FlowExecutionService {
     @NonNull
     private final ThainFacade thainFacade;
 
+    /**
+     * 结束并且没有正在运行的节点的 flow execution 不会再变化, all-info 可以直接缓存.
+     * 按写入时间过期, 一直有人看的也会定期重新加载
+     */
+    private final Cache<Long, FlowExecutionAllInfoRp> finishedAllInfoCache = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * 正在加载的 all-info, 相同 flowExecutionId 的并发请求只查一次数据库
+     */
+    private final ConcurrentHashMap<Long, CompletableFuture<FlowExecutionAllInfoRp>> loadingAllInfo = new ConcurrentHashMap<>();
+
     public FlowExecutionService(@NonNull FlowExecutionDao flowExecutionDao, @NonNull ThainFacade thainFacade) {
         this.flowExecutionDao = flowExecutionDao;
         this.thainFacade = thainFacade;
@@ -40,6 +67,13 @@ public class FlowExecutionService {
         return flowExecutionDao.getFlowExecutionList(flowId, page, pageSize);
     }
 
+    /**
+     * 游标翻页, 返回 id 小于 cursor 的记录, cursor 为 null 或 <= 0 时返回最新的一页
+     */
+    public List<FlowExecutionDr> getFlowExecutionListByCursor(long flowId, @Nullable Long cursor, int pageSize) {
+        return flowExecutionDao.getFlowExecutionListByCursor(flowId, cursor, pageSize);
+    }
+
     public long getFlowExecutionCount(long flowId) {
         return flowExecutionDao.getFlowExecutionCount(flowId);
     }
@@ -61,6 +95,64 @@ public class FlowExecutionService {
         return flowExecutionDao.getJobExecutionModelList(flowExecutionId);
     }
 
+    /**
+     * 获取 flow execution, job execution 和 job 的全部信息
+     * 已结束的从缓存取, 未结束的并发请求合并成一次加载
+     */
+    public FlowExecutionAllInfoRp getAllInfo(long flowExecutionId) throws ThainException {
+        val cached = finishedAllInfoCache.getIfPresent(flowExecutionId);
+        if (cached != null) {
+            return cached;
+        }
+        val future = new CompletableFuture<FlowExecutionAllInfoRp>();
+        val loading = loadingAllInfo.putIfAbsent(flowExecutionId, future);
+        if (loading != null) {
+            try {
+                return loading.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof ThainException) {
+                    throw (ThainException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new ThainRuntimeException(e.getCause());
+            }
+        }
+        try {
+            val allInfo = loadAllInfo(flowExecutionId);
+            if (finished(allInfo)) {
+                finishedAllInfoCache.put(flowExecutionId, allInfo);
+            }
+            future.complete(allInfo);
+            return allInfo;
+        } catch (ThainException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingAllInfo.remove(flowExecutionId, future);
+        }
+    }
+
+    /**
+     * flow execution 结束时节点不一定都结束了: kill 时先改 flow 的状态再 kill 节点,
+     * 超时的组件也还在写状态和日志, 节点都不在运行了才不会再变化.
+     * flow 结束后没开始的节点不会再开始
+     */
+    private static boolean finished(@NonNull FlowExecutionAllInfoRp allInfo) {
+        return FlowExecutionStatus.getInstance(allInfo.getFlowExecutionModel().getStatus()).isFinished()
+                && allInfo.getJobExecutionModelList().stream()
+                .noneMatch(t -> t.status == JobExecutionStatus.RUNNING.code);
+    }
+
+    private FlowExecutionAllInfoRp loadAllInfo(long flowExecutionId) throws ThainException {
+        val flowExecution = getFlowExecution(flowExecutionId);
+        val jobExecutionAndJobList = flowExecutionDao.getJobExecutionAndJobList(flowExecutionId);
+        return new FlowExecutionAllInfoRp(flowExecution,
+                jobExecutionAndJobList.stream().map(JobExecutionAndJobDr::toJobModel).collect(Collectors.toList()),
+                jobExecutionAndJobList.stream().map(JobExecutionAndJobDr::toJobExecutionModel).collect(Collectors.toList()));
+    }
+
     public boolean killFlowExecutionsByFlowId(long flowId, String appId, String username) throws ThainException {
         val executionIds = flowExecutionDao.getRunningExecutionIdsByFlowId(flowId);
         if (!executionIds.isEmpty()) {
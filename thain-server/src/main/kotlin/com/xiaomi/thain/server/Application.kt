@@ -8,11 +8,13 @@ package com.xiaomi.thain.server
 import org.mybatis.spring.annotation.MapperScan
 import org.springframework.boot.SpringApplication
 import org.springframework.boot.autoconfigure.SpringBootApplication
+import org.springframework.scheduling.annotation.EnableScheduling
 
 /**
  * @author liangyongrui
  */
 @MapperScan("com.xiaomi.thain.server.mapper")
+@EnableScheduling
 @SpringBootApplication(scanBasePackages = ["com.xiaomi.thain"])
 class Application
 
@@ -71,7 +71,7 @@ class WebSecurityConfig(private val customOauth2UserServiceImpl: OAuth2UserServi
                 .authenticationEntryPoint(apiAuthenticationEntryPoint("/"))
                 .and()
                 .authorizeRequests()
-                .antMatchers("/api/login", "x5/**", "/api/cas/redirect/login").permitAll()
+                .antMatchers("/api/login", "x5/**", "/api/cas/redirect/login", "/api/dashboard/node-status-history").permitAll()
                 .antMatchers("/api/**")
                 .authenticated()
                 .and()
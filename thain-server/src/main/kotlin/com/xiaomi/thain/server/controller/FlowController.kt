@@ -46,6 +46,9 @@ class FlowController(private val flowService: FlowService,
         }
     }
 
+    /**
+     * 优先用内存索引查，传 cursor 时按游标翻页（返回 nextCursor），总数可能有几秒的延迟
+     */
     @GetMapping("list")
     fun list(flowListRq: FlowListRq): ApiResult {
         return try {
@@ -54,11 +57,24 @@ class FlowController(private val flowService: FlowService,
             } else {
                 FlowListSp.getInstance(flowListRq, username, authorities)
             }
-            ApiResult.success(
-                    flowService.getFlowList(flowListSp),
-                    flowService.getFlowListCount(flowListSp),
-                    flowListRq.page ?: 1,
-                    flowListRq.pageSize ?: 20)
+            val searchResult = flowService.searchFlowList(flowListSp)
+            when {
+                searchResult == null -> ApiResult.success(
+                        flowService.getFlowList(flowListSp),
+                        flowService.getFlowListCount(flowListSp),
+                        flowListRq.page ?: 1,
+                        flowListRq.pageSize ?: 20)
+                flowListSp.cursor != null -> ApiResult.success(
+                        searchResult.flows,
+                        searchResult.nextCursor,
+                        searchResult.total,
+                        flowListSp.limit)
+                else -> ApiResult.success(
+                        searchResult.flows,
+                        searchResult.total,
+                        flowListRq.page ?: 1,
+                        flowListRq.pageSize ?: 20)
+            }
         } catch (e: Exception) {
             ApiResult.fail(e.message)
         }
@@ -3,11 +3,12 @@ package com.xiaomi.thain.server.controller
 import com.xiaomi.thain.common.entity.ApiResult
 import com.xiaomi.thain.common.model.rp.FlowExecutionRp
 import com.xiaomi.thain.server.handler.ThreadLocalUser
-import com.xiaomi.thain.server.model.rp.FlowExecutionAllInfoRp
 import com.xiaomi.thain.server.service.FlowExecutionService
+import com.xiaomi.thain.server.service.FlowExecutionWaiter
 import com.xiaomi.thain.server.service.PermissionService
 import org.apache.commons.lang3.exception.ExceptionUtils
 import org.springframework.web.bind.annotation.*
+import org.springframework.web.context.request.async.DeferredResult
 
 private const val NO_PERMISSION_MESSAGE = "You do not have permission to do this operation"
 
@@ -17,10 +18,14 @@ private const val NO_PERMISSION_MESSAGE = "You do not have permission to do this
 @RestController
 @RequestMapping("api/flow-execution")
 class FlowExecutionController(private val flowExecutionService: FlowExecutionService,
+                              private val flowExecutionWaiter: FlowExecutionWaiter,
                               private val permissionService: PermissionService) {
 
+    /**
+     * 列表只返回摘要（不含logs），传cursor时按游标翻页（cursor=0 表示第一页），否则按page翻页
+     */
     @GetMapping("list")
-    fun queryFlowExecutionLogsByFlowId(flowId: Long?, page: Int?, pageSize: Int?): ApiResult {
+    fun queryFlowExecutionLogsByFlowId(flowId: Long?, page: Int?, pageSize: Int?, cursor: Long?): ApiResult {
         var pageT = page
         var pageSizeT = pageSize
         return try {
@@ -32,6 +37,12 @@ class FlowExecutionController(private val flowExecutionService: FlowExecutionSer
             }
             if (flowId == null || flowId <= 0) {
                 ApiResult.success(emptyList<Any>(), 0, 1, pageSizeT)
+            } else if (cursor != null) {
+                val flowExecutionList = flowExecutionService.getFlowExecutionListByCursor(flowId, cursor, pageSizeT)
+                ApiResult.success(
+                        flowExecutionList.map { FlowExecutionRp(it) },
+                        flowExecutionList.takeIf { it.size == pageSizeT }?.lastOrNull()?.id,
+                        pageSizeT)
             } else ApiResult.success(
                     flowExecutionService.getFlowExecutionList(flowId, pageT, pageSizeT).map { FlowExecutionRp(it) },
                     flowExecutionService.getFlowExecutionCount(flowId),
@@ -43,24 +54,37 @@ class FlowExecutionController(private val flowExecutionService: FlowExecutionSer
         }
     }
 
+    /**
+     * 已结束的 flow execution 走缓存，响应带 ETag（见 WebConfig），轮询时可以用 If-None-Match
+     */
     @GetMapping("all-info/{flowExecutionId}")
     fun getAllInfo(@PathVariable("flowExecutionId") flowExecutionId: Long): ApiResult {
         return try {
-            if (!ThreadLocalUser.isAdmin && !permissionService.getFlowExecutionAccessible(flowExecutionId, ThreadLocalUser.username, ThreadLocalUser.authorities)) {
+            val allInfo = flowExecutionService.getAllInfo(flowExecutionId)
+            if (!ThreadLocalUser.isAdmin && !permissionService.getFlowExecutionAccessible(allInfo.flowExecutionModel, ThreadLocalUser.username, ThreadLocalUser.authorities)) {
                 return ApiResult.fail(NO_PERMISSION_MESSAGE)
             }
-            val flowExecutionModel = flowExecutionService.getFlowExecution(flowExecutionId)
-            val jobExecutionModelList = flowExecutionService.getJobExecutionModelList(flowExecutionId)
-            val jobModelList = flowExecutionService.getJobModelList(flowExecutionId)
-            ApiResult.success(FlowExecutionAllInfoRp(
-                    flowExecutionModel = flowExecutionModel,
-                    jobModelList = jobModelList,
-                    jobExecutionModelList = jobExecutionModelList))
+            ApiResult.success(allInfo)
         } catch (e: Exception) {
             ApiResult.fail(ExceptionUtils.getRootCauseMessage(e))
         }
     }
 
+    /**
+     * 等到 flow execution 结束或超时（timeout 毫秒，默认 30 秒，最多 60 秒）后返回 all-info，
+     * 超时返回时状态还是运行中，需要再次调用
+     */
+    @GetMapping("await/{flowExecutionId}")
+    fun await(@PathVariable("flowExecutionId") flowExecutionId: Long, timeout: Long?): DeferredResult<ApiResult> {
+        return try {
+            if (!ThreadLocalUser.isAdmin && !permissionService.getFlowExecutionAccessible(flowExecutionId, ThreadLocalUser.username, ThreadLocalUser.authorities)) {
+                DeferredResult<ApiResult>().apply { setResult(ApiResult.fail(NO_PERMISSION_MESSAGE)) }
+            } else flowExecutionWaiter.await(flowExecutionId, timeout)
+        } catch (e: Exception) {
+            DeferredResult<ApiResult>().apply { setResult(ApiResult.fail(e.message)) }
+        }
+    }
+
     @PatchMapping("kill/{flowExecutionId}")
     fun killFlowExecution(@PathVariable("flowExecutionId") flowExecutionId: Long): ApiResult {
         return try {
@@ -0,0 +1,157 @@
+package com.xiaomi.thain.server.controller.x5
+
+import com.alibaba.fastjson.JSON
+import com.alibaba.fastjson.JSONObject
+import com.xiaomi.thain.common.entity.ApiResult
+import com.xiaomi.thain.server.service.FlowExecutionService
+import com.xiaomi.thain.server.service.FlowService
+import com.xiaomi.thain.server.service.PermissionService
+import org.apache.commons.lang3.StringUtils
+import org.apache.commons.lang3.exception.ExceptionUtils
+import org.slf4j.LoggerFactory
+import org.springframework.web.bind.annotation.PostMapping
+import org.springframework.web.bind.annotation.RequestBody
+import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RestController
+
+private const val NO_PERMISSION_MESSAGE = "You do not have permission to do this operation"
+private const val FLOW_ID = "flowId"
+private const val FLOW_EXECUTION_ID = "flowExecutionId"
+private const val UNKNOWN_USER = "unknown"
+private const val MAX_OPERATIONS = 1000
+
+/**
+ * 批量操作，x5 签名只校验一次，所有 flow、flowExecution 的权限一次查出。
+ *
+ * json: {"operations": [{"type": "start", "flowId": 1, "variables": {}}, {"type": "kill", "flowExecutionId": 2}]}
+ *
+ * type: start、pause、schedule（可带 cron）、delete、kill、all-info，前四个用 flowId，后两个用 flowExecutionId。
+ * pause 和 schedule 先合并执行（一个事务、一次 quartz 调用），其他的再按顺序执行，
+ * 返回的 data 是和 operations 一一对应的结果列表
+ */
+@RestController
+@RequestMapping("x5")
+class X5BatchController(private val flowService: FlowService,
+                        private val flowExecutionService: FlowExecutionService,
+                        private val permissionService: PermissionService) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    @PostMapping("batch")
+    fun batch(@RequestBody json: String, appId: String): ApiResult {
+        return try {
+            val operationArray = JSON.parseObject(json).getJSONArray("operations")
+                    ?: return ApiResult.fail("operations cannot be empty")
+            if (operationArray.size > MAX_OPERATIONS) {
+                return ApiResult.fail("too many operations, max: $MAX_OPERATIONS")
+            }
+            val operations = (0 until operationArray.size).map { operationArray.getJSONObject(it) }
+            val accessibleFlowIds = permissionService.getAccessibleFlowIds(
+                    operations.mapNotNull { it.getLong(FLOW_ID) }.toSet(), appId)
+            val accessibleFlowExecutions = permissionService.getAccessibleFlowExecutions(
+                    operations.mapNotNull { it.getLong(FLOW_EXECUTION_ID) }.toSet(), appId)
+
+            val results = arrayOfNulls<ApiResult>(operations.size)
+            operations.forEachIndexed { index, operation ->
+                val type = operation.getString("type")
+                val accessible = when (type) {
+                    "start", "pause", "schedule", "delete" -> operation.getLong(FLOW_ID) in accessibleFlowIds
+                    "kill", "all-info" -> accessibleFlowExecutions.containsKey(operation.getLong(FLOW_EXECUTION_ID))
+                    else -> {
+                        results[index] = ApiResult.fail("unknown operation type: $type")
+                        return@forEachIndexed
+                    }
+                }
+                if (!accessible) {
+                    results[index] = ApiResult.fail(NO_PERMISSION_MESSAGE)
+                }
+            }
+
+            pause(operations, results, appId)
+            schedule(operations, results, appId)
+            operations.forEachIndexed { index, operation ->
+                if (results[index] == null) {
+                    results[index] = execute(operation, accessibleFlowExecutions, appId)
+                }
+            }
+            ApiResult.success(results.toList())
+        } catch (e: Exception) {
+            log.error("batch:", e)
+            ApiResult.fail(e.message)
+        }
+    }
+
+    private fun pause(operations: List<JSONObject>, results: Array<ApiResult?>, appId: String) {
+        val indexes = operations.indices.filter { results[it] == null && operations[it].getString("type") == "pause" }
+        if (indexes.isEmpty()) {
+            return
+        }
+        try {
+            val paused = flowService.pause(indexes.map { operations[it].getLong(FLOW_ID) }.toSet(), appId, UNKNOWN_USER).toSet()
+            indexes.forEach { results[it] = flowResult(operations[it].getLong(FLOW_ID), paused) }
+        } catch (e: Exception) {
+            log.error("batch pause:", e)
+            indexes.forEach { results[it] = ApiResult.fail(e.message) }
+        }
+    }
+
+    private fun schedule(operations: List<JSONObject>, results: Array<ApiResult?>, appId: String) {
+        val indexes = operations.indices.filter { results[it] == null && operations[it].getString("type") == "schedule" }
+        if (indexes.isEmpty()) {
+            return
+        }
+        // 改 cron 要更新 flow 和 job，只能逐个做
+        val cronUpdated = indexes.filter { index ->
+            val operation = operations[index]
+            val cron = operation.getString("cron")
+            try {
+                if (StringUtils.isNotBlank(cron)) {
+                    flowService.updateCron(operation.getLong(FLOW_ID), cron)
+                }
+                true
+            } catch (e: Exception) {
+                log.error("batch scheduling:", e)
+                results[index] = ApiResult.fail(e.message)
+                false
+            }
+        }
+        if (cronUpdated.isEmpty()) {
+            return
+        }
+        try {
+            val scheduled = flowService.scheduling(cronUpdated.map { operations[it].getLong(FLOW_ID) }.toSet(), appId, UNKNOWN_USER).toSet()
+            cronUpdated.forEach { results[it] = flowResult(operations[it].getLong(FLOW_ID), scheduled) }
+        } catch (e: Exception) {
+            log.error("batch scheduling:", e)
+            cronUpdated.forEach { results[it] = ApiResult.fail(e.message) }
+        }
+    }
+
+    private fun flowResult(flowId: Long, succeededFlowIds: Set<Long>): ApiResult {
+        return if (flowId in succeededFlowIds) ApiResult.success() else ApiResult.fail("flow does not exist: $flowId")
+    }
+
+    private fun execute(operation: JSONObject, accessibleFlowExecutions: Map<Long, Long>, appId: String): ApiResult {
+        return try {
+            when (operation.getString("type")) {
+                "start" -> ApiResult.success(flowService.start(operation.getLong(FLOW_ID),
+                        operation.getJSONObject("variables") ?: mapOf<String, Any>(), appId, UNKNOWN_USER))
+                "delete" -> {
+                    flowService.delete(operation.getLong(FLOW_ID), appId, UNKNOWN_USER)
+                    ApiResult.success()
+                }
+                "kill" -> {
+                    val flowExecutionId = operation.getLong(FLOW_EXECUTION_ID)
+                    flowExecutionService.killFlowExecution(accessibleFlowExecutions[flowExecutionId],
+                            flowExecutionId, appId, UNKNOWN_USER)
+                    ApiResult.success()
+                }
+                "all-info" -> ApiResult.success(flowExecutionService.getAllInfo(operation.getLong(FLOW_EXECUTION_ID)))
+                else -> ApiResult.fail("unknown operation type: ${operation.getString("type")}")
+            }
+        } catch (e: Exception) {
+            log.warn(ExceptionUtils.getRootCauseMessage(e))
+            ApiResult.fail(e.message)
+        }
+    }
+}
@@ -3,8 +3,8 @@ package com.xiaomi.thain.server.controller.x5
 import com.alibaba.fastjson.JSON
 import com.xiaomi.thain.common.entity.ApiResult
 import com.xiaomi.thain.common.model.rp.FlowExecutionRp
-import com.xiaomi.thain.server.model.rp.FlowExecutionAllInfoRp
 import com.xiaomi.thain.server.service.FlowExecutionService
+import com.xiaomi.thain.server.service.FlowExecutionWaiter
 import com.xiaomi.thain.server.service.PermissionService
 import org.apache.commons.lang3.exception.ExceptionUtils
 import org.springframework.web.bind.annotation.PostMapping
@@ -18,7 +18,9 @@ private const val NO_PERMISSION_MESSAGE = "You do not have permission to do this
  */
 @RestController
 @RequestMapping("x5/flow-execution")
-class X5FlowExecutionController(private val flowExecutionService: FlowExecutionService, private val permissionService: PermissionService) {
+class X5FlowExecutionController(private val flowExecutionService: FlowExecutionService,
+                                private val flowExecutionWaiter: FlowExecutionWaiter,
+                                private val permissionService: PermissionService) {
     @PostMapping("all-info")
     fun getAllInfo(json: String, appId: String): ApiResult {
         return try {
@@ -26,14 +28,25 @@ class X5FlowExecutionController(private val flowExecutionService: FlowExecutionS
             if (!permissionService.getFlowExecutionAccessible(flowExecutionId, appId)) {
                 return ApiResult.fail(NO_PERMISSION_MESSAGE)
             }
-            val flowExecutionModel = flowExecutionService.getFlowExecution(flowExecutionId)
-            val jobExecutionModelList = flowExecutionService.getJobExecutionModelList(flowExecutionId)
-            val jobModelList = flowExecutionService.getJobModelList(flowExecutionId)
-            ApiResult.success(FlowExecutionAllInfoRp(
-                    flowExecutionModel = flowExecutionModel,
-                    jobModelList = jobModelList,
-                    jobExecutionModelList = jobExecutionModelList)
-            )
+            ApiResult.success(flowExecutionService.getAllInfo(flowExecutionId))
+        } catch (e: Exception) {
+            ApiResult.fail(ExceptionUtils.getRootCauseMessage(e))
+        }
+    }
+
+    /**
+     * long-poll, json: {"flowExecutionId": 1, "timeout": 30000}, 结束或超时后返回 all-info.
+     * 返回值声明成 Any: X5Aop 校验失败时返回的是 ApiResult, 成功时是 DeferredResult
+     */
+    @PostMapping("await")
+    fun await(json: String, appId: String): Any {
+        return try {
+            val jsonObject = JSON.parseObject(json)
+            val flowExecutionId = jsonObject.getLong("flowExecutionId")
+            if (!permissionService.getFlowExecutionAccessible(flowExecutionId, appId)) {
+                return ApiResult.fail(NO_PERMISSION_MESSAGE)
+            }
+            flowExecutionWaiter.await(flowExecutionId, jsonObject.getLong("timeout"))
         } catch (e: Exception) {
             ApiResult.fail(ExceptionUtils.getRootCauseMessage(e))
         }
@@ -54,18 +67,30 @@ class X5FlowExecutionController(private val flowExecutionService: FlowExecutionS
         }
     }
 
+    /**
+     * 列表只返回摘要（不含logs），需要日志请用 all-info。
+     * json 中带 cursor 时按游标翻页（返回 nextCursor），否则按 page 翻页
+     */
     @PostMapping("infos")
     fun getInfos(json: String, appId: String): ApiResult {
-        val flowId = JSON.parseObject(json).getLong("flowId")
+        val jsonObject = JSON.parseObject(json)
+        val flowId = jsonObject.getLong("flowId")
         if (permissionService.getFlowAccessible(flowId, appId)) {
-            var page = JSON.parseObject(json).getInteger("page")
-            var pageSize = JSON.parseObject(json).getInteger("pageSize")
+            var page = jsonObject.getInteger("page") ?: 1
+            var pageSize = jsonObject.getInteger("pageSize") ?: 10
             if (page < 1) {
                 page = 1
             }
             if (pageSize < 1) {
                 pageSize = 10
             }
+            if (jsonObject.containsKey("cursor")) {
+                val flowExecutionList = flowExecutionService
+                        .getFlowExecutionListByCursor(flowId, jsonObject.getLong("cursor"), pageSize)
+                return ApiResult.success(flowExecutionList.map { FlowExecutionRp(it) },
+                        flowExecutionList.takeIf { it.size == pageSize }?.lastOrNull()?.id,
+                        pageSize)
+            }
             return ApiResult.success(flowExecutionService.getFlowExecutionList(flowId, page, pageSize).map { FlowExecutionRp(it) },
                     flowExecutionService.getFlowExecutionCount(flowId),
                     page,
@@ -2,7 +2,10 @@ package com.xiaomi.thain.server.dao
 
 import com.xiaomi.thain.core.model.dr.FlowDr
 import com.xiaomi.thain.core.model.dr.JobDr
+import com.xiaomi.thain.server.aop.ReadReplica
 import com.xiaomi.thain.server.mapper.FlowMapper
+import com.xiaomi.thain.server.model.dr.FlowOwnerDr
+import com.xiaomi.thain.server.model.dr.FlowSearchEntryDr
 import com.xiaomi.thain.server.model.sp.FlowListSp
 import org.springframework.stereotype.Repository
 
@@ -11,18 +14,36 @@ import org.springframework.stereotype.Repository
  */
 @Repository
 class FlowDao(private val flowMapper: FlowMapper) {
-    fun getAccessible(flowId: Long, userId: String, appIds: Set<String>?): Boolean {
-        return flowMapper.getUserAccessible(flowId, userId, appIds)
-    }
-
+    @ReadReplica
     fun getFlowList(flowListSp: FlowListSp): List<FlowDr> {
         return flowMapper.getFlowList(flowListSp)
     }
 
+    @ReadReplica
     fun getFlowListCount(flowListSp: FlowListSp): Long {
         return flowMapper.getFlowListCount(flowListSp)
     }
 
+    fun getFlowSearchEntries(maxId: Long, since: Long): List<FlowSearchEntryDr> {
+        return flowMapper.getFlowSearchEntries(maxId, since)
+    }
+
+    fun getFlowSearchEntry(flowId: Long): FlowSearchEntryDr? {
+        return flowMapper.getFlowSearchEntry(flowId)
+    }
+
+    fun getFlowIds(): List<Long> {
+        return flowMapper.getFlowIds()
+    }
+
+    @ReadReplica
+    fun getFlowListByIds(flowIds: List<Long>): List<FlowDr> {
+        if (flowIds.isEmpty()) {
+            return emptyList()
+        }
+        return flowMapper.getFlowListByIds(flowIds)
+    }
+
     fun flowExist(flowId: Long): Boolean {
         return flowMapper.flowExist(flowId)
     }
@@ -31,16 +52,42 @@ class FlowDao(private val flowMapper: FlowMapper) {
         flowMapper.updateAppId(flowId, appId)
     }
 
+    @ReadReplica
     fun getFlow(flowId: Long): FlowDr? {
         return flowMapper.getFlow(flowId)
     }
 
+    @ReadReplica
     fun getJobModelList(flowId: Long): List<JobDr> {
         return flowMapper.getJobModelList(flowId)
     }
 
-    fun getAccessible(flowId: Long, appId: String): Boolean {
-        return flowMapper.getAppIdAccessible(flowId, appId)
+    @ReadReplica
+    fun getFlowOwner(flowId: Long): FlowOwnerDr? {
+        return flowMapper.getFlowOwner(flowId)
+    }
+
+    @ReadReplica
+    fun getFlowIdByFlowExecutionId(flowExecutionId: Long): Long? {
+        return flowMapper.getFlowIdByFlowExecutionId(flowExecutionId)
     }
 
+    /**
+     * flow execution id -> flow id，不存在的不返回
+     */
+    @ReadReplica
+    fun getFlowIdsByFlowExecutionIds(flowExecutionIds: Collection<Long>): Map<Long, Long> {
+        if (flowExecutionIds.isEmpty()) {
+            return emptyMap()
+        }
+        return flowMapper.getFlowIdListByFlowExecutionIds(flowExecutionIds).associate { it.id to it.flowId }
+    }
+
+    @ReadReplica
+    fun getFlowOwnerList(flowIds: Collection<Long>): List<FlowOwnerDr> {
+        if (flowIds.isEmpty()) {
+            return emptyList()
+        }
+        return flowMapper.getFlowOwnerList(flowIds)
+    }
 }
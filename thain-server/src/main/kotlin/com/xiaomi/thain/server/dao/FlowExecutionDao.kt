@@ -3,7 +3,10 @@ package com.xiaomi.thain.server.dao
 import com.xiaomi.thain.common.model.JobExecutionModel
 import com.xiaomi.thain.common.model.JobModel
 import com.xiaomi.thain.common.model.dr.FlowExecutionDr
+import com.xiaomi.thain.server.aop.ReadReplica
 import com.xiaomi.thain.server.mapper.FlowExecutionMapper
+import com.xiaomi.thain.server.model.dr.FlowExecutionStatusDr
+import com.xiaomi.thain.server.model.dr.JobExecutionAndJobDr
 import org.springframework.stereotype.Repository
 
 /**
@@ -12,29 +15,47 @@ import org.springframework.stereotype.Repository
 @Repository
 class FlowExecutionDao(private val flowExecutionMapper: FlowExecutionMapper) {
 
+    @ReadReplica
     fun getFlowExecutionList(flowId: Long, page: Int, pageSize: Int): List<FlowExecutionDr> {
         val offset = (page - 1) * pageSize
         return flowExecutionMapper.getFlowExecutionList(flowId, offset, pageSize)
     }
 
+    @ReadReplica
+    fun getFlowExecutionListByCursor(flowId: Long, cursor: Long?, pageSize: Int): List<FlowExecutionDr> {
+        return flowExecutionMapper.getFlowExecutionListByCursor(flowId, cursor, pageSize)
+    }
+
+    @ReadReplica
     fun getFlowExecutionCount(flowId: Long): Long {
         return flowExecutionMapper.getFlowExecutionCount(flowId)
     }
 
+    @ReadReplica
     fun getFlowExecution(flowExecutionId: Long): FlowExecutionDr? {
         return flowExecutionMapper.getFlowExecution(flowExecutionId)
     }
 
+    @ReadReplica
     fun getJobModelList(flowExecutionId: Long): List<JobModel> {
         return flowExecutionMapper.getJobModelList(flowExecutionId)
     }
 
+    @ReadReplica
     fun getJobExecutionModelList(flowExecutionId: Long): List<JobExecutionModel> {
         return flowExecutionMapper.getJobExecutionModelList(flowExecutionId)
     }
 
-    fun getAccessible(flowExecutionId: Long, appId: String): Boolean {
-        return flowExecutionMapper.getAppIdAccessible(flowExecutionId, appId)
+    @ReadReplica
+    fun getJobExecutionAndJobList(flowExecutionId: Long): List<JobExecutionAndJobDr> {
+        return flowExecutionMapper.getJobExecutionAndJobList(flowExecutionId)
+    }
+
+    fun getFlowExecutionStatusList(flowExecutionIds: Collection<Long>): List<FlowExecutionStatusDr> {
+        if (flowExecutionIds.isEmpty()) {
+            return emptyList()
+        }
+        return flowExecutionMapper.getFlowExecutionStatusList(flowExecutionIds)
     }
 
     fun getRunningExecutionIdsByFlowId(flowId: Long): List<Long> {
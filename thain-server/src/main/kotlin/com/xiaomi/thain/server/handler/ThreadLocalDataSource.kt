@@ -0,0 +1,49 @@
+package com.xiaomi.thain.server.handler
+
+/**
+ * 当前线程的查询走主库还是只读从库，由 ReadReplicaAop 和 [primary] 设置，RoutingDataSource 读取
+ *
+ * @author liangyongrui
+ */
+object ThreadLocalDataSource {
+
+    enum class Target { PRIMARY, READ }
+
+    private val target = ThreadLocal<Target?>()
+
+    val current: Target?
+        get() = target.get()
+
+    /**
+     * 外层已经指定了的不覆盖（强制主库优先）
+     *
+     * @return 是否设置成功，成功的要调用 [exit]
+     */
+    @JvmStatic
+    fun enter(newTarget: Target): Boolean {
+        if (target.get() != null) {
+            return false
+        }
+        target.set(newTarget)
+        return true
+    }
+
+    @JvmStatic
+    fun exit() {
+        target.remove()
+    }
+
+    /**
+     * 强制走主库，刚写完就要读、或者从库里可能还没有的数据用
+     */
+    fun <T> primary(block: () -> T): T {
+        val entered = enter(Target.PRIMARY)
+        try {
+            return block()
+        } finally {
+            if (entered) {
+                exit()
+            }
+        }
+    }
+}
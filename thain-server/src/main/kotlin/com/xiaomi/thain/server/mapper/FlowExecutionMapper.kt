@@ -3,6 +3,8 @@ package com.xiaomi.thain.server.mapper
 import com.xiaomi.thain.common.model.JobExecutionModel
 import com.xiaomi.thain.common.model.JobModel
 import com.xiaomi.thain.common.model.dr.FlowExecutionDr
+import com.xiaomi.thain.server.model.dr.FlowExecutionStatusDr
+import com.xiaomi.thain.server.model.dr.JobExecutionAndJobDr
 import org.apache.ibatis.annotations.Param
 import org.apache.ibatis.annotations.Select
 import org.springframework.stereotype.Component
@@ -13,10 +15,16 @@ import org.springframework.stereotype.Component
 @Component
 interface FlowExecutionMapper {
 
-    fun getAppIdAccessible(@Param("flowExecutionId") flowExecutionId: Long, @Param("appId") appId: String): Boolean
-
+    /**
+     * 列表摘要，不含logs
+     */
     fun getFlowExecutionList(@Param("flowId") flowId: Long, @Param("offset") offset: Int, @Param("limit") limit: Int): List<FlowExecutionDr>
 
+    /**
+     * 按 (flow_id, id) 游标翻页，返回 id < cursor 的前 limit 条摘要，cursor 为空或<=0则从最新开始
+     */
+    fun getFlowExecutionListByCursor(@Param("flowId") flowId: Long, @Param("cursor") cursor: Long?, @Param("limit") limit: Int): List<FlowExecutionDr>
+
     @Select("select count(*) from thain_flow_execution where flow_id = #{flowId}")
     fun getFlowExecutionCount(@Param("flowId") flowId: Long): Long
 
@@ -26,6 +34,16 @@ interface FlowExecutionMapper {
 
     fun getJobExecutionModelList(flowExecutionId: Long): List<JobExecutionModel>
 
+    /**
+     * job execution 和 job 一次查出，代替 getJobModelList + getJobExecutionModelList
+     */
+    fun getJobExecutionAndJobList(flowExecutionId: Long): List<JobExecutionAndJobDr>
+
+    /**
+     * 批量查 flow execution 状态
+     */
+    fun getFlowExecutionStatusList(@Param("flowExecutionIds") flowExecutionIds: Collection<Long>): List<FlowExecutionStatusDr>
+
     /**
      * get execution by flowId
      */
@@ -2,6 +2,9 @@ package com.xiaomi.thain.server.mapper
 
 import com.xiaomi.thain.core.model.dr.FlowDr
 import com.xiaomi.thain.core.model.dr.JobDr
+import com.xiaomi.thain.server.model.dr.FlowExecutionFlowIdDr
+import com.xiaomi.thain.server.model.dr.FlowOwnerDr
+import com.xiaomi.thain.server.model.dr.FlowSearchEntryDr
 import com.xiaomi.thain.server.model.sp.FlowListSp
 import org.apache.ibatis.annotations.Mapper
 import org.apache.ibatis.annotations.Param
@@ -13,18 +16,35 @@ import org.springframework.stereotype.Component
 @Mapper
 @Component
 interface FlowMapper {
-    fun getUserAccessible(@Param("flowId") flowId: Long, @Param("userId") userId: String,
-                          @Param("appIds") appIds: Set<String>?): Boolean
-
-    fun getAppIdAccessible(@Param("flowId") flowId: Long, @Param("appId") appId: String): Boolean
-
     fun getFlowList(flowListSp: FlowListSp): List<FlowDr>
 
     fun getFlowListCount(flowListSp: FlowListSp): Long
+
+    /**
+     * maxId 为 0 时全量加载，否则返回 id > maxId 或 since(秒) 之后修改过的 flow
+     */
+    fun getFlowSearchEntries(@Param("maxId") maxId: Long, @Param("since") since: Long): List<FlowSearchEntryDr>
+
+    fun getFlowSearchEntry(flowId: Long): FlowSearchEntryDr?
+
+    /**
+     * 所有没删除的 flow id，搜索索引核对物理删除用
+     */
+    fun getFlowIds(): List<Long>
+
+    fun getFlowListByIds(@Param("flowIds") flowIds: List<Long>): List<FlowDr>
     fun flowExist(flowId: Long): Boolean
     fun updateAppId(@Param("flowId") flowId: Long, @Param("appId") appId: String)
-    fun getFlowIdByFlowExecutionId(flowExecutionId: Long): Long
+    fun getFlowIdByFlowExecutionId(flowExecutionId: Long): Long?
+    fun getFlowIdListByFlowExecutionIds(@Param("flowExecutionIds") flowExecutionIds: Collection<Long>): List<FlowExecutionFlowIdDr>
     fun getFlow(flowId: Long): FlowDr?
 
+    /**
+     * 只查权限判断用到的字段
+     */
+    fun getFlowOwner(flowId: Long): FlowOwnerDr?
+
+    fun getFlowOwnerList(@Param("flowIds") flowIds: Collection<Long>): List<FlowOwnerDr>
+
     fun getJobModelList(flowId: Long): List<JobDr>
 }
@@ -1,10 +1,12 @@
 package com.xiaomi.thain.server.service
 
+import com.alibaba.fastjson.JSON
 import com.xiaomi.thain.common.exception.ThainException
 import com.xiaomi.thain.common.exception.ThainRuntimeException
 import com.xiaomi.thain.core.ThainFacade
 import com.xiaomi.thain.core.model.rq.AddFlowRq
 import com.xiaomi.thain.core.model.rq.AddJobRq
+import com.xiaomi.thain.core.process.runtime.storage.GLOBAL_JOB_NAME
 import org.apache.commons.lang3.StringUtils
 import org.springframework.stereotype.Service
 import java.util.HashSet
@@ -31,6 +33,13 @@ class CheckService(private val thainFacade: ThainFacade) {
         if (StringUtils.isBlank(addFlowRq.createUser)) {
             throw ThainException("failed to obtain createUser")
         }
+        if (listOfNotNull(addFlowRq.cacheTtlSeconds, addFlowRq.cacheMaxEntries).any { it < 0 }) {
+            throw ThainException("cacheTtlSeconds and cacheMaxEntries cannot be negative")
+        }
+        if ((addFlowRq.upstreamWindowSeconds ?: 0) < 0) {
+            throw ThainException("upstreamWindowSeconds cannot be negative")
+        }
+        thainFacade.schedulerEngine.flowDependencyResolver.checkUpstream(addFlowRq.id, addFlowRq.upstreamFlowIds)
     }
 
     @Throws(ThainException::class)
@@ -49,6 +58,11 @@ class CheckService(private val thainFacade: ThainFacade) {
         }
         jobModelList.forEach { jobModel ->
             checkJobModel(jobModel)
+            jobModel.mapSource?.trim()
+                    ?.takeIf { it.contains('.') }
+                    ?.substringBefore('.')
+                    ?.takeIf { it != GLOBAL_JOB_NAME && !jobNameSet.contains(it) }
+                    ?.let { throw ThainException("map source of ${jobModel.name} relies on non-existent node: $it") }
             jobModel.condition?.split("&&|\\|\\|".toRegex())
                     ?.map { it.trim() }
                     ?.map {
@@ -75,6 +89,22 @@ class CheckService(private val thainFacade: ThainFacade) {
         if (!addJobRq.name.matches("^[_A-Za-z][_A-Za-z0-9]*$".toRegex())) {
             throw ThainException("Job names can only have numbers, letters, underscores, and begin with numbers or letters")
         }
+        if (listOfNotNull(addJobRq.retryNumber, addJobRq.retryBackoff, addJobRq.timeoutSeconds).any { it < 0 }) {
+            throw ThainException("retryNumber, retryBackoff and timeoutSeconds of ${addJobRq.name} cannot be negative")
+        }
+        if (listOfNotNull(addJobRq.mapParallelism, addJobRq.mapTolerance).any { it < 0 }) {
+            throw ThainException("mapParallelism and mapTolerance of ${addJobRq.name} cannot be negative")
+        }
+        addJobRq.resourceClaims?.takeIf { it.isNotBlank() }?.let { resourceClaims ->
+            val claims = try {
+                JSON.parseObject(resourceClaims)
+            } catch (e: Exception) {
+                throw ThainException("resourceClaims of ${addJobRq.name} is not a json object: $resourceClaims")
+            }
+            if (claims.any { (pool, permits) -> pool.isBlank() || permits !is Int || permits <= 0 }) {
+                throw ThainException("resourceClaims of ${addJobRq.name} must map pool names to positive integers")
+            }
+        }
         val componentDefineMap = thainFacade.componentService.componentDefineModels
         val componentDefine = componentDefineMap[addJobRq.component]
                 ?: throw ThainException("Component of node " + addJobRq.name + " does not available ")
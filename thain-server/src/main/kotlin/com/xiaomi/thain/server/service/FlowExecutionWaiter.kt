@@ -0,0 +1,123 @@
+package com.xiaomi.thain.server.service
+
+import com.xiaomi.thain.common.constant.FlowExecutionStatus
+import com.xiaomi.thain.common.entity.ApiResult
+import com.xiaomi.thain.core.ThainFacade
+import com.xiaomi.thain.core.process.runtime.notice.FlowExecutionEndNotice
+import com.xiaomi.thain.server.dao.FlowExecutionDao
+import com.xiaomi.thain.server.handler.ThreadLocalDataSource
+import org.apache.commons.lang3.exception.ExceptionUtils
+import org.slf4j.LoggerFactory
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import org.springframework.web.context.request.async.DeferredResult
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArraySet
+import java.util.concurrent.Executors
+
+private const val DEFAULT_TIMEOUT_MILLIS = 30_000L
+private const val MAX_TIMEOUT_MILLIS = 60_000L
+private const val STATUS_QUERY_BATCH_SIZE = 500
+
+/**
+ * 等待 flow execution 结束（long-poll），请求挂起不占用 servlet 线程。
+ * 本机执行的 flow execution 结束时由引擎直接唤醒，其他机器执行的每秒按 id 批量查一次状态。
+ * 结束或超时都返回当时的 all-info，没结束的由客户端再次发起等待
+ *
+ * @author liangyongrui
+ */
+@Component
+class FlowExecutionWaiter(private val flowExecutionDao: FlowExecutionDao,
+                          private val flowExecutionService: FlowExecutionService,
+                          thainFacade: ThainFacade) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    private val waiters = ConcurrentHashMap<Long, MutableSet<DeferredResult<ApiResult>>>()
+
+    /**
+     * 唤醒时要查 all-info，不能放在引擎的线程里做
+     */
+    private val wakeUpExecutor = Executors.newFixedThreadPool(2) { r ->
+        Thread(r, "flow-execution-waiter").apply { isDaemon = true }
+    }
+
+    init {
+        thainFacade.flowExecutionEndNotice.addListener(object : FlowExecutionEndNotice.Listener {
+            override fun onEnd(flowExecutionId: Long, status: FlowExecutionStatus) {
+                if (waiters.containsKey(flowExecutionId)) {
+                    wakeUpExecutor.execute { wakeUp(flowExecutionId) }
+                }
+            }
+        })
+    }
+
+    /**
+     * @param timeoutMillis 最长等待时间，为空时 30 秒，最多 60 秒
+     */
+    fun await(flowExecutionId: Long, timeoutMillis: Long?): DeferredResult<ApiResult> {
+        val timeout = timeoutMillis?.takeIf { it > 0 }?.coerceAtMost(MAX_TIMEOUT_MILLIS) ?: DEFAULT_TIMEOUT_MILLIS
+        val result = DeferredResult<ApiResult>(timeout)
+        waiters.compute(flowExecutionId) { _, results ->
+            (results ?: CopyOnWriteArraySet()).apply { add(result) }
+        }
+        result.onTimeout { result.setResult(allInfo(flowExecutionId)) }
+        result.onCompletion { removeWaiter(flowExecutionId, result) }
+        // 先登记再查状态，避免在两步之间结束的 flow execution 漏掉唤醒
+        // 不存在的直接返回 all-info 的错误信息
+        val status = flowExecutionDao.getFlowExecutionStatusList(listOf(flowExecutionId)).firstOrNull()?.status
+        if (status == null || isEnded(status)) {
+            removeWaiter(flowExecutionId, result)
+            result.setResult(allInfo(flowExecutionId))
+        }
+        return result
+    }
+
+    /**
+     * 其他机器上执行的 flow execution 不会触发本机的通知，只查正在等待的 id 的状态
+     */
+    @Scheduled(fixedDelay = 1_000)
+    fun checkWaiting() {
+        if (waiters.isEmpty()) {
+            return
+        }
+        try {
+            waiters.keys.toList().chunked(STATUS_QUERY_BATCH_SIZE).forEach { ids ->
+                flowExecutionDao.getFlowExecutionStatusList(ids)
+                        .filter { isEnded(it.status) }
+                        .forEach { wakeUp(it.id) }
+            }
+        } catch (e: Exception) {
+            log.error("check waiting flow execution", e)
+        }
+    }
+
+    private fun wakeUp(flowExecutionId: Long) {
+        val results = waiters.remove(flowExecutionId)?.takeIf { it.isNotEmpty() } ?: return
+        val allInfo = allInfo(flowExecutionId)
+        results.forEach { it.setResult(allInfo) }
+    }
+
+    private fun removeWaiter(flowExecutionId: Long, result: DeferredResult<ApiResult>) {
+        waiters.computeIfPresent(flowExecutionId) { _, results ->
+            results.remove(result)
+            results.takeIf { it.isNotEmpty() }
+        }
+    }
+
+    private fun allInfo(flowExecutionId: Long): ApiResult {
+        return try {
+            // 状态是从主库查到的，all-info 也要查主库，从库可能还没同步到结束状态
+            ApiResult.success(ThreadLocalDataSource.primary { flowExecutionService.getAllInfo(flowExecutionId) })
+        } catch (e: Exception) {
+            ApiResult.fail(ExceptionUtils.getRootCauseMessage(e))
+        }
+    }
+
+    /**
+     * 失败等待重试的 flow execution 也不会再变化（重试会新建 flow execution）
+     */
+    private fun isEnded(status: Int): Boolean {
+        return status != FlowExecutionStatus.WAITING.code && status != FlowExecutionStatus.RUNNING.code
+    }
+}
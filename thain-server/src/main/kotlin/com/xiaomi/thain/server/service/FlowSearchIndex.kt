@@ -0,0 +1,289 @@
+package com.xiaomi.thain.server.service
+
+import com.xiaomi.thain.core.ThainFacade
+import com.xiaomi.thain.core.process.runtime.notice.FlowDeleteNotice
+import com.xiaomi.thain.server.dao.FlowDao
+import com.xiaomi.thain.server.model.dr.FlowSearchEntryDr
+import com.xiaomi.thain.server.model.sp.FlowListSp
+import org.slf4j.LoggerFactory
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+private const val GRAM_SIZE = 3
+
+/**
+ * flow 列表的内存索引，name、create_user、create_app_id 建 3-gram 倒排，其他过滤条件直接在内存里判断。
+ * 本机修改 flow 后调用 [refresh] 立即更新，其他机器的修改每 10 秒按 status_update_time 增量同步，
+ * 物理删除的 flow 查不到变化，每分钟按 id 核对一次，所以总数和列表最多有几秒（删除最多一分钟）的延迟
+ *
+ * @author liangyongrui
+ */
+@Component
+class FlowSearchIndex(private val flowDao: FlowDao, thainFacade: ThainFacade) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    private val lock = ReentrantReadWriteLock()
+    private val entries = HashMap<Long, FlowSearchEntryDr>()
+    private val nameGrams = HashMap<String, MutableSet<Long>>()
+    private val createUserGrams = HashMap<String, MutableSet<Long>>()
+    private val createAppIdGrams = HashMap<String, MutableSet<Long>>()
+
+    private var maxId = 0L
+    /**
+     * 见过的最大 status_update_time，秒
+     */
+    private var maxStatusUpdateTime = 0L
+
+    /**
+     * 第一次全量加载完成之前，列表走数据库
+     */
+    @Volatile
+    var ready = false
+        private set
+
+    init {
+        thainFacade.flowDeleteNotice.addListener(object : FlowDeleteNotice.Listener {
+            override fun onDelete(flowId: Long) {
+                refresh(flowId)
+            }
+        })
+    }
+
+    @Scheduled(fixedDelay = 10_000)
+    fun refresh() {
+        try {
+            // status_update_time 只精确到秒，往前多查几秒，避免漏掉同一秒内后提交的修改
+            val since = maxOf(0, maxStatusUpdateTime - 5)
+            val list = flowDao.getFlowSearchEntries(maxId, since)
+            lock.write { list.forEach { put(it) } }
+            ready = true
+        } catch (e: Exception) {
+            log.error("refresh flow search index", e)
+        }
+    }
+
+    /**
+     * 去掉数据库里已经没有的 flow。
+     * 查 id 之前已经在索引里的才核对，查询之后本机新加的 flow 不会被误删
+     */
+    @Scheduled(initialDelay = 60_000, fixedDelay = 60_000)
+    fun reconcile() {
+        try {
+            if (!ready) {
+                return
+            }
+            val checkedMaxId = lock.read { maxId }
+            val flowIds = flowDao.getFlowIds().toHashSet()
+            lock.write {
+                entries.keys.filter { it <= checkedMaxId && !flowIds.contains(it) }.forEach { remove(it) }
+            }
+        } catch (e: Exception) {
+            log.error("reconcile flow search index", e)
+        }
+    }
+
+    /**
+     * 查询时发现数据库里已经没有的 flow，直接去掉
+     */
+    fun evict(flowIds: Collection<Long>) {
+        if (flowIds.isEmpty()) {
+            return
+        }
+        lock.write { flowIds.forEach { remove(it) } }
+    }
+
+    /**
+     * 本机新增、修改、删除 flow 后调用
+     */
+    fun refresh(flowId: Long) {
+        val entry = flowDao.getFlowSearchEntry(flowId)
+        lock.write {
+            if (entry == null) {
+                remove(flowId)
+            } else {
+                put(entry)
+            }
+        }
+    }
+
+    /**
+     * 按 flowListSp 的条件过滤、排序，有 cursor 时只返回 cursor 之后的 flow。
+     * cursor 里带着排序值和 id，上一页最后一个 flow 被删除或修改了也能接着翻
+     */
+    fun search(flowListSp: FlowListSp): Result {
+        val comparator = getComparator(flowListSp)
+        return lock.read {
+            val candidates = flowListSp.flowId?.takeIf { it > 0 }?.let { listOfNotNull(entries[it]) }
+                    ?: listOf(nameGrams to flowListSp.flowName,
+                            createUserGrams to flowListSp.createUser,
+                            createAppIdGrams to flowListSp.searchApp)
+                            .mapNotNull { (grams, keyword) -> keyword?.let { candidateIds(grams, it) } }
+                            .minBy { it.size }
+                            ?.mapNotNull { entries[it] }
+                    ?: entries.values
+            val matched = candidates.filter { matches(it, flowListSp) }.sortedWith(comparator)
+            val cursor = flowListSp.cursor?.let { parseCursor(it, flowListSp) }
+            val page = if (cursor == null) {
+                matched
+            } else {
+                matched.dropWhile { compareToCursor(it, cursor, flowListSp) <= 0 }
+            }
+            Result(matched.size.toLong(), page)
+        }
+    }
+
+    /**
+     * @return 排序值_id，作为下一页的 cursor
+     */
+    fun cursor(entry: FlowSearchEntryDr, sp: FlowListSp): String {
+        return "${sortValue(entry, sp)}_${entry.id}"
+    }
+
+    /**
+     * 空或者 0 表示第一页；只有 id 的是旧格式，按 id 排序时 id 就是排序值
+     */
+    private fun parseCursor(cursor: String, sp: FlowListSp): Pair<Long, Long>? {
+        val parts = cursor.trim().split('_')
+        return when {
+            parts.size == 2 -> {
+                val sortValue = parts[0].toLongOrNull() ?: return null
+                val id = parts[1].toLongOrNull() ?: return null
+                sortValue to id
+            }
+            parts.size == 1 && sp.sortKey != "status_update_time" ->
+                parts[0].toLongOrNull()?.takeIf { it > 0 }?.let { it to it }
+            else -> null
+        }
+    }
+
+    /**
+     * 和 [getComparator] 的顺序一致
+     */
+    private fun compareToCursor(entry: FlowSearchEntryDr, cursor: Pair<Long, Long>, sp: FlowListSp): Int {
+        val result = compareValuesBy(sortValue(entry, sp) to entry.id, cursor, { it.first }, { it.second })
+        return if (sp.sortKey != null && sp.sortOrderDesc) -result else result
+    }
+
+    private fun sortValue(entry: FlowSearchEntryDr, sp: FlowListSp): Long {
+        return when (sp.sortKey) {
+            "status_update_time" -> entry.statusUpdateTime?.time ?: 0
+            else -> entry.id
+        }
+    }
+
+    private fun put(entry: FlowSearchEntryDr) {
+        remove(entry.id)
+        maxId = maxOf(maxId, entry.id)
+        entry.statusUpdateTime?.let { maxStatusUpdateTime = maxOf(maxStatusUpdateTime, TimeUnit.MILLISECONDS.toSeconds(it.time)) }
+        if (entry.deleted) {
+            return
+        }
+        entries[entry.id] = entry
+        addGrams(nameGrams, entry.name, entry.id)
+        addGrams(createUserGrams, entry.createUser, entry.id)
+        addGrams(createAppIdGrams, entry.createAppId, entry.id)
+    }
+
+    private fun remove(flowId: Long) {
+        val old = entries.remove(flowId) ?: return
+        removeGrams(nameGrams, old.name, flowId)
+        removeGrams(createUserGrams, old.createUser, flowId)
+        removeGrams(createAppIdGrams, old.createAppId, flowId)
+    }
+
+    private fun addGrams(index: HashMap<String, MutableSet<Long>>, value: String?, flowId: Long) {
+        grams(value).forEach { index.getOrPut(it) { HashSet() }.add(flowId) }
+    }
+
+    private fun removeGrams(index: HashMap<String, MutableSet<Long>>, value: String?, flowId: Long) {
+        grams(value).forEach { gram ->
+            index[gram]?.let {
+                it.remove(flowId)
+                if (it.isEmpty()) {
+                    index.remove(gram)
+                }
+            }
+        }
+    }
+
+    /**
+     * 关键字够长时用倒排求交集得到候选，太短返回null，由调用方全量过滤
+     */
+    private fun candidateIds(index: HashMap<String, MutableSet<Long>>, keyword: String): Set<Long>? {
+        val keywordGrams = grams(keyword)
+        if (keywordGrams.isEmpty()) {
+            return null
+        }
+        return keywordGrams.map { index[it] ?: return emptySet() }
+                .sortedBy { it.size }
+                .reduce { acc, set -> acc.intersect(set) }
+    }
+
+    private fun grams(value: String?): Set<String> {
+        val lower = value?.toLowerCase() ?: return emptySet()
+        if (lower.length < GRAM_SIZE) {
+            return emptySet()
+        }
+        return (0..lower.length - GRAM_SIZE).map { lower.substring(it, it + GRAM_SIZE) }.toSet()
+    }
+
+    /**
+     * 和 FlowMapper.getFlowList 的条件一致，like 不区分大小写
+     */
+    private fun matches(entry: FlowSearchEntryDr, sp: FlowListSp): Boolean {
+        val flowId = sp.flowId
+        if (flowId != null && flowId > 0 && entry.id != flowId) {
+            return false
+        }
+        val lastRunStatus = sp.lastRunStatus
+        if (lastRunStatus != null && lastRunStatus > 0 && entry.lastRunStatus != lastRunStatus) {
+            return false
+        }
+        val queryUsername = sp.queryUsername
+        if (!queryUsername.isNullOrEmpty()
+                && !(entry.createUser == queryUsername && entry.createAppId == "thain")
+                && sp.appIds?.contains(entry.createAppId) != true) {
+            return false
+        }
+        if (!containsIgnoreCase(entry.name, sp.flowName)
+                || !containsIgnoreCase(entry.createUser, sp.createUser)
+                || !containsIgnoreCase(entry.createAppId, sp.searchApp)) {
+            return false
+        }
+        val scheduleStatus = sp.scheduleStatus
+        if (scheduleStatus != null && scheduleStatus > 0 && entry.schedulingStatus != scheduleStatus) {
+            return false
+        }
+        val updateTime = sp.updateTime
+        if (updateTime != null && updateTime.size == 2) {
+            val time = entry.statusUpdateTime?.let { TimeUnit.MILLISECONDS.toSeconds(it.time) } ?: return false
+            if (time < updateTime[0] || time > updateTime[1]) {
+                return false
+            }
+        }
+        return true
+    }
+
+    private fun containsIgnoreCase(value: String?, keyword: String?): Boolean {
+        if (keyword.isNullOrEmpty()) {
+            return true
+        }
+        return value?.contains(keyword, true) ?: false
+    }
+
+    private fun getComparator(sp: FlowListSp): Comparator<FlowSearchEntryDr> {
+        val comparator = compareBy<FlowSearchEntryDr> { sortValue(it, sp) }.thenBy { it.id }
+        return if (sp.sortKey != null && sp.sortOrderDesc) comparator.reversed() else comparator
+    }
+
+    /**
+     * @param total 命中的总数
+     * @param entries 排好序的 flow，有 cursor 时从 cursor 之后开始
+     */
+    data class Result(val total: Long, val entries: List<FlowSearchEntryDr>)
+}
@@ -23,7 +23,9 @@ import java.text.ParseException
 @Service
 class FlowService(
         private val flowDao: FlowDao,
-        private val thainFacade: ThainFacade) {
+        private val thainFacade: ThainFacade,
+        private val permissionService: PermissionService,
+        private val flowSearchIndex: FlowSearchIndex) {
 
     fun getFlowList(flowListSp: FlowListSp): List<FlowDr> {
         return flowDao.getFlowList(flowListSp)
@@ -33,6 +35,37 @@ class FlowService(
         return flowDao.getFlowListCount(flowListSp)
     }
 
+    /**
+     * 用内存索引查一页 flow 和总数，索引还没加载完时返回null
+     */
+    fun searchFlowList(flowListSp: FlowListSp): SearchPage? {
+        val result = flowSearchIndex.takeIf { it.ready }?.search(flowListSp) ?: return null
+        val pageEntries = result.entries
+                .let { if (flowListSp.cursor == null) it.drop(flowListSp.offset) else it }
+                .take(flowListSp.limit)
+        val flows = flowDao.getFlowListByIds(pageEntries.map { it.id }).associateBy { it.id }
+        // 其他机器物理删除的 flow 索引里还有，查不到的去掉，总数也减掉
+        val missing = pageEntries.map { it.id }.filter { !flows.containsKey(it) }
+        flowSearchIndex.evict(missing)
+        val nextCursor = pageEntries.takeIf { it.size == flowListSp.limit }
+                ?.last()
+                ?.let { flowSearchIndex.cursor(it, flowListSp) }
+        return SearchPage(pageEntries.mapNotNull { flows[it.id] }, result.total - missing.size, nextCursor)
+    }
+
+    /**
+     * @param nextCursor 下一页的 cursor，没有下一页时为null
+     */
+    data class SearchPage(val flows: List<FlowDr>, val total: Long, val nextCursor: String?)
+
+    /**
+     * flow 修改后更新权限缓存和搜索索引
+     */
+    private fun flowChanged(flowId: Long) {
+        permissionService.invalidateFlow(flowId)
+        flowSearchIndex.refresh(flowId)
+    }
+
     fun add(addFlowRq: AddFlowRq, addJobRqList: List<AddJobRq>, appId: String): Long {
         val flow = addFlowRq
                 .takeIf { !it.slaKill || it.slaDuration == 0L }
@@ -42,15 +75,20 @@ class FlowService(
         if (flowId != null && flowDao.flowExist(flowId)) {
             val updateFlowRq = UpdateFlowRq(flow, flowId)
             thainFacade.updateFlow(updateFlowRq, addJobRqList)
+            flowChanged(flowId)
             return updateFlowRq.id
         }
         return thainFacade.addFlow(AddFlowAndJobsRq(flow, addJobRqList))
-                .also { flowDao.updateAppId(it, appId) }
+                .also {
+                    flowDao.updateAppId(it, appId)
+                    flowChanged(it)
+                }
     }
 
     @Throws(SchedulerException::class)
     fun delete(flowId: Long, appId: String, username: String): Boolean {
         thainFacade.deleteFlow(flowId, appId, username)
+        flowChanged(flowId)
         return true
     }
 
@@ -73,16 +111,41 @@ class FlowService(
     @Throws(ThainException::class, SchedulerException::class, IOException::class)
     fun scheduling(flowId: Long, appId: String, username: String) {
         thainFacade.schedulingFlow(flowId, appId, username)
+        flowSearchIndex.refresh(flowId)
     }
 
     @Throws(ThainException::class, ParseException::class, SchedulerException::class, IOException::class)
     fun updateCron(flowId: Long, cron: String?) {
         thainFacade.updateCron(flowId, cron)
+        flowSearchIndex.refresh(flowId)
     }
 
     @Throws(ThainException::class)
     fun pause(flowId: Long, appId: String, username: String) {
         thainFacade.pauseFlow(flowId, appId, username, false)
+        flowSearchIndex.refresh(flowId)
+    }
+
+    /**
+     * 批量开始调度
+     *
+     * @return 开始调度的 flow id
+     */
+    @Throws(SchedulerException::class)
+    fun scheduling(flowIds: Collection<Long>, appId: String, username: String): List<Long> {
+        return thainFacade.schedulingFlows(flowIds, appId, username)
+                .also { ids -> ids.forEach { flowSearchIndex.refresh(it) } }
+    }
+
+    /**
+     * 批量暂停
+     *
+     * @return 暂停的 flow id
+     */
+    @Throws(ThainException::class)
+    fun pause(flowIds: Collection<Long>, appId: String, username: String): List<Long> {
+        return thainFacade.pauseFlows(flowIds, appId, username)
+                .also { ids -> ids.forEach { flowSearchIndex.refresh(it) } }
     }
 
 }
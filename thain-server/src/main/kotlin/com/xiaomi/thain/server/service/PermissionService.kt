@@ -1,16 +1,78 @@
 package com.xiaomi.thain.server.service
 
-import com.xiaomi.thain.common.utils.isNotNull
+import com.github.benmanes.caffeine.cache.CacheLoader
+import com.github.benmanes.caffeine.cache.Caffeine
+import com.github.benmanes.caffeine.cache.LoadingCache
+import com.xiaomi.thain.common.model.dr.FlowExecutionDr
+import com.xiaomi.thain.core.ThainFacade
+import com.xiaomi.thain.core.process.runtime.notice.FlowDeleteNotice
 import com.xiaomi.thain.server.dao.FlowDao
-import com.xiaomi.thain.server.dao.FlowExecutionDao
+import com.xiaomi.thain.server.handler.ThreadLocalDataSource
+import com.xiaomi.thain.server.model.dr.FlowOwnerDr
 import org.springframework.stereotype.Service
+import java.util.concurrent.TimeUnit
 
 /**
+ * 权限判断只依赖 flow 的 createUser、createAppId、deleted 和 flowExecution 所属的 flowId，
+ * 都缓存在内存里，flow 修改时调用 [invalidateFlow]，本机删除 flow 时由 [ThainFacade.flowDeleteNotice] 通知失效。
+ * 其他机器上的修改感知不到，所以 flow 的缓存只保留一分钟；flowExecution 所属的 flowId 不会变，可以长期缓存。
+ * 查询走只读从库，从库里还没有的（刚创建的）再查一次主库
+ *
  * @author liangyongrui@xiaomi.com
  * @date 18-12-6 上午11:47
  */
 @Service
-class PermissionService(private val flowExecutionDao: FlowExecutionDao, private val flowDao: FlowDao) {
+class PermissionService(private val flowDao: FlowDao, thainFacade: ThainFacade) {
+
+    private val flowOwners: LoadingCache<Long, FlowOwnerDr> = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build(object : CacheLoader<Long, FlowOwnerDr> {
+                override fun load(key: Long): FlowOwnerDr? = flowDao.getFlowOwner(key)
+                        ?: ThreadLocalDataSource.primary { flowDao.getFlowOwner(key) }
+
+                override fun loadAll(keys: Iterable<Long>): Map<Long, FlowOwnerDr> {
+                    val owners = flowDao.getFlowOwnerList(keys.toList()).associateBy { it.id }
+                    val missing = keys.filter { !owners.containsKey(it) }
+                    if (missing.isEmpty()) {
+                        return owners
+                    }
+                    return owners + ThreadLocalDataSource.primary { flowDao.getFlowOwnerList(missing) }.associateBy { it.id }
+                }
+            })
+
+    private val flowExecutionFlowIds: LoadingCache<Long, Long> = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build(object : CacheLoader<Long, Long> {
+                override fun load(key: Long): Long? = flowDao.getFlowIdByFlowExecutionId(key)
+                        ?: ThreadLocalDataSource.primary { flowDao.getFlowIdByFlowExecutionId(key) }
+
+                override fun loadAll(keys: Iterable<Long>): Map<Long, Long> {
+                    val flowIds = flowDao.getFlowIdsByFlowExecutionIds(keys.toList())
+                    val missing = keys.filter { !flowIds.containsKey(it) }
+                    if (missing.isEmpty()) {
+                        return flowIds
+                    }
+                    return flowIds + ThreadLocalDataSource.primary { flowDao.getFlowIdsByFlowExecutionIds(missing) }
+                }
+            })
+
+    init {
+        thainFacade.flowDeleteNotice.addListener(object : FlowDeleteNotice.Listener {
+            override fun onDelete(flowId: Long) {
+                invalidateFlow(flowId)
+            }
+        })
+    }
+
+    /**
+     * flow 的创建人或 appId 变化、flow 删除后调用
+     */
+    fun invalidateFlow(flowId: Long) {
+        flowOwners.invalidate(flowId)
+    }
+
     /**
      * 判断username 是否有权限访问、操作flowId指定的flow
      *
@@ -19,8 +81,10 @@ class PermissionService(private val flowExecutionDao: FlowExecutionDao, private
      * @param flowId flow id
      * @return 有权限返回true
      */
-     fun getFlowAccessible(flowId: Long, userId: String, appIds: Set<String>?): Boolean {
-        return flowDao.getAccessible(flowId, userId, appIds)
+    fun getFlowAccessible(flowId: Long, userId: String, appIds: Set<String>?): Boolean {
+        return flowOwners.get(flowId)
+                ?.let { (it.createUser == userId && it.createAppId == "thain") || (appIds != null && appIds.contains(it.createAppId)) }
+                ?: false
     }
 
     /**
@@ -30,8 +94,32 @@ class PermissionService(private val flowExecutionDao: FlowExecutionDao, private
      * @param flowId flow id
      * @return 有权限返回true
      */
-     fun getFlowAccessible(flowId: Long, appId: String): Boolean {
-        return flowDao.getAccessible(flowId, appId)
+    fun getFlowAccessible(flowId: Long, appId: String): Boolean {
+        return flowOwners.get(flowId)
+                ?.let { !it.deleted && it.createAppId == appId }
+                ?: false
+    }
+
+    /**
+     * 批量判断appId 是否有权限操作这些 flow，缓存里没有的一次查出来
+     *
+     * @return 有权限的 flow id
+     */
+    fun getAccessibleFlowIds(flowIds: Collection<Long>, appId: String): Set<Long> {
+        return flowOwners.getAll(flowIds)
+                .filterValues { !it.deleted && it.createAppId == appId }
+                .keys
+    }
+
+    /**
+     * 批量判断appId 是否有权限操作这些 flowExecution，缓存里没有的一次查出来
+     *
+     * @return 有权限的 flowExecutionId -> 所属的 flowId
+     */
+    fun getAccessibleFlowExecutions(flowExecutionIds: Collection<Long>, appId: String): Map<Long, Long> {
+        val flowIds = flowExecutionFlowIds.getAll(flowExecutionIds)
+        val owners = flowOwners.getAll(flowIds.values.toSet())
+        return flowIds.filterValues { owners[it]?.createAppId == appId }
     }
 
     /**
@@ -42,13 +130,25 @@ class PermissionService(private val flowExecutionDao: FlowExecutionDao, private
      * @param flowExecutionId flowExecutionId
      * @return 有权限返回true
      */
-     fun getFlowExecutionAccessible(flowExecutionId: Long, userId: String, appIds: Set<String>?): Boolean {
-        return flowExecutionDao.getFlowExecution(flowExecutionId)
-                ?.flowId
-                ?.let { flowDao.getFlow(it) }
-                ?.takeIf { it.createUser == userId || (appIds != null && appIds.contains(it.createAppId)) }
-                .isNotNull()
+    fun getFlowExecutionAccessible(flowExecutionId: Long, userId: String, appIds: Set<String>?): Boolean {
+        return flowExecutionFlowIds.get(flowExecutionId)
+                ?.let { getFlowExecutionFlowAccessible(it, userId, appIds) }
+                ?: false
     }
+
+    /**
+     * 同上，flowExecution 已经查出来时使用
+     */
+    fun getFlowExecutionAccessible(flowExecution: FlowExecutionDr, userId: String, appIds: Set<String>?): Boolean {
+        return getFlowExecutionFlowAccessible(flowExecution.flowId, userId, appIds)
+    }
+
+    private fun getFlowExecutionFlowAccessible(flowId: Long, userId: String, appIds: Set<String>?): Boolean {
+        return flowOwners.get(flowId)
+                ?.let { it.createUser == userId || (appIds != null && appIds.contains(it.createAppId)) }
+                ?: false
+    }
+
     /**
      * 判断username 是否有权限访问、操作flowExecutionId指定的flowExecution
      *
@@ -56,8 +156,11 @@ class PermissionService(private val flowExecutionDao: FlowExecutionDao, private
      * @param flowExecutionId flowExecutionId
      * @return 有权限返回true
      */
-     fun getFlowExecutionAccessible(flowExecutionId: Long, appId: String): Boolean {
-        return flowExecutionDao.getAccessible(flowExecutionId, appId)
+    fun getFlowExecutionAccessible(flowExecutionId: Long, appId: String): Boolean {
+        return flowExecutionFlowIds.get(flowExecutionId)
+                ?.let { flowOwners.get(it) }
+                ?.let { it.createAppId == appId }
+                ?: false
     }
 
 }
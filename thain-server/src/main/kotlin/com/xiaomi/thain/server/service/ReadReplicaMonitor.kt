@@ -0,0 +1,45 @@
+package com.xiaomi.thain.server.service
+
+import com.xiaomi.thain.server.config.RoutingDataSource
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.core.env.Environment
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import javax.sql.DataSource
+
+/**
+ * 只读从库的延迟检测：每秒往主库的 thain_replica_heartbeat 写当前时间，再从从库读出来，
+ * 差值超过 datasource.read.max-lag-millis（默认3秒）或者从库读失败时，查询全部回到主库
+ *
+ * @author liangyongrui
+ */
+@Component
+class ReadReplicaMonitor(private val routingDataSource: RoutingDataSource,
+                         @Qualifier("mysqlDataSource") primary: DataSource,
+                         environment: Environment) {
+
+    private val log = LoggerFactory.getLogger(this.javaClass)!!
+
+    private val maxLagMillis = environment.getProperty("datasource.read.max-lag-millis", Long::class.javaObjectType, 3000L)
+    private val primaryJdbcTemplate = JdbcTemplate(primary)
+    private val readJdbcTemplate = routingDataSource.read?.let { JdbcTemplate(it) }
+
+    @Scheduled(fixedDelay = 1_000)
+    fun check() {
+        val read = readJdbcTemplate ?: return
+        try {
+            val now = System.currentTimeMillis()
+            if (primaryJdbcTemplate.update("update thain_replica_heartbeat set heartbeat_time = ? where id = 0", now) == 0) {
+                primaryJdbcTemplate.update("insert into thain_replica_heartbeat(id, heartbeat_time) values (0, ?)", now)
+            }
+            val replicated = read.queryForList("select heartbeat_time from thain_replica_heartbeat where id = 0", Long::class.javaObjectType)
+                    .firstOrNull() ?: 0L
+            routingDataSource.setReadAvailable(now - replicated <= maxLagMillis)
+        } catch (e: Exception) {
+            log.warn("check read replica: {}", e.message)
+            routingDataSource.setReadAvailable(false)
+        }
+    }
+}
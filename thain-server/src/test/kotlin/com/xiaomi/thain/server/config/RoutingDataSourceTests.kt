@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.server.config
+
+import com.xiaomi.thain.server.handler.ThreadLocalDataSource
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.springframework.jdbc.datasource.AbstractDataSource
+import java.lang.reflect.Proxy
+import java.sql.Connection
+import java.sql.SQLException
+
+class RoutingDataSourceTests {
+
+    /**
+     * 每次返回同一个假的连接，fail 时拿连接失败
+     */
+    private class FakeDataSource : AbstractDataSource() {
+        val connection = Proxy.newProxyInstance(javaClass.classLoader, arrayOf(Connection::class.java)) { _, _, _ -> null } as Connection
+
+        var fail = false
+
+        override fun getConnection(): Connection {
+            if (fail) {
+                throw SQLException("connection refused")
+            }
+            return connection
+        }
+
+        override fun getConnection(username: String?, password: String?): Connection = getConnection()
+    }
+
+    private val primary = FakeDataSource()
+    private val read = FakeDataSource()
+
+    @AfterEach
+    fun exit() {
+        ThreadLocalDataSource.exit()
+    }
+
+    private fun routingDataSource(read: FakeDataSource?) =
+            RoutingDataSource(primary, read).apply { afterPropertiesSet() }
+
+    @Test
+    fun routeTest() {
+        val routingDataSource = routingDataSource(read)
+        routingDataSource.setReadAvailable(true)
+        Assertions.assertSame(primary.connection, routingDataSource.connection)
+
+        ThreadLocalDataSource.enter(ThreadLocalDataSource.Target.READ)
+        Assertions.assertSame(read.connection, routingDataSource.connection)
+
+        // 延迟超过上限
+        routingDataSource.setReadAvailable(false)
+        Assertions.assertSame(primary.connection, routingDataSource.connection)
+    }
+
+    /**
+     * 拿不到从库连接时这次走主库，之后也走主库，直到 ReadReplicaMonitor 检查通过
+     */
+    @Test
+    fun fallbackTest() {
+        val routingDataSource = routingDataSource(read)
+        routingDataSource.setReadAvailable(true)
+        ThreadLocalDataSource.enter(ThreadLocalDataSource.Target.READ)
+        read.fail = true
+        Assertions.assertSame(primary.connection, routingDataSource.connection)
+
+        read.fail = false
+        Assertions.assertSame(primary.connection, routingDataSource.connection)
+        routingDataSource.setReadAvailable(true)
+        Assertions.assertSame(read.connection, routingDataSource.connection)
+    }
+
+    @Test
+    fun primaryFailTest() {
+        val routingDataSource = routingDataSource(read)
+        primary.fail = true
+        Assertions.assertThrows(SQLException::class.java) { routingDataSource.connection }
+    }
+
+    @Test
+    fun noReadTest() {
+        val routingDataSource = routingDataSource(null)
+        routingDataSource.setReadAvailable(true)
+        ThreadLocalDataSource.enter(ThreadLocalDataSource.Target.READ)
+        Assertions.assertSame(primary.connection, routingDataSource.connection)
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.server.service
+
+import com.alibaba.fastjson.JSON
+import com.xiaomi.thain.common.constant.FlowSchedulingStatus
+import com.xiaomi.thain.common.model.FlowModel
+import com.xiaomi.thain.common.model.JobModel
+import com.xiaomi.thain.core.ThainFacade
+import com.xiaomi.thain.core.model.rq.AddFlowRq
+import com.xiaomi.thain.core.model.rq.AddJobRq
+import com.xiaomi.thain.server.model.rq.FlowListRq
+import com.xiaomi.thain.server.model.sp.FlowListSp
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import java.util.*
+
+@SpringBootTest
+class FlowSearchIndexTests {
+    @Autowired
+    private val flowService: FlowService? = null
+    @Autowired
+    private val flowSearchIndex: FlowSearchIndex? = null
+    @Autowired
+    private val thainFacade: ThainFacade? = null
+    @Autowired
+    private val jdbcTemplate: JdbcTemplate? = null
+
+    private fun addFlow(name: String): Long {
+        val addFlowRq = JSON.parseObject(JSON.toJSONString(FlowModel.builder()
+                .name(name)
+                .createUser("admin")
+                .build()), AddFlowRq::class.java)
+        val jobs = listOf(
+                JSON.parseObject(
+                        JSON.toJSONString(JobModel.builder()
+                                .name("test")
+                                .component("std::http")
+                                .properties(mapOf(
+                                        "method" to "GET",
+                                        "url" to "http://127.0.0.1"
+                                )).build()), AddJobRq::class.java))
+        return flowService!!.add(addFlowRq, jobs, "thain")
+    }
+
+    private fun flowListSp(flowName: String) = FlowListSp.getInstance(
+            FlowListRq(null, null, null, null, null, null, flowName, null, null, null, null, null))
+
+    private fun search(flowName: String): FlowSearchIndex.Result {
+        flowSearchIndex!!.refresh()
+        return flowSearchIndex.search(flowListSp(flowName))
+    }
+
+    private fun randomName() = "search-" + UUID.randomUUID().toString().replace("-", "")
+
+    @Test
+    fun searchTest() {
+        val name = randomName()
+        val flowId = addFlow(name)
+        addFlow(randomName())
+        val result = search(name.substring(10, 20).toUpperCase())
+        Assertions.assertEquals(1L, result.total)
+        Assertions.assertEquals(listOf(flowId), result.entries.map { it.id })
+    }
+
+    /**
+     * 不经过 FlowService 的修改靠 status_update_time 增量同步
+     */
+    @Test
+    fun engineUpdateTest() {
+        val name = randomName()
+        val flowId = addFlow(name)
+        thainFacade!!.pauseFlow(flowId, "thain", "test", false)
+        Assertions.assertEquals(listOf(FlowSchedulingStatus.PAUSE.code), search(name).entries.map { it.schedulingStatus })
+    }
+
+    @Test
+    fun engineDeleteTest() {
+        val name = randomName()
+        val flowId = addFlow(name)
+        thainFacade!!.deleteFlow(flowId, "thain", "test")
+        Assertions.assertEquals(0L, search(name).total)
+    }
+
+    /**
+     * 其他机器物理删除的 flow，查询时发现了就去掉，没查到的每分钟核对 id 时去掉
+     */
+    @Test
+    fun hardDeleteTest() {
+        val name = randomName()
+        val flowId = addFlow(name)
+        jdbcTemplate!!.update("delete from thain_flow where id = ?", flowId)
+        Assertions.assertEquals(1L, search(name).total)
+        val page = flowService!!.searchFlowList(flowListSp(name)) ?: throw AssertionError("index not ready")
+        Assertions.assertEquals(0L, page.total)
+        Assertions.assertEquals(0L, search(name).total)
+
+        val otherName = randomName()
+        val otherFlowId = addFlow(otherName)
+        jdbcTemplate.update("delete from thain_flow where id = ?", otherFlowId)
+        Assertions.assertEquals(1L, search(otherName).total)
+        flowSearchIndex!!.reconcile()
+        Assertions.assertEquals(0L, search(otherName).total)
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2019, Xiaomi, Inc.  All rights reserved.
+ * This source code is licensed under the Apache License Version 2.0, which
+ * can be found in the LICENSE file in the root directory of this source tree.
+ */
+package com.xiaomi.thain.server.service
+
+import com.alibaba.fastjson.JSON
+import com.xiaomi.thain.common.model.FlowModel
+import com.xiaomi.thain.common.model.JobModel
+import com.xiaomi.thain.core.ThainFacade
+import com.xiaomi.thain.core.model.rq.AddFlowRq
+import com.xiaomi.thain.core.model.rq.AddJobRq
+import com.xiaomi.thain.server.dao.FlowDao
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+
+@SpringBootTest
+class PermissionServiceTests {
+    @Autowired
+    private val flowService: FlowService? = null
+    @Autowired
+    private val permissionService: PermissionService? = null
+    @Autowired
+    private val flowDao: FlowDao? = null
+    @Autowired
+    private val thainFacade: ThainFacade? = null
+
+    private fun addFlow(): Long {
+        val addFlowRq = JSON.parseObject(JSON.toJSONString(FlowModel.builder()
+                .name("permission")
+                .createUser("admin")
+                .build()), AddFlowRq::class.java)
+        val jobs = listOf(
+                JSON.parseObject(
+                        JSON.toJSONString(JobModel.builder()
+                                .name("test")
+                                .component("std::http")
+                                .properties(mapOf(
+                                        "method" to "GET",
+                                        "url" to "http://127.0.0.1"
+                                )).build()), AddJobRq::class.java))
+        return flowService!!.add(addFlowRq, jobs, "app")
+    }
+
+    @Test
+    fun cacheTest() {
+        val flowId = addFlow()
+        Assertions.assertTrue(permissionService!!.getFlowAccessible(flowId, "app"))
+        Assertions.assertTrue(permissionService.getFlowAccessible(flowId, "someone", setOf("app")))
+        Assertions.assertFalse(permissionService.getFlowAccessible(flowId, "admin", null))
+
+        // 直接改库，缓存里还是旧的
+        flowDao!!.updateAppId(flowId, "other")
+        Assertions.assertTrue(permissionService.getFlowAccessible(flowId, "app"))
+
+        permissionService.invalidateFlow(flowId)
+        Assertions.assertFalse(permissionService.getFlowAccessible(flowId, "app"))
+        Assertions.assertTrue(permissionService.getFlowAccessible(flowId, "other"))
+        Assertions.assertEquals(setOf(flowId), permissionService.getAccessibleFlowIds(listOf(flowId, -1L), "other"))
+    }
+
+    @Test
+    fun engineDeleteTest() {
+        val flowId = addFlow()
+        Assertions.assertTrue(permissionService!!.getFlowAccessible(flowId, "app"))
+
+        // 不经过 FlowService 删除，靠引擎的删除通知失效
+        thainFacade!!.deleteFlow(flowId, "app", "test")
+        Assertions.assertFalse(permissionService.getFlowAccessible(flowId, "app"))
+    }
+}